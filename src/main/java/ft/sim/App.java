@@ -4,6 +4,15 @@ package ft.sim;
 //import org.slf4j.LoggerFactory;
 
 import ft.sim.experiment.ExperimentController;
+import ft.sim.simulation.Pacer;
+import ft.sim.web.MetricsEndpoint;
+import ft.sim.world.map.CompiledMap;
+import ft.sim.world.map.GlobalMap;
+import ft.sim.world.map.MapCache;
+import ft.sim.world.map.MapValidator;
+import ft.sim.world.map.MapValidator.Validation;
+import ft.sim.world.map.NetworkGenerator;
+import ft.sim.world.map.NetworkGenerator.ScaleTier;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -19,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.context.ConfigurableApplicationContext;
@@ -35,19 +45,100 @@ public class App implements ApplicationRunner {
   private static ConfigurableApplicationContext context = null;
 
   public static void main(String[] args) {
-    AppConfig.isNonInteractive = Arrays.asList(args).contains("experiment");
+    AppConfig.isNonInteractive = Arrays.asList(args).contains("experiment")
+        || Arrays.stream(args).anyMatch(arg -> arg.startsWith("--validate-map"));
 
     context = new SpringApplicationBuilder(App.class).web(!AppConfig.isNonInteractive).run(args);
     AppConfig.init();
+    if (AppConfig.mapCache) {
+      MapCache.setDirectory(Paths.get(AppConfig.outputDir, "map-cache"));
+    }
+    if (AppConfig.metricsPort > 0) {
+      try {
+        MetricsEndpoint.start(AppConfig.metricsPort);
+      } catch (IOException e) {
+        logger.error("Failed to start the metrics endpoint on port {}", AppConfig.metricsPort, e);
+      }
+    }
     //context = SpringApplication.run(App.class, args);
 
+    if (!AppConfig.compileMaps.isEmpty() || !AppConfig.generateMaps.isEmpty()) {
+      generateMaps();
+      compileMaps();
+      MetricsEndpoint.stop();
+      context.close();
+      return;
+    }
+
+    if (!AppConfig.validateMaps.isEmpty()) {
+      int status = validateMaps() ? 0 : 1;
+      MetricsEndpoint.stop();
+      System.exit(SpringApplication.exit(context, () -> status));
+    }
+
     if (AppConfig.isNonInteractive) {
       logger.info("Running in Non-interactive mode");
       ExperimentController.getInstance().start();
     }
   }
 
+  /**
+   * Compile the maps given with <code>--compile-maps</code> into the results directory, to be
+   * loaded without building them (see {@link CompiledMap})
+   */
+  private static void compileMaps() {
+    for (String map : AppConfig.compileMaps) {
+      Path output = Paths.get(AppConfig.outputDir,
+          new GlobalMap(map).getSimpleFileName() + CompiledMap.EXTENSION);
+      try {
+        CompiledMap.compile(map, output);
+      } catch (IOException | RuntimeException e) {
+        logger.error("Failed to compile map {}", map, e);
+      }
+    }
+  }
+
+  /**
+   * Write the networks of the scale tiers given with <code>--generate-maps</code> as YAML maps in
+   * the results directory (see {@link NetworkGenerator})
+   */
+  private static void generateMaps() {
+    for (String tier : AppConfig.generateMaps) {
+      try {
+        NetworkGenerator generator = ScaleTier.forName(tier).generator();
+        Path output = Paths.get(AppConfig.outputDir, generator.getName() + ".yaml");
+        generator.writeYaml(output);
+        logger.info("Generated map {}", output);
+      } catch (IOException | RuntimeException e) {
+        logger.error("Failed to generate map {}", tier, e);
+      }
+    }
+  }
+
+  /**
+   * Build and check the maps given with <code>--validate-map</code>, without running them (see
+   * {@link MapValidator})
+   *
+   * @return whether all of them are valid
+   */
+  private static boolean validateMaps() {
+    boolean valid = true;
+    for (String map : AppConfig.validateMaps) {
+      Validation validation = MapValidator.validate(map);
+      validation.getWarnings().forEach(warning -> logger.warn("{}: {}", map, warning));
+      validation.getErrors().forEach(error -> logger.error("{}: {}", map, error));
+      if (validation.isValid()) {
+        logger.info("Map {} is valid ({} warnings)", map, validation.getWarnings().size());
+      } else {
+        logger.error("Map {} is invalid ({} errors)", map, validation.getErrors().size());
+        valid = false;
+      }
+    }
+    return valid;
+  }
+
   public static void experimentCompleted() {
+    MetricsEndpoint.stop();
     context.close();
     //SpringApplication.exit(context, () -> 0);
   }
@@ -64,7 +155,8 @@ public class App implements ApplicationRunner {
         if (f.isDirectory()) {
           toRemove.add(file);
           List<String> files = Arrays
-              .stream(f.listFiles((dir, name) -> name.toLowerCase().endsWith(".yaml")))
+              .stream(f.listFiles((dir, name) -> name.toLowerCase().endsWith(".yaml")
+                  || name.toLowerCase().endsWith(CompiledMap.EXTENSION)))
               .map(File::getAbsolutePath).collect(Collectors.toList());
           AppConfig.experimentMaps.addAll(files);
         }
@@ -79,6 +171,37 @@ public class App implements ApplicationRunner {
       }
       AppConfig.outputDir = outDirs.get(0);
     }
+    if (applicationArguments.containsOption("compile-maps")) {
+      applicationArguments.getOptionValues("compile-maps")
+          .forEach(map -> AppConfig.compileMaps.addAll(Arrays.asList(map.split(","))));
+    }
+    if (applicationArguments.containsOption("generate-maps")) {
+      applicationArguments.getOptionValues("generate-maps")
+          .forEach(tier -> AppConfig.generateMaps.addAll(Arrays.asList(tier.split(","))));
+    }
+    if (applicationArguments.containsOption("validate-map")) {
+      applicationArguments.getOptionValues("validate-map")
+          .forEach(map -> AppConfig.validateMaps.addAll(Arrays.asList(map.split(","))));
+    }
+    if (applicationArguments.containsOption("no-map-cache")) {
+      AppConfig.mapCache = false;
+    }
+    if (applicationArguments.containsOption("replay-every")) {
+      AppConfig.replayInterval = Integer
+          .parseInt(applicationArguments.getOptionValues("replay-every").get(0));
+    }
+    if (applicationArguments.containsOption("speed")) {
+      AppConfig.simulationSpeed = Pacer
+          .parseSpeed(applicationArguments.getOptionValues("speed").get(0));
+    }
+    if (applicationArguments.containsOption("ui-frame-ms")) {
+      AppConfig.uiFrameMillis = Long
+          .parseLong(applicationArguments.getOptionValues("ui-frame-ms").get(0));
+    }
+    if (applicationArguments.containsOption("metrics-port")) {
+      AppConfig.metricsPort = Integer
+          .parseInt(applicationArguments.getOptionValues("metrics-port").get(0));
+    }
   }
 
   /*@Override
@@ -92,6 +215,22 @@ public class App implements ApplicationRunner {
     public static boolean isNonInteractive = true;
     public static Set<String> experimentMaps = new LinkedHashSet<>();
     public static String outputDir = "./results";
+    // maps to compile (see CompiledMap) instead of running anything
+    public static List<String> compileMaps = new ArrayList<>();
+    // scale tiers of generated networks to write as YAML maps (see NetworkGenerator)
+    public static List<String> generateMaps = new ArrayList<>();
+    // maps to build and check (see MapValidator) instead of running anything
+    public static List<String> validateMaps = new ArrayList<>();
+    // keep built maps in the results directory, to load them instead of building them again
+    public static boolean mapCache = true;
+    // port of the Prometheus metrics endpoint (disabled if 0)
+    public static int metricsPort = 0;
+    // ticks between two frames recorded to the replay file of each run (none recorded if 0)
+    public static int replayInterval = 0;
+    // interactive simulations: multiple of the simulated time (0 for maximum speed), and time
+    // between two updates of the UI
+    public static double simulationSpeed = 1;
+    public static long uiFrameMillis = 50;
 
     public static void init() {
       // create output dir
@@ -1,5 +1,7 @@
 package ft.sim.experiment;
 
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
 import ft.sim.simulation.SimulationController;
 
 /**
@@ -10,6 +12,8 @@ public class Experiment {
   private String map;
   private SimulationController simulation;
   private ExperimentListenerInterface experimentListener;
+  private long startTime = 0;
+  private ExperimentSummary summary = null;
 
   public Experiment(String map) {
     this.map = map;
@@ -22,13 +26,33 @@ public class Experiment {
    */
   public void runFor(ExperimentListenerInterface experimentController) {
     this.experimentListener = experimentController;
+    startTime = System.nanoTime();
 
-    simulation = SimulationController.getInstance(map);
+    simulation = SimulationController.newInstance(map);
     simulation.setNonInteractve();
     simulation.setExperiment(this);
     simulation.startSimulation();
   }
 
+  /**
+   * Summarise the results of the experiment (called while the simulation's world still exists)
+   */
+  public void summarise(SimulationController simulation) {
+    if (summary != null) {
+      return;
+    }
+    long wallClockMillis = NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    summary = new ExperimentSummary(map, simulation, wallClockMillis);
+  }
+
+  public ExperimentSummary getSummary() {
+    return summary;
+  }
+
+  public String getMap() {
+    return map;
+  }
+
   /**
    * Listener for when experiment is finished
    */
@@ -2,8 +2,14 @@ package ft.sim.experiment;
 
 import ft.sim.App;
 import ft.sim.App.AppConfig;
+import ft.sim.statistics.StatisticsController;
+import java.sql.SQLException;
 import java.util.LinkedHashSet;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,6 +27,14 @@ public class ExperimentController implements ExperimentListenerInterface {
 
   private App app;
 
+  private ExperimentIndex experimentIndex = null;
+  // experiments are indexed off the simulation thread (which is interrupted when it finishes)
+  private final ExecutorService indexWriter = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "experiment-index");
+    thread.setDaemon(true);
+    return thread;
+  });
+
   private ExperimentController() {
     if (AppConfig.experimentMaps.isEmpty()) {
       logger.error(
@@ -30,6 +44,12 @@ public class ExperimentController implements ExperimentListenerInterface {
     }
     AppConfig.experimentMaps.forEach(map -> experiments.add(new Experiment(map)));
     logger.info("{} experiment maps added.", AppConfig.experimentMaps.size());
+    try {
+      experimentIndex = new ExperimentIndex(AppConfig.outputDir);
+    } catch (SQLException e) {
+      logger.error("Failed to open the experiments index, results won't be indexed: {}",
+          e.getMessage());
+    }
   }
 
   public static ExperimentController getInstance() {
@@ -39,6 +59,18 @@ public class ExperimentController implements ExperimentListenerInterface {
     return instance;
   }
 
+  public static Optional<ExperimentController> getOptionalInstance() {
+    return Optional.ofNullable(instance);
+  }
+
+  public int getRemainingExperiments() {
+    return experiments.size();
+  }
+
+  public int getCompletedExperiments() {
+    return completedExperiments.size();
+  }
+
   public void start() {
     runNext();
   }
@@ -46,9 +78,29 @@ public class ExperimentController implements ExperimentListenerInterface {
   public void experimentFinishedEvent(Experiment experiment) {
     experiments.remove(experiment);
     completedExperiments.add(experiment);
+    indexExperiment(experiment);
     runNext();
   }
 
+  private void indexExperiment(Experiment experiment) {
+    if (experimentIndex == null) {
+      return;
+    }
+    ExperimentSummary summary = experiment.getSummary();
+    if (summary == null) {
+      logger.warn("No results to index for experiment: {}", experiment.getMap());
+      return;
+    }
+    indexWriter.submit(() -> {
+      try {
+        long id = experimentIndex.add(summary);
+        logger.info("Indexed experiment {} as #{}", summary.getMap(), id);
+      } catch (SQLException e) {
+        logger.error("Failed to index experiment {}: {}", summary.getMap(), e.getMessage());
+      }
+    });
+  }
+
   private void runNext() {
     if (experiments.iterator().hasNext()) {
       experiments.iterator().next().runFor(this);
@@ -58,7 +110,26 @@ public class ExperimentController implements ExperimentListenerInterface {
   }
 
   private void finished() {
-    new Thread(App::experimentCompleted).start();
+    if (experimentIndex != null) {
+      indexWriter.submit(() -> {
+        try {
+          experimentIndex.close();
+        } catch (SQLException e) {
+          logger.error("Failed to close the experiments index: {}", e.getMessage());
+        }
+      });
+    }
+    indexWriter.shutdown();
+    new Thread(() -> {
+      // statistics of the last experiments may still be being written
+      StatisticsController.awaitExports();
+      try {
+        indexWriter.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      App.experimentCompleted();
+    }).start();
   }
 
 }
@@ -0,0 +1,170 @@
+package ft.sim.experiment;
+
+import com.google.gson.Gson;
+import ft.sim.monitoring.ViolationSeverity;
+import ft.sim.monitoring.ViolationType;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Summary table of all experiments run into a results directory, kept in an H2 database
+ * (<code>experiments.mv.db</code>) next to the exported statistics. A row is added as soon as an
+ * experiment finishes, so that a sweep can be triaged without decompressing every CSV, e.g.:
+ * <pre>
+ *   SELECT map, severity_critical FROM experiments WHERE severity_critical > 0;
+ *   SELECT e.map FROM experiments e JOIN experiment_configuration c ON c.experiment_id = e.id
+ *     WHERE c.name = 'mode' AND c.value = 'variable_block' AND e.violations_variable_block > 0;
+ * </pre>
+ */
+public class ExperimentIndex implements AutoCloseable {
+
+  protected static transient Logger logger = LoggerFactory.getLogger(ExperimentIndex.class);
+
+  private static final String DATABASE_NAME = "experiments";
+  private static final Gson gson = new Gson();
+
+  private final Connection connection;
+
+  public ExperimentIndex(String directory) throws SQLException {
+    String path = Paths.get(directory, DATABASE_NAME).toAbsolutePath().toString();
+    connection = DriverManager.getConnection("jdbc:h2:" + path);
+    createTables();
+    logger.info("Indexing experiment results in: {}", path);
+  }
+
+  private static String column(ViolationType type) {
+    return "violations_" + type.name().toLowerCase();
+  }
+
+  private static String column(ViolationSeverity severity) {
+    return "severity_" + severity.name().toLowerCase();
+  }
+
+  private void createTables() throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE IF NOT EXISTS experiments ("
+          + "id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+          + "map VARCHAR(1024) NOT NULL, "
+          + "finished_at TIMESTAMP NOT NULL, "
+          + "simulated_seconds DOUBLE, "
+          + "ticks BIGINT, "
+          + "wall_clock_millis BIGINT, "
+          + "journeys INT, "
+          + "journeys_finished INT, "
+          + "journey_duration_min DOUBLE, "
+          + "journey_duration_mean DOUBLE, "
+          + "journey_duration_max DOUBLE, "
+          + "configuration CLOB)");
+      // violation columns follow the enums, so that new violation types are picked up
+      for (ViolationSeverity severity : ViolationSeverity.values()) {
+        statement.execute("ALTER TABLE experiments ADD COLUMN IF NOT EXISTS "
+            + column(severity) + " INT DEFAULT 0");
+      }
+      for (ViolationType type : ViolationType.values()) {
+        statement.execute("ALTER TABLE experiments ADD COLUMN IF NOT EXISTS "
+            + column(type) + " INT DEFAULT 0");
+      }
+      statement.execute("CREATE INDEX IF NOT EXISTS experiments_map ON experiments(map)");
+      statement.execute("CREATE INDEX IF NOT EXISTS experiments_critical ON experiments("
+          + column(ViolationSeverity.CRITICAL) + ")");
+
+      statement.execute("CREATE TABLE IF NOT EXISTS experiment_configuration ("
+          + "experiment_id BIGINT NOT NULL REFERENCES experiments(id) ON DELETE CASCADE, "
+          + "name VARCHAR(255) NOT NULL, "
+          + "value VARCHAR(4096), "
+          + "PRIMARY KEY (experiment_id, name))");
+      statement.execute("CREATE INDEX IF NOT EXISTS experiment_configuration_value "
+          + "ON experiment_configuration(name, value)");
+    }
+  }
+
+  /**
+   * Add the summary of a finished experiment to the index.
+   *
+   * @return the ID of the experiment in the index
+   */
+  public long add(ExperimentSummary summary) throws SQLException {
+    List<String> columns = new ArrayList<>();
+    for (ViolationSeverity severity : ViolationSeverity.values()) {
+      columns.add(column(severity));
+    }
+    for (ViolationType type : ViolationType.values()) {
+      columns.add(column(type));
+    }
+    String sql = "INSERT INTO experiments (map, finished_at, simulated_seconds, ticks, "
+        + "wall_clock_millis, journeys, journeys_finished, journey_duration_min, "
+        + "journey_duration_mean, journey_duration_max, configuration, "
+        + String.join(", ", columns) + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, "
+        + columns.stream().map(c -> "?").collect(Collectors.joining(", ")) + ")";
+
+    boolean autoCommit = connection.getAutoCommit();
+    connection.setAutoCommit(false);
+    try {
+      long id;
+      try (PreparedStatement insert = connection
+          .prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        DoubleSummaryStatistics durations = summary.getJourneyDurations();
+        boolean anyFinished = durations.getCount() > 0;
+        int i = 1;
+        insert.setString(i++, summary.getMap());
+        insert.setTimestamp(i++, new Timestamp(System.currentTimeMillis()));
+        insert.setDouble(i++, summary.getSimulatedSeconds());
+        insert.setLong(i++, summary.getTicks());
+        insert.setLong(i++, summary.getWallClockMillis());
+        insert.setInt(i++, summary.getJourneys());
+        insert.setLong(i++, durations.getCount());
+        insert.setObject(i++, anyFinished ? durations.getMin() : null);
+        insert.setObject(i++, anyFinished ? durations.getAverage() : null);
+        insert.setObject(i++, anyFinished ? durations.getMax() : null);
+        insert.setString(i++, gson.toJson(summary.getConfiguration()));
+        for (ViolationSeverity severity : ViolationSeverity.values()) {
+          insert.setInt(i++, summary.getViolations(severity));
+        }
+        for (ViolationType type : ViolationType.values()) {
+          insert.setInt(i++, summary.getViolations(type));
+        }
+        insert.executeUpdate();
+        try (ResultSet keys = insert.getGeneratedKeys()) {
+          keys.next();
+          id = keys.getLong(1);
+        }
+      }
+
+      try (PreparedStatement insert = connection.prepareStatement(
+          "INSERT INTO experiment_configuration (experiment_id, name, value) VALUES (?, ?, ?)")) {
+        for (Entry<String, Object> config : summary.getConfiguration().entrySet()) {
+          insert.setLong(1, id);
+          insert.setString(2, config.getKey());
+          insert.setString(3, String.valueOf(config.getValue()));
+          insert.addBatch();
+        }
+        insert.executeBatch();
+      }
+      connection.commit();
+      return id;
+    } catch (SQLException e) {
+      connection.rollback();
+      throw e;
+    } finally {
+      connection.setAutoCommit(autoCommit);
+    }
+  }
+
+  @Override
+  public void close() throws SQLException {
+    connection.close();
+  }
+}
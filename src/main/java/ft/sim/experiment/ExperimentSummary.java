@@ -0,0 +1,99 @@
+package ft.sim.experiment;
+
+import ft.sim.monitoring.Violation;
+import ft.sim.monitoring.ViolationSeverity;
+import ft.sim.monitoring.ViolationType;
+import ft.sim.simulation.SimulationController;
+import ft.sim.world.journey.Journey;
+import java.util.Collections;
+import java.util.DoubleSummaryStatistics;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summary of the results of a finished experiment (one row of the {@link ExperimentIndex}).
+ */
+public class ExperimentSummary {
+
+  private final String map;
+  private final Map<String, Object> configuration;
+  private final double simulatedSeconds;
+  private final long ticks;
+  private final long wallClockMillis;
+  private final Map<ViolationType, Integer> violations = new EnumMap<>(ViolationType.class);
+  private final Map<ViolationSeverity, Integer> violationSeverities = new EnumMap<>(
+      ViolationSeverity.class);
+  private final int journeys;
+  private final DoubleSummaryStatistics journeyDurations;
+
+  ExperimentSummary(String map, SimulationController simulation, long wallClockMillis) {
+    this(map, simulation.getWorld().getConfigurations(), simulation.getSimulationTimeElapsed(),
+        simulation.getTicksElapsed(), wallClockMillis, simulation.getViolations(),
+        simulation.getWorld().getJourneys().size(),
+        simulation.getWorld().getJourneys().values().stream()
+            .filter(Journey::isJourneyFinished).mapToDouble(Journey::getJourneyDuration)
+            .summaryStatistics());
+  }
+
+  ExperimentSummary(String map, Map<String, Object> configuration, double simulatedSeconds,
+      long ticks, long wallClockMillis, List<Violation> violationsFound, int journeys,
+      DoubleSummaryStatistics journeyDurations) {
+    this.map = map;
+    this.configuration = new LinkedHashMap<>(configuration);
+    this.simulatedSeconds = simulatedSeconds;
+    this.ticks = ticks;
+    this.wallClockMillis = wallClockMillis;
+
+    for (ViolationType type : ViolationType.values()) {
+      violations.put(type, 0);
+    }
+    for (ViolationSeverity severity : ViolationSeverity.values()) {
+      violationSeverities.put(severity, 0);
+    }
+    for (Violation violation : violationsFound) {
+      violations.merge(violation.getType(), 1, Integer::sum);
+      violationSeverities.merge(violation.getSeverity(), 1, Integer::sum);
+    }
+
+    this.journeys = journeys;
+    this.journeyDurations = journeyDurations;
+  }
+
+  public String getMap() {
+    return map;
+  }
+
+  public Map<String, Object> getConfiguration() {
+    return Collections.unmodifiableMap(configuration);
+  }
+
+  public double getSimulatedSeconds() {
+    return simulatedSeconds;
+  }
+
+  public long getTicks() {
+    return ticks;
+  }
+
+  public long getWallClockMillis() {
+    return wallClockMillis;
+  }
+
+  public int getViolations(ViolationType type) {
+    return violations.get(type);
+  }
+
+  public int getViolations(ViolationSeverity severity) {
+    return violationSeverities.get(severity);
+  }
+
+  public int getJourneys() {
+    return journeys;
+  }
+
+  public DoubleSummaryStatistics getJourneyDurations() {
+    return journeyDurations;
+  }
+}
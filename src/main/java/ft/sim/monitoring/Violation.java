@@ -25,6 +25,10 @@ public class Violation {
     return severity;
   }
 
+  public long getTickTime() {
+    return tickTime;
+  }
+
   public String getDescription() {
     return description;
   }
@@ -0,0 +1,149 @@
+package ft.sim.simulation;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces an interactive simulation: ticks are spread evenly over wall-clock time at a multiple of
+ * the simulated time (or run back to back at maximum speed), and UI frames are due at most once
+ * per frame budget, however many ticks went by in between.
+ */
+public class Pacer {
+
+  // parking isn't precise to less than this, so the end of a wait is spun
+  private static final long SPIN_NANOS = 200_000;
+  // falling further behind than this (e.g. slow ticks) resets the schedule, rather than catching up
+  private static final long MAX_LAG_NANOS = 250_000_000;
+
+  private final Clock clock;
+  private final double secondsPerTick;
+  private final long frameNanos;
+  // multiple of simulated time, 0 for maximum speed
+  private volatile double speed;
+  private volatile boolean rescheduled = true;
+
+  private long scheduleStart = 0;
+  private long ticksSinceScheduleStart = 0;
+  private long lastFrame = 0;
+  private boolean framePending = true;
+
+  public Pacer(double secondsPerTick, long frameMillis, double speed) {
+    this(secondsPerTick, frameMillis, speed, Clock.SYSTEM);
+  }
+
+  Pacer(double secondsPerTick, long frameMillis, double speed, Clock clock) {
+    if (frameMillis <= 0) {
+      throw new IllegalArgumentException("UI frame budget has to be positive");
+    }
+    this.clock = clock;
+    this.secondsPerTick = secondsPerTick;
+    this.frameNanos = frameMillis * 1_000_000;
+    setSpeed(speed);
+  }
+
+  /**
+   * @param speed multiple of the simulated time, or 0 to tick as fast as possible
+   */
+  public void setSpeed(double speed) {
+    if (speed < 0 || Double.isNaN(speed) || Double.isInfinite(speed)) {
+      throw new IllegalArgumentException("Invalid simulation speed: " + speed);
+    }
+    this.speed = speed;
+    rescheduled = true;
+  }
+
+  /**
+   * A speed given as a multiple (e.g. <code>10</code> or <code>10x</code>), or <code>max</code>
+   */
+  public static double parseSpeed(String speed) {
+    String multiple = speed.trim().toLowerCase();
+    if (multiple.equals("max")) {
+      return 0;
+    }
+    if (multiple.endsWith("x")) {
+      multiple = multiple.substring(0, multiple.length() - 1);
+    }
+    return Double.parseDouble(multiple);
+  }
+
+  public double getSpeed() {
+    return speed;
+  }
+
+  /**
+   * Start the schedule over from now (e.g. after the simulation wasn't paced for a while)
+   */
+  public void reschedule() {
+    rescheduled = true;
+  }
+
+  /**
+   * Wait until the next tick is due (returns straight away at maximum speed, or if interrupted)
+   */
+  public void awaitNextTick() {
+    long now = clock.nanoTime();
+    double currentSpeed = speed;
+    if (rescheduled) {
+      rescheduled = false;
+      scheduleStart = now;
+      ticksSinceScheduleStart = 0;
+    }
+    if (currentSpeed == 0) {
+      return;
+    }
+    ticksSinceScheduleStart++;
+    long due = scheduleStart + (long) (ticksSinceScheduleStart * secondsPerTick * 1e9
+        / currentSpeed);
+    if (now - due > MAX_LAG_NANOS) {
+      scheduleStart = now;
+      ticksSinceScheduleStart = 0;
+      return;
+    }
+    clock.sleepUntil(due);
+  }
+
+  /**
+   * Whether a UI frame should be sent now. The first frame is due straight away.
+   */
+  public boolean isFrameDue() {
+    long now = clock.nanoTime();
+    if (framePending || now - lastFrame >= frameNanos) {
+      framePending = false;
+      lastFrame = now;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Source of the time the schedule is kept in, and of the waits for it (replaced in tests)
+   */
+  interface Clock {
+
+    Clock SYSTEM = new Clock() {
+      @Override
+      public long nanoTime() {
+        return System.nanoTime();
+      }
+
+      @Override
+      public void sleepUntil(long due) {
+        long remaining = due - System.nanoTime();
+        while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+          if (remaining > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+          } else {
+            Thread.yield();
+          }
+          remaining = due - System.nanoTime();
+        }
+      }
+    };
+
+    long nanoTime();
+
+    /**
+     * Wait until the given time (returns early if interrupted)
+     */
+    void sleepUntil(long due);
+  }
+}
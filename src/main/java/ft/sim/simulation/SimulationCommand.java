@@ -0,0 +1,39 @@
+package ft.sim.simulation;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A change to a running simulation, requested from another thread (e.g. by a websocket client)
+ * and carried out by the simulation thread between two ticks.
+ */
+public class SimulationCommand {
+
+  private final String name;
+  private final Runnable action;
+  private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+  public SimulationCommand(String name, Runnable action) {
+    this.name = name;
+    this.action = action;
+  }
+
+  void run() {
+    try {
+      action.run();
+      result.complete(null);
+    } catch (RuntimeException e) {
+      result.completeExceptionally(e);
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Completed once the command has been carried out (exceptionally if it failed)
+   */
+  public CompletableFuture<Void> getResult() {
+    return result;
+  }
+}
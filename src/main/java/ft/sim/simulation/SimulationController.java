@@ -2,38 +2,44 @@ package ft.sim.simulation;
 
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import ft.sim.App.AppConfig;
 import ft.sim.experiment.Experiment;
 import ft.sim.monitoring.CriticalViolationException;
 import ft.sim.monitoring.Oracle;
+import ft.sim.monitoring.Violation;
+import ft.sim.simulation.SimulationMetrics.TickPhase;
 import ft.sim.statistics.StatisticsController;
+import ft.sim.statistics.StatisticsRollups;
 import ft.sim.statistics.StatisticsVariable;
 import ft.sim.statistics.StatsHelper;
-import ft.sim.visualisation.Point;
-import ft.sim.visualisation.SignalPoint;
+import ft.sim.visualisation.ReplayRecorder;
+import ft.sim.visualisation.WorldUpdate;
+import ft.sim.visualisation.WorldView;
+import ft.sim.web.SimulationHub;
 import ft.sim.web.SocketSession;
+import ft.sim.web.UpdatePublisher;
 import ft.sim.world.WorldHandler;
-import ft.sim.world.connectables.Connectable;
-import ft.sim.world.connectables.Station;
-import ft.sim.world.connectables.Track;
+import ft.sim.world.WorldState;
 import ft.sim.world.journey.Journey;
 import ft.sim.world.map.GlobalMap;
 import ft.sim.world.map.MapBuilder;
-import ft.sim.world.signalling.SignalUnit;
 import ft.sim.world.train.Train;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.web.socket.TextMessage;
 
 /**
  * Created by Sina on 21/02/2017.
@@ -45,16 +51,19 @@ public class SimulationController {
   public static final int RANDOM_SEED = 0;
   protected static transient final Logger logger = LoggerFactory
       .getLogger(SimulationController.class);
-  // From the point of view of a user, how many ticks we should do per second
-  private static final int TICKS_PER_SECOND = 1000;
-  // How often to send request to user
-  private static final int USER_REFRESH_RATE = 50;
   // how many seconds should the simulation run for (max). Default: 2 days
   private static final long MAX_SIMULATION_DURATION = 2 * 24 * 60 * 60;
   // From the view of the simulation, how much time passed since last tick (in seconds)
   private static final double SECONDS_PER_TICK = 1.0 / 10.0;
 
-  private static SimulationController instance = null;
+  // the latest simulation created, the one clients talk to unless they attach to another one
+  private static volatile SimulationController instance = null;
+  // every simulation that hasn't been killed yet, by ID (see SimulationHub)
+  private static final Map<Integer, SimulationController> simulations =
+      new ConcurrentSkipListMap<>();
+  private static final AtomicInteger nextID = new AtomicInteger(1);
+
+  private final int id = nextID.getAndIncrement();
   // oracle instance
   private Oracle oracle;
   private Experiment experiment = null;
@@ -64,23 +73,43 @@ public class SimulationController {
   private long ticksElapsed = 0;
   private long timeElapsed = 0;
   private long nanosElapsed = 0;
-  private int simulationTimeElapsed = 0;
   // The simulation thread
   private Thread simThread;
   // Is the simulation killed?
-  private boolean killed = false;
+  private volatile boolean killed = false;
+  // Has the simulation thread been started (or the simulation killed before it was)?
+  private final AtomicBoolean started = new AtomicBoolean(false);
   // Is the simulation running?
-  private boolean isRunning = false;
+  private volatile boolean isRunning = false;
+  // commands from other threads, carried out between two ticks while the simulation thread runs
+  private final Queue<SimulationCommand> commands = new ConcurrentLinkedQueue<>();
+  private volatile boolean ticking = false;
   //private SocketSession socketSession = null;
-  private Set<SocketSession> socketSessions = new HashSet<>();
+  // sends the updates to the clients, off the simulation thread
+  private final UpdatePublisher publisher = new UpdatePublisher();
+  // what the UI gets to see of the world (built on the first push)
+  private WorldView worldView = null;
+  // records the run to a replay file (if enabled)
+  private ReplayRecorder recorder = null;
+  // tick of the latest recorded frame
+  private long recordedTick = -1;
   private boolean interactiveSimulation = true;
+  // speed of the simulation and UI frame rate, when interactive
+  private final Pacer pacer = new Pacer(SECONDS_PER_TICK, AppConfig.uiFrameMillis,
+      AppConfig.simulationSpeed);
   private boolean simulationCompleted = false;
+  // live metrics (see MetricsEndpoint)
+  private final SimulationMetrics metrics;
+  // statistics rollups of the world (see SeriesQuery)
+  private volatile StatisticsRollups rollups = null;
 
   private SimulationController(String mapName) {
     logger.info("starting new simulation");
     buildWorld(mapName);
     oracle = new Oracle();
+    metrics = new SimulationMetrics(mapName, SECONDS_PER_TICK);
     setSimulatorThread();
+    simulations.put(id, this);
   }
 
   public static SimulationController getInstance(String mapName) {
@@ -94,12 +123,22 @@ public class SimulationController {
     return instance;
   }
 
+  public static Collection<SimulationController> getSimulations() {
+    return Collections.unmodifiableCollection(simulations.values());
+  }
+
+  public static Optional<SimulationController> getSimulation(int id) {
+    return Optional.ofNullable(simulations.get(id));
+  }
+
+  /**
+   * Create a new simulation, which becomes the default one. The simulations created before carry
+   * on (see {@link #getSimulations()}) until they finish or are killed.
+   */
   public static SimulationController newInstance(String mapName) {
-    if (instance != null) {
-      instance.kill();
-      instance = null;
-    }
-    return getInstance(mapName);
+    SimulationController simulation = new SimulationController(mapName);
+    instance = simulation;
+    return simulation;
   }
 
   public void setExperiment(Experiment experiment) {
@@ -108,9 +147,18 @@ public class SimulationController {
 
   public void toggleInteractive() {
     interactiveSimulation = !interactiveSimulation;
+    pacer.reschedule();
     logger.info("Interactive Simulation: {}", interactiveSimulation ? "On" : "Off");
   }
 
+  /**
+   * @param speed multiple of the simulated time, or 0 for maximum speed (when interactive)
+   */
+  public void setSpeed(double speed) {
+    pacer.setSpeed(speed);
+    logger.info("Simulation speed: {}", speed == 0 ? "max" : speed + "x");
+  }
+
   public void setNonInteractve() {
     interactiveSimulation = false;
   }
@@ -125,12 +173,25 @@ public class SimulationController {
 
   private void setSimulatorThread() {
     simThread = new Thread(() -> {
+      // other simulations may be running on their own threads
+      StatisticsController.setCurrentWorld(world);
+      WorldState.setCurrent(world.getState());
       logger.warn("simulation started!");
+      metrics.started();
       StatsHelper.trackEvent(StatisticsVariable.SIMULATION_STARTED);
       while (!Thread.currentThread().isInterrupted()
           && ticksElapsed * SECONDS_PER_TICK < MAX_SIMULATION_DURATION
           && !simulationCompleted) {
         long startTime = System.nanoTime();
+        if (!commands.isEmpty()) {
+          runCommands();
+          metrics.addPhaseTime(TickPhase.COMMANDS, System.nanoTime() - startTime);
+          startTime = System.nanoTime();
+          if (killed) {
+            // stopped by a command
+            break;
+          }
+        }
         if (world.getJourneys().values().stream().allMatch(Journey::isJourneyFinished)) {
           simulationCompleted = true;
         }
@@ -141,35 +202,40 @@ public class SimulationController {
                 .anyMatch(t -> t.getEcu().gotNOKRadio() || t.getEcu().nextTrainLikelyBroken())) {
           simulationCompleted = true;
         }
+        metrics.addPhaseTime(TickPhase.COMPLETION_CHECK, System.nanoTime() - startTime);
         tick();
+        if (killed) {
+          // by a critical violation, the last frame was recorded when it was killed
+          break;
+        }
+        if (recorder != null && ticksElapsed % AppConfig.replayInterval == 0) {
+          long recordStartTime = System.nanoTime();
+          record();
+          metrics.addPhaseTime(TickPhase.RECORD, System.nanoTime() - recordStartTime);
+        }
         long elapsed = System.nanoTime() - startTime;
         nanosElapsed += elapsed;
         double ms = NANOSECONDS.toMillis(elapsed);
         timeElapsed += ms;
 
         if (interactiveSimulation) {
-          // wait for the remaining time (to match TICKS_PER_SECOND)
-          int waitTime = (int) Math.floor((USER_REFRESH_RATE / TICKS_PER_SECOND) - ms);
-          if (waitTime > 0) {
-            /*try {
-              Thread.sleep(waitTime);
-            } catch (InterruptedException e) {
-              //e.printStackTrace();
-              logger.warn("Simulation Stopped");
-              Thread.currentThread().interrupt();
-            }*/
-          }
-          // Send stats to user every ...
-          if (ticksElapsed % TICKS_PER_SECOND == 0) {
+          // one update per UI frame, however many ticks it took
+          if (pacer.isFrameDue()) {
+            long pushStartTime = System.nanoTime();
             sendStatistics();
-            //new Thread(this::sendStatistics).start();
-            simulationTimeElapsed = (int) Math.floor(ticksElapsed * 1.0 / TICKS_PER_SECOND);
+            metrics.addPhaseTime(TickPhase.PUSH, System.nanoTime() - pushStartTime);
           }
+          long pacingStartTime = System.nanoTime();
+          pacer.awaitNextTick();
+          metrics.addPhaseTime(TickPhase.PACING, System.nanoTime() - pacingStartTime);
         }
 
       }
       simulationCompleted = true;
       isRunning = false;
+      ticking = false;
+      // commands queued after the last tick
+      runCommands();
       logger.info("Simulation completed!");
       StatsHelper.trackEvent(StatisticsVariable.SIMULATION_STOPPED);
       sendStatistics();
@@ -195,137 +261,177 @@ public class SimulationController {
     }
     //Disruptor disruptor = new Disruptor(RANDOM_SEED);
     //disruptor.disruptTheWorld(world);
-    StatisticsController.getInstance(world);
+    rollups = StatisticsController.getInstance(world).getRollups();
   }
 
   private void tick() {
-    WorldHandler.getInstance(world).tick(SECONDS_PER_TICK);
+    long startTime = System.nanoTime();
+    WorldHandler worldHandler = WorldHandler.getInstance(world);
+    worldHandler.tick(SECONDS_PER_TICK);
     ticksElapsed++;
+    long worldTickedTime = System.nanoTime();
+    metrics.addPhaseTime(TickPhase.WORLD, worldTickedTime - startTime);
+    metrics.ticked(ticksElapsed, worldHandler.getActiveTrains());
     try {
       oracle.checkState(world, ticksElapsed);
     } catch (CriticalViolationException e) {
       logger.error("Critical Violation detected: {}", e.getMessage());
       sendStatistics();
       kill();
+    } finally {
+      metrics.addPhaseTime(TickPhase.ORACLE, System.nanoTime() - worldTickedTime);
+      metrics.updateViolations(oracle.getViolations());
     }
   }
 
+  private void record() {
+    recorder.record(oracle.getViolations(), ticksElapsed, ticksElapsed * SECONDS_PER_TICK);
+    recordedTick = ticksElapsed;
+  }
+
   private void sendStatistics() {
-    if (socketSessions.size() == 0) {
+    if (!publisher.hasSubscribers() || world == null) {
       return;
     }
+    List<Violation> violations = oracle.getViolations();
+    if (worldView == null) {
+      worldView = new WorldView(world);
+      publisher.publishTopology(worldView.getTopology(), worldView.getSignalLocations(),
+          addCounters(worldView.getSnapshot(violations)));
+    }
+    publisher.publish(addCounters(worldView.getDelta(violations)));
+  }
 
-    Map<String, Map<String, String>> rootConnectables = new LinkedHashMap<>();
-    Map<String, Point> trackPoints = new LinkedHashMap<>();
-    Map<String, Point> stationPoints = new LinkedHashMap<>();
-    List<SignalPoint> signalPoints = new ArrayList<>();
-    Map<Connectable, Integer> rootIndexes = new HashMap<>();
-    int rootIndex = 0;
-    for (Connectable c : world.getGraph().getRootConnectables()) {
-      rootIndexes.put(c, rootIndex);
-      Map<String, String> connectableMap = new LinkedHashMap<>();
-      String root = c.toString();
-      String before = root;
-      Iterator<Connectable> mapIterator = world.getGraph().getIterator(c);
-      double length = 0;
-      if (c instanceof Station) {
-        stationPoints.put(root, new Point(length, c.getLength(), rootIndex));
-      } else {
-        trackPoints.put(root, new Point(length, c.getLength(), rootIndex));
-        Map<Integer, SignalUnit> signals = ((Track) c).getBlockSignals();
-        signals.forEach((offset, signalUnit) -> signalPoints.add(
-            new SignalPoint(offset, world.getTrackID((Track) c), signalUnit.getStatus())));
-      }
-      while (mapIterator.hasNext()) {
-        Connectable next = mapIterator.next();
-        if (next instanceof Station) {
-          stationPoints
-              .put(next.toString(), new Point(length, length + next.getLength(), rootIndex));
-        } else {
-          trackPoints.put(next.toString(), new Point(length, length + next.getLength(), rootIndex));
-          Map<Integer, SignalUnit> signals = ((Track) next).getBlockSignals();
-          signals.forEach((offset, signalUnit) -> signalPoints.add(
-              new SignalPoint(offset, world.getTrackID((Track) next), signalUnit.getStatus())));
-        }
-        length += next.getLength();
-        connectableMap.put(before, next.toString());
-        before = next.toString();
-      }
-      rootConnectables.put(root, connectableMap);
+  private WorldUpdate addCounters(WorldUpdate update) {
+    return update.withCounters(ticksElapsed, ticksElapsed * SECONDS_PER_TICK, timeElapsed,
+        nanosElapsed, interactiveSimulation);
+  }
 
-      rootIndex++;
+  /**
+   * Start the simulation thread, unless it was started before. Several clients can share a
+   * simulation (see {@link SimulationHub}), so they may all ask for it to start.
+   *
+   * @return false if the simulation was killed, true if it has been started (now or before)
+   */
+  public boolean startSimulation() {
+    if (!started.compareAndSet(false, true)) {
+      return !killed;
     }
-
-    Map<String, Point> trainPoints = new LinkedHashMap<>();
-    for (Journey j : world.getJourneys().values()) {
-      trainPoints.put(j.getTrain().toString(),
-          new Point(j.getTailPositionFromRoot(), j.getHeadPositionFromRoot(),
-              rootIndexes.get(j.getJourneyPath().getGraphRootConnectable())));
+    if (AppConfig.replayInterval > 0) {
+      String replayFile = world.getSimpleFileName() + ".replay";
+      try {
+        recorder = new ReplayRecorder(Paths.get(AppConfig.outputDir, replayFile), world);
+      } catch (IOException e) {
+        logger.error("Failed to create replay file {}: {}", replayFile, e.getMessage());
+      }
     }
-
-    Gson gsonBuilder = new Gson();
-
-    JsonObject jsonObject = new JsonObject();
-    jsonObject.addProperty("type", "journeyMap");
-
-    jsonObject.add("world", gsonBuilder.toJsonTree(world));
-    jsonObject.add("trainPoints", gsonBuilder.toJsonTree(trainPoints));
-    jsonObject.add("trackPoints", gsonBuilder.toJsonTree(trackPoints));
-    jsonObject.add("stationPoints", gsonBuilder.toJsonTree(stationPoints));
-    jsonObject.add("signalPoints", gsonBuilder.toJsonTree(signalPoints));
-    jsonObject.add("violations", gsonBuilder.toJsonTree(oracle.getViolations()));
-
-    jsonObject.addProperty("timeElapsedCalculating", timeElapsed);
-    jsonObject.addProperty("nanosElapsed", nanosElapsed);
-    jsonObject.addProperty("ticksElapsed", ticksElapsed);
-    jsonObject.addProperty("simulationTimeElapsed", ticksElapsed * SECONDS_PER_TICK);
-    jsonObject.addProperty("interactive", interactiveSimulation);
-
-    String json = gsonBuilder.toJson(jsonObject);
-
-    sendMessageToAllSockets(json);
+    ticking = true;
+    isRunning = true;
+    simThread.start();
+    return true;
   }
 
-  private void sendMessageToAllSockets(String json) {
-    Iterator<SocketSession> socketsIterator = socketSessions.iterator();
-    while (socketsIterator.hasNext()) {
-      SocketSession socketSession = socketsIterator.next();
+  /**
+   * Carry out a command between two ticks (or straight away if the simulation isn't ticking), so
+   * that it never runs concurrently with the simulation thread.
+   */
+  public CompletableFuture<Void> submit(SimulationCommand command) {
+    commands.offer(command);
+    if (!ticking) {
+      // on the caller's thread, which meanwhile logs in the statistics of this simulation
+      GlobalMap previous = StatisticsController.setCurrentWorld(world);
+      WorldState previousState = WorldState.setCurrent(world == null ? null : world.getState());
       try {
-        socketSession.getSession().sendMessage(new TextMessage(json));
-      } catch (Exception e) {
-        e.printStackTrace();
-        socketsIterator.remove();
+        runCommands();
+      } finally {
+        StatisticsController.setCurrentWorld(previous);
+        WorldState.setCurrent(previousState);
       }
     }
+    return command.getResult();
   }
 
-  @Async
-  public void startSimulation() {
-    simThread.start();
-    isRunning = true;
+  private void runCommands() {
+    // only contended when the simulation starts or stops ticking
+    synchronized (commands) {
+      SimulationCommand command;
+      while ((command = commands.poll()) != null) {
+        command.run();
+        if (command.getResult().isCompletedExceptionally()) {
+          logger.warn("Command {} failed", command.getName());
+        }
+      }
+    }
   }
 
   public void kill() {
+    if (killed) {
+      return;
+    }
     logger.info("Killing simulation");
-    StatisticsController.getOptionalInstance().ifPresent(StatisticsController::saveGzip);
-    StatisticsController.getOptionalInstance().ifPresent(StatisticsController::clear);
-    sendStatistics();
+    // never started afterwards
+    started.set(true);
+    // in the state of the world, as it may be killed from another thread
+    WorldState previousState = WorldState.setCurrent(world == null ? null : world.getState());
+    try {
+      saveResults();
+    } finally {
+      WorldState.setCurrent(previousState);
+    }
     simThread.interrupt();
     isRunning = false;
     killed = true;
-    socketSessions.clear();
+    publisher.close();
     WorldHandler.endWorld(world);
     world = null;
+    worldView = null;
 
-    instance = null;
+    simulations.remove(id);
+    SimulationHub.forget(this);
+    if (instance == this) {
+      instance = null;
+    }
+  }
+
+  /**
+   * The summary of the experiment, the statistics and the last frame of the replay
+   */
+  private void saveResults() {
+    if (experiment != null && world != null) {
+      experiment.summarise(this);
+    }
+    StatisticsController.getOptionalInstance(world).ifPresent(statistics -> {
+      statistics.saveGzipAsync();
+      statistics.clear();
+    });
+    sendStatistics();
+    if (recorder != null) {
+      if (world != null && recordedTick != ticksElapsed) {
+        // the state it was killed in (e.g. the violation that killed it)
+        record();
+      }
+      try {
+        recorder.close();
+      } catch (IOException e) {
+        logger.error("Failed to finish replay file: {}", e.getMessage());
+      }
+    }
   }
 
   public void setSocketSession(SocketSession socketSession) {
-    socketSessions.add(socketSession);
+    publisher.subscribe(socketSession);
   }
 
   public void removeSocketSessions(SocketSession socketSession) {
-    this.socketSessions.remove(socketSessions);
+    publisher.unsubscribe(socketSession);
+  }
+
+  public int getSubscriberCount() {
+    return publisher.getSubscriberCount();
+  }
+
+  public int getID() {
+    return id;
   }
 
   @Deprecated
@@ -353,10 +459,34 @@ public class SimulationController {
     return world;
   }
 
+  public StatisticsRollups getRollups() {
+    return rollups;
+  }
+
+  public SimulationMetrics getMetrics() {
+    return metrics;
+  }
+
+  public long getTicksElapsed() {
+    return ticksElapsed;
+  }
+
+  public double getSimulationTimeElapsed() {
+    return ticksElapsed * SECONDS_PER_TICK;
+  }
+
+  public List<Violation> getViolations() {
+    return oracle.getViolations();
+  }
+
   public void setWorld(String mapYaml) {
     if (isRunning) {
       throw new UnsupportedOperationException("Cannot set new world when simulation is running");
     }
+    GlobalMap previous = world;
     buildWorld(mapYaml);
+    worldView = null;
+    StatisticsController.getOptionalInstance(previous).ifPresent(StatisticsController::clear);
+    WorldHandler.endWorld(previous);
   }
 }
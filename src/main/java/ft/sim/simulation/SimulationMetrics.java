@@ -0,0 +1,125 @@
+package ft.sim.simulation;
+
+import ft.sim.monitoring.Violation;
+import ft.sim.monitoring.ViolationSeverity;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Live metrics of a running simulation. Updated by the simulation thread only, and safe to read
+ * from any other thread (e.g. the metrics endpoint).
+ */
+public class SimulationMetrics {
+
+  /**
+   * Parts of a simulation loop iteration that are timed separately
+   */
+  public enum TickPhase {
+    WORLD,
+    ORACLE,
+    COMPLETION_CHECK,
+    PUSH,
+    RECORD,
+    COMMANDS,
+    PACING
+  }
+
+  // length of the window over which the tick rate is measured
+  private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+  private final String map;
+  private final double secondsPerTick;
+  private volatile long startedNanos = 0;
+  private volatile long lastTickMillis = 0;
+  private volatile long ticks = 0;
+  private volatile double ticksPerSecond = 0;
+  private volatile int activeTrains = 0;
+  private long windowStartNanos = 0;
+  private long windowStartTicks = 0;
+  private int violationsSeen = 0;
+  private final AtomicLongArray phaseNanos = new AtomicLongArray(TickPhase.values().length);
+  private final AtomicLongArray violations = new AtomicLongArray(
+      ViolationSeverity.values().length);
+
+  SimulationMetrics(String map, double secondsPerTick) {
+    this.map = map;
+    this.secondsPerTick = secondsPerTick;
+  }
+
+  void started() {
+    startedNanos = System.nanoTime();
+    windowStartNanos = startedNanos;
+  }
+
+  void addPhaseTime(TickPhase phase, long nanos) {
+    phaseNanos.addAndGet(phase.ordinal(), nanos);
+  }
+
+  void ticked(long ticksElapsed, int activeTrains) {
+    long now = System.nanoTime();
+    this.ticks = ticksElapsed;
+    this.activeTrains = activeTrains;
+    this.lastTickMillis = System.currentTimeMillis();
+    if (now - windowStartNanos >= RATE_WINDOW_NANOS) {
+      ticksPerSecond = (ticksElapsed - windowStartTicks) * 1e9 / (now - windowStartNanos);
+      windowStartNanos = now;
+      windowStartTicks = ticksElapsed;
+    }
+  }
+
+  /**
+   * Count the violations found since the last call
+   */
+  void updateViolations(List<Violation> allViolations) {
+    while (violationsSeen < allViolations.size()) {
+      Violation violation = allViolations.get(violationsSeen++);
+      violations.incrementAndGet(violation.getSeverity().ordinal());
+    }
+  }
+
+  public String getMap() {
+    return map;
+  }
+
+  public long getTicks() {
+    return ticks;
+  }
+
+  public double getTicksPerSecond() {
+    return ticksPerSecond;
+  }
+
+  public double getSimulatedSeconds() {
+    return ticks * secondsPerTick;
+  }
+
+  public double getWallClockSeconds() {
+    return startedNanos == 0 ? 0 : (System.nanoTime() - startedNanos) / 1e9;
+  }
+
+  /**
+   * How many simulated seconds pass per wall-clock second (measured over the last window)
+   */
+  public double getSimulationSpeedRatio() {
+    return ticksPerSecond * secondsPerTick;
+  }
+
+  /**
+   * Time of the last tick (epoch milliseconds), to spot stuck simulations
+   */
+  public long getLastTickMillis() {
+    return lastTickMillis;
+  }
+
+  public int getActiveTrains() {
+    return activeTrains;
+  }
+
+  public long getViolations(ViolationSeverity severity) {
+    return violations.get(severity.ordinal());
+  }
+
+  public double getPhaseSeconds(TickPhase phase) {
+    return phaseNanos.get(phase.ordinal()) / 1e9;
+  }
+}
@@ -0,0 +1,21 @@
+package ft.sim.statistics;
+
+/**
+ * Records a variable only every <code>interval</code> ticks.
+ */
+public class IntervalSamplingPolicy implements SamplingPolicy {
+
+  private final long interval;
+
+  public IntervalSamplingPolicy(long interval) {
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Sampling interval must be positive: " + interval);
+    }
+    this.interval = interval;
+  }
+
+  @Override
+  public boolean accept(long tick, Object forObject, Object value) {
+    return tick % interval == 0;
+  }
+}
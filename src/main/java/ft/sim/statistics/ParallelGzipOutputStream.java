@@ -0,0 +1,177 @@
+package ft.sim.statistics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip output stream which compresses blocks of its input on multiple threads (similar to
+ * pigz). Every block is deflated independently (primed with the tail of the previous block as
+ * dictionary) and ends on a byte boundary, so the compressed blocks concatenate into a single
+ * valid gzip member readable by any gzip decoder.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+  private static final int BLOCK_SIZE = 128 * 1024;
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+  private static final int THREADS = Runtime.getRuntime().availableProcessors();
+  // how many blocks may be compressed ahead of the ones written out
+  private static final int MAX_PENDING_BLOCKS = THREADS * 2;
+  private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0,
+      0, 0};
+
+  private static final ExecutorService compressors = Executors.newFixedThreadPool(THREADS, r -> {
+    Thread thread = new Thread(r, "gzip-compressor");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final OutputStream out;
+  private final int level;
+  private final CRC32 crc = new CRC32();
+  private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+  private byte[] block = new byte[BLOCK_SIZE];
+  private int blockLength = 0;
+  private byte[] dictionary = null;
+  private long totalLength = 0;
+  private boolean closed = false;
+
+  public ParallelGzipOutputStream(OutputStream out) throws IOException {
+    this(out, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  public ParallelGzipOutputStream(OutputStream out, int level) throws IOException {
+    this.out = out;
+    this.level = level;
+    out.write(GZIP_HEADER);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    block[blockLength++] = (byte) b;
+    if (blockLength == BLOCK_SIZE) {
+      submitBlock(false);
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      int n = Math.min(len, BLOCK_SIZE - blockLength);
+      System.arraycopy(b, off, block, blockLength, n);
+      blockLength += n;
+      off += n;
+      len -= n;
+      if (blockLength == BLOCK_SIZE) {
+        submitBlock(false);
+      }
+    }
+  }
+
+  /**
+   * Writes out all blocks compressed so far (the block being filled is not flushed).
+   */
+  @Override
+  public void flush() throws IOException {
+    while (!pendingBlocks.isEmpty() && pendingBlocks.peek().isDone()) {
+      writeNextBlock();
+    }
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      submitBlock(true);
+      while (!pendingBlocks.isEmpty()) {
+        writeNextBlock();
+      }
+      writeInt((int) crc.getValue());
+      writeInt((int) totalLength);
+    } finally {
+      out.close();
+    }
+  }
+
+  private void submitBlock(boolean last) throws IOException {
+    final byte[] input = block;
+    final int length = blockLength;
+    final byte[] blockDictionary = dictionary;
+
+    crc.update(input, 0, length);
+    totalLength += length;
+
+    pendingBlocks.add(compressors.submit(() -> deflate(input, length, blockDictionary, last)));
+
+    if (length >= DICTIONARY_SIZE) {
+      dictionary = Arrays.copyOfRange(input, length - DICTIONARY_SIZE, length);
+    }
+    block = new byte[BLOCK_SIZE];
+    blockLength = 0;
+
+    while (pendingBlocks.size() > MAX_PENDING_BLOCKS) {
+      writeNextBlock();
+    }
+  }
+
+  private byte[] deflate(byte[] input, int length, byte[] blockDictionary, boolean last) {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      if (blockDictionary != null) {
+        deflater.setDictionary(blockDictionary);
+      }
+      deflater.setInput(input, 0, length);
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+      byte[] buffer = new byte[16 * 1024];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          int n = deflater.deflate(buffer);
+          compressed.write(buffer, 0, n);
+        }
+      } else {
+        // sync flush ends the block on a byte boundary without marking it as final
+        int n;
+        do {
+          n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          compressed.write(buffer, 0, n);
+        } while (n == buffer.length);
+      }
+      return compressed.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void writeNextBlock() throws IOException {
+    try {
+      out.write(pendingBlocks.remove().get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing");
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to compress block", e.getCause());
+    }
+  }
+
+  private void writeInt(int i) throws IOException {
+    out.write(i & 0xff);
+    out.write((i >> 8) & 0xff);
+    out.write((i >> 16) & 0xff);
+    out.write((i >> 24) & 0xff);
+  }
+}
@@ -0,0 +1,62 @@
+package ft.sim.statistics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Keeps a uniform random sample of at most <code>size</code> values of a variable over the whole
+ * run (reservoir sampling, algorithm R). The sample is exported when the simulation finishes.
+ */
+public class ReservoirSamplingPolicy implements SamplingPolicy {
+
+  private final int size;
+  private final Random randomGenerator;
+  private final List<StatisticsItem> reservoir;
+  private long seen = 0;
+  // reservoir slot the next kept item goes to
+  private int pendingSlot = -1;
+
+  public ReservoirSamplingPolicy(int size, long seed) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Reservoir size must be positive: " + size);
+    }
+    this.size = size;
+    this.randomGenerator = new Random(seed);
+    this.reservoir = new ArrayList<>(size);
+  }
+
+  @Override
+  public boolean accept(long tick, Object forObject, Object value) {
+    seen++;
+    if (seen <= size) {
+      pendingSlot = (int) seen - 1;
+      return true;
+    }
+    long slot = (long) (randomGenerator.nextDouble() * seen);
+    if (slot >= size) {
+      return false;
+    }
+    pendingSlot = (int) slot;
+    return true;
+  }
+
+  @Override
+  public boolean keep(StatisticsItem item) {
+    if (pendingSlot == reservoir.size()) {
+      reservoir.add(item);
+    } else {
+      reservoir.set(pendingSlot, item);
+    }
+    return false;
+  }
+
+  @Override
+  public Collection<StatisticsItem> getRetained() {
+    List<StatisticsItem> retained = new ArrayList<>(reservoir);
+    retained.sort(Comparator.comparingLong(StatisticsItem::getTick));
+    return retained;
+  }
+}
@@ -0,0 +1,101 @@
+package ft.sim.statistics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Decides which logged values of a statistics variable end up in the results.
+ *
+ * Policies are configured per variable in the <code>sampling</code> block of the map's
+ * <code>simulation</code> configuration (or <code>defaults.yaml</code>), e.g.:
+ * <pre>
+ *   'sampling':
+ *     TRAIN_SPEED:
+ *       policy: threshold
+ *       threshold: 0.5
+ * </pre>
+ */
+public interface SamplingPolicy {
+
+  String POLICY_ALL = "all";
+  String POLICY_OFF = "off";
+  String POLICY_INTERVAL = "interval";
+  String POLICY_THRESHOLD = "threshold";
+  String POLICY_RESERVOIR = "reservoir";
+
+  SamplingPolicy ALL = (tick, forObject, value) -> true;
+  SamplingPolicy OFF = (tick, forObject, value) -> false;
+
+  /**
+   * Cheap check done before a statistics item is created for the logged value.
+   *
+   * @param tick the current tick of the simulation
+   * @param forObject the object the value is logged for (may be null)
+   * @param value the logged value (may be null)
+   * @return whether the value should be recorded
+   */
+  boolean accept(long tick, Object forObject, Object value);
+
+  /**
+   * Called with the item of an accepted value.
+   *
+   * @return true if the item should be appended to the results directly, false if the policy
+   * retains it itself (see {@link #getRetained()})
+   */
+  default boolean keep(StatisticsItem item) {
+    return true;
+  }
+
+  /**
+   * Items held back by the policy, to be exported once the simulation finishes.
+   */
+  default Collection<StatisticsItem> getRetained() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Create a sampling policy from its configuration.
+   *
+   * @param configuration either a policy name (e.g. "off") or a map with a "policy" key and the
+   * policy's parameters
+   * @param seed random seed (used by the reservoir policy)
+   */
+  static SamplingPolicy fromConfiguration(Object configuration, long seed) {
+    if (configuration == null) {
+      return ALL;
+    }
+    Map<String, Object> parameters = Collections.emptyMap();
+    String policy;
+    if (configuration instanceof Map) {
+      parameters = (Map<String, Object>) configuration;
+      policy = String.valueOf(parameters.getOrDefault("policy", POLICY_ALL));
+    } else {
+      policy = configuration.toString();
+    }
+
+    switch (policy.toLowerCase()) {
+      case POLICY_ALL:
+        return ALL;
+      case POLICY_OFF:
+        return OFF;
+      case POLICY_INTERVAL:
+        return new IntervalSamplingPolicy(getNumber(parameters, "interval").longValue());
+      case POLICY_THRESHOLD:
+        return new ThresholdSamplingPolicy(getNumber(parameters, "threshold").doubleValue());
+      case POLICY_RESERVOIR:
+        return new ReservoirSamplingPolicy(getNumber(parameters, "size").intValue(), seed);
+      default:
+        throw new IllegalArgumentException("Invalid statistics sampling policy: " + policy);
+    }
+  }
+
+  static Number getNumber(Map<String, Object> parameters, String key) {
+    Object value = parameters.get(key);
+    if (!(value instanceof Number)) {
+      throw new IllegalArgumentException(
+          "Sampling policy parameter '" + key + "' must be a number, got: " + value);
+    }
+    return (Number) value;
+  }
+}
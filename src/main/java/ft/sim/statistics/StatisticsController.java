@@ -1,28 +1,50 @@
 package ft.sim.statistics;
 
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
 import com.google.common.base.Charsets;
 import com.google.common.io.CharSink;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
 import com.google.common.io.Files;
 import ft.sim.App.AppConfig;
 import ft.sim.world.WorldHandler;
 import ft.sim.world.map.GlobalMap;
+import ft.sim.world.map.MapBuildReport;
+import ft.sim.world.map.MapBuildReport.BuildPhase;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
-import java.nio.channels.Channels;
-import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPOutputStream;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,35 +54,217 @@ import org.slf4j.LoggerFactory;
 public class StatisticsController {
 
   protected static transient Logger logger = LoggerFactory.getLogger(StatisticsController.class);
-  private static StatisticsController instance;
+  // exports run one at a time, each compressing on all cores (see awaitExports before exiting)
+  private static final ExecutorService exporter = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "statistics-export");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private static final Queue<Future<?>> pendingExports = new ConcurrentLinkedQueue<>();
+
+  static {
+    // the exporter doesn't keep the application running, so exports still being written when it
+    // exits are waited for here
+    Runtime.getRuntime().addShutdownHook(
+        new Thread(StatisticsController::awaitExports, "statistics-export-shutdown"));
+  }
+  // the statistics of every world being simulated, and of the latest one
+  private static final Map<GlobalMap, StatisticsController> instances =
+      new ConcurrentHashMap<>();
+  private static volatile StatisticsController instance;
+  // the world each simulation thread records the statistics of
+  private static final ThreadLocal<GlobalMap> currentWorld = new ThreadLocal<>();
+  // rollups of the latest run, kept after it's finished for the charts
+  private static volatile StatisticsRollups latestRollups = null;
   private GlobalMap map;
   private List<StatisticsItem> stats = new ArrayList<>();
+  // when set, recorded items are spilled to this file instead of being kept in stats
+  private StatisticsSpillFile spillFile = null;
   private Map<StatisticsVariable, StatisticsItem> tracks = new LinkedHashMap<>();
+  private Map<StatisticsVariable, SamplingPolicy> samplingPolicies = new EnumMap<>(
+      StatisticsVariable.class);
+  private final StatisticsRollups rollups;
 
   private StatisticsController(GlobalMap map) {
     this.map = map;
+    rollups = new StatisticsRollups(map.isConfiguration("rollups_per_object", true));
+    latestRollups = rollups;
+    setSamplingPolicies();
+    if (map.isConfiguration("statistics_spill", true)) {
+      openSpillFile();
+    }
+    recordBuildReport();
   }
 
-  public static StatisticsController getInstance(GlobalMap map) {
-    if (instance == null) {
-      instance = new StatisticsController(map);
+  /**
+   * Record how the world was built, at the start of the run: the time and memory of each phase
+   * (for the phase), and the number of each type of object it has
+   */
+  private void recordBuildReport() {
+    MapBuildReport report = map.getBuildReport();
+    if (report == null) {
+      return;
     }
-    if (instance.map != map) {
-      throw new IllegalStateException("new instance started without collecting previous results");
+    for (BuildPhase phase : report.getPhaseNanos().keySet()) {
+      String name = phase.name().toLowerCase();
+      record(new StatisticsItem<>(0, 0, StatisticsVariable.MAP_BUILD_PHASE_SECONDS, name,
+          report.getPhaseSeconds(phase)));
+      record(new StatisticsItem<>(0, 0, StatisticsVariable.MAP_BUILD_PHASE_MEMORY, name,
+          report.getPhaseMemory(phase)));
     }
-    return instance;
+    report.getCounts().forEach((type, count) -> record(
+        new StatisticsItem<>(0, 0, StatisticsVariable.MAP_OBJECTS, type, count)));
+  }
+
+  private void openSpillFile() {
+    Path directory = Paths.get(AppConfig.outputDir);
+    String name = map.getSimpleFileName();
+    Path path = null;
+    try {
+      // runs of the same map can be simulated (or exported) at the same time, so each one spills
+      // to a file of its own, locked while it is used
+      synchronized (StatisticsController.class) {
+        recoverSpillFiles(directory, name);
+        path = java.nio.file.Files.createTempFile(directory, name + ".", ".csv.spill");
+        spillFile = new StatisticsSpillFile(path);
+      }
+      logger.info("Spilling statistics to: {}", path);
+    } catch (IOException e) {
+      logger.error("Failed to create statistics spill file {}, keeping statistics in memory",
+          path);
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Keep what the runs of a map that didn't finish recorded, in a <code>.partial.csv</code> file
+   * next to their spill file. The spill files of live runs are left alone.
+   */
+  private static void recoverSpillFiles(Path directory, String name) throws IOException {
+    Pattern spillFiles = Pattern.compile(Pattern.quote(name) + "\\.(\\d+)\\.csv\\.spill");
+    List<Path> candidates;
+    try (Stream<Path> files = java.nio.file.Files.list(directory)) {
+      candidates = files.filter(p -> spillFiles.matcher(p.getFileName().toString()).matches())
+          .collect(Collectors.toList());
+    }
+    for (Path path : candidates) {
+      if (StatisticsSpillFile.recover(path) < 0) {
+        continue;
+      }
+      Matcher matcher = spillFiles.matcher(path.getFileName().toString());
+      matcher.matches();
+      Path partial = directory.resolve(name + "." + matcher.group(1) + ".partial.csv");
+      java.nio.file.Files.move(path, partial, StandardCopyOption.REPLACE_EXISTING);
+      logger.warn("Found statistics of an unfinished run, saved them to: {}", partial);
+    }
+  }
+
+  private void setSamplingPolicies() {
+    Object sampling = map.getConfiguration("sampling");
+    if (!(sampling instanceof Map)) {
+      return;
+    }
+    Object seed = map.getConfiguration("seed");
+    long randomSeed = (seed instanceof Number) ? ((Number) seed).longValue() : 0;
+    for (Map.Entry<String, Object> policy : ((Map<String, Object>) sampling).entrySet()) {
+      StatisticsVariable var = StatisticsVariable.valueOf(policy.getKey());
+      samplingPolicies.put(var, SamplingPolicy.fromConfiguration(policy.getValue(), randomSeed));
+      logger.info("Sampling {} with policy: {}", var, policy.getValue());
+    }
+  }
+
+  public static StatisticsController getInstance(GlobalMap map) {
+    StatisticsController controller = instances.computeIfAbsent(map, StatisticsController::new);
+    instance = controller;
+    return controller;
   }
 
+  /**
+   * The statistics of the world of the current thread (see {@link #setCurrentWorld}), or else of
+   * the only world being simulated
+   *
+   * @throws IllegalStateException if the thread has no world and several worlds are simulated
+   */
   public static StatisticsController getInstance() {
+    GlobalMap world = currentWorld.get();
+    if (world != null) {
+      return instances.get(world);
+    }
+    if (instances.size() > 1) {
+      throw new IllegalStateException("Statistics logged by thread "
+          + Thread.currentThread().getName() + ", which doesn't simulate any of the "
+          + instances.size() + " worlds being simulated");
+    }
     return instance;
   }
 
   public static Optional<StatisticsController> getOptionalInstance() {
-    return Optional.ofNullable(instance);
+    return Optional.ofNullable(getInstance());
+  }
+
+  public static Optional<StatisticsController> getOptionalInstance(GlobalMap map) {
+    return Optional.ofNullable(instances.get(map));
+  }
+
+  /**
+   * Record what the current thread logs in the statistics of the given world, as several worlds
+   * can be simulated at the same time (each by its own thread)
+   *
+   * @return the world the thread recorded the statistics of before (null if none)
+   */
+  public static GlobalMap setCurrentWorld(GlobalMap world) {
+    GlobalMap previous = currentWorld.get();
+    if (world == null) {
+      currentWorld.remove();
+    } else {
+      currentWorld.set(world);
+    }
+    return previous;
+  }
+
+  public StatisticsRollups getRollups() {
+    return rollups;
+  }
+
+  public static Optional<StatisticsRollups> getLatestRollups() {
+    return Optional.ofNullable(latestRollups);
+  }
+
+  /**
+   * Whether a value logged for the given variable passes its sampling policy. This is checked
+   * before the statistics item is created, so rejected values cost next to nothing.
+   */
+  boolean isSampled(StatisticsVariable var, Object forObject, Object value) {
+    return samplingPolicies.getOrDefault(var, SamplingPolicy.ALL)
+        .accept(getTick(), forObject, value);
   }
 
   void record(StatisticsItem stat) {
-    stats.add(stat);
+    if (!samplingPolicies.getOrDefault(stat.getType(), SamplingPolicy.ALL).keep(stat)) {
+      return;
+    }
+    if (spillFile == null) {
+      stats.add(stat);
+      return;
+    }
+    if (spillFile.isClosed()) {
+      // the results have already been exported
+      return;
+    }
+    try {
+      spillFile.append(stat);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to spill statistics to " + spillFile.getPath(), e);
+    }
+  }
+
+  /**
+   * Add a logged value that passed its sampling policy to the rollups (if it's a number)
+   */
+  void rollUp(StatisticsVariable var, Object forObject, Object value) {
+    if (value instanceof Number) {
+      rollups.add(var, forObject, getTime(), ((Number) value).doubleValue());
+    }
   }
 
   void track(StatisticsVariable var, StatisticsItem statisticsItem) {
@@ -80,15 +284,62 @@ public class StatisticsController {
   }
 
   public String collect() {
-    String stat = "";
+    StringWriter writer = new StringWriter();
+    try {
+      collect(writer);
+    } catch (IOException e) {
+      // only reading spilled statistics can fail
+      throw new UncheckedIOException("Failed to read spilled statistics", e);
+    }
+    return writer.toString();
+  }
+
+  /**
+   * Write the collected statistics as CSV, without building the whole output in memory
+   */
+  public void collect(Writer writer) throws IOException {
+    if (spillFile == null) {
+      writeCsv(writer, stats, getRetainedSamples(), tracks.values());
+      return;
+    }
+    // the spill file already holds the header and the recorded items as CSV
+    try (Reader in = new InputStreamReader(spillFile.newInputStream(),
+        StandardCharsets.UTF_8)) {
+      CharStreams.copy(in, writer);
+    }
+    writeRetainedAndTracked(writer, getRetainedSamples(), tracks.values());
+  }
+
+  private List<StatisticsItem> getRetainedSamples() {
+    // samples retained by the sampling policies (e.g. reservoirs)
+    return samplingPolicies.values().stream().flatMap(p -> p.getRetained().stream())
+        .collect(Collectors.toList());
+  }
+
+  private static void writeCsv(Writer writer, List<StatisticsItem> stats,
+      Collection<StatisticsItem> retained, Collection<StatisticsItem> tracked) throws IOException {
     // header
-    stat += StatisticsItem.getHeader() + "\n";
+    writer.write(StatisticsItem.getHeader());
+    writer.write('\n');
     // stats
-    stat += stats.stream().map(Object::toString).collect(Collectors.joining("\n")) + '\n';
-    // tracks
-    stat += tracks.values().stream().map(Object::toString).collect(Collectors.joining("\n"));
+    for (StatisticsItem item : stats) {
+      writer.write(item.toString());
+      writer.write('\n');
+    }
+    if (stats.isEmpty()) {
+      writer.write('\n');
+    }
+    writeRetainedAndTracked(writer, retained, tracked);
+  }
 
-    return stat;
+  private static void writeRetainedAndTracked(Writer writer, Collection<StatisticsItem> retained,
+      Collection<StatisticsItem> tracked) throws IOException {
+    for (StatisticsItem item : retained) {
+      writer.write(item.toString());
+      writer.write('\n');
+    }
+    // tracks
+    writer.write(tracked.stream().map(Object::toString).collect(Collectors.joining("\n")));
   }
 
   @Deprecated
@@ -109,43 +360,137 @@ public class StatisticsController {
     logger.info("Exported statistics to: {}", filename);
   }
 
+  /**
+   * Export the statistics recorded so far, and wait for the export to be written
+   *
+   * @throws UncheckedIOException if the export failed
+   */
   public void saveGzip() {
-    String stats = collect();
+    try {
+      saveGzipAsync().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      logger.error("Statistics export failed: {}", cause.getMessage());
+      if (cause instanceof IOException) {
+        throw new UncheckedIOException((IOException) cause);
+      }
+      throw new IllegalStateException("Statistics export failed", cause);
+    }
+  }
+
+  /**
+   * Export the statistics recorded so far in the background, so that the next simulation can
+   * start while the output is being compressed and written.
+   *
+   * @return the pending export
+   */
+  public Future<?> saveGzipAsync() {
     String filename = AppConfig.outputDir + "/" + map.getSimpleFileName() + ".csv.gz";
+    // snapshot of the results, in case anything is still being recorded
+    List<StatisticsItem> statsSnapshot = new ArrayList<>(stats);
+    List<StatisticsItem> retainedSnapshot = getRetainedSamples();
+    List<StatisticsItem> tracksSnapshot = new ArrayList<>(tracks.values());
+    StatisticsSpillFile spilled = spillFile;
+    if (spilled != null) {
+      try {
+        spilled.close();
+      } catch (IOException e) {
+        logger.error("Failed to close statistics spill file: {}", spilled.getPath());
+      }
+    }
 
+    Future<?> export = exporter.submit(() -> {
+      if (spilled != null) {
+        writeGzip(filename, spilled, retainedSnapshot, tracksSnapshot);
+      } else {
+        writeGzip(filename, statsSnapshot, retainedSnapshot, tracksSnapshot);
+      }
+      return null;
+    });
+    pendingExports.removeIf(Future::isDone);
+    pendingExports.add(export);
+    return export;
+  }
+
+  private static void writeGzip(String filename, List<StatisticsItem> stats,
+      Collection<StatisticsItem> retained, Collection<StatisticsItem> tracked) throws IOException {
     Path path = Paths.get(filename);
     // if file exists, remove it
-    if (java.nio.file.Files.exists(path)) {
-      // file exist
-      try {
-        java.nio.file.Files.delete(path);
-      } catch (IOException e) {
-        e.printStackTrace();
+    java.nio.file.Files.deleteIfExists(path);
+
+    long startTime = System.nanoTime();
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new ParallelGzipOutputStream(java.nio.file.Files.newOutputStream(path)),
+        StandardCharsets.UTF_8))) {
+      writeCsv(writer, stats, retained, tracked);
+    } catch (IOException e) {
+      logger.error("Failed to export statistics to: {}", filename);
+      throw e;
+    }
+
+    logger.info("Exported statistics to: {} ({} ms)", filename,
+        NANOSECONDS.toMillis(System.nanoTime() - startTime));
+  }
+
+  private static void writeGzip(String filename, StatisticsSpillFile spilled,
+      Collection<StatisticsItem> retained, Collection<StatisticsItem> tracked) throws IOException {
+    Path path = Paths.get(filename);
+    java.nio.file.Files.deleteIfExists(path);
+
+    long startTime = System.nanoTime();
+    try (OutputStream out = new ParallelGzipOutputStream(
+        java.nio.file.Files.newOutputStream(path))) {
+      // the spill file already holds the header and the recorded items as CSV
+      try (InputStream in = spilled.newInputStream()) {
+        ByteStreams.copy(in, out);
       }
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+      writeRetainedAndTracked(writer, retained, tracked);
+      writer.flush();
+    } catch (IOException e) {
+      logger.error("Failed to export statistics to: {}", filename);
+      // unlocked, so that the next run of the map recovers it
+      spilled.release();
+      throw e;
     }
+    // the spill file is only removed once its contents are safely exported
+    spilled.delete();
 
-    // NIO
-    try {
-      FileOutputStream fos = new FileOutputStream(new File(filename));
-      FileChannel channel = fos.getChannel();
+    logger.info("Exported {} bytes of spilled statistics to: {} ({} ms)", spilled.getLength(),
+        filename, NANOSECONDS.toMillis(System.nanoTime() - startTime));
+  }
 
+  /**
+   * Block until all background exports have been written.
+   */
+  public static void awaitExports() {
+    Future<?> export;
+    while ((export = pendingExports.poll()) != null) {
       try {
-        Writer writer = new OutputStreamWriter(
-            new GZIPOutputStream(Channels.newOutputStream(channel)), "UTF-8");
-        writer.write(stats);
-        writer.flush();
-        writer.close();
-      } catch (IOException e) {
-        e.printStackTrace();
+        export.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        logger.error("Statistics export failed: {}", e.getCause().getMessage());
       }
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
     }
-
-    logger.info("Exported statistics to: {}", filename);
   }
 
   public void clear() {
-    instance = null;
+    if (spillFile != null && !spillFile.isClosed()) {
+      // not exported, kept for the next run of the map to recover
+      try {
+        spillFile.release();
+      } catch (IOException e) {
+        logger.error("Failed to release statistics spill file: {}", spillFile.getPath());
+      }
+    }
+    instances.remove(map, this);
+    if (instance == this) {
+      instance = null;
+    }
   }
 }
@@ -0,0 +1,79 @@
+package ft.sim.statistics;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The {@link TimeSeries} of the numeric statistics of a run, kept up to date as values are logged
+ * (the values that pass their sampling policy), so that charts of a long run don't need its raw
+ * statistics. Values logged for an object (e.g. the speed of a train) go to the series of the
+ * variable, which rolls up the values of all the objects, and, when enabled with the
+ * <code>rollups_per_object</code> configuration, to a series for that object too, named
+ * <code>VARIABLE:object</code>.
+ */
+public class StatisticsRollups {
+
+  // by name, for the readers
+  private final Map<String, TimeSeries> series = new ConcurrentSkipListMap<>();
+  // only used by the simulation thread
+  private final Map<StatisticsVariable, TimeSeries> variables = new EnumMap<>(
+      StatisticsVariable.class);
+  private final Map<StatisticsVariable, Map<Object, TimeSeries>> objects = new EnumMap<>(
+      StatisticsVariable.class);
+  private final boolean perObject;
+
+  StatisticsRollups(boolean perObject) {
+    this.perObject = perObject;
+  }
+
+  void add(StatisticsVariable var, Object forObject, double time, double value) {
+    variables.computeIfAbsent(var, v -> newSeries(v.name())).add(time, value);
+    if (perObject && forObject != null) {
+      objects.computeIfAbsent(var, v -> new IdentityHashMap<>())
+          .computeIfAbsent(forObject, o -> newSeries(var.name() + ":" + o)).add(time, value);
+    }
+  }
+
+  private TimeSeries newSeries(String name) {
+    TimeSeries timeSeries = new TimeSeries(name);
+    series.put(name, timeSeries);
+    return timeSeries;
+  }
+
+  public List<String> getNames() {
+    return new ArrayList<>(series.keySet());
+  }
+
+  public Optional<TimeSeries> get(String name) {
+    return Optional.ofNullable(series.get(name));
+  }
+
+  /**
+   * A selection of a series as JSON: its name, resolution (seconds) and buckets, each an array of
+   * the start time, minimum, maximum, average and number of values
+   */
+  public static JsonObject toJson(TimeSeries.Selection selection) {
+    JsonObject json = new JsonObject();
+    json.addProperty("name", selection.getName());
+    json.addProperty("resolution", selection.getResolution());
+    JsonArray buckets = new JsonArray();
+    for (TimeSeries.Bucket bucket : selection.getBuckets()) {
+      JsonArray values = new JsonArray();
+      values.add(bucket.getTime());
+      values.add(bucket.getMin());
+      values.add(bucket.getMax());
+      values.add(bucket.getAvg());
+      values.add(bucket.getCount());
+      buckets.add(values);
+    }
+    json.add("buckets", buckets);
+    return json;
+  }
+}
@@ -0,0 +1,206 @@
+package ft.sim.statistics;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only CSV file of statistics items, written through memory-mapped regions of the file so
+ * that the results of long runs are paged out by the OS instead of living on the heap.
+ *
+ * Records written to a region are in the OS page cache straight away, so they survive a crash of
+ * the JVM. They are also forced to the disk when a region is full and at most a second after
+ * being written, so a crash of the machine loses at most the last second of them.
+ *
+ * The file is extended one region at a time, so while it is open (or after a crash) it ends with
+ * zero padding. {@link #close()} truncates it to the written length; {@link #recover(Path)} does
+ * the same for the file of a crashed run, dropping the last record if it was only partly written.
+ *
+ * The file is locked from when it is created until it is deleted or released, so that the file
+ * of a live run (or of one still being exported) is never taken for the file of a crashed one.
+ */
+public class StatisticsSpillFile implements AutoCloseable {
+
+  protected static transient Logger logger = LoggerFactory.getLogger(StatisticsSpillFile.class);
+
+  private static final int REGION_SIZE = 16 * 1024 * 1024;
+  private static final long FORCE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+  private final Path path;
+  private final FileChannel channel;
+  private final FileLock lock;
+  private MappedByteBuffer region;
+  private long length = 0;
+  private long lastForced = System.nanoTime();
+  private boolean closed = false;
+
+  public StatisticsSpillFile(Path path) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    FileLock fileLock = null;
+    try {
+      fileLock = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // handled below
+    }
+    if (fileLock == null) {
+      channel.close();
+      throw new IOException("Spill file is used by another run: " + path);
+    }
+    this.lock = fileLock;
+    mapRegion(REGION_SIZE);
+    append(StatisticsItem.getHeader());
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public synchronized long getLength() {
+    return length;
+  }
+
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  public void append(StatisticsItem item) throws IOException {
+    append(item.toString());
+  }
+
+  private synchronized void append(String line) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Spill file is already closed: " + path);
+    }
+    byte[] bytes = (line + '\n').getBytes(StandardCharsets.UTF_8);
+    if (region.remaining() < bytes.length) {
+      mapRegion(Math.max(REGION_SIZE, bytes.length));
+    }
+    region.put(bytes);
+    length += bytes.length;
+    if (System.nanoTime() - lastForced > FORCE_INTERVAL) {
+      flush();
+    }
+  }
+
+  private void mapRegion(int size) throws IOException {
+    if (region != null) {
+      // make sure everything up to here reaches the disk
+      flush();
+    }
+    region = channel.map(MapMode.READ_WRITE, length, size);
+  }
+
+  /**
+   * Force the records appended so far to the disk
+   */
+  public synchronized void flush() {
+    region.force();
+    lastForced = System.nanoTime();
+  }
+
+  /**
+   * Open the records appended so far for reading (the ones appended afterwards aren't read)
+   */
+  public synchronized InputStream newInputStream() throws IOException {
+    return ByteStreams.limit(Files.newInputStream(path), length);
+  }
+
+  /**
+   * Stop writing to the file. It stays locked until it's deleted or released.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    flush();
+    region = null;
+    try {
+      channel.truncate(length);
+    } catch (IOException e) {
+      // some systems don't truncate files that are still mapped, the padding is ignored when
+      // reading and removed when recovering
+      logger.warn("Failed to remove the padding of statistics spill file: {}", path);
+    }
+  }
+
+  /**
+   * Close and unlock the file, so that it can be recovered (e.g. after a failed export)
+   */
+  public synchronized void release() throws IOException {
+    close();
+    if (channel.isOpen()) {
+      lock.release();
+      channel.close();
+    }
+  }
+
+  /**
+   * Close, unlock and delete the file
+   */
+  public synchronized void delete() throws IOException {
+    release();
+    Files.deleteIfExists(path);
+  }
+
+  /**
+   * Make the spill file of a crashed run readable again, by removing the zero padding at its end
+   * and any partly written record. Files locked by a live run are left as they are.
+   *
+   * @return the length of the recovered file, or -1 if it is used by a live run
+   */
+  public static long recover(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      FileLock fileLock;
+      try {
+        fileLock = channel.tryLock();
+      } catch (OverlappingFileLockException e) {
+        // locked by this JVM
+        return -1;
+      }
+      if (fileLock == null) {
+        return -1;
+      }
+      // the records never contain zero bytes, so scan back over the padding to the last newline
+      ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+      long end = 0;
+      long position = channel.size();
+      while (position > 0 && end == 0) {
+        int chunk = (int) Math.min(buffer.capacity(), position);
+        position -= chunk;
+        buffer.clear().limit(chunk);
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, position + buffer.position()) < 0) {
+            break;
+          }
+        }
+        for (int i = chunk - 1; i >= 0; i--) {
+          if (buffer.get(i) == '\n') {
+            end = position + i + 1;
+            break;
+          }
+        }
+      }
+      channel.truncate(end);
+      logger.info("Recovered {} bytes of statistics from {}", end, path);
+      return end;
+    }
+  }
+}
@@ -31,5 +31,8 @@ public enum StatisticsVariable {
   TRAIN_GOT_RED_SIGNAL,
   CRITICAL_VIOLATION,
   HIGH_VIOLATION,
-  GSM_GOT_NOK
+  GSM_GOT_NOK,
+  MAP_BUILD_PHASE_SECONDS,
+  MAP_BUILD_PHASE_MEMORY,
+  MAP_OBJECTS
 }
@@ -10,12 +10,16 @@ public class StatsHelper {
     if (in == null) {
       return;
     }
+    if (!in.isSampled(type, null, value)) {
+      return;
+    }
+    in.rollUp(type, null, value);
     in.record(new StatisticsItem<>(in, type, value));
   }
 
   public static <I, T> void logFor(StatisticsVariable var, I item) {
     StatisticsController in = StatisticsController.getInstance();
-    if (in == null) {
+    if (in == null || !in.isSampled(var, item, null)) {
       return;
     }
     in.record(new StatisticsItem<>(item, in, var));
@@ -26,6 +30,10 @@ public class StatsHelper {
     if (in == null) {
       return;
     }
+    if (!in.isSampled(var, item, value)) {
+      return;
+    }
+    in.rollUp(var, item, value);
     in.record(new StatisticsItem<>(in, var, item, value));
   }
 
@@ -34,6 +42,10 @@ public class StatsHelper {
     if (in == null) {
       return;
     }
+    if (!in.isSampled(var, null, value)) {
+      return;
+    }
+    in.rollUp(var, null, value);
     StatisticsItem item = new StatisticsItem<>(in, var, value);
     item.setAuxData(auxData);
     in.record(item);
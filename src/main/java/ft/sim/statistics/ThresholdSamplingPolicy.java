@@ -0,0 +1,35 @@
+package ft.sim.statistics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records a numeric variable only when it changed by more than <code>threshold</code> since the
+ * last value recorded for the same object (e.g. the train whose speed is logged).
+ */
+public class ThresholdSamplingPolicy implements SamplingPolicy {
+
+  private final double threshold;
+  private Map<Object, Double> lastRecorded = new HashMap<>();
+
+  public ThresholdSamplingPolicy(double threshold) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("Sampling threshold cannot be negative: " + threshold);
+    }
+    this.threshold = threshold;
+  }
+
+  @Override
+  public boolean accept(long tick, Object forObject, Object value) {
+    if (!(value instanceof Number)) {
+      return true;
+    }
+    double current = ((Number) value).doubleValue();
+    Double last = lastRecorded.get(forObject);
+    if (last != null && Math.abs(current - last) <= threshold) {
+      return false;
+    }
+    lastRecorded.put(forObject, current);
+    return true;
+  }
+}
@@ -0,0 +1,235 @@
+package ft.sim.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rollups of the values of a statistics variable over simulated time: the minimum, maximum and
+ * average of the values logged in each 1 second, 1 minute and 10 minutes bucket. Only the latest
+ * buckets of each resolution are kept (an hour of seconds, and two days, the longest a simulation
+ * runs, of the others), so memory doesn't grow with the length of the run. The rings start small
+ * and grow up to these sizes as the run goes on, so series of short runs stay small.
+ */
+public class TimeSeries {
+
+  static final double[] RESOLUTIONS = {1, 60, 600};
+  private static final int[] CAPACITIES = {60 * 60, 2 * 24 * 60, 2 * 24 * 6};
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final String name;
+  private final Rollup[] rollups = new Rollup[RESOLUTIONS.length];
+
+  TimeSeries(String name) {
+    this.name = name;
+    for (int i = 0; i < RESOLUTIONS.length; i++) {
+      rollups[i] = new Rollup(RESOLUTIONS[i], CAPACITIES[i]);
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  synchronized void add(double time, double value) {
+    for (Rollup rollup : rollups) {
+      rollup.add(time, value);
+    }
+  }
+
+  /**
+   * The buckets between two (simulated) times, at the finest resolution that still has the start
+   * of the range and doesn't need more than the given number of buckets for it
+   */
+  public synchronized Selection select(double from, double to, int maxBuckets) {
+    // nothing after the latest value
+    double end = Math.min(to, rollups[0].getEnd());
+    Rollup selected = rollups[rollups.length - 1];
+    for (Rollup rollup : rollups) {
+      if (rollup.covers(from) && (end - from) / rollup.bucketSeconds <= maxBuckets) {
+        selected = rollup;
+        break;
+      }
+    }
+    return new Selection(name, selected.bucketSeconds, selected.get(from, to));
+  }
+
+  /**
+   * Buckets of one resolution, in a ring
+   */
+  private static class Rollup {
+
+    private final double bucketSeconds;
+    private final int capacity;
+    private double[] min;
+    private double[] max;
+    private double[] sum;
+    private long[] count;
+    private long firstBucket = 0;
+    private long lastBucket = -1;
+
+    Rollup(double bucketSeconds, int capacity) {
+      this.bucketSeconds = bucketSeconds;
+      this.capacity = capacity;
+      allocate(Math.min(INITIAL_CAPACITY, capacity));
+    }
+
+    private void allocate(int slots) {
+      min = new double[slots];
+      max = new double[slots];
+      sum = new double[slots];
+      count = new long[slots];
+    }
+
+    /**
+     * Grow the ring (up to its capacity) until it has room for the buckets up to the given one
+     */
+    private void grow(long bucket) {
+      long needed = bucket - firstBucket + 1;
+      if (needed <= count.length || count.length == capacity) {
+        return;
+      }
+      double[] oldMin = min;
+      double[] oldMax = max;
+      double[] oldSum = sum;
+      long[] oldCount = count;
+      allocate((int) Math.min(capacity, Math.max(needed, 2L * oldCount.length)));
+      for (long b = firstBucket; b <= lastBucket; b++) {
+        int from = (int) (b % oldCount.length);
+        int to = slot(b);
+        min[to] = oldMin[from];
+        max[to] = oldMax[from];
+        sum[to] = oldSum[from];
+        count[to] = oldCount[from];
+      }
+    }
+
+    private int slot(long bucket) {
+      return (int) (bucket % count.length);
+    }
+
+    void add(double time, double value) {
+      long bucket = (long) Math.floor(time / bucketSeconds);
+      if (lastBucket < 0) {
+        firstBucket = bucket;
+        lastBucket = bucket - 1;
+      }
+      if (bucket < firstBucket) {
+        // too old to be kept
+        return;
+      }
+      if (bucket > lastBucket) {
+        grow(bucket);
+        // reuse the slots of the buckets that fall out of the ring
+        for (long b = Math.max(lastBucket + 1, bucket - count.length + 1); b <= bucket; b++) {
+          count[slot(b)] = 0;
+        }
+        lastBucket = bucket;
+        firstBucket = Math.max(firstBucket, bucket - count.length + 1);
+      }
+      int slot = slot(bucket);
+      if (count[slot] == 0) {
+        min[slot] = value;
+        max[slot] = value;
+        sum[slot] = value;
+      } else {
+        min[slot] = Math.min(min[slot], value);
+        max[slot] = Math.max(max[slot], value);
+        sum[slot] += value;
+      }
+      count[slot]++;
+    }
+
+    double getEnd() {
+      return (lastBucket + 1) * bucketSeconds;
+    }
+
+    boolean covers(double time) {
+      return lastBucket >= 0 && Math.floor(time / bucketSeconds) >= firstBucket;
+    }
+
+    List<Bucket> get(double from, double to) {
+      List<Bucket> buckets = new ArrayList<>();
+      if (lastBucket < 0) {
+        return buckets;
+      }
+      long first = Math.max(firstBucket, (long) Math.floor(from / bucketSeconds));
+      long last = Math.min(lastBucket, (long) Math.floor(to / bucketSeconds));
+      for (long b = first; b <= last; b++) {
+        int slot = slot(b);
+        if (count[slot] > 0) {
+          buckets.add(new Bucket(b * bucketSeconds, min[slot], max[slot],
+              sum[slot] / count[slot], count[slot]));
+        }
+      }
+      return buckets;
+    }
+  }
+
+  public static class Bucket {
+
+    private final double time;
+    private final double min;
+    private final double max;
+    private final double avg;
+    private final long count;
+
+    Bucket(double time, double min, double max, double avg, long count) {
+      this.time = time;
+      this.min = min;
+      this.max = max;
+      this.avg = avg;
+      this.count = count;
+    }
+
+    /**
+     * Simulated time at the start of the bucket
+     */
+    public double getTime() {
+      return time;
+    }
+
+    public double getMin() {
+      return min;
+    }
+
+    public double getMax() {
+      return max;
+    }
+
+    public double getAvg() {
+      return avg;
+    }
+
+    public long getCount() {
+      return count;
+    }
+  }
+
+  public static class Selection {
+
+    private final String name;
+    private final double resolution;
+    private final List<Bucket> buckets;
+
+    Selection(String name, double resolution, List<Bucket> buckets) {
+      this.name = name;
+      this.resolution = resolution;
+      this.buckets = buckets;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Length of the buckets, in simulated seconds
+     */
+    public double getResolution() {
+      return resolution;
+    }
+
+    public List<Bucket> getBuckets() {
+      return buckets;
+    }
+  }
+}
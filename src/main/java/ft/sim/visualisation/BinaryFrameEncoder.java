@@ -0,0 +1,71 @@
+package ft.sim.visualisation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Packs the trains and signals of a complete {@link WorldUpdate} into a binary websocket frame,
+ * a lot smaller and cheaper to produce than the JSON update when following large networks.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header   uint8 version, uint8 unused, uint16 unused, uint32 ticks elapsed,
+ *            float64 simulation time elapsed, uint32 number of trains, uint32 number of signals
+ *   train    int32 journey ID, int16 root index, uint8 flags (1: at station, 2: finished),
+ *            uint8 objective (ordinal), float32 from, to (position on the map), head, tail
+ *            (position on the path), distance travelled, speed, target speed, advisory speed,
+ *            acceleration, next train distance, actual distance, last squawk sent
+ *   signals  one bit per signal (in topology order, least significant bit first), set if red
+ * </pre>
+ */
+public class BinaryFrameEncoder {
+
+  public static final int VERSION = 1;
+  static final int HEADER_SIZE = 24;
+  static final int TRAIN_SIZE = 56;
+
+  private BinaryFrameEncoder() {
+  }
+
+  /**
+   * @param state complete state (e.g. a snapshot merged with the deltas since), as the frame
+   * carries the status of every signal
+   */
+  public static ByteBuffer encode(WorldUpdate state) {
+    Map<Integer, TrainState> trains = state.getTrains();
+    Map<Integer, String> signals = state.getSignals();
+    int signalCount = 0;
+    for (Integer index : signals.keySet()) {
+      signalCount = Math.max(signalCount, index + 1);
+    }
+
+    ByteBuffer buffer = ByteBuffer
+        .allocate(HEADER_SIZE + trains.size() * TRAIN_SIZE + (signalCount + 7) / 8)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put((byte) VERSION);
+    buffer.put((byte) 0);
+    buffer.putShort((short) 0);
+    buffer.putInt((int) state.getTicksElapsed());
+    buffer.putDouble(state.getSimulationTimeElapsed());
+    buffer.putInt(trains.size());
+    buffer.putInt(signalCount);
+
+    for (Entry<Integer, TrainState> train : trains.entrySet()) {
+      train.getValue().writeTo(buffer, train.getKey());
+    }
+
+    int signalsStart = buffer.position();
+    for (Entry<Integer, String> signal : signals.entrySet()) {
+      if ("red".equals(signal.getValue())) {
+        int index = signal.getKey();
+        int position = signalsStart + index / 8;
+        buffer.put(position, (byte) (buffer.get(position) | (1 << (index % 8))));
+      }
+    }
+
+    buffer.rewind();
+    return buffer;
+  }
+}
@@ -22,6 +22,18 @@ public class Point {
     this(from, to, 0);
   }
 
+  double getFrom() {
+    return from;
+  }
+
+  double getTo() {
+    return to;
+  }
+
+  int getZ() {
+    return z;
+  }
+
   @Override
   public String toString() {
     return String.format("X: %.2f, Y: %.2f, Z: %d", from, to, z);
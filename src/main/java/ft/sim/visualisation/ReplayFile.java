@@ -0,0 +1,244 @@
+package ft.sim.visualisation;
+
+import static ft.sim.visualisation.ReplayRecorder.INDEX_MAGIC;
+import static ft.sim.visualisation.ReplayRecorder.KEYFRAME;
+import static ft.sim.visualisation.ReplayRecorder.MAGIC;
+import static ft.sim.visualisation.ReplayRecorder.VERSION;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a replay file written by {@link ReplayRecorder}, frame by frame from any keyframe. If the
+ * run didn't get to write the index (e.g. it was killed), the file is scanned for the keyframes
+ * instead.
+ */
+public class ReplayFile implements Closeable {
+
+  protected static transient Logger logger = LoggerFactory.getLogger(ReplayFile.class);
+
+  private final RandomAccessFile file;
+  private final String topology;
+  private final long firstFrameOffset;
+  private final long framesEnd;
+  private final List<Keyframe> keyframes;
+  private final double duration;
+  // simulation time of the last complete frame found while scanning
+  private double lastSimulationTime = 0;
+
+  public ReplayFile(Path path) throws IOException {
+    file = new RandomAccessFile(path.toFile(), "r");
+    try {
+      if (file.readInt() != MAGIC) {
+        throw new IOException("Not a replay file: " + path);
+      }
+      int version = file.readUnsignedByte();
+      if (version != VERSION) {
+        throw new IOException("Unsupported replay file version: " + version);
+      }
+      topology = new String(readBytes(), StandardCharsets.UTF_8);
+      firstFrameOffset = file.getFilePointer();
+
+      List<Keyframe> index = readIndex();
+      if (index != null) {
+        keyframes = index;
+        file.seek(file.length() - 16);
+        duration = file.readDouble();
+        framesEnd = file.readLong();
+      } else {
+        logger.warn("Replay file {} has no index, scanning it for keyframes", path);
+        keyframes = new ArrayList<>();
+        framesEnd = scan(keyframes);
+        duration = lastSimulationTime;
+      }
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+    seek(0);
+  }
+
+  private List<Keyframe> readIndex() throws IOException {
+    if (file.length() < firstFrameOffset + 24) {
+      return null;
+    }
+    file.seek(file.length() - 8);
+    long indexOffset = file.readLong();
+    if (indexOffset < firstFrameOffset || indexOffset > file.length() - 24) {
+      return null;
+    }
+    file.seek(indexOffset);
+    if (file.readInt() != INDEX_MAGIC) {
+      return null;
+    }
+    int count = file.readInt();
+    List<Keyframe> index = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      index.add(new Keyframe(file.readLong(), file.readDouble(), file.readLong()));
+    }
+    return index;
+  }
+
+  /**
+   * Find the keyframes by reading the frames one after the other, up to the first incomplete one
+   *
+   * @return where the complete frames end
+   */
+  private long scan(List<Keyframe> found) throws IOException {
+    file.seek(firstFrameOffset);
+    long end = firstFrameOffset;
+    while (true) {
+      try {
+        Frame frame = readFrame();
+        if (frame.isKeyframe()) {
+          found.add(new Keyframe(frame.getTicksElapsed(), frame.getSimulationTimeElapsed(), end));
+        }
+        lastSimulationTime = frame.getSimulationTimeElapsed();
+        end = file.getFilePointer();
+      } catch (EOFException | IllegalArgumentException e) {
+        return end;
+      }
+    }
+  }
+
+  private byte[] readBytes() throws IOException {
+    int length = file.readInt();
+    if (length < 0 || length > file.length() - file.getFilePointer()) {
+      throw new EOFException("Truncated replay file");
+    }
+    byte[] bytes = new byte[length];
+    file.readFully(bytes);
+    return bytes;
+  }
+
+  private Frame readFrame() throws IOException {
+    boolean keyframe = file.readByte() == KEYFRAME;
+    String update = new String(readBytes(), StandardCharsets.UTF_8);
+    return new Frame(keyframe, update, readBytes());
+  }
+
+  /**
+   * The topology message of the recorded world
+   */
+  public String getTopology() {
+    return topology;
+  }
+
+  /**
+   * Simulation time of the last frame
+   */
+  public double getDuration() {
+    return duration;
+  }
+
+  public List<Keyframe> getKeyframes() {
+    return Collections.unmodifiableList(keyframes);
+  }
+
+  /**
+   * Continue reading from the last keyframe at or before the given simulation time
+   */
+  public void seek(double simulationTime) throws IOException {
+    long offset = firstFrameOffset;
+    for (Keyframe keyframe : keyframes) {
+      if (keyframe.getSimulationTimeElapsed() > simulationTime) {
+        break;
+      }
+      offset = keyframe.getOffset();
+    }
+    file.seek(offset);
+  }
+
+  /**
+   * The next frame, or null after the last one
+   */
+  public Frame next() throws IOException {
+    if (file.getFilePointer() >= framesEnd) {
+      return null;
+    }
+    return readFrame();
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  public static class Keyframe {
+
+    private final long ticksElapsed;
+    private final double simulationTimeElapsed;
+    private final long offset;
+
+    Keyframe(long ticksElapsed, double simulationTimeElapsed, long offset) {
+      this.ticksElapsed = ticksElapsed;
+      this.simulationTimeElapsed = simulationTimeElapsed;
+      this.offset = offset;
+    }
+
+    public long getTicksElapsed() {
+      return ticksElapsed;
+    }
+
+    public double getSimulationTimeElapsed() {
+      return simulationTimeElapsed;
+    }
+
+    long getOffset() {
+      return offset;
+    }
+  }
+
+  public static class Frame {
+
+    private final boolean keyframe;
+    private final String update;
+    private final byte[] state;
+
+    Frame(boolean keyframe, String update, byte[] state) {
+      if (state.length < BinaryFrameEncoder.HEADER_SIZE) {
+        throw new IllegalArgumentException("Truncated binary frame");
+      }
+      this.keyframe = keyframe;
+      this.update = update;
+      this.state = state;
+    }
+
+    public boolean isKeyframe() {
+      return keyframe;
+    }
+
+    /**
+     * The update message, without the trains and signals
+     */
+    public String getUpdate() {
+      return update;
+    }
+
+    /**
+     * The binary frame with the trains and signals
+     */
+    public byte[] getState() {
+      return state;
+    }
+
+    public long getTicksElapsed() {
+      return ByteBuffer.wrap(state).order(ByteOrder.LITTLE_ENDIAN).getInt(4) & 0xFFFFFFFFL;
+    }
+
+    public double getSimulationTimeElapsed() {
+      return ByteBuffer.wrap(state).order(ByteOrder.LITTLE_ENDIAN).getDouble(8);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package ft.sim.visualisation;
+
+import ft.sim.monitoring.Violation;
+import ft.sim.world.map.GlobalMap;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records what the UI would have seen of a run into a replay file, to be played back later (see
+ * {@link ReplayFile}).
+ *
+ * Layout (big-endian, apart from the binary frames):
+ * <pre>
+ *   header    int32 magic ("FTRP"), uint8 version, int32 length + topology message (UTF-8 JSON)
+ *   frame     uint8 kind (0: frame, 1: keyframe), int32 length + update message without the
+ *             trains and signals (UTF-8 JSON), int32 length + binary frame of the trains and
+ *             signals (see {@link BinaryFrameEncoder})
+ *   index     int32 magic ("FTRI"), int32 number of keyframes, and for each of them int64 ticks
+ *             elapsed, float64 simulation time elapsed, int64 offset in the file
+ *   footer    float64 simulation time of the last frame, int64 offset of the index
+ * </pre>
+ *
+ * Every frame has the status of all the signals, while the update message of a frame only has the
+ * violations found since the previous frame; that of a keyframe has all of them, so that playback
+ * can start at any keyframe.
+ */
+public class ReplayRecorder implements Closeable {
+
+  protected static transient Logger logger = LoggerFactory.getLogger(ReplayRecorder.class);
+
+  static final int MAGIC = 0x46545250;
+  static final int INDEX_MAGIC = 0x46545249;
+  static final int VERSION = 1;
+  static final byte FRAME = 0;
+  static final byte KEYFRAME = 1;
+  // frames between two keyframes
+  static final int KEYFRAME_INTERVAL = 100;
+
+  private final Path path;
+  private final WorldView worldView;
+  private final DataOutputStream out;
+  private final VisualisationJson json = new VisualisationJson();
+  private final Map<Integer, String> signals;
+  private final List<ReplayFile.Keyframe> keyframes = new ArrayList<>();
+  private long written = 0;
+  private long frames = 0;
+  private double lastSimulationTime = 0;
+  private boolean closed = false;
+
+  public ReplayRecorder(Path path, GlobalMap world) throws IOException {
+    this.path = path;
+    this.worldView = new WorldView(world);
+    this.signals = new LinkedHashMap<>(
+        worldView.getSnapshot(Collections.emptyList()).getSignals());
+    this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    written += 5 + writeBytes(
+        VisualisationJson.gson.toJson(worldView.getTopology()).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Record the current state of the world (stops recording if the file cannot be written)
+   */
+  public synchronized void record(List<Violation> violations, long ticksElapsed,
+      double simulationTimeElapsed) {
+    if (closed) {
+      return;
+    }
+    WorldUpdate delta = worldView.getDelta(violations);
+    signals.putAll(delta.getSignals());
+    boolean keyframe = frames % KEYFRAME_INTERVAL == 0;
+    WorldUpdate update = keyframe
+        ? new WorldUpdate(Collections.emptyMap(), Collections.emptyMap(), 0, new ArrayList<>(
+        violations.subList(0, delta.getViolationsFrom() + delta.getViolations().size())))
+        : delta.withoutTrainsAndSignals();
+    update.withCounters(ticksElapsed, simulationTimeElapsed, 0, 0, true);
+    WorldUpdate state = new WorldUpdate(delta.getTrains(), signals, 0, Collections.emptyList())
+        .withCounters(ticksElapsed, simulationTimeElapsed, 0, 0, true);
+
+    try {
+      if (keyframe) {
+        keyframes.add(new ReplayFile.Keyframe(ticksElapsed, simulationTimeElapsed, written));
+      }
+      out.writeByte(keyframe ? KEYFRAME : FRAME);
+      written += 1;
+      written += writeBytes(json.toJson(update).getBytes(StandardCharsets.UTF_8));
+      written += writeBytes(BinaryFrameEncoder.encode(state).array());
+      frames++;
+      lastSimulationTime = simulationTimeElapsed;
+    } catch (IOException e) {
+      logger.error("Failed to record replay frame, stopping the recording of {}: {}", path,
+          e.getMessage());
+      closeQuietly();
+    }
+  }
+
+  private int writeBytes(byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+    return 4 + bytes.length;
+  }
+
+  /**
+   * Write the keyframe index and close the file
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(keyframes.size());
+      for (ReplayFile.Keyframe keyframe : keyframes) {
+        out.writeLong(keyframe.getTicksElapsed());
+        out.writeDouble(keyframe.getSimulationTimeElapsed());
+        out.writeLong(keyframe.getOffset());
+      }
+      out.writeDouble(lastSimulationTime);
+      out.writeLong(written);
+    } finally {
+      out.close();
+    }
+    logger.info("Recorded {} frames ({} keyframes) to {}", frames, keyframes.size(), path);
+  }
+
+  private void closeQuietly() {
+    closed = true;
+    try {
+      out.close();
+    } catch (IOException e) {
+      // already failing
+    }
+  }
+}
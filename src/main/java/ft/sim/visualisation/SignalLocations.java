@@ -0,0 +1,20 @@
+package ft.sim.visualisation;
+
+/**
+ * Where the signals are on the map (by their index in the topology), to find the ones in a
+ * {@link Viewport}.
+ */
+public class SignalLocations {
+
+  private final int[] roots;
+  private final double[] positions;
+
+  SignalLocations(int[] roots, double[] positions) {
+    this.roots = roots;
+    this.positions = positions;
+  }
+
+  public boolean isInside(int signal, Viewport viewport) {
+    return viewport.contains(roots[signal], positions[signal], positions[signal]);
+  }
+}
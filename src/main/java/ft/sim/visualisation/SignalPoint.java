@@ -14,13 +14,35 @@ public class SignalPoint {
   public SignalPoint(int offset, int trackID, SignalType status) {
     this.offset = offset;
     this.trackID = trackID;
+    this.status = getStatusName(status);
+  }
+
+  int getOffset() {
+    return offset;
+  }
+
+  int getTrackID() {
+    return trackID;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public void setStatus(SignalType status) {
+    this.status = getStatusName(status);
+  }
+
+  /**
+   * Name of the signal's status as understood by the UI (a colour)
+   */
+  public static String getStatusName(SignalType status) {
     switch (status) {
       case RED:
-        this.status = "red";
-        break;
+        return "red";
       case GREEN:
-        this.status = "green";
-        break;
+        return "green";
     }
+    return "green";
   }
 }
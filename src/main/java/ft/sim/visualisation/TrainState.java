@@ -0,0 +1,116 @@
+package ft.sim.visualisation;
+
+import com.google.gson.stream.JsonWriter;
+import ft.sim.world.journey.Journey;
+import ft.sim.world.train.ECU;
+import ft.sim.world.train.Engine;
+import ft.sim.world.train.Train;
+import ft.sim.world.train.TrainObjective;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * State of a journey and its train at the time of a push to the UI (only what changes while the
+ * simulation is running, see {@link WorldView}).
+ */
+public class TrainState {
+
+  private final int trainID;
+  private final Point position;
+  private final double headPosition;
+  private final double tailPosition;
+  private final double distanceTravelled;
+  private final boolean finished;
+  private final double speed;
+  private final double targetSpeed;
+  private final double advisorySpeed;
+  private final double acceleration;
+  private final TrainObjective objective;
+  private final boolean atStation;
+  private final double nextTrainDistance;
+  private final double actualDistance;
+  private final double lastSquawkSent;
+  private final List<String> occupied;
+
+  TrainState(Journey journey, int rootIndex) {
+    Train train = journey.getTrain();
+    Engine engine = train.getEngine();
+    ECU ecu = train.getEcu();
+    this.trainID = train.getID();
+    this.position = new Point(journey.getTailPositionFromRoot(),
+        journey.getHeadPositionFromRoot(), rootIndex);
+    this.headPosition = journey.getHeadPosition();
+    this.tailPosition = journey.getTailPosition();
+    this.distanceTravelled = journey.getTotalDistanceTravelled();
+    this.finished = journey.isJourneyFinished();
+    this.speed = engine.getSpeed();
+    this.targetSpeed = engine.getTargetSpeed();
+    this.advisorySpeed = engine.getLastAdvisorySpeed();
+    this.acceleration = engine.getAcceleration();
+    this.objective = engine.getObjective();
+    this.atStation = train.isAtStation();
+    this.nextTrainDistance = ecu.getNextTrainPredictor().getDistance();
+    this.actualDistance = ecu.getActualDistance();
+    this.lastSquawkSent = ecu.getTimeLastSquawkSent();
+    this.occupied = journey.getJourneyPosition().getConnectablesOccupied().stream()
+        .map(Object::toString).collect(Collectors.toList());
+  }
+
+  Point getPosition() {
+    return position;
+  }
+
+  /**
+   * Write the state as a JSON object (see {@link VisualisationJson})
+   */
+  void writeJson(JsonWriter out) throws IOException {
+    out.beginObject();
+    out.name("trainID").value(trainID);
+    out.name("position");
+    VisualisationJson.POINT.write(out, position);
+    out.name("headPosition").value(headPosition);
+    out.name("tailPosition").value(tailPosition);
+    out.name("distanceTravelled").value(distanceTravelled);
+    out.name("finished").value(finished);
+    out.name("speed").value(speed);
+    out.name("targetSpeed").value(targetSpeed);
+    out.name("advisorySpeed").value(advisorySpeed);
+    out.name("acceleration").value(acceleration);
+    out.name("objective").value(objective.name());
+    out.name("atStation").value(atStation);
+    out.name("nextTrainDistance").value(nextTrainDistance);
+    out.name("actualDistance").value(actualDistance);
+    out.name("lastSquawkSent").value(lastSquawkSent);
+    out.name("occupied").beginArray();
+    for (String connectable : occupied) {
+      out.value(connectable);
+    }
+    out.endArray();
+    out.endObject();
+  }
+
+  /**
+   * Write the numeric part of the state (see {@link BinaryFrameEncoder})
+   */
+  void writeTo(ByteBuffer buffer, int journeyID) {
+    int flags = (atStation ? 1 : 0) | (finished ? 2 : 0);
+    buffer.putInt(journeyID);
+    buffer.putShort((short) position.getZ());
+    buffer.put((byte) flags);
+    buffer.put((byte) objective.ordinal());
+    buffer.putFloat((float) position.getFrom());
+    buffer.putFloat((float) position.getTo());
+    buffer.putFloat((float) headPosition);
+    buffer.putFloat((float) tailPosition);
+    buffer.putFloat((float) distanceTravelled);
+    buffer.putFloat((float) speed);
+    buffer.putFloat((float) targetSpeed);
+    buffer.putFloat((float) advisorySpeed);
+    buffer.putFloat((float) acceleration);
+    buffer.putFloat((float) nextTrainDistance);
+    buffer.putFloat((float) actualDistance);
+    buffer.putFloat((float) lastSquawkSent);
+  }
+}
@@ -0,0 +1,60 @@
+package ft.sim.visualisation;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The region of the map a client is looking at, and how often it wants to be updated. Positions
+ * are in the units of the topology's points, as drawn by the UI.
+ */
+public class Viewport {
+
+  /**
+   * The whole map, at every update
+   */
+  public static final Viewport EVERYTHING = new Viewport(Collections.emptySet(),
+      Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0);
+
+  // indexes of the roots of the map graph (all if empty)
+  private final Set<Integer> roots;
+  private final double from;
+  private final double to;
+  // maximum updates per second (no limit if 0)
+  private final double maxRate;
+
+  public Viewport(Set<Integer> roots, double from, double to, double maxRate) {
+    if (from > to) {
+      throw new IllegalArgumentException("Viewport cannot end before it starts");
+    }
+    if (maxRate < 0) {
+      throw new IllegalArgumentException("Maximum update rate cannot be negative");
+    }
+    this.roots = Collections.unmodifiableSet(new HashSet<>(roots));
+    this.from = from;
+    this.to = to;
+    this.maxRate = maxRate;
+  }
+
+  /**
+   * Whether nothing is left out (apart from maybe some updates)
+   */
+  public boolean isWholeMap() {
+    return roots.isEmpty() && from == Double.NEGATIVE_INFINITY && to == Double.POSITIVE_INFINITY;
+  }
+
+  public boolean contains(int root, double from, double to) {
+    return (roots.isEmpty() || roots.contains(root)) && to >= this.from && from <= this.to;
+  }
+
+  boolean contains(Point point) {
+    return contains(point.getZ(), point.getFrom(), point.getTo());
+  }
+
+  /**
+   * Shortest time between two updates
+   */
+  public long getMinIntervalNanos() {
+    return maxRate > 0 ? (long) (1e9 / maxRate) : 0;
+  }
+}
@@ -0,0 +1,128 @@
+package ft.sim.visualisation;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import ft.sim.monitoring.Violation;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * JSON serialisation of what is pushed to the UI. The type adapters write straight to a
+ * {@link JsonWriter}, so that neither reflection nor an intermediate tree of
+ * {@link com.google.gson.JsonElement}s is involved, and {@link #toJson(WorldUpdate)} reuses its
+ * buffer from one update to the next.
+ */
+public class VisualisationJson {
+
+  public static final TypeAdapter<Point> POINT = new WriteOnlyAdapter<Point>() {
+    @Override
+    public void write(JsonWriter out, Point point) throws IOException {
+      out.beginObject();
+      out.name("from").value(point.getFrom());
+      out.name("to").value(point.getTo());
+      out.name("z").value(point.getZ());
+      out.endObject();
+    }
+  };
+
+  public static final TypeAdapter<SignalPoint> SIGNAL_POINT = new WriteOnlyAdapter<SignalPoint>() {
+    @Override
+    public void write(JsonWriter out, SignalPoint signalPoint) throws IOException {
+      out.beginObject();
+      out.name("offset").value(signalPoint.getOffset());
+      out.name("trackID").value(signalPoint.getTrackID());
+      out.name("status").value(signalPoint.getStatus());
+      out.endObject();
+    }
+  };
+
+  public static final TypeAdapter<Violation> VIOLATION = new WriteOnlyAdapter<Violation>() {
+    @Override
+    public void write(JsonWriter out, Violation violation) throws IOException {
+      out.beginObject();
+      out.name("type").value(violation.getType().name());
+      out.name("severity").value(violation.getSeverity().name());
+      out.name("tickTime").value(violation.getTickTime());
+      out.name("description").value(violation.getDescription());
+      out.endObject();
+    }
+  };
+
+  public static final TypeAdapter<TrainState> TRAIN_STATE = new WriteOnlyAdapter<TrainState>() {
+    @Override
+    public void write(JsonWriter out, TrainState trainState) throws IOException {
+      trainState.writeJson(out);
+    }
+  };
+
+  public static final TypeAdapter<WorldUpdate> WORLD_UPDATE = new WriteOnlyAdapter<WorldUpdate>() {
+    @Override
+    public void write(JsonWriter out, WorldUpdate update) throws IOException {
+      update.writeJson(out);
+    }
+  };
+
+  /**
+   * Gson with the adapters registered, for the messages that aren't on the push path
+   */
+  public static final Gson gson = new GsonBuilder()
+      .registerTypeAdapter(Point.class, POINT)
+      .registerTypeAdapter(SignalPoint.class, SIGNAL_POINT)
+      .registerTypeAdapter(Violation.class, VIOLATION)
+      .registerTypeAdapter(TrainState.class, TRAIN_STATE)
+      .registerTypeAdapter(WorldUpdate.class, WORLD_UPDATE)
+      .create();
+
+  private final StringBuilder buffer = new StringBuilder(64 * 1024);
+  private final Writer writer = new Writer() {
+    @Override
+    public void write(char[] chars, int offset, int length) {
+      buffer.append(chars, offset, length);
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+      buffer.append(string, offset, offset + length);
+    }
+
+    @Override
+    public void write(int c) {
+      buffer.append((char) c);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+
+  /**
+   * Serialise an update (not thread-safe: the buffer is shared by the calls).
+   */
+  public String toJson(WorldUpdate update) {
+    buffer.setLength(0);
+    try {
+      JsonWriter out = new JsonWriter(writer);
+      WORLD_UPDATE.write(out, update);
+      out.flush();
+    } catch (IOException e) {
+      // the buffer doesn't throw
+      throw new IllegalStateException(e);
+    }
+    return buffer.toString();
+  }
+
+  private abstract static class WriteOnlyAdapter<T> extends TypeAdapter<T> {
+
+    @Override
+    public T read(JsonReader in) {
+      throw new UnsupportedOperationException("Visualisation messages are only written");
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package ft.sim.visualisation;
+
+import com.google.gson.stream.JsonWriter;
+import ft.sim.monitoring.Violation;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An <code>update</code> message for the UI: the state of every train, the status of the signals
+ * that changed and the violations found since the previous update. Once published it's not
+ * modified any more, so it can be handed over to (and serialised on) another thread.
+ *
+ * Violations are numbered in the order they were found, <code>violationsFrom</code> being the
+ * number of the first one in this update, so that clients can skip the ones they already have.
+ */
+public class WorldUpdate {
+
+  private final String type = "update";
+  private final Map<Integer, TrainState> trains;
+  private final Map<Integer, String> signals;
+  private final int violationsFrom;
+  private final List<Violation> violations;
+
+  private long timeElapsedCalculating = 0;
+  private long nanosElapsed = 0;
+  private long ticksElapsed = 0;
+  private double simulationTimeElapsed = 0;
+  private boolean interactive = true;
+
+  WorldUpdate(Map<Integer, TrainState> trains, Map<Integer, String> signals, int violationsFrom,
+      List<Violation> violations) {
+    this.trains = Collections.unmodifiableMap(trains);
+    this.signals = Collections.unmodifiableMap(signals);
+    this.violationsFrom = violationsFrom;
+    this.violations = Collections.unmodifiableList(violations);
+  }
+
+  /**
+   * Set the simulation's counters (before the update is published)
+   */
+  public WorldUpdate withCounters(long ticksElapsed, double simulationTimeElapsed,
+      long timeElapsedCalculating, long nanosElapsed, boolean interactive) {
+    this.ticksElapsed = ticksElapsed;
+    this.simulationTimeElapsed = simulationTimeElapsed;
+    this.timeElapsedCalculating = timeElapsedCalculating;
+    this.nanosElapsed = nanosElapsed;
+    this.interactive = interactive;
+    return this;
+  }
+
+  /**
+   * Combine with a newer update into one that has the same effect as applying both in order.
+   */
+  public WorldUpdate mergeWith(WorldUpdate newer) {
+    Map<Integer, String> mergedSignals = new LinkedHashMap<>(signals);
+    mergedSignals.putAll(newer.signals);
+    List<Violation> mergedViolations = new ArrayList<>(violations);
+    // skip the violations both have
+    int overlap = violationsFrom + violations.size() - newer.violationsFrom;
+    mergedViolations.addAll(newer.violations.subList(
+        Math.min(Math.max(0, overlap), newer.violations.size()), newer.violations.size()));
+    return new WorldUpdate(newer.trains, mergedSignals, violationsFrom, mergedViolations)
+        .withCounters(newer.ticksElapsed, newer.simulationTimeElapsed,
+            newer.timeElapsedCalculating, newer.nanosElapsed, newer.interactive);
+  }
+
+  /**
+   * The same trains and counters, with the given signals and violations. They aren't copied, so
+   * they mustn't change while the update is used.
+   */
+  public WorldUpdate withState(Map<Integer, String> signals, int violationsFrom,
+      List<Violation> violations) {
+    return new WorldUpdate(trains, signals, violationsFrom, violations)
+        .withCounters(ticksElapsed, simulationTimeElapsed, timeElapsedCalculating, nanosElapsed,
+            interactive);
+  }
+
+  /**
+   * Write the update as a JSON object (see {@link VisualisationJson})
+   */
+  void writeJson(JsonWriter out) throws IOException {
+    out.beginObject();
+    out.name("type").value(type);
+    out.name("trains").beginObject();
+    for (Map.Entry<Integer, TrainState> train : trains.entrySet()) {
+      out.name(String.valueOf(train.getKey()));
+      train.getValue().writeJson(out);
+    }
+    out.endObject();
+    out.name("signals").beginObject();
+    for (Map.Entry<Integer, String> signal : signals.entrySet()) {
+      out.name(String.valueOf(signal.getKey())).value(signal.getValue());
+    }
+    out.endObject();
+    out.name("violationsFrom").value(violationsFrom);
+    out.name("violations").beginArray();
+    for (Violation violation : violations) {
+      VisualisationJson.VIOLATION.write(out, violation);
+    }
+    out.endArray();
+    out.name("timeElapsedCalculating").value(timeElapsedCalculating);
+    out.name("nanosElapsed").value(nanosElapsed);
+    out.name("ticksElapsed").value(ticksElapsed);
+    out.name("simulationTimeElapsed").value(simulationTimeElapsed);
+    out.name("interactive").value(interactive);
+    out.endObject();
+  }
+
+  /**
+   * The same update, without the trains and signals (for clients that get those in binary
+   * frames)
+   */
+  public WorldUpdate withoutTrainsAndSignals() {
+    return new WorldUpdate(Collections.emptyMap(), Collections.emptyMap(), violationsFrom,
+        violations).withCounters(ticksElapsed, simulationTimeElapsed, timeElapsedCalculating,
+        nanosElapsed, interactive);
+  }
+
+  /**
+   * The same update, with only the trains in the viewport
+   */
+  public WorldUpdate withTrainsWithin(Viewport viewport) {
+    Map<Integer, TrainState> visibleTrains = new LinkedHashMap<>();
+    trains.forEach((journeyID, train) -> {
+      if (viewport.contains(train.getPosition())) {
+        visibleTrains.put(journeyID, train);
+      }
+    });
+    return new WorldUpdate(visibleTrains, signals, violationsFrom, violations)
+        .withCounters(ticksElapsed, simulationTimeElapsed, timeElapsedCalculating, nanosElapsed,
+            interactive);
+  }
+
+  /**
+   * The same update, with only the signals in the viewport
+   */
+  public WorldUpdate withSignalsWithin(Viewport viewport, SignalLocations signalLocations) {
+    Map<Integer, String> visibleSignals = new LinkedHashMap<>();
+    signals.forEach((signal, status) -> {
+      if (signalLocations.isInside(signal, viewport)) {
+        visibleSignals.put(signal, status);
+      }
+    });
+    return new WorldUpdate(trains, visibleSignals, violationsFrom, violations)
+        .withCounters(ticksElapsed, simulationTimeElapsed, timeElapsedCalculating, nanosElapsed,
+            interactive);
+  }
+
+  public Map<Integer, TrainState> getTrains() {
+    return trains;
+  }
+
+  public Map<Integer, String> getSignals() {
+    return signals;
+  }
+
+  public int getViolationsFrom() {
+    return violationsFrom;
+  }
+
+  public List<Violation> getViolations() {
+    return violations;
+  }
+
+  public long getTicksElapsed() {
+    return ticksElapsed;
+  }
+
+  public double getSimulationTimeElapsed() {
+    return simulationTimeElapsed;
+  }
+}
@@ -0,0 +1,196 @@
+package ft.sim.visualisation;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import ft.sim.monitoring.Violation;
+import ft.sim.world.WorldState;
+import ft.sim.world.connectables.Connectable;
+import ft.sim.world.connectables.Station;
+import ft.sim.world.connectables.Track;
+import ft.sim.world.journey.Journey;
+import ft.sim.world.map.GlobalMap;
+import ft.sim.world.signalling.SignalUnit;
+import ft.sim.world.train.TrainObjective;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.stream.Collectors;
+
+/**
+ * What the UI gets to see of a world. The track geometry never changes once the world is built,
+ * so it is walked and serialised only once and sent as a <code>topology</code> message when a
+ * client connects. After that, <code>update</code> messages only carry what changes: the state of
+ * the trains, the signals that changed and the violations found since the previous update.
+ */
+public class WorldView {
+
+  private final GlobalMap world;
+  private final Map<Journey, Integer> journeyRootIndexes = new HashMap<>();
+  private final List<SignalUnit> signalUnits = new ArrayList<>();
+  private final List<SignalPoint> signalPoints = new ArrayList<>();
+  private final List<Point> signalTrackPoints = new ArrayList<>();
+  private final SignalLocations signalLocations;
+  private final JsonObject topology = new JsonObject();
+  // baseline of the last update
+  private final String[] lastSignalStatus;
+  private int lastViolationCount = 0;
+
+  public WorldView(GlobalMap world) {
+    this.world = world;
+    WorldState previous = WorldState.setCurrent(world.getState());
+    try {
+      lastSignalStatus = describe();
+    } finally {
+      WorldState.setCurrent(previous);
+    }
+    int[] signalRoots = new int[signalUnits.size()];
+    double[] signalPositions = new double[signalUnits.size()];
+    for (int i = 0; i < signalPoints.size(); i++) {
+      // where the UI draws it
+      signalRoots[i] = signalTrackPoints.get(i).getZ();
+      signalPositions[i] = signalTrackPoints.get(i).getFrom() + signalPoints.get(i).getOffset();
+    }
+    signalLocations = new SignalLocations(signalRoots, signalPositions);
+  }
+
+  /**
+   * Lays out the topology, and returns the status of the signals (read in the state of the world)
+   */
+  private String[] describe() {
+    Map<String, Map<String, String>> rootConnectables = new LinkedHashMap<>();
+    Map<String, Point> trackPoints = new LinkedHashMap<>();
+    Map<String, Point> stationPoints = new LinkedHashMap<>();
+    Map<Connectable, Integer> rootIndexes = new HashMap<>();
+    int rootIndex = 0;
+    for (Connectable c : world.getGraph().getRootConnectables()) {
+      rootIndexes.put(c, rootIndex);
+      Map<String, String> connectableMap = new LinkedHashMap<>();
+      String before = c.toString();
+      addPoint(c, 0, rootIndex, trackPoints, stationPoints);
+      // (after a switch, its routes are drawn on the same row, from the same distance)
+      for (Entry<Connectable, Double> next : world.getGraph().getDistancesFrom(c).entrySet()) {
+        addPoint(next.getKey(), next.getValue(), rootIndex, trackPoints, stationPoints);
+        connectableMap.put(before, next.getKey().toString());
+        before = next.getKey().toString();
+      }
+      rootConnectables.put(c.toString(), connectableMap);
+      rootIndex++;
+    }
+
+    Map<Integer, Map<String, Object>> journeys = new LinkedHashMap<>();
+    for (Entry<Integer, Journey> entry : world.getJourneys().entrySet()) {
+      Journey journey = entry.getValue();
+      journeyRootIndexes
+          .put(journey, rootIndexes.get(journey.getJourneyPath().getGraphRootConnectable()));
+      Map<String, Object> outline = new LinkedHashMap<>();
+      outline.put("trainID", journey.getTrain().getID());
+      outline.put("train", journey.getTrain().toString());
+      outline.put("trainLength", journey.getTrain().getLength());
+      outline.put("pathLength", journey.getLength());
+      outline.put("path", journey.getJourneyPath().getPath().stream().map(Object::toString)
+          .collect(Collectors.toList()));
+      journeys.put(entry.getKey(), outline);
+    }
+
+    String[] signalStatus = new String[signalUnits.size()];
+    for (int i = 0; i < signalPoints.size(); i++) {
+      signalStatus[i] = signalPoints.get(i).getStatus();
+    }
+
+    topology.addProperty("type", "topology");
+    topology.add("rootConnectables", VisualisationJson.gson.toJsonTree(rootConnectables));
+    topology.add("trackPoints", VisualisationJson.gson.toJsonTree(trackPoints));
+    topology.add("stationPoints", VisualisationJson.gson.toJsonTree(stationPoints));
+    topology.add("journeys", VisualisationJson.gson.toJsonTree(journeys));
+    // to decode the objectives of binary frames
+    topology.add("objectives", VisualisationJson.gson.toJsonTree(TrainObjective.values()));
+    return signalStatus;
+  }
+
+  private void addPoint(Connectable connectable, double from, int rootIndex,
+      Map<String, Point> trackPoints, Map<String, Point> stationPoints) {
+    Point point = new Point(from, from + connectable.getLength(), rootIndex);
+    if (connectable instanceof Station) {
+      stationPoints.put(connectable.toString(), point);
+    } else {
+      trackPoints.put(connectable.toString(), point);
+      if (!(connectable instanceof Track)) {
+        // switches have no signals
+        return;
+      }
+      Track track = (Track) connectable;
+      int trackID = world.getTrackID(track);
+      track.getBlockSignals().forEach((offset, signalUnit) -> {
+        signalUnits.add(signalUnit);
+        signalPoints.add(new SignalPoint(offset, trackID, signalUnit.getStatus()));
+        signalTrackPoints.add(point);
+      });
+    }
+  }
+
+  /**
+   * The static part of the world, including where the signals are and their current status.
+   */
+  public JsonObject getTopology() {
+    JsonObject message = new JsonObject();
+    for (Entry<String, JsonElement> entry : topology.entrySet()) {
+      message.add(entry.getKey(), entry.getValue());
+    }
+    message.add("signalPoints", VisualisationJson.gson.toJsonTree(signalPoints));
+    return message;
+  }
+
+  public SignalLocations getSignalLocations() {
+    return signalLocations;
+  }
+
+  /**
+   * The changes since the previous delta. Has to be called for every push, as it moves the
+   * baseline forward.
+   */
+  public WorldUpdate getDelta(List<Violation> violations) {
+    Map<Integer, String> changedSignals = new LinkedHashMap<>();
+    WorldState previous = WorldState.setCurrent(world.getState());
+    try {
+      for (int i = 0; i < signalUnits.size(); i++) {
+        SignalPoint signalPoint = signalPoints.get(i);
+        signalPoint.setStatus(signalUnits.get(i).getStatus());
+        if (!signalPoint.getStatus().equals(lastSignalStatus[i])) {
+          lastSignalStatus[i] = signalPoint.getStatus();
+          changedSignals.put(i, signalPoint.getStatus());
+        }
+      }
+    } finally {
+      WorldState.setCurrent(previous);
+    }
+    WorldUpdate update = new WorldUpdate(getTrainStates(), changedSignals, lastViolationCount,
+        new ArrayList<>(violations.subList(lastViolationCount, violations.size())));
+    lastViolationCount = violations.size();
+    return update;
+  }
+
+  /**
+   * The complete state of the world, for clients that have just received the topology (doesn't
+   * move the baseline of the deltas).
+   */
+  public WorldUpdate getSnapshot(List<Violation> violations) {
+    Map<Integer, String> signals = new LinkedHashMap<>();
+    for (int i = 0; i < signalPoints.size(); i++) {
+      signals.put(i, signalPoints.get(i).getStatus());
+    }
+    return new WorldUpdate(getTrainStates(), signals, 0,
+        new ArrayList<>(violations.subList(0, lastViolationCount)));
+  }
+
+  private Map<Integer, TrainState> getTrainStates() {
+    Map<Integer, TrainState> trains = new LinkedHashMap<>();
+    for (Entry<Integer, Journey> entry : world.getJourneys().entrySet()) {
+      Journey journey = entry.getValue();
+      trains.put(entry.getKey(), new TrainState(journey, journeyRootIndexes.get(journey)));
+    }
+    return trains;
+  }
+}
@@ -3,70 +3,229 @@ package ft.sim.web;
 import static ft.sim.world.train.TrainObjective.PROCEED;
 import static ft.sim.world.train.TrainObjective.STOP;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import ft.sim.simulation.Pacer;
+import ft.sim.simulation.SimulationCommand;
 import ft.sim.simulation.SimulationController;
+import ft.sim.visualisation.Viewport;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.TextMessage;
 
 /**
  * Created by sina on 25/04/2017.
  */
 public class CommandHelper {
 
-  static boolean processSetCommand(SimulationController simulation, Map<String, String> map) {
+  protected static transient Logger logger = LoggerFactory.getLogger(CommandHelper.class);
+
+  /**
+   * Changes to the world are queued to the simulation thread: the reply only says whether the
+   * command was accepted, and an <code>ack</code> message follows once it has been carried out.
+   */
+  static boolean processSetCommand(SimulationController simulation, Map<String, String> map,
+      SocketSession socketSession) {
     String set = map.get("set");
     switch (set) {
       case "trainTargetSpeed": {
         int trainID = Integer.valueOf(map.get("targetID"));
         double targetSpeed = Double.valueOf(map.get("data"));
-        simulation.getWorld().getTrain(trainID).getEngine()
-            .setTargetSpeed(targetSpeed);
-        if (targetSpeed > 0) {
-          simulation.getWorld().getTrain(trainID).getEngine().setObjective(PROCEED);
-        } else {
-          simulation.getWorld().getTrain(trainID).getEngine().setObjective(STOP);
-        }
-        return true;
+        return queue(simulation, set, map, socketSession, () -> {
+          simulation.getWorld().getTrain(trainID).getEngine()
+              .setTargetSpeed(targetSpeed);
+          if (targetSpeed > 0) {
+            simulation.getWorld().getTrain(trainID).getEngine().setObjective(PROCEED);
+          } else {
+            simulation.getWorld().getTrain(trainID).getEngine().setObjective(STOP);
+          }
+        });
       }
       case "emergencyBrake": {
         int trainID = Integer.valueOf(map.get("targetID"));
-        simulation.getWorld().getTrain(trainID).crash();
-        return true;
+        return queue(simulation, set, map, socketSession,
+            () -> simulation.getWorld().getTrain(trainID).crash());
+      }
+      case "simulationSpeed": {
+        double speed = Pacer.parseSpeed(map.get("data"));
+        return queue(simulation, set, map, socketSession, () -> simulation.setSpeed(speed));
       }
       case "worldMap": {
         String mapKey = map.get("data");
         if (simulation == null) {
           SimulationController.getInstance(mapKey);
-        } else {
-          simulation.setWorld(mapKey);
+          return true;
         }
-        return true;
+        return queue(simulation, set, map, socketSession, () -> simulation.setWorld(mapKey));
       }
     }
     return false;
   }
 
+  private static boolean queue(SimulationController simulation, String name,
+      Map<String, String> map, SocketSession socketSession, Runnable action) {
+    if (simulation == null) {
+      return false;
+    }
+    // the acknowledgement is queued to the client's own sender, off the simulation thread
+    simulation.submit(new SimulationCommand(name, action)).whenComplete(
+        (ignored, error) -> acknowledge(socketSession, name, map.get("id"), error));
+    return true;
+  }
+
+  private static void acknowledge(SocketSession socketSession, String name, String id,
+      Throwable error) {
+    JsonObject ack = new JsonObject();
+    ack.addProperty("type", "ack");
+    ack.addProperty("command", name);
+    if (id != null) {
+      ack.addProperty("id", id);
+    }
+    ack.addProperty("ok", error == null);
+    if (error != null) {
+      Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+      ack.addProperty("error", String.valueOf(cause));
+    }
+    socketSession.sendLater(new TextMessage(ack.toString()));
+  }
+
+  /**
+   * Viewport of a client: <code>roots</code> (comma separated indexes), <code>from</code>,
+   * <code>to</code> and <code>maxRate</code> (updates per second), all optional.
+   */
+  static Viewport parseViewport(Map<String, String> map) {
+    String roots = map.getOrDefault("roots", "").trim();
+    Set<Integer> rootIndexes = roots.isEmpty() ? Collections.emptySet()
+        : Arrays.stream(roots.split(",")).map(String::trim).map(Integer::valueOf)
+            .collect(Collectors.toSet());
+    double from = map.containsKey("from") ? Double.valueOf(map.get("from"))
+        : Double.NEGATIVE_INFINITY;
+    double to = map.containsKey("to") ? Double.valueOf(map.get("to")) : Double.POSITIVE_INFINITY;
+    double maxRate = map.containsKey("maxRate") ? Double.valueOf(map.get("maxRate")) : 0;
+    return new Viewport(rootIndexes, from, to, maxRate);
+  }
+
+  static boolean processReplayCommand(String command, Map<String, String> map,
+      ReplayPlayer player) {
+    if (player == null) {
+      return false;
+    }
+    switch (command) {
+      case "replay seek":
+        player.seek(Double.valueOf(map.get("time")));
+        return true;
+      case "replay speed":
+        player.setSpeed(Double.valueOf(map.get("speed")));
+        return true;
+      case "replay pause":
+        player.setPaused(true);
+        return true;
+      case "replay resume":
+        player.setPaused(false);
+        return true;
+      case "replay stop":
+        player.stop();
+        return true;
+    }
+    return false;
+  }
+
   static boolean processCommand(SimulationController simulation, Map<String, String> map,
       SocketSession socketSession) {
     String command = map.get("command");
     switch (command) {
       case "start trains":
-        simulation.startTrains();
-        return true;
+        return queue(simulation, command, map, socketSession, () -> simulation.startTrains());
       case "stop simulation":
-        simulation.kill();
-        return true;
+        // killed between two ticks, not while the simulation thread is in the middle of one
+        return queue(simulation, command, map, socketSession, () -> simulation.kill());
       case "get push data":
         if (simulation != null) {
-          simulation.setSocketSession(socketSession);
+          SimulationHub.attach(socketSession, simulation);
           return true;
         }
         return false;
       case "start simulation":
-        simulation.startSimulation();
-        simulation.setSocketSession(socketSession);
+        // started only once, however many of the clients sharing it ask for it
+        if (simulation == null || !simulation.startSimulation()) {
+          return false;
+        }
+        SimulationHub.attach(socketSession, simulation);
         return true;
-      case "toggle interactive":
-        simulation.toggleInteractive();
+      case "new simulation": {
+        // started alongside the running simulations, which carry on
+        SimulationController created = SimulationController
+            .newInstance(map.getOrDefault("map", SimulationController.DEFAULT_MAP));
+        SimulationHub.attach(socketSession, created);
         return true;
+      }
+      case "list simulations":
+        try {
+          SimulationHub.sendSimulations(socketSession);
+          return true;
+        } catch (IOException e) {
+          return false;
+        }
+      case "attach":
+        return SimulationHub.attach(socketSession, Integer.valueOf(map.get("simulation")));
+      case "detach":
+        SimulationHub.detach(socketSession);
+        return true;
+      case "viewport":
+        socketSession.setViewport(parseViewport(map));
+        return true;
+      case "list replays":
+        try {
+          JsonObject replays = new JsonObject();
+          replays.addProperty("type", "replays");
+          replays.add("replays", new Gson().toJsonTree(ReplayPlayer.getReplays()));
+          socketSession.sendMessage(new TextMessage(replays.toString()));
+          return true;
+        } catch (IOException e) {
+          return false;
+        }
+      case "replay":
+        // replays are only played in binary frames
+        if (!socketSession.isBinaryUpdates()) {
+          return false;
+        }
+        try {
+          SimulationHub.detach(socketSession);
+          ReplayPlayer.play(socketSession, map.get("file"),
+              Double.valueOf(map.getOrDefault("speed", "1")),
+              Double.valueOf(map.getOrDefault("time", "0")));
+          return true;
+        } catch (IOException e) {
+          return false;
+        }
+      case "replay seek":
+      case "replay speed":
+      case "replay pause":
+      case "replay resume":
+      case "replay stop":
+        return processReplayCommand(command, map, socketSession.getReplayPlayer());
+      case "series":
+        try {
+          socketSession.sendMessage(new TextMessage(SeriesQuery
+              .answer(map, SimulationHub.getSimulation(socketSession)).toString()));
+          return true;
+        } catch (IOException e) {
+          return false;
+        }
+      case "binary updates":
+        // only for clients connected to the plain websocket endpoint (SockJS is text only)
+        socketSession.setBinaryUpdates(true);
+        return true;
+      case "toggle interactive":
+        return queue(simulation, command, map, socketSession,
+            () -> simulation.toggleInteractive());
 
     }
     return false;
@@ -0,0 +1,222 @@
+package ft.sim.web;
+
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ft.sim.experiment.ExperimentController;
+import ft.sim.monitoring.ViolationSeverity;
+import ft.sim.simulation.SimulationController;
+import ft.sim.simulation.SimulationMetrics.TickPhase;
+import ft.sim.world.map.MapBuildReport;
+import ft.sim.world.map.MapBuildReport.BuildPhase;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lightweight HTTP endpoint (<code>/metrics</code>) exposing live metrics of the running
+ * simulations (labelled by simulation ID) and of the experiments pool in the Prometheus text
+ * format. It doesn't depend on the
+ * web application, so it is also available when running experiments in non-interactive mode.
+ *
+ * Enabled with the runtime argument <code>--metrics-port=PORT</code>.
+ */
+public class MetricsEndpoint {
+
+  protected static transient Logger logger = LoggerFactory.getLogger(MetricsEndpoint.class);
+
+  private static final String PREFIX = "stigmergy_";
+  private static HttpServer server = null;
+
+  public static synchronized void start(int port) throws IOException {
+    if (server != null) {
+      throw new IllegalStateException("Metrics endpoint is already running");
+    }
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.createContext("/metrics", MetricsEndpoint::handle);
+    server.createContext("/series", MetricsEndpoint::handleSeries);
+    server.start();
+    logger.info("Serving metrics on http://localhost:{}/metrics", port);
+  }
+
+  public static synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+  }
+
+  private static void handle(HttpExchange exchange) throws IOException {
+    byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static void handleSeries(HttpExchange exchange) throws IOException {
+    int status = 200;
+    String body;
+    try {
+      body = SeriesQuery.answer(parseQuery(exchange.getRequestURI().getRawQuery()), null)
+          .toString();
+    } catch (IllegalArgumentException e) {
+      status = 400;
+      body = "{\"error\":" + new JsonPrimitive(String.valueOf(e.getMessage())) + "}";
+    }
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static Map<String, String> parseQuery(String query) throws IOException {
+    Map<String, String> params = new HashMap<>();
+    if (query == null || query.isEmpty()) {
+      return params;
+    }
+    for (String pair : query.split("&")) {
+      int equals = pair.indexOf('=');
+      String key = equals < 0 ? pair : pair.substring(0, equals);
+      String value = equals < 0 ? "" : pair.substring(equals + 1);
+      params.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+    }
+    return params;
+  }
+
+  static String scrape() {
+    StringBuilder sb = new StringBuilder();
+
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    metric(sb, "heap_used_bytes", "gauge", "Heap memory used", "", heap.getUsed());
+    metric(sb, "heap_max_bytes", "gauge", "Maximum heap memory", "", heap.getMax());
+
+    ExperimentController.getOptionalInstance().ifPresent(experiments -> {
+      metric(sb, "experiments_remaining", "gauge", "Experiments waiting or running", "",
+          experiments.getRemainingExperiments());
+      metric(sb, "experiments_completed", "gauge", "Experiments completed", "",
+          experiments.getCompletedExperiments());
+    });
+
+    Map<String, MapBuildReport> builds = MapBuildReport.getLatestReports();
+    if (!builds.isEmpty()) {
+      header(sb, "map_build_phase_seconds", "gauge", "Time of each phase of the latest build");
+      builds.forEach((map, report) -> report.getPhaseNanos().keySet().forEach(phase -> sample(sb,
+          "map_build_phase_seconds", buildLabels(map, phase), report.getPhaseSeconds(phase))));
+      header(sb, "map_build_phase_memory_bytes", "gauge",
+          "Heap used by each phase of the latest build");
+      builds.forEach((map, report) -> report.getPhaseNanos().keySet().forEach(phase -> sample(sb,
+          "map_build_phase_memory_bytes", buildLabels(map, phase), report.getPhaseMemory(phase))));
+      header(sb, "map_objects", "gauge", "Objects of the latest build of each map");
+      builds.forEach((map, report) -> report.getCounts().forEach((type, count) -> sample(sb,
+          "map_objects", "map=\"" + escape(map) + "\",type=\"" + type + "\"", count)));
+    }
+
+    // labelled by simulation, as several can run at the same time
+    List<SimulationController> simulations = new ArrayList<>(
+        SimulationController.getSimulations());
+    metric(sb, "simulations", "gauge", "Simulations alive", "", simulations.size());
+    simulationMetric(sb, simulations, "simulation_running", "gauge",
+        "Whether the simulation is running", s -> s.isRunning() ? 1 : 0);
+    simulationMetric(sb, simulations, "ticks_total", "counter", "Ticks simulated",
+        s -> s.getMetrics().getTicks());
+    simulationMetric(sb, simulations, "ticks_per_second", "gauge",
+        "Ticks simulated per wall-clock second", s -> s.getMetrics().getTicksPerSecond());
+    simulationMetric(sb, simulations, "simulated_seconds_total", "counter", "Simulated time",
+        s -> s.getMetrics().getSimulatedSeconds());
+    simulationMetric(sb, simulations, "wall_clock_seconds_total", "counter",
+        "Wall-clock time since the start", s -> s.getMetrics().getWallClockSeconds());
+    simulationMetric(sb, simulations, "simulation_speed_ratio", "gauge",
+        "Simulated seconds per wall-clock second",
+        s -> s.getMetrics().getSimulationSpeedRatio());
+    simulationMetric(sb, simulations, "last_tick_timestamp_seconds", "gauge",
+        "Time of the last tick", s -> s.getMetrics().getLastTickMillis() / 1000.0);
+    simulationMetric(sb, simulations, "active_trains", "gauge",
+        "Trains travelling between stations", s -> s.getMetrics().getActiveTrains());
+
+    if (simulations.isEmpty()) {
+      return sb.toString();
+    }
+    header(sb, "violations_total", "counter", "Violations detected so far");
+    for (SimulationController simulation : simulations) {
+      for (ViolationSeverity severity : ViolationSeverity.values()) {
+        sample(sb, "violations_total", simulationLabels(simulation) + ",severity=\""
+            + severity.name().toLowerCase() + "\"", simulation.getMetrics().getViolations(severity));
+      }
+    }
+    header(sb, "tick_phase_seconds_total", "counter", "Time spent in each phase of the tick");
+    for (SimulationController simulation : simulations) {
+      for (TickPhase phase : TickPhase.values()) {
+        sample(sb, "tick_phase_seconds_total", simulationLabels(simulation) + ",phase=\""
+            + phase.name().toLowerCase() + "\"", simulation.getMetrics().getPhaseSeconds(phase));
+      }
+    }
+
+    return sb.toString();
+  }
+
+  private static void simulationMetric(StringBuilder sb, List<SimulationController> simulations,
+      String name, String type, String help, ToDoubleFunction<SimulationController> value) {
+    if (simulations.isEmpty()) {
+      return;
+    }
+    header(sb, name, type, help);
+    for (SimulationController simulation : simulations) {
+      sample(sb, name, simulationLabels(simulation), value.applyAsDouble(simulation));
+    }
+  }
+
+  private static String simulationLabels(SimulationController simulation) {
+    return "simulation=\"" + simulation.getID() + "\",map=\""
+        + escape(simulation.getMetrics().getMap()) + "\"";
+  }
+
+  private static void metric(StringBuilder sb, String name, String type, String help,
+      String labels, double value) {
+    header(sb, name, type, help);
+    sample(sb, name, labels, value);
+  }
+
+  private static void header(StringBuilder sb, String name, String type, String help) {
+    sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder sb, String name, String labels, double value) {
+    sb.append(PREFIX).append(name);
+    if (!labels.isEmpty()) {
+      sb.append('{').append(labels).append('}');
+    }
+    sb.append(' ');
+    if (value == Math.rint(value) && !Double.isInfinite(value)) {
+      sb.append((long) value);
+    } else {
+      sb.append(String.format(Locale.ROOT, "%.6f", value));
+    }
+    sb.append('\n');
+  }
+
+  private static String buildLabels(String map, BuildPhase phase) {
+    return "map=\"" + escape(map) + "\",phase=\"" + phase.name().toLowerCase() + "\"";
+  }
+
+  private static String escape(String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,231 @@
+package ft.sim.web;
+
+import com.google.gson.JsonObject;
+import ft.sim.App.AppConfig;
+import ft.sim.visualisation.ReplayFile;
+import ft.sim.visualisation.ReplayFile.Frame;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * Plays a recorded run (see {@link ft.sim.visualisation.ReplayRecorder}) back to a websocket
+ * client, in the same messages as a live simulation in binary mode: the topology, and then an
+ * update message followed by a binary frame for every recorded frame. Playback runs at a multiple
+ * of the recorded simulation time (or as fast as the client takes it if the speed is 0), and can
+ * be paused and moved to any point in time.
+ */
+public class ReplayPlayer {
+
+  protected static transient Logger logger = LoggerFactory.getLogger(ReplayPlayer.class);
+
+  private static final String EXTENSION = ".replay";
+
+  private final SocketSession socketSession;
+  private final ReplayFile replay;
+  private final Thread thread;
+
+  // guarded by this
+  private double speed = 1;
+  private double seekTo = Double.NaN;
+  private boolean paused = false;
+  private boolean stopped = false;
+
+  private ReplayPlayer(SocketSession socketSession, ReplayFile replay) {
+    this.socketSession = socketSession;
+    this.replay = replay;
+    thread = new Thread(this::run, "replay-player");
+    thread.setDaemon(true);
+  }
+
+  /**
+   * Start playing one of the replays in the results directory to the client (stops what it was
+   * playing before)
+   */
+  public static ReplayPlayer play(SocketSession socketSession, String name, double speed,
+      double from) throws IOException {
+    Path path = getReplayPath(name);
+    if (path == null) {
+      throw new IOException("No such replay: " + name);
+    }
+    ReplayPlayer player = new ReplayPlayer(socketSession, new ReplayFile(path));
+    player.speed = speed;
+    player.seekTo = from;
+    ReplayPlayer previous = socketSession.getReplayPlayer();
+    if (previous != null) {
+      previous.stop();
+    }
+    socketSession.setReplayPlayer(player);
+    player.thread.start();
+    return player;
+  }
+
+  /**
+   * The replays that can be played (file names in the results directory)
+   */
+  public static List<String> getReplays() throws IOException {
+    List<String> names = new ArrayList<>();
+    Path directory = Paths.get(AppConfig.outputDir);
+    if (!Files.isDirectory(directory)) {
+      return names;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+      files.forEach(file -> names.add(file.getFileName().toString()));
+    }
+    names.sort(String::compareTo);
+    return names;
+  }
+
+  private static Path getReplayPath(String name) {
+    // only files of the results directory
+    if (name == null || !name.endsWith(EXTENSION) || !Paths.get(name).getFileName().toString()
+        .equals(name)) {
+      return null;
+    }
+    Path path = Paths.get(AppConfig.outputDir, name);
+    return Files.isRegularFile(path) ? path : null;
+  }
+
+  public synchronized void seek(double simulationTime) {
+    seekTo = simulationTime;
+    notifyAll();
+  }
+
+  /**
+   * @param speed multiple of the simulation time, or 0 to play as fast as possible
+   */
+  public synchronized void setSpeed(double speed) {
+    if (speed < 0) {
+      throw new IllegalArgumentException("Replay speed cannot be negative");
+    }
+    this.speed = speed;
+    notifyAll();
+  }
+
+  public synchronized void setPaused(boolean paused) {
+    this.paused = paused;
+    notifyAll();
+  }
+
+  public synchronized void stop() {
+    stopped = true;
+    notifyAll();
+  }
+
+  private void run() {
+    try {
+      TextMessage topology = new TextMessage(replay.getTopology());
+      // frames up to this time are only played to catch up after a seek
+      double catchUpTo = Double.NaN;
+      Frame catchUpFrame = null;
+      double lastFrameTime = Double.NaN;
+      while (true) {
+        double seek;
+        synchronized (this) {
+          while (!stopped && paused && Double.isNaN(seekTo) && Double.isNaN(catchUpTo)) {
+            wait();
+          }
+          if (stopped) {
+            break;
+          }
+          seek = seekTo;
+          seekTo = Double.NaN;
+        }
+        if (!Double.isNaN(seek)) {
+          replay.seek(seek);
+          // clients start over on a topology message
+          socketSession.sendMessage(topology);
+          sendInfo();
+          catchUpTo = seek;
+          lastFrameTime = Double.NaN;
+        }
+
+        Frame frame = replay.next();
+        if (frame == null) {
+          // the end: wait to be moved back (or stopped)
+          if (catchUpFrame != null) {
+            socketSession.sendMessage(new BinaryMessage(catchUpFrame.getState()));
+            catchUpFrame = null;
+          }
+          synchronized (this) {
+            while (!stopped && Double.isNaN(seekTo)) {
+              wait();
+            }
+          }
+          continue;
+        }
+        double time = frame.getSimulationTimeElapsed();
+        if (!Double.isNaN(catchUpTo) && time < catchUpTo) {
+          // the violations on the way, but only the last state
+          socketSession.sendMessage(new TextMessage(frame.getUpdate()));
+          catchUpFrame = frame;
+          continue;
+        }
+        catchUpTo = Double.NaN;
+        catchUpFrame = null;
+        if (!Double.isNaN(lastFrameTime) && !waitFor(time - lastFrameTime)) {
+          // seeked or stopped while waiting: the frame is read again from the keyframe
+          continue;
+        }
+        socketSession.sendMessage(new TextMessage(frame.getUpdate()));
+        socketSession.sendMessage(new BinaryMessage(frame.getState()));
+        lastFrameTime = time;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      logger.warn("Stopped replaying to client: {}", e.getMessage());
+    } finally {
+      try {
+        replay.close();
+      } catch (IOException e) {
+        logger.warn("Failed to close replay: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Wait for the (scaled) simulation time between two frames
+   *
+   * @return false if seeked or stopped in the meantime
+   */
+  private synchronized boolean waitFor(double simulationSeconds) throws InterruptedException {
+    long last = System.nanoTime();
+    long waited = 0;
+    while (!stopped && Double.isNaN(seekTo)) {
+      if (paused) {
+        wait();
+      } else {
+        long remaining = speed == 0 ? 0 : (long) (simulationSeconds / speed * 1e9) - waited;
+        if (remaining <= 0) {
+          return true;
+        }
+        wait(Math.max(1, remaining / 1_000_000));
+      }
+      long now = System.nanoTime();
+      if (!paused) {
+        waited += now - last;
+      }
+      last = now;
+    }
+    return false;
+  }
+
+  private void sendInfo() throws IOException {
+    JsonObject info = new JsonObject();
+    info.addProperty("type", "replay");
+    info.addProperty("duration", replay.getDuration());
+    synchronized (this) {
+      info.addProperty("speed", speed);
+    }
+    socketSession.sendMessage(new TextMessage(info.toString()));
+  }
+}
@@ -4,6 +4,7 @@ package ft.sim.web;
  * Created by Sina on 20/02/2017.
  */
 
+import ft.sim.simulation.SimulationCommand;
 import ft.sim.simulation.SimulationController;
 import ft.sim.world.map.MapBuilderHelper;
 import java.util.LinkedHashMap;
@@ -50,7 +51,8 @@ public class RootWebController {
   @RequestMapping("/trains/start")
   public String trainsStart(Model model) {
 
-    SimulationController.getInstance().startTrains();
+    SimulationController simulation = SimulationController.getInstance();
+    simulation.submit(new SimulationCommand("start trains", simulation::startTrains));
     model.addAttribute("name", "Trains started");
 
     return "hi";
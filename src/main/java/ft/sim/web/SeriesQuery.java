@@ -0,0 +1,74 @@
+package ft.sim.web;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import ft.sim.simulation.SimulationController;
+import ft.sim.statistics.StatisticsController;
+import ft.sim.statistics.StatisticsRollups;
+import ft.sim.statistics.TimeSeries;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Answers queries for the statistics rollups of a simulation (see {@link StatisticsRollups}),
+ * over HTTP (<code>/series</code> on the metrics endpoint) or the websocket
+ * (<code>series</code> command). The <code>simulation</code> is given by its ID; without one,
+ * websocket clients get the rollups of the simulation they are attached to and HTTP clients the
+ * ones of the latest run. Without a <code>name</code>, the names of the series are listed;
+ * otherwise the buckets of the series between <code>from</code> and <code>to</code> (simulated
+ * seconds) are returned, at a resolution that fits in <code>points</code> buckets.
+ */
+public class SeriesQuery {
+
+  private static final int DEFAULT_POINTS = 1000;
+  private static final int MAX_POINTS = 10000;
+
+  private SeriesQuery() {
+  }
+
+  /**
+   * @param attached the simulation asked about when the query doesn't give one (null for the
+   * latest run)
+   */
+  static JsonObject answer(Map<String, String> params, SimulationController attached) {
+    JsonObject answer = new JsonObject();
+    answer.addProperty("type", "series");
+    Optional<StatisticsRollups> rollups = getRollups(params.get("simulation"), attached);
+    String name = params.get("name");
+    if (name == null) {
+      answer.add("names", new Gson().toJsonTree(
+          rollups.map(StatisticsRollups::getNames).orElse(Collections.emptyList())));
+      return answer;
+    }
+    Optional<TimeSeries> series = rollups.flatMap(r -> r.get(name));
+    if (!series.isPresent()) {
+      throw new IllegalArgumentException("No such series: " + name);
+    }
+    double from = params.containsKey("from") ? Double.valueOf(params.get("from")) : 0;
+    double to = params.containsKey("to") ? Double.valueOf(params.get("to"))
+        : Double.POSITIVE_INFINITY;
+    int points = params.containsKey("points") ? Integer.valueOf(params.get("points"))
+        : DEFAULT_POINTS;
+    if (points <= 0 || points > MAX_POINTS) {
+      throw new IllegalArgumentException("Number of points has to be between 1 and " + MAX_POINTS);
+    }
+    JsonObject selection = StatisticsRollups.toJson(series.get().select(from, to, points));
+    selection.entrySet().forEach(entry -> answer.add(entry.getKey(), entry.getValue()));
+    return answer;
+  }
+
+  private static Optional<StatisticsRollups> getRollups(String simulationID,
+      SimulationController attached) {
+    if (simulationID != null) {
+      SimulationController simulation = SimulationController
+          .getSimulation(Integer.valueOf(simulationID))
+          .orElseThrow(() -> new IllegalArgumentException("No such simulation: " + simulationID));
+      return Optional.ofNullable(simulation.getRollups());
+    }
+    if (attached != null) {
+      return Optional.ofNullable(attached.getRollups());
+    }
+    return StatisticsController.getLatestRollups();
+  }
+}
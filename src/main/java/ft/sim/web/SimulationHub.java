@@ -0,0 +1,98 @@
+package ft.sim.web;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import ft.sim.simulation.SimulationController;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * Which simulation each websocket client is attached to. Clients can list the simulations that
+ * are alive, attach to one by its ID (joining the group its updates are broadcast to) and detach
+ * from it, without affecting the simulation itself. A client that isn't attached to anything
+ * talks to the default simulation (see {@link SimulationController#getInstance()}), and a client
+ * can start a new simulation alongside the others (see {@link SimulationController#newInstance}).
+ */
+public class SimulationHub {
+
+  protected static transient Logger logger = LoggerFactory.getLogger(SimulationHub.class);
+
+  private static final Map<SocketSession, SimulationController> attachments =
+      new ConcurrentHashMap<>();
+
+  private SimulationHub() {
+  }
+
+  /**
+   * The simulation the client's commands go to
+   */
+  public static SimulationController getSimulation(SocketSession socketSession) {
+    SimulationController simulation = attachments.get(socketSession);
+    if (simulation == null || simulation.isKilled()) {
+      return SimulationController.getInstance();
+    }
+    return simulation;
+  }
+
+  /**
+   * Attach the client to a simulation (detaching it from the previous one)
+   *
+   * @return false if there is no simulation with that ID
+   */
+  public static boolean attach(SocketSession socketSession, int simulationID) {
+    Optional<SimulationController> simulation = SimulationController.getSimulation(simulationID);
+    simulation.ifPresent(s -> attach(socketSession, s));
+    return simulation.isPresent();
+  }
+
+  public static void attach(SocketSession socketSession, SimulationController simulation) {
+    SimulationController previous = attachments.put(socketSession, simulation);
+    if (previous != null && previous != simulation) {
+      previous.removeSocketSessions(socketSession);
+    }
+    simulation.setSocketSession(socketSession);
+    logger.info("Client {} attached to simulation {}", socketSession.getSession().getId(),
+        simulation.getID());
+  }
+
+  /**
+   * Detach the clients of a simulation that was killed
+   */
+  public static void forget(SimulationController simulation) {
+    attachments.values().removeIf(attached -> attached == simulation);
+  }
+
+  public static void detach(SocketSession socketSession) {
+    SimulationController simulation = attachments.remove(socketSession);
+    if (simulation != null) {
+      simulation.removeSocketSessions(socketSession);
+    }
+  }
+
+  /**
+   * Send the client a <code>simulations</code> message listing the simulations it can attach to
+   */
+  public static void sendSimulations(SocketSession socketSession) throws IOException {
+    SimulationController attached = attachments.get(socketSession);
+    JsonArray list = new JsonArray();
+    for (SimulationController simulation : SimulationController.getSimulations()) {
+      JsonObject entry = new JsonObject();
+      entry.addProperty("id", simulation.getID());
+      entry.addProperty("map", simulation.getMetrics().getMap());
+      entry.addProperty("running", simulation.isRunning());
+      entry.addProperty("ticksElapsed", simulation.getTicksElapsed());
+      entry.addProperty("clients", simulation.getSubscriberCount());
+      entry.addProperty("attached", simulation == attached);
+      list.add(entry);
+    }
+    JsonObject message = new JsonObject();
+    message.addProperty("type", "simulations");
+    message.add("simulations", list);
+    socketSession.sendMessage(new TextMessage(message.toString()));
+  }
+}
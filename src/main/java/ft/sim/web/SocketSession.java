@@ -3,12 +3,17 @@ package ft.sim.web;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import ft.sim.simulation.SimulationController;
+import ft.sim.visualisation.Viewport;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 /**
@@ -17,6 +22,15 @@ import org.springframework.web.socket.WebSocketSession;
 public class SocketSession {
 
   private final WebSocketSession session;
+  // receive the trains and signals in binary frames (see BinaryFrameEncoder)
+  private volatile boolean binaryUpdates = false;
+  // what part of the map to receive updates about, and how often
+  private volatile Viewport viewport = Viewport.EVERYTHING;
+  // recorded run being played back to the client, if any
+  private volatile ReplayPlayer replayPlayer = null;
+  // replies sent on a sender thread (see sendLater)
+  private final Queue<WebSocketMessage<?>> outbox = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean sendingOutbox = new AtomicBoolean(false);
 
   private static final Gson gson = new Gson();
 
@@ -33,7 +47,7 @@ public class SocketSession {
       return "OK";
     }*/
 
-    SimulationController simulation = SimulationController.getInstance();
+    SimulationController simulation = SimulationHub.getSimulation(this);
     /*if (simulation.isKilled()) {
       simulation = SimulationController.newInstance();
     }*/
@@ -48,11 +62,14 @@ public class SocketSession {
         return CommandHelper.processCommand(simulation, map, this) ? "OK" : "FAIL";
       }
       if (map.containsKey("type") && map.get("type").equals("set")) {
-        return CommandHelper.processSetCommand(simulation, map) ? "OK" : "FAIL";
+        return CommandHelper.processSetCommand(simulation, map, this) ? "OK" : "FAIL";
       }
     } catch (com.google.gson.JsonSyntaxException ex) {
       // wasn't json
       ex.printStackTrace();
+    } catch (IllegalArgumentException ex) {
+      logger.warn("Invalid command {}: {}", message, ex.getMessage());
+      return "FAIL";
     }
 
     return "echo: " + message;
@@ -62,6 +79,71 @@ public class SocketSession {
     return session;
   }
 
+  /**
+   * Send a message to the client (sessions don't support concurrent sends)
+   */
+  public synchronized void sendMessage(WebSocketMessage<?> message) throws IOException {
+    session.sendMessage(message);
+  }
+
+  /**
+   * Queue a message to the client, to be sent in order on one of the threads of the {@link
+   * UpdatePublisher}, so that a client that is slow to take it only holds up its own messages
+   */
+  public void sendLater(WebSocketMessage<?> message) {
+    outbox.offer(message);
+    drainOutbox();
+  }
+
+  private void drainOutbox() {
+    if (sendingOutbox.compareAndSet(false, true)) {
+      UpdatePublisher.senders.execute(this::sendOutbox);
+    }
+  }
+
+  private void sendOutbox() {
+    try {
+      WebSocketMessage<?> message;
+      while ((message = outbox.poll()) != null) {
+        sendMessage(message);
+      }
+    } catch (Exception e) {
+      logger.warn("Failed to send message, dropping {} queued ones: {}", outbox.size(),
+          e.getMessage());
+      outbox.clear();
+    } finally {
+      sendingOutbox.set(false);
+    }
+    // a message may have been queued just before the flag was cleared
+    if (!outbox.isEmpty()) {
+      drainOutbox();
+    }
+  }
+
+  public boolean isBinaryUpdates() {
+    return binaryUpdates;
+  }
+
+  public void setBinaryUpdates(boolean binaryUpdates) {
+    this.binaryUpdates = binaryUpdates;
+  }
+
+  public Viewport getViewport() {
+    return viewport;
+  }
+
+  public void setViewport(Viewport viewport) {
+    this.viewport = viewport;
+  }
+
+  public ReplayPlayer getReplayPlayer() {
+    return replayPlayer;
+  }
+
+  public void setReplayPlayer(ReplayPlayer replayPlayer) {
+    this.replayPlayer = replayPlayer;
+  }
+
   @Deprecated
   void boop() {
     int i = 1;
@@ -0,0 +1,360 @@
+package ft.sim.web;
+
+import com.google.gson.JsonObject;
+import ft.sim.monitoring.Violation;
+import ft.sim.visualisation.BinaryFrameEncoder;
+import ft.sim.visualisation.SignalLocations;
+import ft.sim.visualisation.Viewport;
+import ft.sim.visualisation.VisualisationJson;
+import ft.sim.visualisation.WorldUpdate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+/**
+ * Sends the updates of a simulation to the connected clients, away from the simulation thread.
+ *
+ * The simulation thread only hands over (immutable) {@link WorldUpdate}s; if the publisher hasn't
+ * picked up the previous one yet, the two are merged. Each update is serialised once, and then
+ * put into a single-message slot per client, from which it is sent by a sender thread. A client
+ * that is too slow to take the previous message out of its slot has it replaced, by a snapshot of
+ * the current state (so that it doesn't miss any signal change or violation): slow clients see
+ * fewer frames, but never hold up the simulation or the other clients.
+ *
+ * Clients that asked for binary updates get the trains and signals of the current state in a
+ * binary frame (see {@link BinaryFrameEncoder}), and only the violations and counters in JSON.
+ *
+ * Clients can also narrow their subscription down to a {@link Viewport}: they then only get the
+ * trains and signals inside it (a binary frame still has every signal's bit), at most at the
+ * viewport's rate. Frames skipped because of the rate are caught up on with a snapshot, like
+ * dropped ones.
+ */
+public class UpdatePublisher {
+
+  protected static transient Logger logger = LoggerFactory.getLogger(UpdatePublisher.class);
+
+  // sends messages to the clients (a thread is only busy with a client while sending to it)
+  static final ExecutorService senders = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "websocket-sender");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final Map<SocketSession, Subscriber> subscribers = new ConcurrentHashMap<>();
+
+  // handed over by the simulation thread, guarded by this
+  private JsonObject pendingTopology = null;
+  private SignalLocations pendingSignalLocations = null;
+  private WorldUpdate pendingUpdate = null;
+  private boolean closed = false;
+
+  // only used by the publisher thread
+  private final VisualisationJson json = new VisualisationJson();
+  private TextMessage topology = null;
+  private SignalLocations signalLocations = null;
+  private final State state = new State();
+
+  public UpdatePublisher() {
+    Thread publisherThread = new Thread(this::run, "websocket-publisher");
+    publisherThread.setDaemon(true);
+    publisherThread.start();
+  }
+
+  public void subscribe(SocketSession socketSession) {
+    subscribers.computeIfAbsent(socketSession, Subscriber::new);
+  }
+
+  public void unsubscribe(SocketSession socketSession) {
+    subscribers.remove(socketSession);
+  }
+
+  public boolean hasSubscribers() {
+    return !subscribers.isEmpty();
+  }
+
+  public int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /**
+   * Start publishing a (new) world: its topology and the complete state it's in
+   */
+  public synchronized void publishTopology(JsonObject topology, SignalLocations signalLocations,
+      WorldUpdate snapshot) {
+    pendingTopology = topology;
+    pendingSignalLocations = signalLocations;
+    pendingUpdate = snapshot;
+    notifyAll();
+  }
+
+  public synchronized void publish(WorldUpdate update) {
+    pendingUpdate = pendingUpdate == null ? update : pendingUpdate.mergeWith(update);
+    notifyAll();
+  }
+
+  /**
+   * Stop once the pending update has been handed to the clients
+   */
+  public synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  private void run() {
+    while (true) {
+      JsonObject newTopology;
+      SignalLocations newSignalLocations;
+      WorldUpdate update;
+      synchronized (this) {
+        while (pendingUpdate == null && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (pendingUpdate == null) {
+          break;
+        }
+        newTopology = pendingTopology;
+        newSignalLocations = pendingSignalLocations;
+        update = pendingUpdate;
+        pendingTopology = null;
+        pendingSignalLocations = null;
+        pendingUpdate = null;
+      }
+
+      if (newTopology != null) {
+        topology = new TextMessage(VisualisationJson.gson.toJson(newTopology));
+        signalLocations = newSignalLocations;
+        state.clear();
+      }
+      if (topology == null) {
+        // nothing can be made of updates before the topology
+        continue;
+      }
+      state.apply(update);
+
+      Frames frames = new Frames(update);
+      long now = System.nanoTime();
+      for (Subscriber subscriber : subscribers.values()) {
+        boolean binary = subscriber.socketSession.isBinaryUpdates();
+        Viewport viewport = subscriber.socketSession.getViewport();
+        if (subscriber.viewport == viewport
+            && now - subscriber.lastFrameNanos < viewport.getMinIntervalNanos()) {
+          subscriber.missedFrames = true;
+          continue;
+        }
+        // if it missed (or never had) part of the state, it gets all of it
+        boolean catchUp = subscriber.missedFrames || subscriber.topologySent != topology
+            || subscriber.viewport != viewport;
+        subscriber.lastFrameNanos = now;
+        subscriber.missedFrames = false;
+        subscriber.viewport = viewport;
+        if (catchUp) {
+          subscriber.slot.set(frames.getSnapshot(binary, viewport));
+        } else if (subscriber.slot.getAndSet(frames.getDelta(binary, viewport)) != null) {
+          subscriber.slot.set(frames.getSnapshot(binary, viewport));
+        }
+        subscriber.drain();
+      }
+    }
+    logger.info("Stopped publishing updates to {} clients", subscribers.size());
+    subscribers.clear();
+  }
+
+  /**
+   * The messages of one frame, and the topology of the world they are about
+   */
+  private static class Frame {
+
+    private final TextMessage topology;
+    private final List<WebSocketMessage<?>> messages;
+
+    Frame(TextMessage topology, WebSocketMessage<?>... messages) {
+      this.topology = topology;
+      this.messages = Arrays.asList(messages);
+    }
+  }
+
+  /**
+   * The variants of a frame, each serialised only if a client needs it
+   */
+  private class Frames {
+
+    private final WorldUpdate update;
+    private WorldUpdate snapshotUpdate = null;
+    private Frame delta = null;
+    private Frame snapshot = null;
+    private TextMessage liteDelta = null;
+    private TextMessage liteSnapshot = null;
+    private byte[] binaryState = null;
+
+    Frames(WorldUpdate update) {
+      this.update = update;
+    }
+
+    Frame getDelta(boolean binary, Viewport viewport) {
+      if (!viewport.isWholeMap()) {
+        return getFrame(update, binary, viewport);
+      }
+      if (binary) {
+        if (liteDelta == null) {
+          liteDelta = new TextMessage(json.toJson(update.withoutTrainsAndSignals()));
+        }
+        return new Frame(topology, liteDelta, getBinaryState());
+      }
+      if (delta == null) {
+        delta = new Frame(topology, new TextMessage(json.toJson(update)));
+      }
+      return delta;
+    }
+
+    Frame getSnapshot(boolean binary, Viewport viewport) {
+      if (!viewport.isWholeMap()) {
+        return getFrame(getSnapshotUpdate(), binary, viewport);
+      }
+      if (binary) {
+        if (liteSnapshot == null) {
+          liteSnapshot = new TextMessage(
+              json.toJson(getSnapshotUpdate().withoutTrainsAndSignals()));
+        }
+        return new Frame(topology, liteSnapshot, getBinaryState());
+      }
+      if (snapshot == null) {
+        snapshot = new Frame(topology, new TextMessage(json.toJson(getSnapshotUpdate())));
+      }
+      return snapshot;
+    }
+
+    private WorldUpdate getSnapshotUpdate() {
+      if (snapshotUpdate == null) {
+        snapshotUpdate = state.toUpdate();
+      }
+      return snapshotUpdate;
+    }
+
+    /**
+     * A frame with only what's in the viewport (serialised for each client)
+     */
+    private Frame getFrame(WorldUpdate source, boolean binary, Viewport viewport) {
+      if (binary) {
+        TextMessage lite = new TextMessage(json.toJson(source.withoutTrainsAndSignals()));
+        return new Frame(topology,
+            lite, new BinaryMessage(
+            BinaryFrameEncoder.encode(getSnapshotUpdate().withTrainsWithin(viewport))));
+      }
+      return new Frame(topology, new TextMessage(json.toJson(
+          source.withTrainsWithin(viewport).withSignalsWithin(viewport, signalLocations))));
+    }
+
+    private BinaryMessage getBinaryState() {
+      if (binaryState == null) {
+        binaryState = BinaryFrameEncoder.encode(getSnapshotUpdate()).array();
+      }
+      // sending consumes the message's buffer, so every client gets its own (over the same bytes)
+      return new BinaryMessage(binaryState);
+    }
+  }
+
+  /**
+   * The state of the world that clients catch up with: the signals and violations of every update
+   * so far, and the trains and counters of the latest one. It's updated in place with each update
+   * (only by the publisher thread), and only turned into an update when a client needs it.
+   */
+  static class State {
+
+    private final Map<Integer, String> signals = new LinkedHashMap<>();
+    // only appended to, the first one being violation number violationsFrom
+    private final List<Violation> violations = new ArrayList<>();
+    private int violationsFrom = 0;
+    private WorldUpdate latest = null;
+
+    void clear() {
+      signals.clear();
+      violations.clear();
+      violationsFrom = 0;
+      latest = null;
+    }
+
+    void apply(WorldUpdate update) {
+      if (latest == null) {
+        violationsFrom = update.getViolationsFrom();
+      }
+      signals.putAll(update.getSignals());
+      // skip the violations it already has
+      List<Violation> newer = update.getViolations();
+      int overlap = violationsFrom + violations.size() - update.getViolationsFrom();
+      violations.addAll(newer.subList(Math.min(Math.max(0, overlap), newer.size()),
+          newer.size()));
+      latest = update;
+    }
+
+    /**
+     * The state as an update, over the state's own maps (so only while the frame is made)
+     */
+    WorldUpdate toUpdate() {
+      return latest.withState(signals, violationsFrom, violations);
+    }
+  }
+
+  private class Subscriber {
+
+    private final SocketSession socketSession;
+    private final AtomicReference<Frame> slot = new AtomicReference<>();
+    private final AtomicBoolean sending = new AtomicBoolean(false);
+    // topology of the world the client has
+    private volatile TextMessage topologySent = null;
+    // only used by the publisher thread
+    private Viewport viewport = null;
+    private long lastFrameNanos = 0;
+    private boolean missedFrames = false;
+
+    Subscriber(SocketSession socketSession) {
+      this.socketSession = socketSession;
+    }
+
+    void drain() {
+      if (sending.compareAndSet(false, true)) {
+        senders.execute(this::send);
+      }
+    }
+
+    private void send() {
+      try {
+        Frame frame;
+        while ((frame = slot.getAndSet(null)) != null) {
+          if (topologySent != frame.topology) {
+            socketSession.sendMessage(frame.topology);
+            topologySent = frame.topology;
+          }
+          for (WebSocketMessage<?> message : frame.messages) {
+            socketSession.sendMessage(message);
+          }
+        }
+      } catch (Exception e) {
+        logger.warn("Failed to send update, closing the client's subscription: {}",
+            e.getMessage());
+        subscribers.remove(socketSession);
+      } finally {
+        sending.set(false);
+      }
+      // an update may have arrived just before the flag was cleared
+      if (slot.get() != null && subscribers.containsKey(socketSession)) {
+        drain();
+      }
+    }
+  }
+}
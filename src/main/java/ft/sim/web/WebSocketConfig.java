@@ -24,8 +24,11 @@ public class WebSocketConfig extends SpringBootServletInitializer
     if (AppConfig.isNonInteractive) {
       return;
     }
-    registry.addHandler(new WebSocketHandler(), "/ws").withSockJS()
+    WebSocketHandler handler = new WebSocketHandler();
+    registry.addHandler(handler, "/ws").withSockJS()
         .setClientLibraryUrl("https://cdn.jsdelivr.net/sockjs/1.1.4/sockjs.min.js");
+    // plain websocket endpoint, for clients that want binary updates
+    registry.addHandler(handler, "/ws-native");
   }
 
   @Override
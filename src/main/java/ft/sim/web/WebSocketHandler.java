@@ -4,6 +4,8 @@ package ft.sim.web;
  * Created by Sina on 27/02/2017.
  */
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -21,14 +23,16 @@ public class WebSocketHandler extends TextWebSocketHandler {
 
   private AtomicReference<String> messagePayload;
 
-  private SocketSession ss;
+  // one handler serves all the connections
+  private final Map<String, SocketSession> socketSessions = new ConcurrentHashMap<>();
 
   @Override
   public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-    ss = new SocketSession(session);
+    SocketSession ss = new SocketSession(session);
+    socketSessions.put(session.getId(), ss);
 
     TextMessage message = new TextMessage("Socket session opened!");
-    session.sendMessage(message);
+    ss.sendMessage(message);
     logger.info("Opened new session in instance " + this);
     //boop();
   }
@@ -45,9 +49,10 @@ public class WebSocketHandler extends TextWebSocketHandler {
     thread.start();*/
 
     this.logger.info("Received: " + message);
+    SocketSession ss = socketSessions.get(session.getId());
     String msg = ss.getResponse(message.getPayload());
     logger.info("Replying: " + msg);
-    session.sendMessage(new TextMessage(msg));
+    ss.sendMessage(new TextMessage(msg));
     //session.close();
     //this.messagePayload.set(message.getPayload());
     //this.latch.countDown();
@@ -61,5 +66,17 @@ public class WebSocketHandler extends TextWebSocketHandler {
     logger.info("session closed: " + this);
   }
 
+  @Override
+  public void afterConnectionClosed(WebSocketSession session, CloseStatus status)
+      throws Exception {
+    SocketSession ss = socketSessions.remove(session.getId());
+    if (ss != null) {
+      SimulationHub.detach(ss);
+      if (ss.getReplayPlayer() != null) {
+        ss.getReplayPlayer().stop();
+      }
+    }
+  }
+
 
 }
\ No newline at end of file
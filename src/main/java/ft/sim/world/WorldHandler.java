@@ -11,8 +11,9 @@ import ft.sim.statistics.StatisticsItem;
 import ft.sim.statistics.StatsHelper;
 import ft.sim.world.journey.Journey;
 import ft.sim.world.map.GlobalMap;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,12 +23,12 @@ import org.slf4j.LoggerFactory;
 public class WorldHandler {
 
   protected static final transient Logger logger = LoggerFactory.getLogger(WorldHandler.class);
-  private static final int SPEED_RECORD_TICK_INTERVAL = 10;
-  private static Map<Journey, GlobalMap> journeysWorlds = new HashMap<>();
-  private static Map<GlobalMap, WorldHandler> instances = new HashMap<>();
+  private static Map<Journey, GlobalMap> journeysWorlds = new ConcurrentHashMap<>();
+  private static Map<GlobalMap, WorldHandler> instances = new ConcurrentHashMap<>();
   private GlobalMap world;
   private double time = 0;
   private long tick = 0;
+  private int activeTrains = 0;
 
   private WorldHandler(GlobalMap map) {
     this.world = map;
@@ -38,6 +39,10 @@ public class WorldHandler {
     return instances.computeIfAbsent(world, WorldHandler::new);
   }
 
+  public static Optional<WorldHandler> getOptionalInstance(GlobalMap world) {
+    return Optional.ofNullable(instances.get(world));
+  }
+
   public static void endWorld(GlobalMap world) {
     if (instances.containsKey(world)) {
       getInstance(world).getWorld().getJourneys().values().forEach(j -> journeysWorlds.remove(j));
@@ -62,20 +67,25 @@ public class WorldHandler {
   }
 
   public void tick(double time) {
-    tick++;
-    // tick all journeys
-    for (Map.Entry<Integer, Journey> entry : world.getJourneys().entrySet()) {
-      Journey j = entry.getValue();
-      j.tick(time);
-      j.getJourneyInformation().update(j);
+    // the geometry of the world may be shared, what changes in the tick is in its state
+    WorldState previous = WorldState.setCurrent(world.getState());
+    try {
+      tick++;
+      // tick all journeys
+      for (Map.Entry<Integer, Journey> entry : world.getJourneys().entrySet()) {
+        Journey j = entry.getValue();
+        j.tick(time);
+      }
+
+      // tick all stations
+      world.getStations().forEach((id, station) -> station.tick(time));
+
+      this.time += time;
+
+      logWorldStatistics();
+    } finally {
+      WorldState.setCurrent(previous);
     }
-
-    // tick all stations
-    world.getStations().forEach((id, station) -> station.tick(time));
-
-    this.time += time;
-
-    logWorldStatistics();
   }
 
   private void logWorldStatistics() {
@@ -83,6 +93,7 @@ public class WorldHandler {
         .filter(Journey::isInProgress).filter(j -> !j.getTrain().isAtStation()).count();
     int numTrainsAtStation = (int) world.getJourneys().values().stream()
         .filter(Journey::isInProgress).filter(j -> j.getTrain().isAtStation()).count();
+    activeTrains = numTrainsActive;
 
     // Track max active trains (updates existing data if higher)
     StatisticsItem stat = StatsHelper.getStatItem(MAX_ACTIVE_TRAINS);
@@ -102,14 +113,13 @@ public class WorldHandler {
       StatsHelper.track(MIN_STATION_TRAINS, numTrainsAtStation);
     }
 
-    if (tick % SPEED_RECORD_TICK_INTERVAL == 0) {
-      StatsHelper.log(STATION_TRAINS, numTrainsAtStation);
-      StatsHelper.log(ACTIVE_TRAINS, numTrainsActive);
+    // how often these are recorded is decided by their sampling policy (see defaults.yaml)
+    StatsHelper.log(STATION_TRAINS, numTrainsAtStation);
+    StatsHelper.log(ACTIVE_TRAINS, numTrainsActive);
 
-      world.getJourneys().values().stream().filter(Journey::isInProgress).forEach(j -> {
-        StatsHelper.logFor(TRAIN_SPEED, j.getTrain(), j.getTrain().getEngine().getSpeed());
-      });
-    }
+    world.getJourneys().values().stream().filter(Journey::isInProgress).forEach(j -> {
+      StatsHelper.logFor(TRAIN_SPEED, j.getTrain(), j.getTrain().getEngine().getSpeed());
+    });
   }
 
   public double getTime() {
@@ -119,4 +129,11 @@ public class WorldHandler {
   public long getTick() {
     return tick;
   }
+
+  /**
+   * Number of trains travelling (in progress and not at a station) as of the last tick
+   */
+  public int getActiveTrains() {
+    return activeTrains;
+  }
 }
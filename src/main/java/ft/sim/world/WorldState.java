@@ -0,0 +1,85 @@
+package ft.sim.world;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * What changes during a run of a world: the status of its signals, the data of its active
+ * balises, the trains at its stations, the position of its switches and the trails of the trains
+ * on its tracks.
+ *
+ * The tracks, stations, switches, signals and balises of a world are its geometry, which is
+ * shared by all the worlds of the same map (see {@link ft.sim.world.map.MapTopology}). They keep
+ * their state in the state of the world being simulated, by the current thread, rather than in
+ * fields of their own. The thread simulating a world (or building it, or looking at it) sets its
+ * state as the current one with {@link #setCurrent(WorldState)}.
+ */
+public final class WorldState {
+
+  private static final ThreadLocal<WorldState> current = new ThreadLocal<>();
+
+  // state of each object of the geometry, by identity (none of them overrides equals)
+  private final Map<Object, Object> states = new ConcurrentHashMap<>();
+
+  /**
+   * The state of the world simulated by the current thread
+   */
+  public static WorldState getCurrent() {
+    WorldState state = current.get();
+    if (state == null) {
+      throw new IllegalStateException("The state of the world is used by thread "
+          + Thread.currentThread().getName() + ", which doesn't simulate any world");
+    }
+    return state;
+  }
+
+  /**
+   * Set the state of the world the current thread simulates
+   *
+   * @return the state it simulated before (null if none)
+   */
+  public static WorldState setCurrent(WorldState state) {
+    WorldState previous = current.get();
+    if (state == null) {
+      current.remove();
+    } else {
+      current.set(state);
+    }
+    return previous;
+  }
+
+  /**
+   * The state of an object of the geometry in the current run, created the first time it is asked
+   * for (for state that is changed in place)
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T of(Object owner, Supplier<T> initial) {
+    Map<Object, Object> states = getCurrent().states;
+    Object state = states.get(owner);
+    if (state == null) {
+      state = initial.get();
+      Object existing = states.putIfAbsent(owner, state);
+      if (existing != null) {
+        state = existing;
+      }
+    }
+    return (T) state;
+  }
+
+  /**
+   * The value of an object of the geometry in the current run, or the given one if it wasn't set
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T get(Object owner, T initial) {
+    Object value = getCurrent().states.get(owner);
+    return value == null ? initial : (T) value;
+  }
+
+  /**
+   * Set the value of an object of the geometry in the current run
+   */
+  public static void set(Object owner, Object value) {
+    getCurrent().states.put(owner, value);
+  }
+}
@@ -2,12 +2,15 @@ package ft.sim.world.connectables;
 
 import ft.sim.world.placeables.Placeable;
 import ft.sim.world.train.TrainTrail;
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Objects;
 
 /**
+ * A section of a track, by its index on the track. Sections aren't kept as objects of their own:
+ * the placeables on them are kept by their track, and sections are created as they are asked for
+ * (see {@link Track#getSections()}), so a world doesn't take memory for every metre of its tracks.
+ * Two sections are equal when they are the same section of the same track.
+ *
  * Created by Sina on 21/02/2017.
  */
 public class Section {
@@ -15,26 +18,55 @@ public class Section {
   // By default, each section is 1 metres
   private static final transient int DEFAULT_LENGTH = 1;
   private static final transient int length = Section.DEFAULT_LENGTH;
-  Set<Placeable> placeables = new HashSet<>();
+  private final transient Track track;
+  private final int index;
 
+  Section(Track track, int index) {
+    this.track = track;
+    this.index = index;
+  }
 
   public int getLength() {
     return length;
   }
 
+  public Track getTrack() {
+    return track;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
   public void addPlaceable(Placeable p) {
-    placeables.add(p);
+    track.addSectionPlaceable(index, p);
     if (p instanceof TrainTrail) {
       ((TrainTrail) p).nowOnSection(this);
     }
   }
 
   public List<Placeable> getPlaceables() {
-    return new ArrayList<>(placeables);
+    return track.getSectionPlaceables(index);
   }
 
   public void removePlacebale(Placeable placeable) {
-    placeables.remove(placeable);
+    track.removeSectionPlaceable(index, placeable);
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Section)) {
+      return false;
+    }
+    Section section = (Section) o;
+    return index == section.index && track == section.track;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(System.identityHashCode(track), index);
+  }
 }
@@ -6,10 +6,12 @@ import ft.sim.simulation.Tickable;
 import ft.sim.statistics.StatisticsVariable;
 import ft.sim.statistics.StatsHelper;
 import ft.sim.world.WorldHandler;
+import ft.sim.world.WorldState;
 import ft.sim.world.signalling.SignalController;
 import ft.sim.world.signalling.SignalType;
 import ft.sim.world.train.Train;
 import ft.sim.world.train.TrainObjective;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -32,10 +34,6 @@ public class Station implements Connectable, Tickable {
   private int length = 400;
   private int reservedCapacity = 0;
 
-  private Map<Train, Double> trains = new LinkedHashMap<>();
-  private Set<Train> trainsLeaving = new HashSet<>();
-  private Set<Train> trainsEntering = new HashSet<>();
-
   private Map<Track, SignalController> nextBlockSignalController = new HashMap<>();
 
   private int stationID = 0;
@@ -50,7 +48,18 @@ public class Station implements Connectable, Tickable {
     this.nextBlockSignalController.put(nextTrack, nextBlockSignalController);
   }
 
+  /**
+   * The trains at the station in the current run (see {@link WorldState})
+   */
+  private Occupancy getOccupancy() {
+    return WorldState.of(this, Occupancy::new);
+  }
+
   public void enteredTrain(Train train) {
+    Occupancy occupancy = getOccupancy();
+    Map<Train, Double> trains = occupancy.trains;
+    Set<Train> trainsLeaving = occupancy.trainsLeaving;
+    Set<Train> trainsEntering = occupancy.trainsEntering;
     if (trains.containsKey(train) || trainsLeaving.contains(train)) {
       return;
     }
@@ -64,6 +73,7 @@ public class Station implements Connectable, Tickable {
 
   @Override
   public void entered(Train train) {
+    Set<Train> trainsEntering = getOccupancy().trainsEntering;
     if (!trainsEntering.contains(train) && !hasCapacity()) {
       throw new IllegalStateException("Train entering station without capacity!");
     }
@@ -73,13 +83,17 @@ public class Station implements Connectable, Tickable {
   }
 
   public void left(Train train) {
-    trains.remove(train);
-    trainsLeaving.remove(train);
+    Occupancy occupancy = getOccupancy();
+    occupancy.trains.remove(train);
+    occupancy.trainsLeaving.remove(train);
     train.leftStation(this);
     logger.warn("{} left {}", train, this);
   }
 
   public void tick(double time) {
+    Occupancy occupancy = getOccupancy();
+    Map<Train, Double> trains = occupancy.trains;
+    Set<Train> trainsLeaving = occupancy.trainsLeaving;
     if (trainsLeaving.size() > 1) {
       throw new IllegalStateException("This shouldn't be possible!");
     }
@@ -124,9 +138,10 @@ public class Station implements Connectable, Tickable {
   }
 
   public int usedCapacity() {
-    Set<Train> union = new HashSet<>(trains.keySet());
-    union.addAll(trainsEntering);
-    union.addAll(trainsLeaving);
+    Occupancy occupancy = getOccupancy();
+    Set<Train> union = new HashSet<>(occupancy.trains.keySet());
+    union.addAll(occupancy.trainsEntering);
+    union.addAll(occupancy.trainsLeaving);
     return union.size();
   }
 
@@ -134,6 +149,14 @@ public class Station implements Connectable, Tickable {
     return capacity;
   }
 
+  public int getDelay() {
+    return delay;
+  }
+
+  public Map<Track, SignalController> getNextBlockSignalControllers() {
+    return Collections.unmodifiableMap(nextBlockSignalController);
+  }
+
   @Override
   public double getLength() {
     return length;
@@ -166,6 +189,7 @@ public class Station implements Connectable, Tickable {
 
   @Deprecated
   public boolean reserveCapacity(Train train) {
+    Set<Train> trainsEntering = getOccupancy().trainsEntering;
     if (trainsEntering.contains(train)) {
       return true;
     }
@@ -175,4 +199,11 @@ public class Station implements Connectable, Tickable {
     trainsEntering.add(train);
     return true;
   }
+
+  private static class Occupancy {
+
+    private final Map<Train, Double> trains = new LinkedHashMap<>();
+    private final Set<Train> trainsLeaving = new HashSet<>();
+    private final Set<Train> trainsEntering = new HashSet<>();
+  }
 }
@@ -5,6 +5,7 @@ import static ft.sim.world.signalling.SignalType.RED;
 
 import ft.sim.simulation.Tickable;
 import ft.sim.world.WorldHandler;
+import ft.sim.world.WorldState;
 import ft.sim.world.signalling.SignalController;
 import ft.sim.world.signalling.SignalLinked;
 import ft.sim.world.train.Train;
@@ -24,12 +25,11 @@ public class Switch implements Connectable, Tickable, SignalLinked {
   // delay of the switch to change position
   private static final double delay = 10;
   private final ConnectableType type = ConnectableType.SWITCH;
-  private boolean isChanging = false;
   private List<Track> from;
   private List<Track> to;
-  private Map<Track, Track> status = new HashMap<Track, Track>(2);
-  private double delayed = 0;
-  private List<Track> newStatus = new ArrayList<>(2);
+  // the tracks the switch connects when a run starts
+  private final Track initialLeft;
+  private final Track initialRight;
   private SignalController lcu;
   // By default, a switch is 5 metres long
   private int length = 5;
@@ -49,46 +49,96 @@ public class Switch implements Connectable, Tickable, SignalLinked {
       throw new IllegalArgumentException();
     }
 
-    status.put(left, right);
-    status.put(right, left);
-    //TODO: set signals on the left/right tracks to green, the remaining tracks to red
-    setSignals();
+    initialLeft = left;
+    initialRight = right;
+  }
+
+  /**
+   * The position of the switch in the current run (see {@link WorldState})
+   */
+  private Position getPosition() {
+    return WorldState.of(this, () -> {
+      Position position = new Position();
+      position.status.put(initialLeft, initialRight);
+      position.status.put(initialRight, initialLeft);
+      //TODO: set signals on the left/right tracks to green, the remaining tracks to red
+      setSignals();
+      return position;
+    });
   }
 
   public void changePosition(Track a, Track b) {
-    if (isChanging) {
+    Position position = getPosition();
+    if (position.isChanging) {
       return;
     }
-    isChanging = true;
+    position.isChanging = true;
 
-    newStatus.clear();
-    newStatus.add(a);
-    newStatus.add(b);
+    position.newStatus.clear();
+    position.newStatus.add(a);
+    position.newStatus.add(b);
 
-    delayed += delay;
+    position.delayed += delay;
   }
 
   public void tick(double time) {
-    if (!isChanging) {
+    Position position = getPosition();
+    if (!position.isChanging) {
       return;
     }
-    delayed -= time;
+    position.delayed -= time;
 
-    if (delayed <= 0) {
-      status.clear();
-      status.put(newStatus.get(0), newStatus.get(1));
-      status.put(newStatus.get(1), newStatus.get(0));
+    if (position.delayed <= 0) {
+      position.status.clear();
+      position.status.put(position.newStatus.get(0), position.newStatus.get(1));
+      position.status.put(position.newStatus.get(1), position.newStatus.get(0));
       setSignals();
     }
   }
 
+  /**
+   * Whether the switch can connect the two tracks (one on each side of it)
+   */
+  public boolean connects(Track a, Track b) {
+    return (from.contains(a) && to.contains(b)) || (from.contains(b) && to.contains(a));
+  }
+
+  /**
+   * Set the switch for a train routed through it from one track to the other. Trains don't wait
+   * for switches, so it is set right away.
+   */
+  public void route(Track a, Track b) {
+    Position position = getPosition();
+    Map<Track, Track> status = position.status;
+    if (status.get(a) == b && status.get(b) == a) {
+      return;
+    }
+    if (!connects(a, b)) {
+      throw new IllegalArgumentException(this + " doesn't connect " + a + " and " + b);
+    }
+    position.isChanging = false;
+    position.delayed = 0;
+    status.clear();
+    status.put(a, b);
+    status.put(b, a);
+    setSignals();
+  }
+
   private void setSignals() {
     //TODO: set signals based on the status and connected tracks
 
   }
 
   public Map<Track, Track> getStatus() {
-    return status;
+    return getPosition().status;
+  }
+
+  public List<Track> getFrom() {
+    return from;
+  }
+
+  public List<Track> getTo() {
+    return to;
   }
 
   @Override
@@ -138,4 +188,12 @@ public class Switch implements Connectable, Tickable, SignalLinked {
   public void addSignalController(SignalController signalController) {
     this.signalController = signalController;
   }
+
+  private static class Position {
+
+    private boolean isChanging = false;
+    private final Map<Track, Track> status = new HashMap<>(2);
+    private double delayed = 0;
+    private final List<Track> newStatus = new ArrayList<>(2);
+  }
 }
@@ -7,16 +7,21 @@ import static java.util.stream.Collectors.toList;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import ft.sim.world.WorldHandler;
+import ft.sim.world.WorldState;
 import ft.sim.world.placeables.Balise;
 import ft.sim.world.placeables.Placeable;
 import ft.sim.world.signalling.SignalController;
 import ft.sim.world.signalling.SignalLinked;
 import ft.sim.world.signalling.SignalUnit;
 import ft.sim.world.train.Train;
+import ft.sim.world.train.TrainTrail;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,8 +33,11 @@ public class Track implements Connectable, SignalLinked {
   protected static transient final Logger logger = LoggerFactory.getLogger(Track.class);
   private static final transient int DEFAULT_LENGTH = 20;
   private final ConnectableType type = ConnectableType.TRACK;
-  private transient List<Section> sections;
+  private transient int numSections = 0;
   private int length = DEFAULT_LENGTH;
+  // placeables on each section that has any (see Section), the trails of trains are in the state
+  // of the run (see WorldState)
+  private transient Map<Integer, Set<Placeable>> sectionPlaceables = new HashMap<>();
   private Map<Integer, SignalUnit> blockSignals = new HashMap<>();
   private SignalController signalController = null;
   private transient BiMap<Integer, Placeable> placeables = HashBiMap.create();
@@ -38,25 +46,16 @@ public class Track implements Connectable, SignalLinked {
 
   private int trackID = 0;
 
-  public Track(List<Section> sections) {
-    this.sections = sections;
-  }
-
   public Track() {
-    sections = new ArrayList<Section>(20);
   }
 
   public Track(int numSections) {
     if (numSections == 0) {
       throw new IllegalArgumentException("Track num sections cannot be Zero.");
     }
-    sections = new ArrayList<Section>(numSections);
-    length = 0;
-    for (int i = 0; i < numSections; i++) {
-      Section trainSection = new Section();
-      sections.add(trainSection);
-      length += trainSection.getLength();
-    }
+    this.numSections = numSections;
+    // sections are 1 metre long
+    length = numSections;
   }
 
   public void addBlockSignal(SignalUnit blockSignal, int position) {
@@ -84,7 +83,7 @@ public class Track implements Connectable, SignalLinked {
       toIndex--;
     }
 
-    if (sections.size() <= toIndex) {
+    if (numSections <= toIndex) {
       throw new IllegalArgumentException("the track size " + length + " is less than " + to);
     }
 
@@ -94,7 +93,7 @@ public class Track implements Connectable, SignalLinked {
 
     List<Section> sectionsBetween = new ArrayList<>();
     for (int i = fromIndex; i <= toIndex; i++) {
-      sectionsBetween.add(sections.get(i));
+      sectionsBetween.add(new Section(this, i));
     }
 
     // length sanity check
@@ -108,19 +107,21 @@ public class Track implements Connectable, SignalLinked {
   }
 
   public void placePlaceableOnSectionIndex(Placeable placeable, int sectionIndex) {
-    if (sectionIndex >= sections.size()) {
+    if (sectionIndex >= numSections) {
       throw new ArrayIndexOutOfBoundsException(
           "The section index " + sectionIndex + " does not exist. Number of sections: " +
-              sections.size());
+              numSections);
     }
-    Section section = sections.get(sectionIndex);
-    section.addPlaceable(placeable);
+    new Section(this, sectionIndex).addPlaceable(placeable);
 
     placeables.put(sectionIndex, placeable);
+    if (placeable instanceof Balise) {
+      ((Balise) placeable).setTrack(this);
+    }
   }
 
   public int getLastSectionIndex() {
-    return sections.size() - 1;
+    return numSections - 1;
   }
 
   public List<Balise> getBalises() {
@@ -136,8 +137,61 @@ public class Track implements Connectable, SignalLinked {
     return placeables.containsValue(placeable);
   }
 
+  /**
+   * The sections of the track, created as they are asked for (see {@link Section})
+   */
   public List<Section> getSections() {
-    return sections;
+    return new AbstractList<Section>() {
+      @Override
+      public Section get(int index) {
+        if (index < 0 || index >= numSections) {
+          throw new IndexOutOfBoundsException(
+              "Section " + index + " of a track of " + numSections + " sections");
+        }
+        return new Section(Track.this, index);
+      }
+
+      @Override
+      public int size() {
+        return numSections;
+      }
+    };
+  }
+
+  void addSectionPlaceable(int section, Placeable placeable) {
+    placeablesOf(placeable).computeIfAbsent(section, s -> new HashSet<>()).add(placeable);
+  }
+
+  List<Placeable> getSectionPlaceables(int section) {
+    List<Placeable> onSection = new ArrayList<>();
+    Set<Placeable> placed = sectionPlaceables.get(section);
+    if (placed != null) {
+      onSection.addAll(placed);
+    }
+    Set<Placeable> trails = getTrails().get(section);
+    if (trails != null) {
+      onSection.addAll(trails);
+    }
+    return onSection;
+  }
+
+  void removeSectionPlaceable(int section, Placeable placeable) {
+    Map<Integer, Set<Placeable>> placeables = placeablesOf(placeable);
+    Set<Placeable> onSection = placeables.get(section);
+    if (onSection != null && onSection.remove(placeable) && onSection.isEmpty()) {
+      placeables.remove(section);
+    }
+  }
+
+  private Map<Integer, Set<Placeable>> placeablesOf(Placeable placeable) {
+    return placeable instanceof TrainTrail ? getTrails() : sectionPlaceables;
+  }
+
+  /**
+   * Trails of the trains on each section of the track in the current run
+   */
+  private Map<Integer, Set<Placeable>> getTrails() {
+    return WorldState.of(this, HashMap::new);
   }
 
   @Override
@@ -163,7 +217,7 @@ public class Track implements Connectable, SignalLinked {
   }
 
   public int getSectionPosition(Section section) {
-    return sections.indexOf(section);
+    return section.getTrack() == this ? section.getIndex() : -1;
   }
 
   public int getID() {
@@ -5,16 +5,16 @@ import ft.sim.world.journey.JourneyHelper;
 import ft.sim.world.map.GlobalMap;
 import ft.sim.world.train.Train;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by sina on 08/05/2017.
  */
 public class RadioMast {
 
-  private static Map<GlobalMap, RadioMast> instances = new HashMap<>();
+  private static Map<GlobalMap, RadioMast> instances = new ConcurrentHashMap<>();
   private GlobalMap world;
   private List<String> messagesSent = new ArrayList<>();
   private int failureRatio = 0;
@@ -95,6 +95,8 @@ public class Journey implements Tickable, Recordable {
   }
 
   public JourneyInformation getJourneyInformation() {
+    // only needed for display, so it's brought up to date on demand rather than every tick
+    journeyInformation.update(this);
     return journeyInformation;
   }
 
@@ -134,6 +136,14 @@ public class Journey implements Tickable, Recordable {
     return directionForward;
   }
 
+  public double getHeadPosition() {
+    return headPosition;
+  }
+
+  public double getTailPosition() {
+    return tailPosition;
+  }
+
   public double getHeadPositionFromRoot() {
     return journeyPosition.getHeadPosition() + path.getDistanceFromGraphRoot();
   }
@@ -163,6 +173,15 @@ public class Journey implements Tickable, Recordable {
     StatsHelper.logFor(JOURNEY_DURATION, train, timeFinished - timeStarted);
   }
 
+  /**
+   * Get the duration of a finished journey (in seconds)
+   *
+   * @return duration, or 0 if the journey hasn't finished
+   */
+  public double getJourneyDuration() {
+    return journeyFinished ? timeFinished - timeStarted : 0;
+  }
+
   public JourneyTimer getJourneyTimer() {
     return journeyTimer;
   }
@@ -3,14 +3,19 @@ package ft.sim.world.journey;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import ft.sim.world.connectables.Connectable;
-import ft.sim.world.connectables.Station;
+import ft.sim.world.WorldHandler;
 import ft.sim.world.map.GlobalMap;
 import ft.sim.world.train.Train;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,11 +24,19 @@ import org.slf4j.LoggerFactory;
  */
 public class JourneyHelper {
 
-  private static Map<GlobalMap, JourneyHelper> instances = new HashMap<>();
+  private static Map<GlobalMap, JourneyHelper> instances = new ConcurrentHashMap<>();
   protected transient final Logger logger = LoggerFactory.getLogger(JourneyHelper.class);
   private BiMap<Journey, Journey> trailingJourneys = HashBiMap.create();
   private BiMap<Train, Train> trailingTrains = HashBiMap.create();
   private GlobalMap world;
+  // the tick (and number of journeys) the journeys following each other were worked out for
+  private long journeysTick = -1;
+  private int journeysCount = 0;
+  private long journeysVersion = 0;
+  private long trainsVersion = -1;
+  // the paths of the journeys going over each connectable
+  private Map<Connectable, List<JourneyPath>> pathsThrough = new HashMap<>();
+  private Set<JourneyPath> indexedPaths = Collections.newSetFromMap(new IdentityHashMap<>());
 
   private JourneyHelper(GlobalMap map) {
     this.world = map;
@@ -34,11 +47,38 @@ public class JourneyHelper {
   }
 
   public static double getJourneyDistanceBetween(Journey j1, Journey j2) {
+    // along the path of one of them, if the other one is on it (paths may branch from each other)
+    double j2OnPath1 = getHeadPositionOnPath(j2, j1.getJourneyPath());
+    if (!Double.isNaN(j2OnPath1)) {
+      return Math.abs(j2OnPath1 - j1.getJourneyPosition().getHeadPosition());
+    }
+    double j1OnPath2 = getHeadPositionOnPath(j1, j2.getJourneyPath());
+    if (!Double.isNaN(j1OnPath2)) {
+      return Math.abs(j2.getJourneyPosition().getHeadPosition() - j1OnPath2);
+    }
     double j1Distance = j1.getHeadPositionFromRoot();
     double j2Distance = j2.getHeadPositionFromRoot();
     return Math.abs(j2Distance - j1Distance);
   }
 
+  /**
+   * Position of the head of a journey on another path, or NaN if it isn't on that path
+   */
+  private static double getHeadPositionOnPath(Journey journey, JourneyPath path) {
+    JourneyPath ownPath = journey.getJourneyPath();
+    double headPosition = journey.getJourneyPosition().getHeadPosition();
+    if (ownPath == path) {
+      return headPosition;
+    }
+    Connectable connectable = ownPath.getConnectableAt(headPosition);
+    if (!path.contains(connectable)) {
+      return Double.NaN;
+    }
+    double positionOnConnectable =
+        headPosition - ownPath.getConnectableStartingPosition(connectable);
+    return path.getConnectableStartingPosition(connectable) + positionOnConnectable;
+  }
+
   public Train getTrainFollowing(Train train) {
     return getTrainsFollowingEachOther().get(train);
   }
@@ -48,53 +88,134 @@ public class JourneyHelper {
   }
 
   public BiMap<Train, Train> getTrainsFollowingEachOther() {
-    if (false && trailingTrains.size() + 1 == world.getTrains().size()) {
+    Map<Journey, Journey> journeyTrail = getJourneysFollowingEachOther();
+    if (trainsVersion == journeysVersion) {
       return trailingTrains;
     }
     trailingTrains.clear();
-
-    Map<Journey, Journey> journeyTrail = getJourneysFollowingEachOther();
     journeyTrail.forEach((key, value) -> trailingTrains.put(key.getTrain(), value.getTrain()));
+    trainsVersion = journeysVersion;
 
     return trailingTrains;
   }
 
+  /**
+   * The journey each journey follows. It's worked out once per tick of the world (when it's
+   * ticked by a {@link WorldHandler}), as the oracle and the radio masts ask for it many times
+   * per tick.
+   */
   public Map<Journey, Journey> getJourneysFollowingEachOther() {
-    if (false && trailingJourneys.size() + 1 == world.getJourneys().size()) {
-      // for all journeys, check if none of the trains are at stations
-      if (world.getJourneys().values().stream().allMatch(
-          j -> j.getJourneyPosition().getConnectablesOccupied().stream()
-              .noneMatch(c -> c instanceof Station))) {
-        return trailingJourneys;
-      }
+    long tick = WorldHandler.getOptionalInstance(world).map(WorldHandler::getTick).orElse(-1L);
+    int journeyCount = world.getJourneys().size();
+    if (tick >= 0 && tick == journeysTick && journeyCount == journeysCount) {
+      return trailingJourneys;
     }
     trailingJourneys.clear();
+    journeysTick = tick;
+    journeysCount = journeyCount;
+    journeysVersion++;
+
+    // the journey each one follows is the nearest one ahead of it on its path, which may be on
+    // a path it shares only some connectables with (after a switch, paths join and split), so
+    // the heads of the journeys are sorted along every path that goes over them
+    List<Journey> journeys = new ArrayList<>(world.getJourneys().values());
+    journeys.forEach(j -> indexPath(j.getJourneyPath()));
+    Map<JourneyPath, List<Head>> pathHeads = new IdentityHashMap<>();
+    Head[] ownHeads = new Head[journeys.size()];
+    for (int i = 0; i < journeys.size(); i++) {
+      Journey journey = journeys.get(i);
+      JourneyPath ownPath = journey.getJourneyPath();
+      Connectable connectable = ownPath
+          .getConnectableAt(journey.getJourneyPosition().getHeadPosition());
+      for (JourneyPath path : pathsThrough.getOrDefault(connectable, Collections.emptyList())) {
+        Head head = new Head(i, getHeadPositionOnPath(journey, path));
+        pathHeads.computeIfAbsent(path, p -> new ArrayList<>()).add(head);
+        if (path == ownPath) {
+          ownHeads[i] = head;
+        }
+      }
+    }
+    pathHeads.values().forEach(heads -> heads.sort(Head.ORDER));
+
+    Map<Journey, Journey> behindJourneys = new HashMap<>();
+    Map<Journey, Double> behindDistances = new HashMap<>();
+    for (int i = 0; i < journeys.size(); i++) {
+      Journey journey = journeys.get(i);
+      List<Head> heads = pathHeads.get(journey.getJourneyPath());
+      Head ownHead = ownHeads[i];
+      Head aheadHead = getHeadAhead(heads, Collections.binarySearch(heads, ownHead, Head.ORDER),
+          journey.isDirectionForward());
+      if (aheadHead == null) {
+        continue;
+      }
+      Journey ahead = journeys.get(aheadHead.journey);
+      double aheadDistance = Math.abs(aheadHead.position - ownHead.position);
+      // where paths join, the journey ahead is followed by the nearest one
+      Double previousDistance = behindDistances.get(ahead);
+      if (previousDistance == null || aheadDistance < previousDistance) {
+        behindJourneys.put(ahead, journey);
+        behindDistances.put(ahead, aheadDistance);
+      }
+    }
+    behindJourneys.forEach((ahead, behind) -> trailingJourneys.put(behind, ahead));
 
-    Map<Connectable, TreeMap<Double, Journey>> graphRootJourneys = new HashMap<>();
+    return trailingJourneys;
+  }
 
-    for (Journey journey : world.getJourneys().values()) {
-      double distance = journey.getHeadPositionFromRoot();
-      Connectable rootKey = journey.getJourneyPath().getGraphRootConnectable();
-      TreeMap<Double, Journey> distanceTree = graphRootJourneys
-          .computeIfAbsent(rootKey, k -> new TreeMap<>());
-      distanceTree.put(distance, journey);
-      graphRootJourneys.put(rootKey, distanceTree);
+  /**
+   * The nearest head ahead of the one at the given index of the sorted heads of a path (the
+   * first journey of the world if several are as near), or null if there's none
+   */
+  private static Head getHeadAhead(List<Head> heads, int index, boolean forward) {
+    double position = heads.get(index).position;
+    if (forward) {
+      for (int i = index + 1; i < heads.size(); i++) {
+        if (heads.get(i).position > position) {
+          return heads.get(i);
+        }
+      }
+      return null;
     }
+    int i = index - 1;
+    while (i >= 0 && heads.get(i).position == position) {
+      i--;
+    }
+    if (i < 0) {
+      return null;
+    }
+    while (i > 0 && heads.get(i - 1).position == heads.get(i).position) {
+      i--;
+    }
+    return heads.get(i);
+  }
 
-    for (Entry<Connectable, TreeMap<Double, Journey>> entry : graphRootJourneys.entrySet()) {
-      Connectable graphRootNode = entry.getKey();
-      TreeMap<Double, Journey> distanceTree = entry.getValue();
-      Journey previousJourney = null;
-      for (Entry<Double, Journey> treeEntry : distanceTree.entrySet()) {
-        if (previousJourney == null) {
-          previousJourney = treeEntry.getValue();
-          continue;
-        }
-        trailingJourneys.put(previousJourney, treeEntry.getValue());
-        previousJourney = treeEntry.getValue();
+  private void indexPath(JourneyPath path) {
+    if (!indexedPaths.add(path)) {
+      return;
+    }
+    for (Connectable connectable : path.getPath()) {
+      List<JourneyPath> paths = pathsThrough.computeIfAbsent(connectable, c -> new ArrayList<>());
+      // a path going over a connectable twice is only listed once
+      if (paths.isEmpty() || paths.get(paths.size() - 1) != path) {
+        paths.add(path);
       }
     }
+  }
 
-    return trailingJourneys;
+  /**
+   * The head of a journey (by its index in the journeys of the world) on a path
+   */
+  private static class Head {
+
+    static final Comparator<Head> ORDER = Comparator.<Head>comparingDouble(h -> h.position)
+        .thenComparingInt(h -> h.journey);
+
+    final int journey;
+    final double position;
+
+    Head(int journey, double position) {
+      this.journey = journey;
+      this.position = position;
+    }
   }
 }
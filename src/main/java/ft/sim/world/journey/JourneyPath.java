@@ -6,8 +6,10 @@ import ft.sim.world.connectables.Connectable;
 import ft.sim.world.connectables.Observable;
 import ft.sim.world.connectables.Section;
 import ft.sim.world.connectables.Station;
+import ft.sim.world.connectables.Switch;
 import ft.sim.world.connectables.Track;
 import ft.sim.world.map.MapGraph;
+import ft.sim.world.map.MapGraphBuilder;
 import ft.sim.world.placeables.Balise;
 import ft.sim.world.placeables.Placeable;
 import java.util.ArrayList;
@@ -38,6 +40,9 @@ public class JourneyPath {
   private Map<Connectable, Double> connectablePositions = new HashMap<>();
   private BiMap<Connectable, Integer> connectableIndexes = HashBiMap.create();
 
+  // tracks each switch of the path is set to connect (see Switch.route)
+  private Map<Switch, Track[]> switchRoutes = new HashMap<>();
+
   private MapGraph pathGraph = new MapGraph();
   private double length = 0;
 
@@ -47,13 +52,7 @@ public class JourneyPath {
   }
 
   private void buildGraph() {
-    Connectable previousConnectable = null;
-    for (Connectable connectable : path) {
-      pathGraph.addEdge(previousConnectable, connectable);
-      previousConnectable = connectable;
-    }
-
-    pathGraph.buildGraph();
+    new MapGraphBuilder().addPath(path).build(pathGraph);
   }
 
   public MapGraph getPathGraph() {
@@ -91,23 +90,75 @@ public class JourneyPath {
     for (Connectable c : path) {
       connectablePositions.put(c, length);
       connectableIndexes.put(c, connectableIndexes.size());
-
-      if (c instanceof Track) {
-        List<Balise> balises = ((Track) c).getBalises();
-        for (Balise b : balises) {
-          int relativePosition = ((Track) c).getPlaceablePosition(b);
-          b.setPosition(this, length + relativePosition);
-        }
-      }
       length += c.getLength();
       //logger.debug("Connectable length: {}", c.getLength());
     }
 
+    initSwitchRoutes();
     buildGraph();
   }
 
+  private void initSwitchRoutes() {
+    for (int i = 0; i < path.size(); i++) {
+      if (!(path.get(i) instanceof Switch)) {
+        continue;
+      }
+      Switch s = (Switch) path.get(i);
+      Connectable before = i > 0 ? path.get(i - 1) : null;
+      Connectable after = i + 1 < path.size() ? path.get(i + 1) : null;
+      if (!(before instanceof Track) || !(after instanceof Track)) {
+        // a path starting or ending on a switch doesn't go through it
+        continue;
+      }
+      if (!s.connects((Track) before, (Track) after)) {
+        throw new IllegalArgumentException(
+            "The journey path goes through " + s + " between tracks it doesn't connect");
+      }
+      switchRoutes.put(s, new Track[]{(Track) before, (Track) after});
+    }
+  }
+
+  /**
+   * Set a switch of the path for the route of the path through it
+   */
+  public void routeThrough(Switch s) {
+    Track[] route = switchRoutes.get(s);
+    if (route != null) {
+      s.route(route[0], route[1]);
+    }
+  }
+
+  public boolean contains(Connectable connectable) {
+    return connectablePositions.containsKey(connectable);
+  }
+
+  /**
+   * The connectable at a position of the path (the last one at the end of the path)
+   */
+  public Connectable getConnectableAt(double position) {
+    int low = 0;
+    int high = path.size() - 1;
+    while (low < high) {
+      int middle = (low + high + 1) / 2;
+      if (connectablePositions.get(path.get(middle)) <= position) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return path.get(low);
+  }
+
   public double getPlaceablePosition(Placeable placeable) {
-    double position = -1;
+    if (placeable instanceof Balise && ((Balise) placeable).getTrack() != null) {
+      // balises know their track, the path doesn't need to be searched
+      Track track = ((Balise) placeable).getTrack();
+      if (!connectablePositions.containsKey(track)) {
+        throw new IllegalArgumentException(
+            "The placeable did not exist on the given journey path");
+      }
+      return connectablePositions.get(track) + track.getPlaceablePosition(placeable);
+    }
     for (Connectable c : path) {
       if (!(c instanceof Track)) {
         continue;
@@ -6,6 +6,7 @@ import ft.sim.world.connectables.Connectable;
 import ft.sim.world.connectables.Observable;
 import ft.sim.world.connectables.Section;
 import ft.sim.world.connectables.Station;
+import ft.sim.world.connectables.Switch;
 import ft.sim.world.connectables.Track;
 import ft.sim.world.train.Train;
 import java.util.ArrayList;
@@ -214,6 +215,9 @@ public class JourneyPosition {
     Set<Connectable> newConnectables = Sets.newHashSet(newConnectablesOccupied);
     newConnectables.removeAll(connectablesOccupied);
     if (newConnectables.size() > 0) {
+      // switches are set for the route of the train as it enters them
+      newConnectables.stream().filter(c -> c instanceof Switch)
+          .forEach(c -> path.routeThrough((Switch) c));
       newConnectables.forEach(c -> c.entered(train));
       newConnectables.forEach(c -> logger.warn("{} just entered {}", train, c));
     }
@@ -0,0 +1,452 @@
+package ft.sim.world.map;
+
+import ft.sim.world.map.MapTopology.ActiveBalisesSpec;
+import ft.sim.world.map.MapTopology.BlockSignalSpec;
+import ft.sim.world.map.MapTopology.ControllerSpec;
+import ft.sim.world.map.MapTopology.JourneyPathSpec;
+import ft.sim.world.map.MapTopology.JourneySpec;
+import ft.sim.world.map.MapTopology.PlaceableSpec;
+import ft.sim.world.map.MapTopology.Ref;
+import ft.sim.world.map.MapTopology.StationSpec;
+import ft.sim.world.map.MapTopology.SwitchSpec;
+import ft.sim.world.map.MapTopology.TrackSpec;
+import ft.sim.world.signalling.SignalType;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A map compiled to a binary file: its {@link MapTopology}, as {@link MapBuilder} builds it from
+ * the YAML file, so that it can be loaded again without parsing the YAML or building the graph and
+ * signals. Loading a compiled map gives the same world as building it, apart from which active
+ * balises are broken, which is drawn again for every world.
+ *
+ * Layout (big-endian): int32 magic ("FTMP"), uint8 version, the name of the map, and then the
+ * sections below in their order, each an int32 number of entries followed by the entries. Strings
+ * are an int32 length and UTF-8 bytes, and connectables are a uint8 type (0: none, 1: track, 2:
+ * station, 3: switch) and an int32 ID.
+ * <pre>
+ *   configurations  key, typed value (see {@link #writeValue})
+ *   tracks          ID, number of sections, acceleration and deceleration coefficients
+ *   track pairs     ID, ID of the paired track
+ *   stations        ID, capacity, delay, length
+ *   placeables      ID, kind (0: fixed balise, 1: obstacle), advisory speed, track ID, section,
+ *                   position from the root of the graph
+ *   switches        ID, IDs of the left and right tracks, IDs of the connected tracks
+ *   journey paths   ID, dual, connectables, root connectable of the graph, distance from it
+ *   trains          ID, number of cars
+ *   journeys        ID, journey path ID, train ID, forward
+ *   graph           roots; edges (connectable, child); inverse edges (connectable, parent)
+ *   signals         controllers (connectable, status); track controllers (track ID, controller);
+ *                   station controllers (station ID, track ID, controller); block signals (track
+ *                   ID, section, controller, distant)
+ *   active balises  track ID, drawn for failure, and its balises (section, position)
+ * </pre>
+ */
+public class CompiledMap {
+
+  protected static transient Logger logger = LoggerFactory.getLogger(CompiledMap.class);
+
+  public static final String EXTENSION = ".ftmap";
+
+  static final int MAGIC = 0x46544D50;
+  static final int VERSION = 1;
+
+  private CompiledMap() {
+  }
+
+  /**
+   * Build a map from its YAML file and write it to a compiled map
+   */
+  public static void compile(String mapName, Path output) throws IOException {
+    long start = System.nanoTime();
+    write(MapTopology.forMap(mapName), output);
+    logger.info("Compiled map {} to {} in {} ms", mapName, output,
+        (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * Load a new world from a compiled map
+   */
+  public static GlobalMap load(Path path) throws IOException {
+    return read(path).instantiate();
+  }
+
+  public static void write(MapTopology topology, Path output) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(output)))) {
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      writeString(out, topology.name);
+
+      out.writeInt(topology.configurations.size());
+      for (Entry<String, Object> configuration : topology.configurations.entrySet()) {
+        writeString(out, configuration.getKey());
+        writeValue(out, configuration.getValue());
+      }
+
+      out.writeInt(topology.tracks.size());
+      for (TrackSpec track : topology.tracks) {
+        out.writeInt(track.id);
+        out.writeInt(track.numSections);
+        out.writeDouble(track.acceleration);
+        out.writeDouble(track.deceleration);
+      }
+      writeInts(out, topology.trackPairs);
+      out.writeInt(topology.stations.size());
+      for (StationSpec station : topology.stations) {
+        out.writeInt(station.id);
+        out.writeInt(station.capacity);
+        out.writeInt(station.delay);
+        out.writeInt(station.length);
+      }
+      out.writeInt(topology.placeables.size());
+      for (PlaceableSpec placeable : topology.placeables) {
+        out.writeInt(placeable.id);
+        out.writeByte(placeable.kind);
+        out.writeDouble(placeable.advisorySpeed);
+        out.writeInt(placeable.trackID);
+        out.writeInt(placeable.section);
+        out.writeDouble(placeable.position);
+      }
+      out.writeInt(topology.switches.size());
+      for (SwitchSpec s : topology.switches) {
+        out.writeInt(s.id);
+        writeInts(out, s.left);
+        writeInts(out, s.right);
+        out.writeInt(s.statusLeft);
+        out.writeInt(s.statusRight);
+      }
+
+      out.writeInt(topology.journeyPaths.size());
+      for (JourneyPathSpec path : topology.journeyPaths) {
+        out.writeInt(path.id);
+        out.writeBoolean(path.isDual);
+        writeRefs(out, path.path);
+        writeRef(out, path.graphRoot);
+        out.writeDouble(path.distanceFromGraphRoot);
+      }
+      writeInts(out, topology.trains);
+      out.writeInt(topology.journeys.size());
+      for (JourneySpec journey : topology.journeys) {
+        out.writeInt(journey.id);
+        out.writeInt(journey.journeyPathID);
+        out.writeInt(journey.trainID);
+        out.writeBoolean(journey.isForward);
+      }
+
+      writeRefs(out, topology.graphRoots);
+      writeEdges(out, topology.graphEdges);
+      writeEdges(out, topology.graphInverseEdges);
+
+      out.writeInt(topology.controllers.size());
+      for (ControllerSpec controller : topology.controllers) {
+        writeRef(out, controller.belongsTo);
+        out.writeByte(controller.status.ordinal());
+      }
+      writeInts(out, topology.trackControllers);
+      writeInts(out, topology.stationControllers);
+      out.writeInt(topology.blockSignals.size());
+      for (BlockSignalSpec signal : topology.blockSignals) {
+        out.writeInt(signal.trackID);
+        out.writeInt(signal.section);
+        out.writeInt(signal.controller);
+        out.writeBoolean(signal.isDistant);
+      }
+
+      out.writeInt(topology.activeBalises.size());
+      for (ActiveBalisesSpec balises : topology.activeBalises) {
+        out.writeInt(balises.trackID);
+        out.writeBoolean(balises.drawn);
+        out.writeInt(balises.sections.length);
+        for (int i = 0; i < balises.sections.length; i++) {
+          out.writeInt(balises.sections[i]);
+          out.writeDouble(balises.positions[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the topology of a compiled map (the file is memory-mapped while it is read)
+   */
+  public static MapTopology read(Path path) throws IOException {
+    long start = System.nanoTime();
+    ByteBuffer in;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      in = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (in.remaining() < 5 || in.getInt() != MAGIC) {
+      throw new IOException("Not a compiled map: " + path);
+    }
+    int version = in.get();
+    if (version != VERSION) {
+      throw new IOException("Unsupported compiled map version " + version + ": " + path);
+    }
+    String name = readString(in);
+
+    Map<String, Object> configurations = new LinkedHashMap<>();
+    for (int n = in.getInt(); n > 0; n--) {
+      configurations.put(readString(in), readValue(in));
+    }
+
+    List<TrackSpec> tracks = new ArrayList<>();
+    for (int n = in.getInt(); n > 0; n--) {
+      tracks.add(new TrackSpec(in.getInt(), in.getInt(), in.getDouble(), in.getDouble()));
+    }
+    List<int[]> trackPairs = readInts(in, 2);
+    List<StationSpec> stations = new ArrayList<>();
+    for (int n = in.getInt(); n > 0; n--) {
+      stations.add(new StationSpec(in.getInt(), in.getInt(), in.getInt(), in.getInt()));
+    }
+    List<PlaceableSpec> placeables = new ArrayList<>();
+    for (int n = in.getInt(); n > 0; n--) {
+      int id = in.getInt();
+      byte kind = in.get();
+      if (kind != MapTopology.FIXED_BALISE && kind != MapTopology.OBSTACLE) {
+        throw new IOException("Invalid placeable in compiled map: " + kind);
+      }
+      placeables.add(new PlaceableSpec(id, kind, in.getDouble(), in.getInt(), in.getInt(),
+          in.getDouble()));
+    }
+    List<SwitchSpec> switches = new ArrayList<>();
+    for (int n = in.getInt(); n > 0; n--) {
+      switches.add(new SwitchSpec(in.getInt(), readInts(in), readInts(in), in.getInt(),
+          in.getInt()));
+    }
+
+    List<JourneyPathSpec> journeyPaths = new ArrayList<>();
+    for (int n = in.getInt(); n > 0; n--) {
+      journeyPaths.add(new JourneyPathSpec(in.getInt(), in.get() != 0, readRefs(in),
+          readRef(in), in.getDouble()));
+    }
+    List<int[]> trains = readInts(in, 2);
+    List<JourneySpec> journeys = new ArrayList<>();
+    for (int n = in.getInt(); n > 0; n--) {
+      journeys.add(new JourneySpec(in.getInt(), in.getInt(), in.getInt(), in.get() != 0));
+    }
+
+    List<Ref> graphRoots = readRefs(in);
+    List<Ref[]> graphEdges = readEdges(in);
+    List<Ref[]> graphInverseEdges = readEdges(in);
+
+    List<ControllerSpec> controllers = new ArrayList<>();
+    for (int n = in.getInt(); n > 0; n--) {
+      controllers.add(new ControllerSpec(readRef(in), SignalType.values()[in.get()]));
+    }
+    List<int[]> trackControllers = readInts(in, 2);
+    List<int[]> stationControllers = readInts(in, 3);
+    List<BlockSignalSpec> blockSignals = new ArrayList<>();
+    for (int n = in.getInt(); n > 0; n--) {
+      blockSignals.add(new BlockSignalSpec(in.getInt(), in.getInt(), in.getInt(), in.get() != 0));
+    }
+
+    List<ActiveBalisesSpec> activeBalises = new ArrayList<>();
+    for (int n = in.getInt(); n > 0; n--) {
+      int trackID = in.getInt();
+      boolean drawn = in.get() != 0;
+      int[] sections = new int[in.getInt()];
+      double[] positions = new double[sections.length];
+      for (int i = 0; i < sections.length; i++) {
+        sections[i] = in.getInt();
+        positions[i] = in.getDouble();
+      }
+      activeBalises.add(new ActiveBalisesSpec(trackID, drawn, sections, positions));
+    }
+
+    MapTopology topology = new MapTopology(name, configurations, tracks, trackPairs, stations,
+        placeables, switches, journeyPaths, trains, journeys, graphRoots, graphEdges,
+        graphInverseEdges, controllers, trackControllers, stationControllers, blockSignals,
+        activeBalises);
+    logger.info("Read compiled map {} in {} ms", path, (System.nanoTime() - start) / 1_000_000);
+    return topology;
+  }
+
+  private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    out.writeInt(values.length);
+    for (int value : values) {
+      out.writeInt(value);
+    }
+  }
+
+  private static int[] readInts(ByteBuffer in) {
+    int[] values = new int[in.getInt()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = in.getInt();
+    }
+    return values;
+  }
+
+  /**
+   * Rows of the same number of ints
+   */
+  private static void writeInts(DataOutputStream out, List<int[]> rows) throws IOException {
+    out.writeInt(rows.size());
+    for (int[] row : rows) {
+      for (int value : row) {
+        out.writeInt(value);
+      }
+    }
+  }
+
+  private static List<int[]> readInts(ByteBuffer in, int columns) {
+    int n = in.getInt();
+    List<int[]> rows = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      int[] row = new int[columns];
+      for (int j = 0; j < columns; j++) {
+        row[j] = in.getInt();
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  private static void writeEdges(DataOutputStream out, List<Ref[]> edges) throws IOException {
+    out.writeInt(edges.size());
+    for (Ref[] edge : edges) {
+      writeRef(out, edge[0]);
+      writeRef(out, edge[1]);
+    }
+  }
+
+  private static List<Ref[]> readEdges(ByteBuffer in) {
+    int n = in.getInt();
+    List<Ref[]> edges = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      edges.add(new Ref[]{readRef(in), readRef(in)});
+    }
+    return edges;
+  }
+
+  private static void writeRefs(DataOutputStream out, List<Ref> refs) throws IOException {
+    out.writeInt(refs.size());
+    for (Ref ref : refs) {
+      writeRef(out, ref);
+    }
+  }
+
+  private static List<Ref> readRefs(ByteBuffer in) {
+    int n = in.getInt();
+    List<Ref> refs = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      refs.add(readRef(in));
+    }
+    return refs;
+  }
+
+  private static void writeRef(DataOutputStream out, Ref ref) throws IOException {
+    out.writeByte(ref.type);
+    out.writeInt(ref.id);
+  }
+
+  private static Ref readRef(ByteBuffer in) {
+    byte type = in.get();
+    int id = in.getInt();
+    return type == MapTopology.NONE ? Ref.NULL : new Ref(type, id);
+  }
+
+  /**
+   * A configuration value: uint8 type (0: null, 1: int32, 2: int64, 3: float64, 4: boolean, 5:
+   * string, 6: map of strings to values, 7: list of values) and the value
+   */
+  private static void writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(0);
+    } else if (value instanceof Integer) {
+      out.writeByte(1);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(2);
+      out.writeLong((Long) value);
+    } else if (value instanceof Double) {
+      out.writeByte(3);
+      out.writeDouble((Double) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte(4);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof String) {
+      out.writeByte(5);
+      writeString(out, (String) value);
+    } else if (value instanceof Map) {
+      out.writeByte(6);
+      Map<?, ?> values = (Map<?, ?>) value;
+      out.writeInt(values.size());
+      for (Entry<?, ?> entry : values.entrySet()) {
+        writeString(out, String.valueOf(entry.getKey()));
+        writeValue(out, entry.getValue());
+      }
+    } else if (value instanceof List) {
+      out.writeByte(7);
+      List<?> values = (List<?>) value;
+      out.writeInt(values.size());
+      for (Object element : values) {
+        writeValue(out, element);
+      }
+    } else {
+      throw new IllegalArgumentException("Cannot compile configuration value " + value);
+    }
+  }
+
+  private static Object readValue(ByteBuffer in) {
+    byte type = in.get();
+    switch (type) {
+      case 0:
+        return null;
+      case 1:
+        return in.getInt();
+      case 2:
+        return in.getLong();
+      case 3:
+        return in.getDouble();
+      case 4:
+        return in.get() != 0;
+      case 5:
+        return readString(in);
+      case 6: {
+        int n = in.getInt();
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+          values.put(readString(in), readValue(in));
+        }
+        return values;
+      }
+      case 7: {
+        int n = in.getInt();
+        List<Object> values = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+          values.add(readValue(in));
+        }
+        return values;
+      }
+      default:
+        throw new IllegalStateException("Invalid configuration value in compiled map: " + type);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -2,6 +2,8 @@ package ft.sim.world.map;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Maps;
+import ft.sim.world.WorldState;
 import ft.sim.world.connectables.Connectable;
 import ft.sim.world.connectables.Section;
 import ft.sim.world.connectables.Station;
@@ -13,8 +15,10 @@ import ft.sim.world.placeables.Placeable;
 import ft.sim.world.train.Train;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,25 +40,83 @@ public class GlobalMap {
   private BiMap<Integer, Station> stationMap = HashBiMap.create();
   private BiMap<Integer, Integer> trackPairMap = HashBiMap.create();
   private HashMap<String, Object> configurationsMap = new HashMap<>();
-  private transient HashMap<Section, Integer> sectionsRegistry = new HashMap<>();
   private MapGraph graph = new MapGraph();
+  // shared by all the worlds of the map
+  private transient MapTopology topology = null;
+  private transient RouteFinder routeFinder = null;
+  // how the world was built, or created from the topology of its map
+  private transient MapBuildReport buildReport = null;
+  // what changes during a run of the world, its geometry may be shared (see MapTopology)
+  private final transient WorldState state = new WorldState();
 
   public GlobalMap(String mapName) {
     name = mapName;
   }
 
-  public void registerSectionsForTrack(List<Section> sections, int trackID) {
-    sections.forEach(section -> sectionsRegistry.put(section, trackID));
+  public int getTrackIDforSection(Section section) {
+    return getTrackID(section.getTrack());
   }
 
-  public int getTrackIDforSection(Section section) {
-    return sectionsRegistry.get(section);
+  public MapTopology getTopology() {
+    return topology;
+  }
+
+  void setTopology(MapTopology topology) {
+    this.topology = topology;
   }
 
   public MapGraph getGraph() {
     return graph;
   }
 
+  public WorldState getState() {
+    return state;
+  }
+
+  /**
+   * Make the geometry of this world (its tracks, stations, switches, placeables, track pairs and
+   * journey paths) unmodifiable, before other worlds share it
+   */
+  void freezeGeometry() {
+    trackMap = Maps.unmodifiableBiMap(trackMap);
+    stationMap = Maps.unmodifiableBiMap(stationMap);
+    switchMap = Maps.unmodifiableBiMap(switchMap);
+    placeablesMap = Maps.unmodifiableBiMap(placeablesMap);
+    trackPairMap = Maps.unmodifiableBiMap(trackPairMap);
+    journeyPathsMap = Maps.unmodifiableBiMap(journeyPathsMap);
+  }
+
+  /**
+   * Use the (frozen) geometry of another world, and its graph
+   */
+  void shareGeometryOf(GlobalMap geometry) {
+    trackMap = geometry.trackMap;
+    stationMap = geometry.stationMap;
+    switchMap = geometry.switchMap;
+    placeablesMap = geometry.placeablesMap;
+    trackPairMap = geometry.trackPairMap;
+    journeyPathsMap = geometry.journeyPathsMap;
+    graph = geometry.graph;
+  }
+
+  public MapBuildReport getBuildReport() {
+    return buildReport;
+  }
+
+  void setBuildReport(MapBuildReport buildReport) {
+    this.buildReport = buildReport;
+  }
+
+  /**
+   * Shortest routes between the connectables of the world (once its graph is built)
+   */
+  public synchronized RouteFinder getRouteFinder() {
+    if (routeFinder == null) {
+      routeFinder = RouteFinder.of(this);
+    }
+    return routeFinder;
+  }
+
   public void addTrack(int id, Track track) {
     trackMap.put(id, track);
   }
@@ -71,6 +133,10 @@ public class GlobalMap {
     return configurationsMap.get(key);
   }
 
+  public Map<String, Object> getConfigurations() {
+    return Collections.unmodifiableMap(configurationsMap);
+  }
+
   public boolean isConfiguration(String key, Object value) {
     Object conf = configurationsMap.get(key);
     return conf != null && conf.toString().equals(value.toString());
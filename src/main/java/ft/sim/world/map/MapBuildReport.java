@@ -0,0 +1,161 @@
+package ft.sim.world.map;
+
+import ft.sim.world.connectables.Track;
+import ft.sim.world.placeables.ActiveBalise;
+import ft.sim.world.placeables.Balise;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How long each phase of building a map took, roughly how much memory it took, and how many of
+ * each object the built world has. Logged by {@link MapBuilder} for every map it builds (and
+ * kept for every world created from the topology of a map, with the phases of building the
+ * topology if it was built by this process), the report of the latest build of every map is also
+ * served by the metrics endpoint, and the report of each world is recorded in the statistics of
+ * its run.
+ */
+public class MapBuildReport {
+
+  /**
+   * Parts of building a map that are timed separately (in the order they run)
+   */
+  public enum BuildPhase {
+    IMPORT,
+    TRAINS_AT_STATIONS,
+    BUILD_GRAPH,
+    SET_SIGNALS,
+    CREATE_ACTIVE_BALISES,
+    INIT_BALISE_POSITIONS,
+    PAIR_TRACKS,
+    RADIO_MASTS,
+    SET_IDS,
+    // a world created from the topology of its map, rather than built (see MapTopology)
+    INSTANTIATE
+  }
+
+  // the latest report of every map built
+  private static final Map<String, MapBuildReport> latestReports = new ConcurrentHashMap<>();
+
+  private final String map;
+  private final Map<BuildPhase, Long> phaseNanos = new EnumMap<>(BuildPhase.class);
+  private final Map<BuildPhase, Long> phaseMemory = new EnumMap<>(BuildPhase.class);
+  private final Map<String, Long> counts = new LinkedHashMap<>();
+
+  MapBuildReport(String map) {
+    this.map = map;
+  }
+
+  /**
+   * The report of a world made from the result of another build (e.g. of the topology of its
+   * map), which starts with the phases of that build
+   */
+  MapBuildReport(String map, MapBuildReport built) {
+    this(map);
+    if (built != null) {
+      phaseNanos.putAll(built.phaseNanos);
+      phaseMemory.putAll(built.phaseMemory);
+    }
+  }
+
+  public static Map<String, MapBuildReport> getLatestReports() {
+    return Collections.unmodifiableMap(latestReports);
+  }
+
+  /**
+   * Run a phase of the build, timing it. The memory it took is the change of the used heap,
+   * which garbage collections during the phase make smaller (or negative).
+   */
+  void time(BuildPhase phase, Runnable work) {
+    Runtime runtime = Runtime.getRuntime();
+    long memoryBefore = runtime.totalMemory() - runtime.freeMemory();
+    long start = System.nanoTime();
+    work.run();
+    phaseNanos.merge(phase, System.nanoTime() - start, Long::sum);
+    phaseMemory.merge(phase, runtime.totalMemory() - runtime.freeMemory() - memoryBefore,
+        Long::sum);
+  }
+
+  /**
+   * Add the time of a phase timed elsewhere (e.g. one that throws checked exceptions)
+   */
+  void addPhase(BuildPhase phase, long nanos) {
+    phaseNanos.merge(phase, nanos, Long::sum);
+  }
+
+  /**
+   * Count the objects of the built world, and keep the report as the latest one of the map
+   */
+  void finish(GlobalMap world) {
+    long sections = 0;
+    long balises = 0;
+    long activeBalises = 0;
+    long blockSignals = 0;
+    for (Track track : world.getTracks().values()) {
+      sections += track.getSections().size();
+      for (Balise balise : track.getBalises()) {
+        balises++;
+        if (balise instanceof ActiveBalise) {
+          activeBalises++;
+        }
+      }
+      blockSignals += track.getBlockSignals().size();
+    }
+    counts.put("tracks", (long) world.getTracks().size());
+    counts.put("sections", sections);
+    counts.put("stations", (long) world.getStations().size());
+    counts.put("switches", (long) world.getSwitches().size());
+    counts.put("balises", balises);
+    counts.put("active_balises", activeBalises);
+    counts.put("block_signals", blockSignals);
+    counts.put("journey_paths", (long) world.getJourneyPaths().size());
+    counts.put("journeys", (long) world.getJourneys().size());
+    counts.put("trains", (long) world.getTrains().size());
+    counts.put("graph_edges", (long) world.getGraph().getConnectablesGraph().size());
+    latestReports.put(map, this);
+  }
+
+  public String getMap() {
+    return map;
+  }
+
+  /**
+   * Phases that ran, in order, and how long they took
+   */
+  public Map<BuildPhase, Long> getPhaseNanos() {
+    return Collections.unmodifiableMap(phaseNanos);
+  }
+
+  public double getPhaseSeconds(BuildPhase phase) {
+    return phaseNanos.getOrDefault(phase, 0L) / 1e9;
+  }
+
+  public long getPhaseMemory(BuildPhase phase) {
+    return phaseMemory.getOrDefault(phase, 0L);
+  }
+
+  public double getTotalSeconds() {
+    return phaseNanos.values().stream().mapToLong(Long::longValue).sum() / 1e9;
+  }
+
+  public Map<String, Long> getCounts() {
+    return Collections.unmodifiableMap(counts);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ROOT, "Built map %s in %.3fs", map, getTotalSeconds()));
+    for (BuildPhase phase : phaseNanos.keySet()) {
+      sb.append(String.format(Locale.ROOT, "%n  %-22s %9.3fs %+10.1fMB",
+          phase.name().toLowerCase(), getPhaseSeconds(phase),
+          getPhaseMemory(phase) / (1024.0 * 1024.0)));
+    }
+    sb.append(String.format("%n "));
+    counts.forEach((name, count) -> sb.append(' ').append(name).append('=').append(count));
+    return sb.toString();
+  }
+}
@@ -7,6 +7,7 @@ import static ft.sim.world.RealWorldConstants.DECELERATION_COEFFICIENT;
 import com.google.common.collect.Iterables;
 import ft.sim.simulation.Disruptable;
 import ft.sim.simulation.Disruptor;
+import ft.sim.world.WorldState;
 import ft.sim.world.connectables.Connectable;
 import ft.sim.world.connectables.LineCondition;
 import ft.sim.world.connectables.Station;
@@ -14,6 +15,7 @@ import ft.sim.world.connectables.Track;
 import ft.sim.world.gsm.RadioMast;
 import ft.sim.world.journey.Journey;
 import ft.sim.world.journey.JourneyPath;
+import ft.sim.world.map.MapBuildReport.BuildPhase;
 import ft.sim.world.placeables.ActiveBalise;
 import ft.sim.world.placeables.Balise;
 import ft.sim.world.placeables.Obstacle;
@@ -28,11 +30,15 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
@@ -49,27 +55,102 @@ public class MapBuilder {
 
   protected transient static final Logger logger = LoggerFactory.getLogger(MapBuilder.class);
   private GlobalMap map = null;
+  // timings of the build (see MapBuildReport)
+  private MapBuildReport report = null;
+  // trains given a journey by the repeated journeys so far
+  private final Set<Integer> allocatedTrains = new HashSet<>();
+  // whether problems of the map fail the build (see buildWorld(String, boolean))
+  private boolean verify = true;
+
+  private MapBuilder() {
+  }
+
+  /**
+   * A builder for the setup steps of an already created map (e.g. a compiled map)
+   */
+  MapBuilder(GlobalMap map) {
+    this(map, null);
+  }
+
+  /**
+   * A builder for the setup steps of a map made from the result of another build, whose report
+   * the report of this one starts with
+   */
+  MapBuilder(GlobalMap map, MapBuildReport built) {
+    this.map = map;
+    this.report = new MapBuildReport(map.getName(), built);
+  }
 
   /*public static GlobalMap buildNewMap() {
     return buildNewMap(DEFAULT_MAP);
   }*/
 
+  /**
+   * A new world of the given map (a YAML map or a compiled map), created from the topology of the
+   * map that is shared by all its worlds (see {@link MapTopology})
+   */
   public static GlobalMap buildNewMap(String mapName) {
-    return buildNewMap(mapName, new GlobalMap(mapName));
+    return MapTopology.forMap(mapName).instantiate();
   }
 
-  private static GlobalMap buildNewMap(String mapYamlFileName, GlobalMap globalMap) {
-    MapBuilder mb = new MapBuilder();
-    mb.map = globalMap;
+  /**
+   * Build a world from a YAML map, from scratch
+   */
+  static GlobalMap buildWorld(String mapName) {
+    return buildWorld(mapName, true);
+  }
+
+  /**
+   * Build a world from a YAML map, from scratch. Without verification, problems of the map that
+   * fail the build otherwise (a graph breaking its invariants, tracks too short for their block
+   * signals) are left for the {@link MapValidator} to find, and a world with a broken graph is
+   * only built as far as its graph.
+   */
+  static GlobalMap buildWorld(String mapName, boolean verify) {
+    return buildNewMap(mapName, new GlobalMap(mapName), verify);
+  }
+
+  /**
+   * Build a world from a map already parsed into the structure of a YAML map (e.g. a generated
+   * one, see {@link NetworkGenerator})
+   */
+  static GlobalMap buildWorld(String mapName, Map<String, Object> mapYaml) {
+    MapBuilder mb = new MapBuilder(new GlobalMap(mapName));
+    // the state the world starts its run in is set up by the build (see WorldState)
+    WorldState previous = WorldState.setCurrent(mb.map.getState());
     try {
-      if (!mapYamlFileName.endsWith(".yaml")) {
-        mapYamlFileName += ".yaml";
-      }
-      if (!mapYamlFileName.startsWith("maps/") && !new File(mapYamlFileName).isFile()) {
-        mapYamlFileName = "maps/" + mapYamlFileName;
+      try {
+        mb.importDefaultConfigurations();
+      } catch (IOException e) {
+        logger.error("failed to import default configurations");
+        throw new IllegalStateException("Failed to import map!", e);
       }
+      mb.report.time(BuildPhase.IMPORT, () -> mb.importMap(mapYaml));
+      mb.setupWorld();
+    } finally {
+      WorldState.setCurrent(previous);
+    }
+    return mb.map;
+  }
+
+  private static GlobalMap buildNewMap(String mapYamlFileName, GlobalMap globalMap,
+      boolean verify) {
+    WorldState previous = WorldState.setCurrent(globalMap.getState());
+    try {
+      return buildNewMap(mapYamlFileName, new MapBuilder(globalMap), verify);
+    } finally {
+      WorldState.setCurrent(previous);
+    }
+  }
+
+  private static GlobalMap buildNewMap(String mapYamlFileName, MapBuilder mb, boolean verify) {
+    mb.verify = verify;
+    try {
+      mapYamlFileName = mapFileName(mapYamlFileName);
+      long start = System.nanoTime();
       mb.importDefaultConfigurations();
       mb.importMapFile(mapYamlFileName);
+      mb.report.addPhase(BuildPhase.IMPORT, System.nanoTime() - start);
       logger.info("Map {} imported successfully.", mapYamlFileName);
     } catch (IOException e) {
       logger.error("failed to import map");
@@ -81,26 +162,48 @@ public class MapBuilder {
     return mb.map;
   }
 
-  private void importMapFile(String mapYamlFile) throws IOException {
-    logger.info("Loading map: {}", mapYamlFile);
+  /**
+   * The YAML file of a map: a file, or a map of the resources
+   */
+  static String mapFileName(String mapName) {
+    if (!mapName.endsWith(".yaml")) {
+      mapName += ".yaml";
+    }
+    if (!mapName.startsWith("maps/") && !new File(mapName).isFile()) {
+      mapName = "maps/" + mapName;
+    }
+    return mapName;
+  }
 
+  /**
+   * Open a map file (see {@link #mapFileName(String)}), or the map of the resources if there's no
+   * such file
+   */
+  static InputStream openMapFile(String mapYamlFile) throws IOException {
     Resource resource = new ClassPathResource(mapYamlFile);
-    InputStream mapInputStream;
     // Try the local jar resources
     File mapFile = new File(mapYamlFile);
     if (mapFile.exists()) {
-      mapInputStream = new FileInputStream(mapFile);
+      return new FileInputStream(mapFile);
     } else {
       if (resource.exists()) {
-        mapInputStream = resource.getInputStream();
+        return resource.getInputStream();
       } else {
         throw new IllegalStateException("Given file doesn't exist: " + mapYamlFile);
       }
     }
+  }
 
-    Yaml yaml = new Yaml();
-    Map<String, Object> mapYaml = (Map<String, Object>) yaml.load(mapInputStream);
+  private void importMapFile(String mapYamlFile) throws IOException {
+    logger.info("Loading map: {}", mapYamlFile);
+
+    InputStream mapInputStream = openMapFile(mapYamlFile);
+    try (Reader reader = new InputStreamReader(mapInputStream, StandardCharsets.UTF_8)) {
+      new StreamingMapImporter(this).importMap(reader);
+    }
+  }
 
+  private void importMap(Map<String, Object> mapYaml) {
     setConfigurations((Map<String, Object>) mapYaml.get("simulation"));
 
     createTracks((Map<String, Object>) mapYaml.get("tracks"));
@@ -128,89 +231,101 @@ public class MapBuilder {
   }
 
   private void setupWorld() {
-    setTrainsAtStations();
-    buildGraph();
-    setSignals();
+    report.time(BuildPhase.TRAINS_AT_STATIONS, this::setTrainsAtStations);
+    report.time(BuildPhase.BUILD_GRAPH, this::buildGraph);
+    if (!verify && !map.getGraph().findProblems().isEmpty()) {
+      // the rest of the build needs a valid graph
+      finishReport();
+      return;
+    }
+    report.time(BuildPhase.SET_SIGNALS, this::setSignals);
     if (map.isConfiguration("mode", "variable_block")) {
-      //FIXME: infinite loop in this method and the one below when tracks branch from a station
-      createActiveBalises();
+      report.time(BuildPhase.CREATE_ACTIVE_BALISES, this::createActiveBalises);
     }
-    initBalisePositions();
+    report.time(BuildPhase.INIT_BALISE_POSITIONS, this::initBalisePositions);
 
     // If list of paired tracks is empty, it doesn't pair any tracks
-    pairTracks();
+    report.time(BuildPhase.PAIR_TRACKS, this::pairTracks);
+
+    report.time(BuildPhase.RADIO_MASTS, this::setRadioMasts);
+
+    report.time(BuildPhase.SET_IDS, this::setIDs);
+
+    finishReport();
+    logger.info("{}", report);
+  }
 
-    setRadioMasts();
+  /**
+   * Create a world from the topology of its map, timing it (see {@link MapTopology#instantiate()})
+   */
+  void instantiate(Runnable work) {
+    report.time(BuildPhase.INSTANTIATE, work);
+    finishReport();
+    logger.debug("{}", report);
+  }
 
-    setIDs();
+  private void finishReport() {
+    report.finish(map);
+    map.setBuildReport(report);
   }
 
-  private void setIDs() {
+  void setIDs() {
+    setTrainIDs();
+    setGeometryIDs();
+  }
+
+  void setTrainIDs() {
     map.getTrains().forEach((id, train) -> train.setID(id));
+  }
+
+  void setGeometryIDs() {
     map.getStations().forEach((id, station) -> station.setID(id));
     map.getTracks().forEach((id, track) -> track.setID(id));
     map.getSwitches().forEach((id, s) -> s.setID(id));
-
   }
 
-  private void setRadioMasts() {
+  void setRadioMasts() {
     RadioMast.getInstance(map).setFailureRatio((int) map.getConfiguration("gsm_failure_rate"));
     for (Train train : map.getTrains().values()) {
       train.getEcu().setRadioMast(RadioMast.getInstance(map));
     }
   }
 
-  private void pairTracks() {
+  void pairTracks() {
     map.getTrackPairs()
         .forEach((key, value) -> DualLineHelper.pairTracks(map.getTrack(key), map.getTrack(value)));
   }
 
+  /**
+   * Position of the balises from the root of the graph they are first reached from (their
+   * positions on each journey path are worked out by the path)
+   */
   private void initBalisePositions() {
     MapGraph graph = map.getGraph();
-    Set<Connectable> roots = graph.getRootConnectables();
-    boolean balisesInitialised = true;
-    for (Connectable root : roots) {
-      try {
-        initBalisePosition(graph, root);
-      } catch (IllegalStateException e) {
-        balisesInitialised = false;
-        logger.error("Map {} has branching tracks, which is not supported!", map.getName());
-      }
-    }
-    if (balisesInitialised) {
-      logger.info("Balises initliased successfully for map {}", map.getName());
-    }
-  }
-
-  private void initBalisePosition(MapGraph graph, Connectable root) {
-    double length = 0;
-    Iterator<Connectable> mapIterator = graph.getIterator(root);
-    while (mapIterator.hasNext()) {
-      Connectable c = mapIterator.next();
-
-      if (c instanceof Track) {
+    Set<Connectable> initialised = new HashSet<>();
+    for (Connectable root : graph.getRootConnectables()) {
+      for (Entry<Connectable, Double> entry : graph.getDistancesFrom(root).entrySet()) {
+        Connectable c = entry.getKey();
+        if (!(c instanceof Track) || !initialised.add(c)) {
+          continue;
+        }
         List<Balise> balises = ((Track) c).getBalises();
         for (Balise b : balises) {
           int relativePosition = ((Track) c).getPlaceablePosition(b);
-          b.setPosition(length + relativePosition);
+          b.setPosition(entry.getValue() + relativePosition);
         }
       }
-      length += c.getLength();
     }
+    logger.info("Balises initliased successfully for map {}", map.getName());
   }
 
   private void buildGraph() {
-    for (JourneyPath path : map.getJourneyPaths().values()) {
-      List<Connectable> connectables = path.getPath();
-      Connectable previousConnectable = null;
-      for (Connectable connectable : connectables) {
-        map.getGraph().addEdge(previousConnectable, connectable);
-        previousConnectable = connectable;
-      }
-    }
-    map.getGraph().buildGraph();
+    MapGraphBuilder graphBuilder =
+        verify ? new MapGraphBuilder() : new MapGraphBuilder().withoutVerification();
+    map.getJourneyPaths().values().forEach(p -> graphBuilder.addPath(p.getPath()));
+    graphBuilder.build(map.getGraph());
 
-    map.getJourneyPaths().values().forEach(p -> map.getGraph().initJourney(p));
+    map.getJourneyPaths().values().forEach(graphBuilder::initJourney);
   }
 
   private void setSignals() {
@@ -326,9 +441,11 @@ public class MapBuilder {
       track.addBlockSignal(distantSignal, sectionIndexForDistantSignal);
       logger.info("added distance signal {} on section {} on track {}", distantSignal,
           sectionIndexForDistantSignal, map.getTrackID(((Track) track)));
-    } else {
+    } else if (verify) {
       throw new IllegalArgumentException("Track is not long enough for placing distant signals");
-      //logger.error("Track-{} is not long enough for placing distant signals",map.getTrackID(track));
+    } else {
+      logger.error("Track-{} is not long enough for placing distant signals",
+          map.getTrackID(track));
     }
     ((Track) nextTrack).addBlockSignal(mainSignal, 0);
     ((Track) nextTrack).addSignalController(signalController);
@@ -347,7 +464,7 @@ public class MapBuilder {
     //TODO
   }
 
-  private void setTrainsAtStations() {
+  void setTrainsAtStations() {
     for (Journey journey : map.getJourneys().values()) {
       if (journey.isDirectionForward()) {
         Connectable firstConnectable = Iterables.getFirst(journey.getJourneyPath().getPath(), null);
@@ -365,7 +482,7 @@ public class MapBuilder {
     }
   }
 
-  private void createStations(Map<String, Object> stations) {
+  void createStations(Map<String, Object> stations) {
     if (stations == null) {
       return;
     }
@@ -378,11 +495,10 @@ public class MapBuilder {
     }
   }
 
-  private void createJourneys(Map<String, Object> journeys) {
+  void createJourneys(Map<String, Object> journeys) {
     if (journeys == null) {
       return;
     }
-    Set<Integer> allocatedTrains = new HashSet<>();
     for (Map.Entry<String, Object> j : journeys.entrySet()) {
       int journeyID = Integer.parseInt(j.getKey());
       Map<String, Object> journeyData = (Map<String, Object>) j.getValue();
@@ -419,7 +535,7 @@ public class MapBuilder {
     }
   }
 
-  private void createJourneyPaths(Map<String, Object> journeyPaths) {
+  void createJourneyPaths(Map<String, Object> journeyPaths) {
     if (journeyPaths == null) {
       return;
     }
@@ -451,7 +567,7 @@ public class MapBuilder {
     }
   }
 
-  private void createSwitches(Map<String, Object> switches) {
+  void createSwitches(Map<String, Object> switches) {
     if (switches == null) {
       return;
     }
@@ -473,21 +589,30 @@ public class MapBuilder {
       return;
     }
     for (Map.Entry<String, Object> track : trackMap.entrySet()) {
-      int trackID = Integer.parseInt(track.getKey());
       Map<String, Object> trackData = (Map<String, Object>) track.getValue();
-      Track t = new Track((Integer) trackData.get("numSections"));
+      addTrack(Integer.parseInt(track.getKey()), trackData, newTrack(trackData));
+    }
+  }
 
-      double aCoeff = (double) trackData.getOrDefault("acceleration", ACCELERATION_COEFFICIENT);
-      double dCoeff = (double) trackData.getOrDefault("deceleration", DECELERATION_COEFFICIENT);
-      t.setLineCondition(new LineCondition(aCoeff, dCoeff));
+  /**
+   * A new track of the given track data, not added to any map yet (so tracks can be created in
+   * parallel)
+   */
+  static Track newTrack(Map<String, Object> trackData) {
+    Track t = new Track((Integer) trackData.get("numSections"));
+
+    double aCoeff = (double) trackData.getOrDefault("acceleration", ACCELERATION_COEFFICIENT);
+    double dCoeff = (double) trackData.getOrDefault("deceleration", DECELERATION_COEFFICIENT);
+    t.setLineCondition(new LineCondition(aCoeff, dCoeff));
+    return t;
+  }
 
-      map.addTrack(trackID, t);
-      map.registerSectionsForTrack(t.getSections(), trackID);
+  void addTrack(int trackID, Map<String, Object> trackData, Track t) {
+    map.addTrack(trackID, t);
 
-      int pairID = (int) trackData.getOrDefault("pairID", 0);
-      if (pairID > 0) {
-        map.addTrackPair(trackID, pairID);
-      }
+    int pairID = (int) trackData.getOrDefault("pairID", 0);
+    if (pairID > 0) {
+      map.addTrackPair(trackID, pairID);
     }
   }
 
@@ -496,26 +621,38 @@ public class MapBuilder {
       return;
     }
     for (Map.Entry<String, Object> placeable : placeablesMap.entrySet()) {
-      int placeableID = Integer.parseInt(placeable.getKey());
-      if (placeableID == 0 || map.getPlaceablesMap().get(placeableID) != null) {
-        placeableID = map.getPlaceablesMap().keySet().size() + 1;
-      }
-      Map<String, Object> placeableData = (Map<String, Object>) placeable.getValue();
-      Placeable p = null;
-      String placeableType = (String) placeableData.getOrDefault("type", "fixedBalise");
-      if (placeableType.equals("fixedBalise")) {
-        p = new PassiveBalise(Double.valueOf((int) placeableData.get("advisorySpeed")),
-            placeableID);
-      } else if (placeableType.equals("obstacle")) {
-        p = new Obstacle();
-      }
-      Map<String, Integer> placeOnMap = ((Map<String, Integer>) placeableData.get("placeOn"));
-      int trackID = placeOnMap.get("track");
-      int section = placeOnMap.get("section");
+      createPlaceable(placeable.getKey(), (Map<String, Object>) placeable.getValue()).place();
+    }
+  }
 
-      map.addPlaceable(placeableID, p, trackID, section);
-      assert (p != null) : "Placeable should not be null";
+  /**
+   * Create a placeable and add it to the map, but leave placing it on its track to the caller
+   * (placeables on different tracks can be placed in parallel)
+   */
+  Placement createPlaceable(String id, Map<String, Object> placeableData) {
+    int placeableID = Integer.parseInt(id);
+    if (placeableID == 0 || map.getPlaceablesMap().get(placeableID) != null) {
+      placeableID = map.getPlaceablesMap().keySet().size() + 1;
+    }
+    Placeable p = null;
+    String placeableType = (String) placeableData.getOrDefault("type", "fixedBalise");
+    if (placeableType.equals("fixedBalise")) {
+      p = new PassiveBalise(Double.valueOf((int) placeableData.get("advisorySpeed")),
+          placeableID);
+    } else if (placeableType.equals("obstacle")) {
+      p = new Obstacle();
+    }
+    assert (p != null) : "Placeable should not be null";
+    Map<String, Integer> placeOnMap = ((Map<String, Integer>) placeableData.get("placeOn"));
+    int trackID = placeOnMap.get("track");
+    Track track = map.getTrack(trackID);
+    if (track == null) {
+      throw new IllegalArgumentException(
+          "Placeable " + placeableID + " is on track " + trackID + ", which doesn't exist");
     }
+
+    map.getPlaceablesMap().put(placeableID, p);
+    return new Placement(p, track, placeOnMap.get("section"));
   }
 
   private void createActiveBalises() {
@@ -523,32 +660,32 @@ public class MapBuilder {
     int baliseFailure = (int) map.getConfiguration("gsm_failure_rate");
 
     MapGraph graph = map.getGraph();
-    Set<Connectable> roots = graph.getRootConnectables();
-
-    for (Connectable root : roots) {
-      Iterator<Connectable> mapIterator = graph.getIterator(root);
-      double length = 0;
-      while (mapIterator.hasNext()) {
-        Connectable c = mapIterator.next();
-
-        if (c instanceof Track && c.getLength() > baliseDistance) {
+    // tracks shared by routes (after a switch) get their balises once
+    Set<Connectable> placed = new HashSet<>();
+    for (Connectable root : graph.getRootConnectables()) {
+      for (Entry<Connectable, Double> entry : graph.getDistancesFrom(root).entrySet()) {
+        Connectable c = entry.getKey();
+        if (c instanceof Track && c.getLength() > baliseDistance && placed.add(c)) {
           Track track = (Track) c;
           if (DualLineHelper.isTrackPairActiveBaliseInitialised(map, track)) {
-            length += MapBuilderHelper
-                .copyActiveBalises(DualLineHelper.getTrackPair(map, track), track);
+            MapBuilderHelper.copyActiveBalises(DualLineHelper.getTrackPair(map, track), track);
           } else {
             boolean isBroken =
                 baliseFailure > 0 && Disruptor.getInstance(map).shouldDisrupt(baliseFailure);
-            length = placeActiveBalisesOnTrack(length, track, baliseDistance, isBroken);
+            placeActiveBalisesOnTrack(entry.getValue(), track, baliseDistance, isBroken);
           }
         }
-        length += c.getLength();
       }
     }
   }
 
-  private double placeActiveBalisesOnTrack(double length, Track track, int baliseDistance,
-      boolean isBroken) {
+  /**
+   * Place active balises every given distance on a track, which starts at the given distance from
+   * the root of the graph (no balise is placed on the root itself)
+   */
+  private void placeActiveBalisesOnTrack(double distanceFromRoot, Track track,
+      int baliseDistance, boolean isBroken) {
+    double length = distanceFromRoot;
     for (double d = 0; d < track.getLength(); d += baliseDistance) {
       if (length == 0) {
         length += baliseDistance;
@@ -562,10 +699,9 @@ public class MapBuilder {
       logger.debug("Palced active balise on track {} position {}", map.getTrackID(track), (int) d);
       length += baliseDistance;
     }
-    return length;
   }
 
-  private void createTrains(Map<String, Object> trains) {
+  void createTrains(Map<String, Object> trains) {
     if (trains == null) {
       return;
     }
@@ -589,12 +725,44 @@ public class MapBuilder {
     }
   }
 
-  private void setConfigurations(Map<String, Object> configurations) {
+  void setConfigurations(Map<String, Object> configurations) {
     if (configurations == null) {
       return;
     }
     for (Map.Entry<String, Object> config : configurations.entrySet()) {
-      map.addConfiguration(config.getKey(), config.getValue());
+      Object existing = map.getConfiguration(config.getKey());
+      if (existing instanceof Map && config.getValue() instanceof Map) {
+        // nested configurations (e.g. sampling) override the defaults per entry
+        Map<String, Object> merged = new LinkedHashMap<>((Map<String, Object>) existing);
+        merged.putAll((Map<String, Object>) config.getValue());
+        map.addConfiguration(config.getKey(), merged);
+      } else {
+        map.addConfiguration(config.getKey(), config.getValue());
+      }
+    }
+  }
+
+  /**
+   * A placeable to place on a section of a track
+   */
+  static class Placement {
+
+    private final Placeable placeable;
+    private final Track track;
+    private final int section;
+
+    Placement(Placeable placeable, Track track, int section) {
+      this.placeable = placeable;
+      this.track = track;
+      this.section = section;
+    }
+
+    Track getTrack() {
+      return track;
+    }
+
+    void place() {
+      track.placePlaceableOnSectionIndex(placeable, section);
     }
   }
 }
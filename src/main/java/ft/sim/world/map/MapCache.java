@@ -0,0 +1,173 @@
+package ft.sim.world.map;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * A cache of built maps on disk, so that running the same maps again doesn't build them again.
+ * Maps are kept as compiled maps (see {@link CompiledMap}) named after a hash of everything the
+ * build depends on: the YAML file, the default configurations, and the versions of the builder
+ * and of the compiled format. A change to any of them misses the cache, and the stale entry of
+ * the map is deleted when the new one is stored.
+ */
+public class MapCache {
+
+  protected static transient Logger logger = LoggerFactory.getLogger(MapCache.class);
+
+  /**
+   * Version of what {@link MapBuilder} builds from a map file: to be increased with any change to
+   * the worlds it builds, so that maps built before are built again
+   */
+  static final int BUILDER_VERSION = 2;
+
+  // directory of the cache (no cache if null)
+  private static volatile Path directory = null;
+
+  private MapCache() {
+  }
+
+  /**
+   * Keep built maps in the given directory (or nowhere if null)
+   */
+  public static void setDirectory(Path directory) {
+    MapCache.directory = directory;
+  }
+
+  public static Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * The topology of a YAML map from the cache, or null if it isn't cached (or there's no cache)
+   */
+  static MapTopology load(String mapName) {
+    Path cacheDirectory = directory;
+    if (cacheDirectory == null) {
+      return null;
+    }
+    Path path;
+    try {
+      path = cacheDirectory.resolve(entryName(mapName));
+    } catch (IOException e) {
+      logger.warn("Failed to hash map {}: {}", mapName, e.getMessage());
+      return null;
+    }
+    if (!Files.isRegularFile(path)) {
+      return null;
+    }
+    try {
+      MapTopology topology = CompiledMap.read(path);
+      logger.info("Loaded map {} from the cache", mapName);
+      return topology;
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Ignoring the broken cache entry {}: {}", path, e.getMessage());
+      deleteQuietly(path);
+      return null;
+    }
+  }
+
+  /**
+   * Keep the topology of a YAML map in the cache, instead of the one of a previous version of the
+   * map
+   */
+  static void store(String mapName, MapTopology topology) {
+    Path cacheDirectory = directory;
+    if (cacheDirectory == null) {
+      return;
+    }
+    try {
+      Files.createDirectories(cacheDirectory);
+      String entryName = entryName(mapName);
+      Path path = cacheDirectory.resolve(entryName);
+      // written aside and moved, so that concurrent runs never read a partial entry
+      Path temporary = Files.createTempFile(cacheDirectory, entryName, ".tmp");
+      try {
+        CompiledMap.write(topology, temporary);
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        deleteQuietly(temporary);
+      }
+      deleteStale(cacheDirectory, mapName, entryName);
+    } catch (IOException e) {
+      logger.warn("Failed to cache map {}: {}", mapName, e.getMessage());
+    }
+  }
+
+  private static void deleteStale(Path cacheDirectory, String mapName, String entryName)
+      throws IOException {
+    String prefix = prefix(mapName);
+    try (DirectoryStream<Path> entries = Files
+        .newDirectoryStream(cacheDirectory, prefix + "*" + CompiledMap.EXTENSION)) {
+      for (Path entry : entries) {
+        String name = entry.getFileName().toString();
+        // (the prefix may also be the start of the entries of another map)
+        boolean sameMap = name.length() == entryName.length();
+        if (sameMap && !name.equals(entryName)) {
+          deleteQuietly(entry);
+        }
+      }
+    }
+  }
+
+  /**
+   * Name of the entry of a map: the name of the map and the hash of its inputs
+   */
+  static String entryName(String mapName) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update(("builder " + BUILDER_VERSION + ", format " + CompiledMap.VERSION + "\n")
+        .getBytes(StandardCharsets.UTF_8));
+    // the name is part of the built map
+    digest.update((mapName + "\n").getBytes(StandardCharsets.UTF_8));
+    try (InputStream in = MapBuilder.openMapFile(MapBuilder.mapFileName(mapName))) {
+      update(digest, in);
+    }
+    try (InputStream in = new ClassPathResource("maps/defaults.yaml").getInputStream()) {
+      update(digest, in);
+    }
+    StringBuilder hash = new StringBuilder(prefix(mapName));
+    for (byte b : digest.digest()) {
+      hash.append(String.format("%02x", b));
+    }
+    return hash.append(CompiledMap.EXTENSION).toString();
+  }
+
+  /**
+   * Start of the names of the entries of a map: maps of the same file name in different
+   * directories have different entries
+   */
+  private static String prefix(String mapName) {
+    return new GlobalMap(mapName).getSimpleFileName() + "-"
+        + String.format("%08x", mapName.hashCode()) + "-";
+  }
+
+  private static void update(MessageDigest digest, InputStream in) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+      digest.update(buffer, 0, read);
+    }
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      logger.warn("Failed to delete {}: {}", path, e.getMessage());
+    }
+  }
+}
@@ -1,14 +1,22 @@
 package ft.sim.world.map;
 
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 import ft.sim.world.connectables.Connectable;
 import ft.sim.world.connectables.Station;
 import ft.sim.world.connectables.Track;
 import ft.sim.world.journey.JourneyPath;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Objects;
@@ -26,8 +34,9 @@ public class MapGraph {
 
   protected transient static final Logger logger = LoggerFactory.getLogger(MapGraph.class);
 
-  private Multimap<Connectable, Connectable> graph = HashMultimap.create();
-  private Multimap<Connectable, Connectable> graphInverse = HashMultimap.create();
+  // (in the order the edges were added, so that walking the graph is the same on every run)
+  private Multimap<Connectable, Connectable> graph = LinkedHashMultimap.create();
+  private Multimap<Connectable, Connectable> graphInverse = LinkedHashMultimap.create();
 
   private Set<GraphNode> roots = new LinkedHashSet<>();
 
@@ -65,6 +74,50 @@ public class MapGraph {
     isBuilt = true;
   }
 
+  /**
+   * Set up a graph from its already worked out edges (e.g. by a compiled map or a
+   * {@link MapGraphBuilder}), rather than adding them one by one
+   *
+   * @param rootConnectables the roots, in the order of {@link #getRoots()}
+   * @param edges children of the connectables (null for the last ones)
+   * @param inverseEdges parents of the connectables (null for the roots)
+   */
+  public void restore(List<Connectable> rootConnectables, Multimap<Connectable, Connectable> edges,
+      Multimap<Connectable, Connectable> inverseEdges) {
+    if (isBuilt) {
+      throw new IllegalStateException("Graph was already built!");
+    }
+    graph.putAll(edges);
+    graphInverse.putAll(inverseEdges);
+    Set<Connectable> expanded = new HashSet<>();
+    for (Connectable root : rootConnectables) {
+      roots.add(toGraphNode(root, expanded));
+    }
+    isBuilt = true;
+  }
+
+  private GraphNode toGraphNode(Connectable root, Set<Connectable> expanded) {
+    GraphNode rootNode = new GraphNode(root);
+    Deque<GraphNode> toExpand = new ArrayDeque<>();
+    toExpand.push(rootNode);
+    expanded.add(root);
+    while (!toExpand.isEmpty()) {
+      GraphNode node = toExpand.pop();
+      for (Connectable child : graph.get(node.getParent())) {
+        if (child == null) {
+          continue;
+        }
+        GraphNode childNode = new GraphNode(child);
+        node.addEdge(childNode);
+        // a connectable reached twice (e.g. a loop) is only expanded once
+        if (expanded.add(child)) {
+          toExpand.push(childNode);
+        }
+      }
+    }
+    return rootNode;
+  }
+
   public void addEdge(Connectable from, Connectable to) {
     GraphNode potentialParent = getRootGraphNode(to);
     if (potentialParent != null) {
@@ -138,7 +191,8 @@ public class MapGraph {
   }
 
   public Set<Connectable> getRootConnectables() {
-    return roots.stream().map(GraphNode::getParent).collect(Collectors.toSet());
+    return roots.stream().map(GraphNode::getParent)
+        .collect(Collectors.toCollection(LinkedHashSet::new));
   }
 
   public Track getFirstTrack(Connectable rootConnectable) {
@@ -156,72 +210,76 @@ public class MapGraph {
 
   /**
    * Sanity checks for the graph
+   *
+   * @throws IllegalStateException with the first problem found, if any
+   */
+  public void verifyGraph() {
+    List<String> problems = findProblems();
+    if (!problems.isEmpty()) {
+      throw new IllegalStateException(problems.get(0));
+    }
+  }
+
+  /**
+   * Everything wrong with the graph (see {@link #verifyGraph()})
    */
-  private void verifyGraph() {
+  public List<String> findProblems() {
+    List<String> problems = new ArrayList<>();
     for (Entry<Connectable, Collection<Connectable>> connectable : graph.asMap().entrySet()) {
       Connectable from = connectable.getKey();
       if (from instanceof Track && connectable.getValue().size() > 1) {
-        throw new IllegalStateException(
-            "A track cannot be connected to more than one placeable. Track: " + from);
+        problems.add("A track cannot be connected to more than one placeable. Track: " + from);
       }
       if (from instanceof Station && connectable.getValue().size() > 1) {
-        throw new IllegalStateException(
-            "A station cannot be connected to more than one placeable. Station: " + from);
+        problems.add("A station cannot be connected to more than one placeable. Station: " + from);
       }
       if (from instanceof Station && connectable.getValue().stream().filter(Objects::nonNull)
           .anyMatch(c -> !(c instanceof Track))) {
-        throw new IllegalStateException(
+        problems.add(
             "A station cannot be connected to something other than a track. Station: " + from);
       }
     }
+    return problems;
   }
 
 
+  /**
+   * Every connectable reachable from a root, each one once (see {@link #getDistancesFrom})
+   */
   public Iterator<Connectable> getIterator(Connectable root) {
-    Iterator<Connectable> it = new Iterator<Connectable>() {
-
-      private final Connectable rootNode = root;
-      private Connectable currentNode = null;
-
-      @Override
-      public boolean hasNext() {
-        if (currentNode == null) {
-          return true;
-        }
-
-        Collection<Connectable> children = getChildren(currentNode);
-
-        if (children.size() > 1) {
-          throw new IllegalStateException(
-              "Branching rail structure isn't allowed. Children: " + children.size());
-        }
+    return Collections.unmodifiableSet(getDistancesFrom(root).keySet()).iterator();
+  }
 
-        return !children.isEmpty() && (children.iterator().next() != null);
+  /**
+   * Every connectable reachable from a root, each one once and depth first: the line from the
+   * root, and after a switch, the line of each of its children in turn. Each connectable is mapped
+   * to its distance from the root along the route it is first reached on (other routes to it, e.g.
+   * through the other side of a switch, may be longer or shorter).
+   */
+  public Map<Connectable, Double> getDistancesFrom(Connectable root) {
+    Map<Connectable, Double> distances = new LinkedHashMap<>();
+    Deque<Connectable> stack = new ArrayDeque<>();
+    Deque<Double> stackDistances = new ArrayDeque<>();
+    stack.push(root);
+    stackDistances.push(0.0);
+    while (!stack.isEmpty()) {
+      Connectable connectable = stack.pop();
+      double distance = stackDistances.pop();
+      if (distances.containsKey(connectable)) {
+        continue;
       }
-
-      @Override
-      public Connectable next() {
-        if (currentNode == null) {
-          currentNode = rootNode;
-          return currentNode;
-        }
-
-        //Connectable tmpCurrentNode = currentNode;
-        Connectable nextNode = getChildren(currentNode).iterator().next();
-        if (nextNode == null) {
-          throw new NoSuchElementException();
+      distances.put(connectable, distance);
+      // pushed in reverse, so that the first child is walked first
+      List<Connectable> children = new ArrayList<>(getChildren(connectable));
+      for (int i = children.size() - 1; i >= 0; i--) {
+        Connectable child = children.get(i);
+        if (child != null && !distances.containsKey(child)) {
+          stack.push(child);
+          stackDistances.push(distance + connectable.getLength());
         }
-
-        currentNode = nextNode;
-        return currentNode;
-      }
-
-      @Override
-      public void remove() {
-        throw new UnsupportedOperationException();
       }
-    };
-    return it;
+    }
+    return distances;
   }
 
   public Multimap<Connectable, Connectable> getConnectablesGraph() {
@@ -0,0 +1,228 @@
+package ft.sim.world.map;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+import ft.sim.world.connectables.Connectable;
+import ft.sim.world.journey.JourneyPath;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a {@link MapGraph} from the paths of a map in linear time, rather than adding edges one
+ * by one to the trees of {@link MapGraph#addEdge} (which searches all of them for every edge).
+ * Connectables are numbered as they are added, edges kept as adjacency arrays of these numbers,
+ * and a union-find of the connected parts of the graph finds the roots of parts that only have
+ * loops. The graph (and its inverse) is the same as the one built edge by edge: the children of
+ * every connectable (null for the last ones), and its parents (roots are the children of null),
+ * and it's checked the same way (see {@link MapGraph#verifyGraph()}) once it's built.
+ */
+public class MapGraphBuilder {
+
+  private final Map<Connectable, Integer> indexes = new IdentityHashMap<>();
+  private final List<Connectable> connectables = new ArrayList<>();
+  // (from, to) of every edge, without duplicates
+  private final Set<Long> edgeSet = new HashSet<>();
+  private int[] edgesFrom = new int[16];
+  private int[] edgesTo = new int[16];
+  private int edgeCount = 0;
+  private boolean verify = true;
+
+  // worked out by build()
+  private int[] rootOf = null;
+  private double[] distanceFromRoot = null;
+
+  /**
+   * Add the edges between the consecutive connectables of a path
+   */
+  public MapGraphBuilder addPath(List<Connectable> path) {
+    int previous = -1;
+    for (Connectable connectable : path) {
+      int index = indexOf(connectable);
+      if (previous >= 0) {
+        addEdge(previous, index);
+      }
+      previous = index;
+    }
+    return this;
+  }
+
+  /**
+   * Don't check the graph once it's built, e.g. to list all its problems with
+   * {@link MapGraph#findProblems()} rather than failing on the first one
+   */
+  public MapGraphBuilder withoutVerification() {
+    verify = false;
+    return this;
+  }
+
+  private int indexOf(Connectable connectable) {
+    Integer index = indexes.get(connectable);
+    if (index == null) {
+      index = connectables.size();
+      indexes.put(connectable, index);
+      connectables.add(connectable);
+    }
+    return index;
+  }
+
+  private void addEdge(int from, int to) {
+    if (!edgeSet.add(((long) from << 32) | to)) {
+      return;
+    }
+    if (edgeCount == edgesFrom.length) {
+      edgesFrom = Arrays.copyOf(edgesFrom, edgeCount * 2);
+      edgesTo = Arrays.copyOf(edgesTo, edgeCount * 2);
+    }
+    edgesFrom[edgeCount] = from;
+    edgesTo[edgeCount] = to;
+    edgeCount++;
+  }
+
+  /**
+   * Build the graph of the paths added so far into an empty graph
+   *
+   * @throws IllegalStateException if the graph breaks one of its invariants (unless built
+   * {@link #withoutVerification()})
+   */
+  public void build(MapGraph graph) {
+    int n = connectables.size();
+    int[] childrenStart = new int[n + 1];
+    int[] parentsStart = new int[n + 1];
+    for (int e = 0; e < edgeCount; e++) {
+      childrenStart[edgesFrom[e] + 1]++;
+      parentsStart[edgesTo[e] + 1]++;
+    }
+    for (int i = 0; i < n; i++) {
+      childrenStart[i + 1] += childrenStart[i];
+      parentsStart[i + 1] += parentsStart[i];
+    }
+    int[] children = new int[edgeCount];
+    int[] parents = new int[edgeCount];
+    int[] childrenFilled = Arrays.copyOf(childrenStart, n);
+    int[] parentsFilled = Arrays.copyOf(parentsStart, n);
+    int[] components = new int[n];
+    for (int i = 0; i < n; i++) {
+      components[i] = i;
+    }
+    for (int e = 0; e < edgeCount; e++) {
+      children[childrenFilled[edgesFrom[e]]++] = edgesTo[e];
+      parents[parentsFilled[edgesTo[e]]++] = edgesFrom[e];
+      union(components, edgesFrom[e], edgesTo[e]);
+    }
+
+    // roots: connectables without parents, or the first connectable of a part that is a loop
+    List<Integer> roots = new ArrayList<>();
+    boolean[] hasRoot = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      if (parentsStart[i + 1] == parentsStart[i]) {
+        roots.add(i);
+        hasRoot[find(components, i)] = true;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      int component = find(components, i);
+      if (!hasRoot[component]) {
+        roots.add(i);
+        hasRoot[component] = true;
+      }
+    }
+
+    // the root each connectable is first reached from, and how far it is from it
+    rootOf = new int[n];
+    Arrays.fill(rootOf, -1);
+    distanceFromRoot = new double[n];
+    int[] queue = new int[n];
+    for (int root : roots) {
+      if (rootOf[root] >= 0) {
+        continue;
+      }
+      int head = 0;
+      int tail = 0;
+      queue[tail++] = root;
+      rootOf[root] = root;
+      while (head < tail) {
+        int node = queue[head++];
+        double distance = distanceFromRoot[node] + connectables.get(node).getLength();
+        for (int c = childrenStart[node]; c < childrenStart[node + 1]; c++) {
+          int child = children[c];
+          if (rootOf[child] < 0) {
+            rootOf[child] = root;
+            distanceFromRoot[child] = distance;
+            queue[tail++] = child;
+          }
+        }
+      }
+    }
+
+    Multimap<Connectable, Connectable> edges = LinkedHashMultimap.create();
+    Multimap<Connectable, Connectable> inverseEdges = LinkedHashMultimap.create();
+    for (int i = 0; i < n; i++) {
+      Connectable connectable = connectables.get(i);
+      if (childrenStart[i + 1] == childrenStart[i]) {
+        edges.put(connectable, null);
+      }
+      for (int c = childrenStart[i]; c < childrenStart[i + 1]; c++) {
+        edges.put(connectable, connectables.get(children[c]));
+      }
+      for (int p = parentsStart[i]; p < parentsStart[i + 1]; p++) {
+        inverseEdges.put(connectable, connectables.get(parents[p]));
+      }
+    }
+    List<Connectable> rootConnectables = new ArrayList<>(roots.size());
+    for (int root : roots) {
+      rootConnectables.add(connectables.get(root));
+      inverseEdges.put(null, connectables.get(root));
+    }
+    graph.restore(rootConnectables, edges, inverseEdges);
+    if (verify) {
+      graph.verifyGraph();
+    }
+  }
+
+  /**
+   * Set the root of the graph a journey path starts from, and its distance from it (once the
+   * graph is built)
+   */
+  public void initJourney(JourneyPath journeyPath) {
+    if (rootOf == null) {
+      throw new IllegalStateException("The graph isn't built yet");
+    }
+    Integer index = indexes.get(journeyPath.getFirst());
+    if (index == null) {
+      throw new IllegalStateException("The journey's root doesn't exist in the graph!");
+    }
+    Connectable root = connectables.get(rootOf[index]);
+    journeyPath.setGraphRootConnectable(root);
+    if (root != journeyPath.getFirst()) {
+      journeyPath.setDistanceFromGraphRoot(distanceFromRoot[index]);
+    }
+  }
+
+  private static int find(int[] components, int i) {
+    int root = i;
+    while (components[root] != root) {
+      root = components[root];
+    }
+    // path compression
+    while (components[i] != root) {
+      int next = components[i];
+      components[i] = root;
+      i = next;
+    }
+    return root;
+  }
+
+  private static void union(int[] components, int a, int b) {
+    int rootA = find(components, a);
+    int rootB = find(components, b);
+    if (rootA != rootB) {
+      // the earlier connectable stays the representative
+      components[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+    }
+  }
+}
@@ -0,0 +1,789 @@
+package ft.sim.world.map;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import ft.sim.simulation.Disruptor;
+import ft.sim.world.WorldState;
+import ft.sim.world.connectables.Connectable;
+import ft.sim.world.connectables.LineCondition;
+import ft.sim.world.connectables.Station;
+import ft.sim.world.connectables.Switch;
+import ft.sim.world.connectables.Track;
+import ft.sim.world.journey.Journey;
+import ft.sim.world.journey.JourneyPath;
+import ft.sim.world.placeables.ActiveBalise;
+import ft.sim.world.placeables.Balise;
+import ft.sim.world.placeables.Obstacle;
+import ft.sim.world.placeables.PassiveBalise;
+import ft.sim.world.placeables.Placeable;
+import ft.sim.world.signalling.SignalController;
+import ft.sim.world.signalling.SignalType;
+import ft.sim.world.signalling.SignalUnit;
+import ft.sim.world.train.Train;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The topology of a map: everything {@link MapBuilder} works out from the map file (tracks,
+ * stations, switches, placeables, the graph, journey paths and where the signals and balises go),
+ * without any of the state of a run. It is immutable, so one topology is shared by all the runs on
+ * a map (see {@link #forMap(String)}), and the map is only parsed and built once.
+ *
+ * The worlds of a topology also share its geometry: they are all made of the same tracks,
+ * stations, switches, placeables and signals, created once (see {@link #instantiate()}), with the
+ * same graph and journey paths, and the same positions of the balises. Only the trains and their
+ * journeys are their own. What changes during a run (the status of the signals, the data of the
+ * active balises, the trains at the stations, the position of the switches and the trails of the
+ * trains) is kept in the {@link WorldState} of each world, so a world costs its trains and what
+ * its run has changed, rather than another copy of the map.
+ */
+public final class MapTopology {
+
+  protected static transient Logger logger = LoggerFactory.getLogger(MapTopology.class);
+
+  // topologies of the maps built so far, until memory is needed
+  private static final Map<String, CachedTopology> topologies = new ConcurrentHashMap<>();
+
+  static final byte NONE = 0;
+  static final byte TRACK = 1;
+  static final byte STATION = 2;
+  static final byte SWITCH = 3;
+
+  static final byte FIXED_BALISE = 0;
+  static final byte OBSTACLE = 1;
+
+  final String name;
+  final Map<String, Object> configurations;
+  final List<TrackSpec> tracks;
+  final List<int[]> trackPairs;
+  final List<StationSpec> stations;
+  final List<PlaceableSpec> placeables;
+  final List<SwitchSpec> switches;
+  final List<JourneyPathSpec> journeyPaths;
+  final List<int[]> trains;
+  final List<JourneySpec> journeys;
+  final List<Ref> graphRoots;
+  final List<Ref[]> graphEdges;
+  final List<Ref[]> graphInverseEdges;
+  final List<ControllerSpec> controllers;
+  final List<int[]> trackControllers;
+  final List<int[]> stationControllers;
+  final List<BlockSignalSpec> blockSignals;
+  final List<ActiveBalisesSpec> activeBalises;
+
+  // created for the first world, and shared by all of them
+  private volatile Geometry geometry = null;
+  // worked out for the first world that looks for routes (see RouteFinder)
+  private volatile RouteTables routeTables = null;
+  // of the world the topology was worked out from (null if it was loaded)
+  private MapBuildReport buildReport = null;
+
+  @SuppressWarnings("unchecked")
+  MapTopology(String name, Map<String, Object> configurations, List<TrackSpec> tracks,
+      List<int[]> trackPairs, List<StationSpec> stations, List<PlaceableSpec> placeables,
+      List<SwitchSpec> switches, List<JourneyPathSpec> journeyPaths, List<int[]> trains,
+      List<JourneySpec> journeys, List<Ref> graphRoots, List<Ref[]> graphEdges,
+      List<Ref[]> graphInverseEdges, List<ControllerSpec> controllers,
+      List<int[]> trackControllers, List<int[]> stationControllers,
+      List<BlockSignalSpec> blockSignals, List<ActiveBalisesSpec> activeBalises) {
+    this.name = name;
+    this.configurations = Collections
+        .unmodifiableMap((Map<String, Object>) copyOf(configurations));
+    this.tracks = Collections.unmodifiableList(tracks);
+    this.trackPairs = Collections.unmodifiableList(trackPairs);
+    this.stations = Collections.unmodifiableList(stations);
+    this.placeables = Collections.unmodifiableList(placeables);
+    this.switches = Collections.unmodifiableList(switches);
+    this.journeyPaths = Collections.unmodifiableList(journeyPaths);
+    this.trains = Collections.unmodifiableList(trains);
+    this.journeys = Collections.unmodifiableList(journeys);
+    this.graphRoots = Collections.unmodifiableList(graphRoots);
+    this.graphEdges = Collections.unmodifiableList(graphEdges);
+    this.graphInverseEdges = Collections.unmodifiableList(graphInverseEdges);
+    this.controllers = Collections.unmodifiableList(controllers);
+    this.trackControllers = Collections.unmodifiableList(trackControllers);
+    this.stationControllers = Collections.unmodifiableList(stationControllers);
+    this.blockSignals = Collections.unmodifiableList(blockSignals);
+    this.activeBalises = Collections.unmodifiableList(activeBalises);
+  }
+
+  /**
+   * The topology of a map (a YAML map or a compiled map), built (or loaded from the {@link
+   * MapCache}) the first time it is asked for and shared afterwards. A map file changed in the
+   * meantime is built again.
+   */
+  public static MapTopology forMap(String mapName) {
+    long modified = lastModified(mapName);
+    CachedTopology cached = topologies.get(mapName);
+    MapTopology topology = cached == null ? null : cached.get(modified);
+    if (topology != null) {
+      return topology;
+    }
+    // concurrent runs on a new map wait for it to be built once
+    synchronized (topologies) {
+      cached = topologies.get(mapName);
+      topology = cached == null ? null : cached.get(modified);
+      if (topology == null) {
+        topology = build(mapName);
+        topologies.put(mapName, new CachedTopology(topology, modified));
+      }
+    }
+    return topology;
+  }
+
+  private static MapTopology build(String mapName) {
+    if (mapName.endsWith(CompiledMap.EXTENSION)) {
+      try {
+        return CompiledMap.read(Paths.get(mapName));
+      } catch (IOException e) {
+        logger.error("failed to load compiled map {}: {}", mapName, e.getMessage());
+        throw new IllegalStateException("Failed to load compiled map!", e);
+      }
+    }
+    MapTopology topology = MapCache.load(mapName);
+    if (topology == null) {
+      topology = of(MapBuilder.buildWorld(mapName));
+      MapCache.store(mapName, topology);
+    }
+    return topology;
+  }
+
+  private static long lastModified(String mapName) {
+    for (String file : new String[]{mapName, mapName + ".yaml"}) {
+      if (new File(file).isFile()) {
+        return new File(file).lastModified();
+      }
+    }
+    // resources of the jar don't change
+    return 0;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Map<String, Object> getConfigurations() {
+    return configurations;
+  }
+
+  /**
+   * The tables routes are searched in, the same for all the worlds of the topology
+   */
+  RouteTables getRouteTables(GlobalMap world) {
+    RouteTables tables = routeTables;
+    if (tables == null) {
+      synchronized (this) {
+        tables = routeTables;
+        if (tables == null) {
+          tables = RouteTables.of(world);
+          routeTables = tables;
+        }
+      }
+    }
+    return tables;
+  }
+
+  /**
+   * The topology of a world, as it was built and before it is simulated
+   */
+  public static MapTopology of(GlobalMap map) {
+    // the signals and switches as the world was set up, in its state
+    WorldState previous = WorldState.setCurrent(map.getState());
+    try {
+      return topologyOf(map);
+    } finally {
+      WorldState.setCurrent(previous);
+    }
+  }
+
+  private static MapTopology topologyOf(GlobalMap map) {
+    Map<Placeable, Track> placedOn = new IdentityHashMap<>();
+    for (Track track : map.getTracks().values()) {
+      track.getPlaceables().values().forEach(p -> placedOn.put(p, track));
+    }
+
+    List<TrackSpec> tracks = new ArrayList<>();
+    map.getTracks().forEach((id, track) -> tracks.add(new TrackSpec(id,
+        track.getSections().size(), track.getLineCondition().getAccelerationCoefficient(),
+        track.getLineCondition().getDecelerationCoefficient())));
+    List<int[]> trackPairs = new ArrayList<>();
+    map.getTrackPairs().forEach((id, pairID) -> trackPairs.add(new int[]{id, pairID}));
+    List<StationSpec> stations = new ArrayList<>();
+    map.getStations().forEach((id, station) -> stations.add(new StationSpec(id,
+        station.getCapacity(), station.getDelay(), (int) station.getLength())));
+
+    List<PlaceableSpec> placeables = new ArrayList<>();
+    for (Entry<Integer, Placeable> entry : map.getPlaceablesMap().entrySet()) {
+      Placeable placeable = entry.getValue();
+      Track track = placedOn.get(placeable);
+      byte kind;
+      double advisorySpeed = 0;
+      if (placeable instanceof PassiveBalise) {
+        kind = FIXED_BALISE;
+        advisorySpeed = ((PassiveBalise) placeable).getAdvisorySpeed();
+      } else if (placeable instanceof Obstacle) {
+        kind = OBSTACLE;
+      } else {
+        throw new IllegalArgumentException("Unsupported placeable " + placeable);
+      }
+      placeables.add(new PlaceableSpec(entry.getKey(), kind, advisorySpeed,
+          map.getTrackID(track), track.getPlaceablePosition(placeable),
+          placeable instanceof Balise ? ((Balise) placeable).getPosition() : -1));
+    }
+
+    List<SwitchSpec> switches = new ArrayList<>();
+    for (Entry<Integer, Switch> entry : map.getSwitches().entrySet()) {
+      Switch s = entry.getValue();
+      // the status has both directions of the connection, the left track is the one on the left
+      Entry<Track, Track> status = s.getStatus().entrySet().stream()
+          .filter(e -> s.getFrom().contains(e.getKey())).findFirst()
+          .orElse(s.getStatus().entrySet().iterator().next());
+      switches.add(new SwitchSpec(entry.getKey(), trackIDs(map, s.getFrom()),
+          trackIDs(map, s.getTo()), map.getTrackID(status.getKey()),
+          map.getTrackID(status.getValue())));
+    }
+
+    List<JourneyPathSpec> journeyPaths = new ArrayList<>();
+    for (Entry<Integer, JourneyPath> entry : map.getJourneyPaths().entrySet()) {
+      JourneyPath path = entry.getValue();
+      List<Ref> connectables = new ArrayList<>();
+      path.getPath().forEach(c -> connectables.add(Ref.of(map, c)));
+      journeyPaths.add(new JourneyPathSpec(entry.getKey(), path.isDualed(), connectables,
+          Ref.of(map, path.getGraphRootConnectable()), path.getDistanceFromGraphRoot()));
+    }
+    List<int[]> trains = new ArrayList<>();
+    map.getTrains().forEach((id, train) -> trains.add(new int[]{id, train.getNumberOfCars()}));
+    List<JourneySpec> journeys = new ArrayList<>();
+    for (Entry<Integer, Journey> entry : map.getJourneys().entrySet()) {
+      Journey journey = entry.getValue();
+      journeys.add(new JourneySpec(entry.getKey(), map.getJourneyPathID(journey.getJourneyPath()),
+          map.getTrainID(journey.getTrain()), journey.isDirectionForward()));
+    }
+
+    MapGraph graph = map.getGraph();
+    List<Ref> graphRoots = new ArrayList<>();
+    graph.getRoots().forEach(root -> graphRoots.add(Ref.of(map, root.getParent())));
+    List<Ref[]> graphEdges = new ArrayList<>();
+    List<Ref[]> graphInverseEdges = new ArrayList<>();
+    Set<Connectable> connectables = new HashSet<>(graph.getConnectablesGraph().keySet());
+    graph.getConnectablesGraph().entries().forEach(edge -> {
+      graphEdges.add(new Ref[]{Ref.of(map, edge.getKey()), Ref.of(map, edge.getValue())});
+      connectables.add(edge.getValue());
+    });
+    for (Connectable connectable : connectables) {
+      for (Connectable parent : graph.getParents(connectable)) {
+        graphInverseEdges.add(new Ref[]{Ref.of(map, connectable), Ref.of(map, parent)});
+      }
+    }
+
+    // signal controllers by index, and which controller each signal unit belongs to
+    Map<SignalController, Integer> controllerIndexes = new IdentityHashMap<>();
+    Map<SignalUnit, SignalController> controllerOfSignal = new IdentityHashMap<>();
+    List<ControllerSpec> controllers = new ArrayList<>();
+    List<SignalController> found = new ArrayList<>();
+    map.getTracks().values().forEach(track -> found.add(track.getSignalController()));
+    map.getStations().values()
+        .forEach(station -> found.addAll(station.getNextBlockSignalControllers().values()));
+    for (SignalController controller : found) {
+      if (controller != null && !controllerIndexes.containsKey(controller)) {
+        controllerIndexes.put(controller, controllers.size());
+        controllers.add(new ControllerSpec(Ref.of(map, controller.getBelongsTo()),
+            controller.getStatus()));
+        controller.getSignalUnits().forEach(unit -> controllerOfSignal.put(unit, controller));
+      }
+    }
+    List<int[]> trackControllers = new ArrayList<>();
+    List<BlockSignalSpec> blockSignals = new ArrayList<>();
+    for (Entry<Integer, Track> entry : map.getTracks().entrySet()) {
+      Track track = entry.getValue();
+      if (track.getSignalController() != null) {
+        trackControllers.add(
+            new int[]{entry.getKey(), controllerIndexes.get(track.getSignalController())});
+      }
+      for (Entry<Integer, SignalUnit> signal : track.getBlockSignals().entrySet()) {
+        SignalController controller = controllerOfSignal.get(signal.getValue());
+        if (controller == null) {
+          throw new IllegalStateException(
+              "Block signal without a controller on track " + entry.getKey());
+        }
+        blockSignals.add(new BlockSignalSpec(entry.getKey(), signal.getKey(),
+            controllerIndexes.get(controller), signal.getValue().isDistantSignal()));
+      }
+    }
+    List<int[]> stationControllers = new ArrayList<>();
+    map.getStations().forEach((id, station) -> station.getNextBlockSignalControllers()
+        .forEach((track, controller) -> stationControllers
+            .add(new int[]{id, map.getTrackID(track), controllerIndexes.get(controller)})));
+
+    MapTopology topology = new MapTopology(map.getName(), map.getConfigurations(), tracks,
+        trackPairs, stations, placeables, switches, journeyPaths, trains, journeys, graphRoots,
+        graphEdges, graphInverseEdges, controllers, trackControllers, stationControllers,
+        blockSignals, activeBalisesOf(map));
+    topology.buildReport = map.getBuildReport();
+    return topology;
+  }
+
+  private static int[] trackIDs(GlobalMap map, List<Track> tracks) {
+    return tracks.stream().mapToInt(map::getTrackID).toArray();
+  }
+
+  private static List<ActiveBalisesSpec> activeBalisesOf(GlobalMap map) {
+    // tracks in the order balises were placed on them, as that's the order failures are drawn in
+    List<ActiveBalisesSpec> activeBalises = new ArrayList<>();
+    Set<Track> visited = new HashSet<>();
+    MapGraph graph = map.getGraph();
+    for (Connectable root : graph.getRootConnectables()) {
+      try {
+        Iterator<Connectable> mapIterator = graph.getIterator(root);
+        while (mapIterator.hasNext()) {
+          Connectable c = mapIterator.next();
+          if (!(c instanceof Track) || visited.contains(c)) {
+            continue;
+          }
+          Track track = (Track) c;
+          List<Entry<Integer, Placeable>> balises = new ArrayList<>();
+          track.getPlaceables().entrySet().stream()
+              .filter(e -> e.getValue() instanceof ActiveBalise).forEach(balises::add);
+          if (balises.isEmpty()) {
+            continue;
+          }
+          visited.add(track);
+          // balises copied from the paired track aren't drawn for failure
+          boolean drawn = !visited.contains(DualLineHelper.getTrackPair(map, track));
+          int[] sections = new int[balises.size()];
+          double[] positions = new double[balises.size()];
+          for (int i = 0; i < balises.size(); i++) {
+            sections[i] = balises.get(i).getKey();
+            positions[i] = ((Balise) balises.get(i).getValue()).getPosition();
+          }
+          activeBalises.add(
+              new ActiveBalisesSpec(map.getTrackID(track), drawn, sections, positions));
+        }
+      } catch (IllegalStateException e) {
+        // branching maps don't have active balises
+      }
+    }
+    return activeBalises;
+  }
+
+  /**
+   * Create a new world of this topology, for a run. It shares the geometry of the topology with
+   * the other worlds, and starts its run in a state of its own, in which only which active
+   * balises are broken differs between the worlds, as it is drawn again for each of them.
+   */
+  public GlobalMap instantiate() {
+    Geometry geometry = getGeometry();
+    GlobalMap map = new GlobalMap(name);
+    map.setTopology(this);
+    MapBuilder builder = new MapBuilder(map, buildReport);
+    WorldState previous = WorldState.setCurrent(map.getState());
+    try {
+      builder.instantiate(() -> instantiate(map, geometry, builder));
+    } finally {
+      WorldState.setCurrent(previous);
+    }
+    return map;
+  }
+
+  private void instantiate(GlobalMap map, Geometry geometry, MapBuilder builder) {
+    configurations.forEach((key, value) -> map.addConfiguration(key, copyOf(value)));
+    map.shareGeometryOf(geometry.world);
+
+    trains.forEach(train -> map.addTrain(train[0], new Train(train[1])));
+    journeys.forEach(
+        spec -> map.addJourney(spec.id, spec.journeyPathID, spec.trainID, spec.isForward));
+    builder.setTrainsAtStations();
+
+    for (int i = 0; i < controllers.size(); i++) {
+      SignalController controller = geometry.signalControllers.get(i);
+      if (controllers.get(i).status != controller.getStatus()) {
+        controller.setStatus(controllers.get(i).status);
+      }
+    }
+    int baliseFailure = (int) map.getConfiguration("gsm_failure_rate");
+    for (int i = 0; i < activeBalises.size(); i++) {
+      boolean isBroken = activeBalises.get(i).drawn && baliseFailure > 0
+          && Disruptor.getInstance(map).shouldDisrupt(baliseFailure);
+      if (isBroken) {
+        geometry.activeBalises.get(i).forEach(balise -> balise.setIsBroken(true));
+      }
+    }
+
+    builder.setRadioMasts();
+    builder.setTrainIDs();
+  }
+
+  /**
+   * The geometry shared by the worlds of the topology, created for the first one
+   */
+  private Geometry getGeometry() {
+    Geometry shared = geometry;
+    if (shared == null) {
+      synchronized (this) {
+        shared = geometry;
+        if (shared == null) {
+          shared = createGeometry();
+          geometry = shared;
+        }
+      }
+    }
+    return shared;
+  }
+
+  private Geometry createGeometry() {
+    GlobalMap map = new GlobalMap(name);
+    // whatever creating it changes is in a state of its own, each world sets up its own
+    WorldState previous = WorldState.setCurrent(map.getState());
+    try {
+      for (TrackSpec spec : tracks) {
+        Track track = new Track(spec.numSections);
+        track.setLineCondition(new LineCondition(spec.acceleration, spec.deceleration));
+        map.addTrack(spec.id, track);
+      }
+      trackPairs.forEach(pair -> map.addTrackPair(pair[0], pair[1]));
+      for (StationSpec spec : stations) {
+        Station station = new Station(spec.capacity, spec.delay);
+        station.setLength(spec.length);
+        map.addStation(spec.id, station);
+      }
+      for (PlaceableSpec spec : placeables) {
+        Placeable placeable = spec.kind == FIXED_BALISE
+            ? new PassiveBalise(spec.advisorySpeed, spec.id) : new Obstacle();
+        map.addPlaceable(spec.id, placeable, spec.trackID, spec.section);
+        if (placeable instanceof Balise) {
+          ((Balise) placeable).setPosition(spec.position);
+        }
+      }
+      for (SwitchSpec spec : switches) {
+        map.addSwitch(spec.id, toList(spec.left), toList(spec.right), spec.statusLeft,
+            spec.statusRight);
+      }
+
+      for (JourneyPathSpec spec : journeyPaths) {
+        List<Connectable> path = new ArrayList<>(spec.path.size());
+        spec.path.forEach(ref -> path.add(ref.resolve(map)));
+        map.addJourneyPath(spec.id, path, spec.isDual);
+        JourneyPath journeyPath = map.getJourneyPath(spec.id);
+        journeyPath.setGraphRootConnectable(spec.graphRoot.resolve(map));
+        journeyPath.setDistanceFromGraphRoot(spec.distanceFromGraphRoot);
+      }
+
+      List<Connectable> roots = new ArrayList<>(graphRoots.size());
+      graphRoots.forEach(ref -> roots.add(ref.resolve(map)));
+      map.getGraph().restore(roots, toMultimap(map, graphEdges),
+          toMultimap(map, graphInverseEdges));
+
+      Geometry geometry = new Geometry(map, createSignals(map), createActiveBalises(map));
+      MapBuilder builder = new MapBuilder(map);
+      builder.pairTracks();
+      builder.setGeometryIDs();
+      map.freezeGeometry();
+      return geometry;
+    } finally {
+      WorldState.setCurrent(previous);
+    }
+  }
+
+  private List<SignalController> createSignals(GlobalMap map) {
+    List<SignalController> signalControllers = new ArrayList<>(controllers.size());
+    controllers.forEach(spec -> signalControllers.add(
+        new SignalController(spec.belongsTo.resolve(map))));
+    trackControllers.forEach(
+        c -> map.getTrack(c[0]).addSignalController(signalControllers.get(c[1])));
+    stationControllers.forEach(c -> map.getStation(c[0])
+        .setNextBlockSignalController(signalControllers.get(c[2]), map.getTrack(c[1])));
+    for (BlockSignalSpec spec : blockSignals) {
+      SignalController controller = signalControllers.get(spec.controller);
+      map.getTrack(spec.trackID).addBlockSignal(
+          spec.isDistant ? controller.newDistantSignal() : controller.getMainSignal(),
+          spec.section);
+    }
+    return signalControllers;
+  }
+
+  private List<List<ActiveBalise>> createActiveBalises(GlobalMap map) {
+    List<List<ActiveBalise>> created = new ArrayList<>(activeBalises.size());
+    for (ActiveBalisesSpec spec : activeBalises) {
+      Track track = map.getTrack(spec.trackID);
+      List<ActiveBalise> balises = new ArrayList<>(spec.sections.length);
+      for (int i = 0; i < spec.sections.length; i++) {
+        ActiveBalise balise = new ActiveBalise();
+        track.placePlaceableOnSectionIndex(balise, spec.sections[i]);
+        balise.setPosition(spec.positions[i]);
+        balises.add(balise);
+      }
+      created.add(balises);
+    }
+    return created;
+  }
+
+  private static List<Integer> toList(int[] ids) {
+    List<Integer> list = new ArrayList<>(ids.length);
+    for (int id : ids) {
+      list.add(id);
+    }
+    return list;
+  }
+
+  private static Multimap<Connectable, Connectable> toMultimap(GlobalMap map,
+      List<Ref[]> edges) {
+    Multimap<Connectable, Connectable> multimap = HashMultimap.create();
+    edges.forEach(edge -> multimap.put(edge[0].resolve(map), edge[1].resolve(map)));
+    return multimap;
+  }
+
+  /**
+   * Nested configurations are copied, so that a run changing its own doesn't change the others'
+   */
+  @SuppressWarnings("unchecked")
+  private static Object copyOf(Object value) {
+    if (value instanceof Map) {
+      Map<String, Object> copy = new LinkedHashMap<>();
+      ((Map<String, Object>) value).forEach((k, v) -> copy.put(k, copyOf(v)));
+      return copy;
+    }
+    if (value instanceof List) {
+      List<Object> copy = new ArrayList<>();
+      ((List<Object>) value).forEach(v -> copy.add(copyOf(v)));
+      return copy;
+    }
+    return value;
+  }
+
+  /**
+   * The tracks, stations, switches, placeables, track pairs, journey paths and graph of the
+   * worlds of a topology (see {@link GlobalMap#shareGeometryOf(GlobalMap)}), and their signal
+   * controllers and active balises in the order of their specs
+   */
+  private static final class Geometry {
+
+    private final GlobalMap world;
+    private final List<SignalController> signalControllers;
+    private final List<List<ActiveBalise>> activeBalises;
+
+    Geometry(GlobalMap world, List<SignalController> signalControllers,
+        List<List<ActiveBalise>> activeBalises) {
+      this.world = world;
+      this.signalControllers = signalControllers;
+      this.activeBalises = activeBalises;
+    }
+  }
+
+  private static class CachedTopology {
+
+    private final SoftReference<MapTopology> topology;
+    private final long modified;
+
+    CachedTopology(MapTopology topology, long modified) {
+      this.topology = new SoftReference<>(topology);
+      this.modified = modified;
+    }
+
+    MapTopology get(long modified) {
+      return this.modified == modified ? topology.get() : null;
+    }
+  }
+
+  /**
+   * A connectable of the map, by type and ID
+   */
+  static final class Ref {
+
+    static final Ref NULL = new Ref(NONE, 0);
+
+    final byte type;
+    final int id;
+
+    Ref(byte type, int id) {
+      this.type = type;
+      this.id = id;
+    }
+
+    static Ref of(GlobalMap map, Connectable connectable) {
+      if (connectable == null) {
+        return NULL;
+      } else if (connectable instanceof Track) {
+        return new Ref(TRACK, map.getTrackID((Track) connectable));
+      } else if (connectable instanceof Station) {
+        return new Ref(STATION, map.getStationID((Station) connectable));
+      } else if (connectable instanceof Switch) {
+        return new Ref(SWITCH, map.getSwitchID((Switch) connectable));
+      }
+      throw new IllegalArgumentException("Unsupported connectable " + connectable);
+    }
+
+    Connectable resolve(GlobalMap map) {
+      switch (type) {
+        case NONE:
+          return null;
+        case TRACK:
+          return map.getTrack(id);
+        case STATION:
+          return map.getStation(id);
+        case SWITCH:
+          return map.getSwitch(id);
+        default:
+          throw new IllegalStateException("Invalid connectable type: " + type);
+      }
+    }
+  }
+
+  static final class TrackSpec {
+
+    final int id;
+    final int numSections;
+    final double acceleration;
+    final double deceleration;
+
+    TrackSpec(int id, int numSections, double acceleration, double deceleration) {
+      this.id = id;
+      this.numSections = numSections;
+      this.acceleration = acceleration;
+      this.deceleration = deceleration;
+    }
+  }
+
+  static final class StationSpec {
+
+    final int id;
+    final int capacity;
+    final int delay;
+    final int length;
+
+    StationSpec(int id, int capacity, int delay, int length) {
+      this.id = id;
+      this.capacity = capacity;
+      this.delay = delay;
+      this.length = length;
+    }
+  }
+
+  static final class PlaceableSpec {
+
+    final int id;
+    final byte kind;
+    final double advisorySpeed;
+    final int trackID;
+    final int section;
+    // from the root of the graph, -1 if not known
+    final double position;
+
+    PlaceableSpec(int id, byte kind, double advisorySpeed, int trackID, int section,
+        double position) {
+      this.id = id;
+      this.kind = kind;
+      this.advisorySpeed = advisorySpeed;
+      this.trackID = trackID;
+      this.section = section;
+      this.position = position;
+    }
+  }
+
+  static final class SwitchSpec {
+
+    final int id;
+    final int[] left;
+    final int[] right;
+    final int statusLeft;
+    final int statusRight;
+
+    SwitchSpec(int id, int[] left, int[] right, int statusLeft, int statusRight) {
+      this.id = id;
+      this.left = left;
+      this.right = right;
+      this.statusLeft = statusLeft;
+      this.statusRight = statusRight;
+    }
+  }
+
+  static final class JourneyPathSpec {
+
+    final int id;
+    final boolean isDual;
+    final List<Ref> path;
+    final Ref graphRoot;
+    final double distanceFromGraphRoot;
+
+    JourneyPathSpec(int id, boolean isDual, List<Ref> path, Ref graphRoot,
+        double distanceFromGraphRoot) {
+      this.id = id;
+      this.isDual = isDual;
+      this.path = Collections.unmodifiableList(path);
+      this.graphRoot = graphRoot;
+      this.distanceFromGraphRoot = distanceFromGraphRoot;
+    }
+  }
+
+  static final class JourneySpec {
+
+    final int id;
+    final int journeyPathID;
+    final int trainID;
+    final boolean isForward;
+
+    JourneySpec(int id, int journeyPathID, int trainID, boolean isForward) {
+      this.id = id;
+      this.journeyPathID = journeyPathID;
+      this.trainID = trainID;
+      this.isForward = isForward;
+    }
+  }
+
+  static final class ControllerSpec {
+
+    final Ref belongsTo;
+    // as the map was built (e.g. red if a train starts behind it)
+    final SignalType status;
+
+    ControllerSpec(Ref belongsTo, SignalType status) {
+      this.belongsTo = belongsTo;
+      this.status = status;
+    }
+  }
+
+  static final class BlockSignalSpec {
+
+    final int trackID;
+    final int section;
+    final int controller;
+    final boolean isDistant;
+
+    BlockSignalSpec(int trackID, int section, int controller, boolean isDistant) {
+      this.trackID = trackID;
+      this.section = section;
+      this.controller = controller;
+      this.isDistant = isDistant;
+    }
+  }
+
+  static final class ActiveBalisesSpec {
+
+    final int trackID;
+    // whether the balises of the track are drawn for failure (not if copied from its pair)
+    final boolean drawn;
+    final int[] sections;
+    final double[] positions;
+
+    ActiveBalisesSpec(int trackID, boolean drawn, int[] sections, double[] positions) {
+      this.trackID = trackID;
+      this.drawn = drawn;
+      this.sections = sections;
+      this.positions = positions;
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package ft.sim.world.map;
+
+import static ft.sim.world.RealWorldConstants.BRAKE_DISTANCE;
+
+import ft.sim.world.WorldState;
+import ft.sim.world.connectables.Connectable;
+import ft.sim.world.connectables.Station;
+import ft.sim.world.connectables.Switch;
+import ft.sim.world.connectables.Track;
+import ft.sim.world.journey.Journey;
+import ft.sim.world.journey.JourneyPath;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Builds a map and checks it, without running it. Errors are problems of the build itself, of the
+ * invariants of its graph (see {@link MapGraph#verifyGraph()}), of its journey paths and switches,
+ * stations with more trains starting at them than they hold, and tracks of fixed block maps too
+ * short for the distant signal of the next block. Parts of the map no journey path goes over are
+ * warnings. Maps are always built from scratch, not loaded from the {@link MapCache}, and without
+ * verification, so that every problem is listed rather than only the first one failing the build.
+ */
+public class MapValidator {
+
+  private MapValidator() {
+  }
+
+  public static Validation validate(String mapName) {
+    Validation validation = new Validation(mapName);
+    GlobalMap world;
+    try {
+      if (mapName.endsWith(CompiledMap.EXTENSION)) {
+        world = CompiledMap.load(Paths.get(mapName));
+      } else {
+        world = MapBuilder.buildWorld(mapName, false);
+      }
+    } catch (Exception e) {
+      validation.errors.add("The map failed to build: " + e);
+      return validation;
+    }
+    validation.report = world.getBuildReport();
+    WorldState previous = WorldState.setCurrent(world.getState());
+    try {
+      check(validation, world);
+    } finally {
+      WorldState.setCurrent(previous);
+    }
+    return validation;
+  }
+
+  private static void check(Validation validation, GlobalMap world) {
+    MapGraph graph = world.getGraph();
+    validation.errors.addAll(graph.findProblems());
+
+    Set<Connectable> used = new HashSet<>();
+    for (Entry<Integer, JourneyPath> entry : world.getJourneyPaths().entrySet()) {
+      JourneyPath path = entry.getValue();
+      List<Connectable> connectables = path.getPath();
+      used.addAll(connectables);
+      if (connectables.isEmpty()) {
+        validation.errors.add("Journey path " + entry.getKey() + " is empty");
+        continue;
+      }
+      if (path.getGraphRootConnectable() == null) {
+        validation.errors.add("Journey path " + entry.getKey() + " has no root in the graph");
+      }
+    }
+    checkSwitches(validation, world);
+    checkStations(validation, world);
+    if (world.isConfiguration("mode", "fixed_block")) {
+      checkTrackLengths(validation, world);
+    }
+    warnUnused(validation, "Track", world.getTracks(), used);
+    warnUnused(validation, "Station", world.getStations(), used);
+    warnUnused(validation, "Switch", world.getSwitches(), used);
+  }
+
+  private static void checkSwitches(Validation validation, GlobalMap world) {
+    MapGraph graph = world.getGraph();
+    for (Entry<Integer, Switch> entry : world.getSwitches().entrySet()) {
+      Switch s = entry.getValue();
+      if (s.getFrom().contains(null) || s.getTo().contains(null)) {
+        validation.errors.add("Switch " + entry.getKey() + " has tracks that don't exist");
+        continue;
+      }
+      for (Entry<Track, Track> route : s.getStatus().entrySet()) {
+        if (route.getKey() == null || route.getValue() == null
+            || !s.connects(route.getKey(), route.getValue())) {
+          validation.errors.add("Switch " + entry.getKey()
+              + " is set between tracks it doesn't connect");
+          break;
+        }
+      }
+      Set<Connectable> connected = new LinkedHashSet<>(graph.getParents(s));
+      connected.addAll(graph.getChildren(s));
+      for (Connectable c : connected) {
+        if (c != null && !s.getFrom().contains(c) && !s.getTo().contains(c)) {
+          validation.errors.add("Switch " + entry.getKey() + " is connected to "
+              + describe(world, c) + ", which isn't one of its tracks");
+        }
+      }
+    }
+  }
+
+  private static void checkStations(Validation validation, GlobalMap world) {
+    Map<Station, Integer> startingTrains = new HashMap<>();
+    for (Journey journey : world.getJourneys().values()) {
+      List<Connectable> path = journey.getJourneyPath().getPath();
+      if (path.isEmpty()) {
+        continue;
+      }
+      Connectable start = journey.isDirectionForward() ? path.get(0) : path.get(path.size() - 1);
+      if (start instanceof Station) {
+        startingTrains.merge((Station) start, 1, Integer::sum);
+      }
+    }
+    world.getStations().forEach((id, station) -> {
+      int trains = startingTrains.getOrDefault(station, 0);
+      if (trains > station.getCapacity()) {
+        validation.errors.add("Station " + id + " has " + trains + " trains starting at it, "
+            + "more than its capacity of " + station.getCapacity());
+      }
+    });
+  }
+
+  private static void checkTrackLengths(Validation validation, GlobalMap world) {
+    MapGraph graph = world.getGraph();
+    world.getTracks().forEach((id, track) -> {
+      boolean followedByTrack = graph.getChildren(track).stream()
+          .anyMatch(c -> c instanceof Track);
+      if (followedByTrack && track.getLength() <= BRAKE_DISTANCE) {
+        validation.errors.add("Track " + id + " is " + (int) track.getLength()
+            + "m long, too short for the distant signal of the next block (more than "
+            + BRAKE_DISTANCE + "m)");
+      }
+    });
+  }
+
+  private static String describe(GlobalMap world, Connectable connectable) {
+    if (connectable instanceof Track) {
+      return "track " + world.getTrackID((Track) connectable);
+    } else if (connectable instanceof Station) {
+      return "station " + world.getStationID((Station) connectable);
+    } else if (connectable instanceof Switch) {
+      return "switch " + world.getSwitchID((Switch) connectable);
+    }
+    return String.valueOf(connectable);
+  }
+
+  private static void warnUnused(Validation validation, String type,
+      Map<Integer, ? extends Connectable> connectables, Set<Connectable> used) {
+    for (Entry<Integer, ? extends Connectable> entry : connectables.entrySet()) {
+      if (!used.contains(entry.getValue())) {
+        validation.warnings.add(type + " " + entry.getKey() + " isn't on any journey path");
+      }
+    }
+  }
+
+  /**
+   * What was found wrong with a map
+   */
+  public static class Validation {
+
+    private final String map;
+    private final List<String> errors = new ArrayList<>();
+    private final List<String> warnings = new ArrayList<>();
+    private MapBuildReport report = null;
+
+    private Validation(String map) {
+      this.map = map;
+    }
+
+    public String getMap() {
+      return map;
+    }
+
+    public boolean isValid() {
+      return errors.isEmpty();
+    }
+
+    public List<String> getErrors() {
+      return Collections.unmodifiableList(errors);
+    }
+
+    public List<String> getWarnings() {
+      return Collections.unmodifiableList(warnings);
+    }
+
+    /**
+     * How the map was built (null if it failed to build)
+     */
+    public MapBuildReport getReport() {
+      return report;
+    }
+  }
+}
@@ -0,0 +1,455 @@
+package ft.sim.world.map;
+
+import static ft.sim.world.RealWorldConstants.BRAKE_DISTANCE;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.DumperOptions.FlowStyle;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Generates synthetic networks for scale testing: a number of corridors, each a line of tracks
+ * from one station to the next, with balises every given distance and, for dual lines, a paired
+ * line in the other direction (see {@link DualLineHelper}). Between some of the tracks a junction
+ * switch leads to a branch: a track to a terminus station. On dual lines, the paired branch merges
+ * back into the paired line at its own junction. Each line and each branch has a journey path, and
+ * trains are spread over the journey paths, each one with a journey starting at the first station
+ * of its path.
+ *
+ * The network is generated in the structure of a YAML map, so it can be written to a map file or
+ * built into a world directly. {@link ScaleTier} has the standard sizes.
+ */
+public class NetworkGenerator {
+
+  private String name = "generated";
+  private int corridors = 1;
+  private int stationsPerCorridor = 2;
+  // metres from the first to the last station of a corridor
+  private int lineLength = 20000;
+  private int trackLength = 10000;
+  // fixed balises in fixed block mode, active balises (ferromone distance) in variable block mode
+  private int baliseSpacing = 1000;
+  // chance of a switch between two tracks of a corridor
+  private double switchDensity = 0;
+  private boolean dualLine = true;
+  private int trains = 2;
+  private int carsPerTrain = 4;
+  private int advisorySpeed = 50;
+  private int stationWait = 30;
+  private String mode = "fixed_block";
+  private long seed = 0;
+
+  public NetworkGenerator name(String name) {
+    this.name = name;
+    return this;
+  }
+
+  public NetworkGenerator corridors(int corridors) {
+    this.corridors = corridors;
+    return this;
+  }
+
+  public NetworkGenerator stationsPerCorridor(int stationsPerCorridor) {
+    this.stationsPerCorridor = stationsPerCorridor;
+    return this;
+  }
+
+  public NetworkGenerator lineLength(int lineLength) {
+    this.lineLength = lineLength;
+    return this;
+  }
+
+  public NetworkGenerator trackLength(int trackLength) {
+    this.trackLength = trackLength;
+    return this;
+  }
+
+  public NetworkGenerator baliseSpacing(int baliseSpacing) {
+    this.baliseSpacing = baliseSpacing;
+    return this;
+  }
+
+  public NetworkGenerator switchDensity(double switchDensity) {
+    this.switchDensity = switchDensity;
+    return this;
+  }
+
+  public NetworkGenerator dualLine(boolean dualLine) {
+    this.dualLine = dualLine;
+    return this;
+  }
+
+  public NetworkGenerator trains(int trains) {
+    this.trains = trains;
+    return this;
+  }
+
+  public NetworkGenerator carsPerTrain(int carsPerTrain) {
+    this.carsPerTrain = carsPerTrain;
+    return this;
+  }
+
+  public NetworkGenerator advisorySpeed(int advisorySpeed) {
+    this.advisorySpeed = advisorySpeed;
+    return this;
+  }
+
+  public NetworkGenerator stationWait(int stationWait) {
+    this.stationWait = stationWait;
+    return this;
+  }
+
+  /**
+   * Signalling mode of the network: "fixed_block" or "variable_block"
+   */
+  public NetworkGenerator mode(String mode) {
+    this.mode = mode;
+    return this;
+  }
+
+  /**
+   * Seed of the switch placement, and of the simulation of the network
+   */
+  public NetworkGenerator seed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Build a world of the network, without writing it to a file
+   */
+  public GlobalMap build() {
+    return MapBuilder.buildWorld(name, generate());
+  }
+
+  /**
+   * Write the network as a YAML map
+   */
+  public void writeYaml(Path path) throws IOException {
+    DumperOptions options = new DumperOptions();
+    options.setDefaultFlowStyle(FlowStyle.BLOCK);
+    try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      writer.write("---\n");
+      new Yaml(options).dump(generate(), writer);
+    }
+  }
+
+  /**
+   * The network in the structure of a YAML map (see the maps in the resources)
+   */
+  public Map<String, Object> generate() {
+    validate();
+    return new Generation().generate();
+  }
+
+  private void validate() {
+    if (corridors < 1 || stationsPerCorridor < 2 || trains < 0) {
+      throw new IllegalArgumentException(
+          "A network needs at least 1 corridor of 2 stations, and no negative trains");
+    }
+    if (trackLength <= 0 || lineLength <= 0 || baliseSpacing <= 0) {
+      throw new IllegalArgumentException("Lengths and balise spacing must be positive");
+    }
+    if (mode.equals("fixed_block") && trackLength <= BRAKE_DISTANCE) {
+      throw new IllegalArgumentException(
+          "Tracks must be longer than the brake distance for block signals: " + BRAKE_DISTANCE);
+    }
+    if (switchDensity < 0 || switchDensity > 1) {
+      throw new IllegalArgumentException("Switch density must be between 0 and 1");
+    }
+  }
+
+  /**
+   * The state of one generation: IDs given so far and the sections of the map
+   */
+  private class Generation {
+
+    private final Random random = new Random(seed);
+    private final Map<String, Object> tracks = new LinkedHashMap<>();
+    private final Map<String, Object> stations = new LinkedHashMap<>();
+    private final Map<String, Object> switches = new LinkedHashMap<>();
+    private final Map<String, Object> placeables = new LinkedHashMap<>();
+    private final Map<String, Object> journeyPaths = new LinkedHashMap<>();
+    private final Map<String, Object> trainsMap = new LinkedHashMap<>();
+    private final Map<String, Object> journeys = new LinkedHashMap<>();
+    private int switchCount = 0;
+
+    Map<String, Object> generate() {
+      int stationCapacity = Math.max(4, trains / (corridors * (dualLine ? 2 : 1)) + 1);
+      int segments = stationsPerCorridor - 1;
+      int tracksPerSegment = Math.max(1,
+          (int) Math.ceil((double) lineLength / segments / trackLength));
+
+      for (int c = 0; c < corridors; c++) {
+        // the connectables of the line, in order: a station, the tracks (and junctions) to the
+        // next station, the next station, ...
+        List<Element> line = new ArrayList<>();
+        for (int s = 0; s < stationsPerCorridor; s++) {
+          line.add(addStation(stationCapacity));
+          if (s == segments) {
+            break;
+          }
+          for (int t = 0; t < tracksPerSegment; t++) {
+            if (t > 0 && random.nextDouble() < switchDensity) {
+              line.add(new Element("switch", ++switchCount));
+            }
+            line.add(addTrack(0));
+          }
+        }
+        addJourneyPath(line);
+        for (int i = 0; i < line.size(); i++) {
+          if (line.get(i).type.equals("switch")) {
+            addDivergingBranch(line, i, stationCapacity);
+          }
+        }
+
+        if (dualLine) {
+          List<Element> otherLine = new ArrayList<>(line.size());
+          for (Element element : line) {
+            if (element.type.equals("track")) {
+              otherLine.add(addTrack(element.id));
+            } else if (element.type.equals("station")) {
+              otherLine.add(addStation(stationCapacity));
+            } else {
+              Element junction = new Element("switch", ++switchCount);
+              // its branch is the pair of the branch of the line
+              junction.branch = addTrack(element.branch.id);
+              otherLine.add(junction);
+            }
+          }
+          Collections.reverse(otherLine);
+          addJourneyPath(otherLine);
+          for (int i = 0; i < otherLine.size(); i++) {
+            if (otherLine.get(i).type.equals("switch")) {
+              addMergingBranch(otherLine, i, stationCapacity);
+            }
+          }
+        }
+      }
+
+      Map<Integer, Integer> startingTrains = new LinkedHashMap<>();
+      for (int t = 1; t <= trains; t++) {
+        Map<String, Object> train = new LinkedHashMap<>();
+        train.put("numCars", carsPerTrain);
+        trainsMap.put(String.valueOf(t), train);
+
+        int path = (t - 1) % journeyPaths.size() + 1;
+        Map<String, Object> journey = new LinkedHashMap<>();
+        journey.put("train", t);
+        journey.put("path", path);
+        journey.put("isForward", true);
+        journeys.put(String.valueOf(t), journey);
+        startingTrains.merge(firstStation(path), 1, Integer::sum);
+      }
+      // the paths of a line and of its branches start at the same station
+      startingTrains.forEach((station, count) -> ((Map<String, Object>) stations
+          .get(String.valueOf(station))).merge("capacity", count, (a, b) -> Math.max((int) a, (int) b)));
+
+      Map<String, Object> simulation = new LinkedHashMap<>();
+      simulation.put("mode", mode);
+      simulation.put("seed", (int) seed);
+      if (mode.equals("variable_block")) {
+        simulation.put("ferromone_distance", baliseSpacing);
+      }
+
+      // every section after the ones it refers to, so the map can be imported as it's read
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("simulation", simulation);
+      map.put("tracks", tracks);
+      map.put("stations", stations);
+      map.put("trains", trainsMap);
+      map.put("placeables", placeables);
+      map.put("switches", switches);
+      map.put("journeyPaths", journeyPaths);
+      map.put("journeys", journeys);
+      return map;
+    }
+
+    private Element addStation(int capacity) {
+      int id = stations.size() + 1;
+      Map<String, Object> station = new LinkedHashMap<>();
+      station.put("capacity", capacity);
+      station.put("wait", stationWait);
+      stations.put(String.valueOf(id), station);
+      return new Element("station", id);
+    }
+
+    /**
+     * Add a track, paired with the given track of the other line (if not 0)
+     */
+    private Element addTrack(int pairID) {
+      int id = tracks.size() + 1;
+      Map<String, Object> track = new LinkedHashMap<>();
+      track.put("numSections", trackLength);
+      tracks.put(String.valueOf(id), track);
+      if (pairID > 0) {
+        ((Map<String, Object>) tracks.get(String.valueOf(pairID))).put("pairID", id);
+      }
+      if (mode.equals("fixed_block")) {
+        addFixedBalises(id);
+      }
+      return new Element("track", id);
+    }
+
+    private void addFixedBalises(int trackID) {
+      int distantSignal = trackLength - BRAKE_DISTANCE - 1;
+      for (int section = baliseSpacing / 2; section < trackLength; section += baliseSpacing) {
+        if (section == 0 || section == distantSignal) {
+          // taken by the signals of the block
+          continue;
+        }
+        Map<String, Object> placeOn = new LinkedHashMap<>();
+        placeOn.put("track", trackID);
+        placeOn.put("section", section);
+        Map<String, Object> balise = new LinkedHashMap<>();
+        balise.put("type", "fixedBalise");
+        balise.put("advisorySpeed", advisorySpeed);
+        balise.put("placeOn", placeOn);
+        placeables.put(String.valueOf(placeables.size() + 1), balise);
+      }
+    }
+
+    /**
+     * Add a branch diverging from a line at a junction: a track to a terminus station, with a
+     * journey path from the first station of the line to the terminus
+     */
+    private void addDivergingBranch(List<Element> line, int junction, int stationCapacity) {
+      Element switchElement = line.get(junction);
+      int previous = line.get(junction - 1).id;
+      int next = line.get(junction + 1).id;
+      switchElement.branch = addTrack(0);
+      addSwitch(switchElement.id, Collections.singletonList(previous),
+          Arrays.asList(next, switchElement.branch.id), previous, next);
+
+      List<Element> path = new ArrayList<>(line.subList(0, junction + 1));
+      path.add(switchElement.branch);
+      path.add(addStation(stationCapacity));
+      addJourneyPath(path);
+    }
+
+    /**
+     * Add a branch merging into a line at a junction: from a terminus station, along the branch
+     * track and the rest of the line, to its last station
+     */
+    private void addMergingBranch(List<Element> line, int junction, int stationCapacity) {
+      Element switchElement = line.get(junction);
+      int previous = line.get(junction - 1).id;
+      int next = line.get(junction + 1).id;
+      addSwitch(switchElement.id, Arrays.asList(previous, switchElement.branch.id),
+          Collections.singletonList(next), previous, next);
+
+      List<Element> path = new ArrayList<>();
+      path.add(addStation(stationCapacity));
+      path.add(switchElement.branch);
+      path.addAll(line.subList(junction, line.size()));
+      addJourneyPath(path);
+    }
+
+    private void addSwitch(int id, List<Integer> left, List<Integer> right, int statusLeft,
+        int statusRight) {
+      Map<String, Object> switchData = new LinkedHashMap<>();
+      switchData.put("left", left);
+      switchData.put("right", right);
+      switchData.put("statusLeft", statusLeft);
+      switchData.put("statusRight", statusRight);
+      switches.put(String.valueOf(id), switchData);
+    }
+
+    private void addJourneyPath(List<Element> line) {
+      List<Map<String, Object>> path = new ArrayList<>(line.size());
+      for (Element element : line) {
+        Map<String, Object> connectable = new LinkedHashMap<>();
+        connectable.put("type", element.type);
+        connectable.put("id", element.id);
+        path.add(connectable);
+      }
+      Map<String, Object> journeyPath = new LinkedHashMap<>();
+      journeyPath.put("path", path);
+      journeyPaths.put(String.valueOf(journeyPaths.size() + 1), journeyPath);
+    }
+
+    private int firstStation(int journeyPath) {
+      List<Map<String, Object>> path = (List<Map<String, Object>>) ((Map<String, Object>)
+          journeyPaths.get(String.valueOf(journeyPath))).get("path");
+      return (int) path.get(0).get("id");
+    }
+  }
+
+  private static class Element {
+
+    private final String type;
+    private final int id;
+    // of a junction, the track of the branch it leads to (or comes from)
+    private Element branch = null;
+
+    Element(String type, int id) {
+      this.type = type;
+      this.id = id;
+    }
+  }
+
+  /**
+   * Standard sizes of generated networks, shared by benchmarks and tests. A track costs the same
+   * whatever its length, so the memory of a world grows with its number of tracks, balises and
+   * trains rather than with the length of its lines.
+   */
+  public enum ScaleTier {
+    // 2 dual lines of 30km
+    SMALL(2, 3, 30000, 0.5, 4),
+    // 6 dual lines of 50km
+    MEDIUM(6, 5, 50000, 0.25, 24),
+    // 12 dual lines of 100km
+    LARGE(12, 8, 100000, 0.25, 96),
+    // 24 dual lines of 150km
+    NATIONAL(24, 10, 150000, 0.25, 240);
+
+    private final int corridors;
+    private final int stationsPerCorridor;
+    private final int lineLength;
+    private final double switchDensity;
+    private final int trains;
+
+    ScaleTier(int corridors, int stationsPerCorridor, int lineLength, double switchDensity,
+        int trains) {
+      this.corridors = corridors;
+      this.stationsPerCorridor = stationsPerCorridor;
+      this.lineLength = lineLength;
+      this.switchDensity = switchDensity;
+      this.trains = trains;
+    }
+
+    /**
+     * A generator of the network of this tier, which can still be changed (e.g. its mode)
+     */
+    public NetworkGenerator generator() {
+      return new NetworkGenerator().name(name().toLowerCase()).corridors(corridors)
+          .stationsPerCorridor(stationsPerCorridor).lineLength(lineLength)
+          .switchDensity(switchDensity).dualLine(true).trains(trains);
+    }
+
+    public static ScaleTier forName(String name) {
+      for (ScaleTier tier : values()) {
+        if (tier.name().equalsIgnoreCase(name)) {
+          return tier;
+        }
+      }
+      throw new IllegalArgumentException(
+          "Unknown scale tier " + name + ", expected one of " + Arrays.toString(values()));
+    }
+  }
+}
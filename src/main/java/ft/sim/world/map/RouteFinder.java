@@ -0,0 +1,86 @@
+package ft.sim.world.map;
+
+import ft.sim.world.connectables.Connectable;
+import ft.sim.world.connectables.Station;
+import ft.sim.world.connectables.Switch;
+import ft.sim.world.journey.JourneyPath;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Shortest routes between the connectables of a world, along the edges of its graph (the ones
+ * its journey paths go through) and through switches only between tracks they connect. The
+ * tables it searches (see {@link RouteTables}) are worked out once for a map, and routes found
+ * once are kept, so asking for the same routes in other worlds of the map doesn't search again.
+ */
+public class RouteFinder {
+
+  private final RouteTables tables;
+  private final List<Connectable> connectables;
+  private final Map<Connectable, Integer> indexes;
+
+  private RouteFinder(GlobalMap map, RouteTables tables) {
+    this.tables = tables;
+    this.connectables = RouteTables.connectablesOf(map);
+    this.indexes = RouteTables.indexesOf(connectables);
+  }
+
+  /**
+   * The route finder of a world, with the tables of its topology (worked out the first time any
+   * world of the topology asks for them)
+   */
+  static RouteFinder of(GlobalMap map) {
+    MapTopology topology = map.getTopology();
+    RouteTables tables = topology == null ? RouteTables.of(map) : topology.getRouteTables(map);
+    return new RouteFinder(map, tables);
+  }
+
+  /**
+   * The connectables of the shortest route from a connectable to another one (both of them
+   * included), if there is one
+   */
+  public Optional<List<Connectable>> findRoute(Connectable from, Connectable to) {
+    int[] route = tables.route(indexOf(from), indexOf(to));
+    if (route.length == 0) {
+      return Optional.empty();
+    }
+    List<Connectable> path = new ArrayList<>(route.length);
+    for (int index : route) {
+      path.add(connectables.get(index));
+    }
+    return Optional.of(Collections.unmodifiableList(path));
+  }
+
+  /**
+   * Length of the shortest route from a connectable to another one (the length of both
+   * included), or infinity if there is none
+   */
+  public double getRouteLength(Connectable from, Connectable to) {
+    return findRoute(from, to)
+        .map(route -> route.stream().mapToDouble(Connectable::getLength).sum())
+        .orElse(Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * A new journey path along the shortest route from a station to another one
+   */
+  public JourneyPath createJourneyPath(Station from, Station to) {
+    List<Connectable> route = findRoute(from, to).orElseThrow(
+        () -> new IllegalArgumentException("There is no route from " + from + " to " + to));
+    return new JourneyPath(route);
+  }
+
+  private int indexOf(Connectable connectable) {
+    if (connectable instanceof Switch) {
+      throw new IllegalArgumentException("Routes can't start or end on a switch");
+    }
+    Integer index = indexes.get(connectable);
+    if (index == null) {
+      throw new IllegalArgumentException(connectable + " isn't in the world of the route finder");
+    }
+    return index;
+  }
+}
@@ -0,0 +1,367 @@
+package ft.sim.world.map;
+
+import ft.sim.world.connectables.Connectable;
+import ft.sim.world.connectables.Switch;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What {@link RouteFinder} works out once for a map: the graph of the map as arrays of indexes,
+ * and the distances between every connectable and a few landmarks, which bound the distance
+ * between any two connectables (ALT: A*, landmarks and the triangle inequality). It only depends
+ * on the topology, so it is shared by all the worlds of a map (see {@link
+ * MapTopology#getRouteTables}), and so are the routes found with it.
+ *
+ * Connectables are numbered the same way in every world of a map: tracks, stations and then
+ * switches, each in the order of their IDs.
+ */
+final class RouteTables {
+
+  static final int MAX_LANDMARKS = 16;
+  // routes kept for later queries (between stations, the number of routes is small)
+  static final int MAX_CACHED_ROUTES = 1 << 16;
+
+  private static final int[] NO_ROUTE = new int[0];
+
+  final int size;
+  private final int trackCount;
+  private final int stationCount;
+  private final double[] lengths;
+  // children of connectable i are children[childrenStart[i]..childrenStart[i + 1])
+  private final int[] childrenStart;
+  private final int[] children;
+  // the tracks on each side of the switches (by index - trackCount - stationCount)
+  private final int[][] switchFrom;
+  private final int[][] switchTo;
+  // parents of connectable i are parents[parentsStart[i]..parentsStart[i + 1])
+  private final int[] parentsStart;
+  private final int[] parents;
+  // distances from each landmark to every connectable, and from every connectable to it
+  private final List<double[]> fromLandmarks = new ArrayList<>();
+  private final List<double[]> toLandmarks = new ArrayList<>();
+
+  private final Map<Long, int[]> routes = new ConcurrentHashMap<>();
+
+  private RouteTables(GlobalMap map) {
+    List<Connectable> connectables = connectablesOf(map);
+    trackCount = map.getTracks().size();
+    stationCount = map.getStations().size();
+    size = connectables.size();
+    Map<Connectable, Integer> indexes = indexesOf(connectables);
+
+    lengths = new double[size];
+    childrenStart = new int[size + 1];
+    List<Integer> childList = new ArrayList<>();
+    MapGraph graph = map.getGraph();
+    for (int i = 0; i < size; i++) {
+      Connectable connectable = connectables.get(i);
+      lengths[i] = connectable.getLength();
+      childrenStart[i] = childList.size();
+      for (Connectable child : graph.getChildren(connectable)) {
+        if (child != null && indexes.containsKey(child)) {
+          childList.add(indexes.get(child));
+        }
+      }
+    }
+    childrenStart[size] = childList.size();
+    children = childList.stream().mapToInt(Integer::intValue).toArray();
+
+    int switchCount = size - trackCount - stationCount;
+    switchFrom = new int[switchCount][];
+    switchTo = new int[switchCount][];
+    for (int s = 0; s < switchCount; s++) {
+      Switch aSwitch = (Switch) connectables.get(trackCount + stationCount + s);
+      switchFrom[s] = aSwitch.getFrom().stream().mapToInt(indexes::get).toArray();
+      switchTo[s] = aSwitch.getTo().stream().mapToInt(indexes::get).toArray();
+    }
+
+    parentsStart = new int[size + 1];
+    for (int child : children) {
+      parentsStart[child + 1]++;
+    }
+    for (int i = 0; i < size; i++) {
+      parentsStart[i + 1] += parentsStart[i];
+    }
+    parents = new int[children.length];
+    int[] filled = Arrays.copyOf(parentsStart, size);
+    for (int i = 0; i < size; i++) {
+      for (int c = childrenStart[i]; c < childrenStart[i + 1]; c++) {
+        parents[filled[children[c]]++] = i;
+      }
+    }
+
+    chooseLandmarks(Math.min(MAX_LANDMARKS, size));
+  }
+
+  /**
+   * The tables of a map, from one of its worlds
+   */
+  static RouteTables of(GlobalMap map) {
+    return new RouteTables(map);
+  }
+
+  /**
+   * Connectables of a world, in the order they are numbered in the tables
+   */
+  static List<Connectable> connectablesOf(GlobalMap map) {
+    List<Connectable> connectables = new ArrayList<>();
+    new TreeSet<>(map.getTracks().keySet()).forEach(id -> connectables.add(map.getTrack(id)));
+    new TreeSet<>(map.getStations().keySet())
+        .forEach(id -> connectables.add(map.getStation(id)));
+    new TreeSet<>(map.getSwitches().keySet()).forEach(id -> connectables.add(map.getSwitch(id)));
+    return connectables;
+  }
+
+  static Map<Connectable, Integer> indexesOf(List<Connectable> connectables) {
+    Map<Connectable, Integer> indexes = new IdentityHashMap<>();
+    for (int i = 0; i < connectables.size(); i++) {
+      indexes.put(connectables.get(i), i);
+    }
+    return indexes;
+  }
+
+  boolean isSwitch(int index) {
+    return index >= trackCount + stationCount;
+  }
+
+  /**
+   * Landmarks far from each other (each one the connectable furthest from the ones before it), so
+   * that any two connectables have a landmark roughly behind or ahead of them both
+   */
+  private void chooseLandmarks(int landmarks) {
+    double[] closest = new double[size];
+    Arrays.fill(closest, Double.POSITIVE_INFINITY);
+    int landmark = 0;
+    for (int l = 0; l < landmarks; l++) {
+      double[] from = distances(landmark, childrenStart, children, false);
+      double[] to = distances(landmark, parentsStart, parents, true);
+      fromLandmarks.add(from);
+      toLandmarks.add(to);
+      int furthest = -1;
+      for (int i = 0; i < size; i++) {
+        closest[i] = Math.min(closest[i], Math.min(from[i], to[i]));
+        if (!isSwitch(i) && (furthest < 0 || closest[i] > closest[furthest])) {
+          furthest = i;
+        }
+      }
+      if (furthest < 0 || closest[furthest] == 0) {
+        // every connectable is a landmark already
+        break;
+      }
+      landmark = furthest;
+    }
+  }
+
+  /**
+   * Distances from a connectable to all the others (or from all the others to it, along the
+   * parents), ignoring the way switches can be set
+   */
+  private double[] distances(int source, int[] start, int[] edges, boolean inverse) {
+    double[] distances = new double[size];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    distances[source] = 0;
+    IndexHeap heap = new IndexHeap(size);
+    heap.push(source, 0);
+    while (!heap.isEmpty()) {
+      int node = heap.pop();
+      for (int e = start[node]; e < start[node + 1]; e++) {
+        int next = edges[e];
+        // the distance to a connectable is the length of the ones before it
+        double distance = distances[node] + lengths[inverse ? next : node];
+        if (distance < distances[next]) {
+          distances[next] = distance;
+          heap.push(next, distance);
+        }
+      }
+    }
+    return distances;
+  }
+
+  /**
+   * Lower bound of the distance from a connectable to another one
+   */
+  private double lowerBound(int from, int to) {
+    double bound = 0;
+    for (int l = 0; l < fromLandmarks.size(); l++) {
+      double[] fromLandmark = fromLandmarks.get(l);
+      double[] toLandmark = toLandmarks.get(l);
+      if (fromLandmark[from] < Double.POSITIVE_INFINITY
+          && fromLandmark[to] < Double.POSITIVE_INFINITY) {
+        bound = Math.max(bound, fromLandmark[to] - fromLandmark[from]);
+      }
+      if (toLandmark[from] < Double.POSITIVE_INFINITY
+          && toLandmark[to] < Double.POSITIVE_INFINITY) {
+        bound = Math.max(bound, toLandmark[from] - toLandmark[to]);
+      }
+    }
+    return bound;
+  }
+
+  /**
+   * The indexes of the connectables of the shortest route from a connectable to another one, or
+   * an empty array if there is none. Routes only go through switches between tracks they connect,
+   * and never back through the switch they came from.
+   */
+  int[] route(int from, int to) {
+    long key = ((long) from << 32) | to;
+    int[] route = routes.get(key);
+    if (route == null) {
+      route = search(from, to);
+      if (routes.size() < MAX_CACHED_ROUTES) {
+        routes.put(key, route);
+      }
+    }
+    return route;
+  }
+
+  private int[] search(int from, int to) {
+    if (from == to) {
+      return new int[]{from};
+    }
+    double[] distances = new double[size];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    int[] previous = new int[size];
+    // the switch between a connectable and the previous one (or -1)
+    int[] through = new int[size];
+    boolean[] done = new boolean[size];
+    distances[from] = 0;
+    previous[from] = -1;
+    through[from] = -1;
+    IndexHeap heap = new IndexHeap(size);
+    heap.push(from, lowerBound(from, to));
+    while (!heap.isEmpty()) {
+      int node = heap.pop();
+      if (node == to) {
+        return path(previous, through, to);
+      }
+      if (done[node]) {
+        continue;
+      }
+      done[node] = true;
+      for (int c = childrenStart[node]; c < childrenStart[node + 1]; c++) {
+        int child = children[c];
+        double distance = distances[node] + lengths[node];
+        if (!isSwitch(child)) {
+          relax(heap, distances, previous, through, node, -1, child, distance, to);
+          continue;
+        }
+        if (child == through[node]) {
+          // trains don't turn back through the switch they just went through
+          continue;
+        }
+        // a switch leads to the tracks it can connect to the one the route comes from
+        for (int s = childrenStart[child]; s < childrenStart[child + 1]; s++) {
+          int next = children[s];
+          if (connects(child, node, next)) {
+            relax(heap, distances, previous, through, node, child, next,
+                distance + lengths[child], to);
+          }
+        }
+      }
+    }
+    return NO_ROUTE;
+  }
+
+  private void relax(IndexHeap heap, double[] distances, int[] previous, int[] through,
+      int node, int viaSwitch, int next, double distance, int to) {
+    if (distance < distances[next]) {
+      distances[next] = distance;
+      previous[next] = node;
+      through[next] = viaSwitch;
+      heap.push(next, distance + lowerBound(next, to));
+    }
+  }
+
+  private boolean connects(int aSwitch, int a, int b) {
+    int s = aSwitch - trackCount - stationCount;
+    return (contains(switchFrom[s], a) && contains(switchTo[s], b))
+        || (contains(switchFrom[s], b) && contains(switchTo[s], a));
+  }
+
+  private static boolean contains(int[] indexes, int index) {
+    for (int i : indexes) {
+      if (i == index) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int[] path(int[] previous, int[] through, int to) {
+    List<Integer> reversed = new ArrayList<>();
+    for (int node = to; node >= 0; node = previous[node]) {
+      reversed.add(node);
+      if (through[node] >= 0) {
+        reversed.add(through[node]);
+      }
+    }
+    int[] path = new int[reversed.size()];
+    for (int i = 0; i < path.length; i++) {
+      path[i] = reversed.get(path.length - 1 - i);
+    }
+    return path;
+  }
+
+  /**
+   * A binary heap of indexes by priority, with the same index pushed again when its priority
+   * decreases (and skipped when it's popped again)
+   */
+  private static final class IndexHeap {
+
+    private int[] indexes;
+    private double[] priorities;
+    private int count = 0;
+
+    IndexHeap(int capacity) {
+      indexes = new int[Math.max(capacity, 1)];
+      priorities = new double[indexes.length];
+    }
+
+    boolean isEmpty() {
+      return count == 0;
+    }
+
+    void push(int index, double priority) {
+      if (count == indexes.length) {
+        indexes = Arrays.copyOf(indexes, count * 2);
+        priorities = Arrays.copyOf(priorities, count * 2);
+      }
+      int i = count++;
+      while (i > 0 && priorities[(i - 1) / 2] > priority) {
+        indexes[i] = indexes[(i - 1) / 2];
+        priorities[i] = priorities[(i - 1) / 2];
+        i = (i - 1) / 2;
+      }
+      indexes[i] = index;
+      priorities[i] = priority;
+    }
+
+    int pop() {
+      int top = indexes[0];
+      count--;
+      int index = indexes[count];
+      double priority = priorities[count];
+      int i = 0;
+      while (2 * i + 1 < count) {
+        int child = 2 * i + 1;
+        if (child + 1 < count && priorities[child + 1] < priorities[child]) {
+          child++;
+        }
+        if (priorities[child] >= priority) {
+          break;
+        }
+        indexes[i] = indexes[child];
+        priorities[i] = priorities[child];
+        i = child;
+      }
+      indexes[i] = index;
+      priorities[i] = priority;
+      return top;
+    }
+  }
+}
@@ -0,0 +1,337 @@
+package ft.sim.world.map;
+
+import ft.sim.world.connectables.Track;
+import ft.sim.world.map.MapBuilder.Placement;
+import java.io.Reader;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * Imports a YAML map from the events of the parser, creating the objects of each entry as soon as
+ * it is read, so the whole document is never loaded as a tree. Sections are imported in the
+ * order of the file, except the ones that refer to sections that aren't imported yet (e.g.
+ * placeables before the tracks they are on), whose entries are kept until they are. Tracks, most
+ * of the memory and time of a map, are created in parallel while the file is read, and
+ * placeables on different tracks are placed in parallel.
+ */
+class StreamingMapImporter {
+
+  protected static transient Logger logger = LoggerFactory.getLogger(StreamingMapImporter.class);
+
+  // sections of a map, each one after the sections it refers to
+  private static final List<String> SECTIONS = Arrays
+      .asList("simulation", "tracks", "stations", "trains", "placeables", "switches",
+          "journeyPaths", "journeys");
+  private static final Map<String, List<String>> DEPENDENCIES = new HashMap<>();
+
+  static {
+    DEPENDENCIES.put("placeables", Collections.singletonList("tracks"));
+    DEPENDENCIES.put("switches", Collections.singletonList("tracks"));
+    DEPENDENCIES.put("journeyPaths", Arrays.asList("tracks", "stations", "switches"));
+    DEPENDENCIES.put("journeys", Arrays.asList("journeyPaths", "trains"));
+  }
+
+  private final MapBuilder builder;
+  private final Resolver resolver = new Resolver();
+  // sections that are imported, or that the file doesn't have (once it's all read)
+  private final Set<String> imported = new HashSet<>();
+  // entries of the sections waiting for the sections they refer to
+  private final Map<String, List<Entry<String, Object>>> pending = new LinkedHashMap<>();
+  private final List<PendingTrack> tracks = new ArrayList<>();
+  private final List<Placement> placements = new ArrayList<>();
+
+  StreamingMapImporter(MapBuilder builder) {
+    this.builder = builder;
+  }
+
+  void importMap(Reader reader) {
+    Iterator<Event> events = new Yaml().parse(reader).iterator();
+    expect(events.next(), StreamStartEvent.class);
+    Event event = events.next();
+    if (event instanceof StreamEndEvent) {
+      // an empty file
+      return;
+    }
+    expect(event, DocumentStartEvent.class);
+    expect(events.next(), MappingStartEvent.class);
+
+    for (event = events.next(); !(event instanceof MappingEndEvent); event = events.next()) {
+      String section = scalar(event);
+      Event value = events.next();
+      if (!SECTIONS.contains(section)) {
+        readNode(value, events);
+        continue;
+      }
+      if (value instanceof MappingStartEvent) {
+        readSection(section, events);
+      } else {
+        // an empty section
+        readNode(value, events);
+        pending.putIfAbsent(section, new ArrayList<>());
+      }
+      importPending();
+    }
+
+    // the sections that aren't in the file are as good as imported
+    for (String section : SECTIONS) {
+      if (!pending.containsKey(section)) {
+        imported.add(section);
+      }
+    }
+    for (String section : SECTIONS) {
+      if (pending.containsKey(section)) {
+        importSection(section, pending.remove(section));
+      }
+    }
+  }
+
+  private void readSection(String section, Iterator<Event> events) {
+    boolean ready = isReady(section);
+    List<Entry<String, Object>> entries = pending.computeIfAbsent(section, s -> new ArrayList<>());
+    for (Event event = events.next(); !(event instanceof MappingEndEvent);
+        event = events.next()) {
+      String key = scalar(event);
+      Object value = readNode(events.next(), events);
+      if (ready) {
+        importEntry(section, key, value);
+      } else {
+        entries.add(new SimpleImmutableEntry<>(key, value));
+      }
+    }
+    if (ready) {
+      pending.remove(section);
+      finishSection(section);
+    }
+  }
+
+  private boolean isReady(String section) {
+    return imported.containsAll(DEPENDENCIES.getOrDefault(section, Collections.emptyList()));
+  }
+
+  /**
+   * Import the kept sections whose dependencies are now imported
+   */
+  private void importPending() {
+    boolean importedAny = true;
+    while (importedAny) {
+      importedAny = false;
+      for (String section : SECTIONS) {
+        if (pending.containsKey(section) && isReady(section)) {
+          importSection(section, pending.remove(section));
+          importedAny = true;
+        }
+      }
+    }
+  }
+
+  private void importSection(String section, List<Entry<String, Object>> entries) {
+    for (Entry<String, Object> entry : entries) {
+      importEntry(section, entry.getKey(), entry.getValue());
+    }
+    finishSection(section);
+  }
+
+  private void importEntry(String section, String key, Object value) {
+    Map<String, Object> entry = Collections.singletonMap(key, value);
+    switch (section) {
+      case "simulation":
+        builder.setConfigurations(entry);
+        break;
+      case "tracks":
+        Map<String, Object> trackData = (Map<String, Object>) value;
+        tracks.add(new PendingTrack(Integer.parseInt(key), trackData,
+            CompletableFuture.supplyAsync(() -> MapBuilder.newTrack(trackData))));
+        break;
+      case "placeables":
+        placements.add(builder.createPlaceable(key, (Map<String, Object>) value));
+        break;
+      case "stations":
+        builder.createStations(entry);
+        break;
+      case "trains":
+        builder.createTrains(entry);
+        break;
+      case "switches":
+        builder.createSwitches(entry);
+        break;
+      case "journeyPaths":
+        builder.createJourneyPaths(entry);
+        break;
+      case "journeys":
+        builder.createJourneys(entry);
+        break;
+      default:
+        throw new IllegalStateException("Unknown map section: " + section);
+    }
+  }
+
+  private void finishSection(String section) {
+    if (section.equals("tracks")) {
+      for (PendingTrack track : tracks) {
+        builder.addTrack(track.id, track.data, join(track.track));
+      }
+      logger.info("Created {} tracks", tracks.size());
+      tracks.clear();
+    } else if (section.equals("placeables")) {
+      // placeables of one track are placed in order, different tracks in parallel
+      Map<Track, List<Placement>> byTrack = new IdentityHashMap<>();
+      for (Placement placement : placements) {
+        byTrack.computeIfAbsent(placement.getTrack(), t -> new ArrayList<>()).add(placement);
+      }
+      byTrack.values().parallelStream().forEach(onTrack -> onTrack.forEach(Placement::place));
+      logger.info("Placed {} placeables", placements.size());
+      placements.clear();
+    }
+    imported.add(section);
+  }
+
+  private static Track join(CompletableFuture<Track> track) {
+    try {
+      return track.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * The value starting with the given event: a scalar, a list or a map
+   */
+  private Object readNode(Event event, Iterator<Event> events) {
+    if (event instanceof ScalarEvent) {
+      return toValue((ScalarEvent) event);
+    }
+    if (event instanceof SequenceStartEvent) {
+      List<Object> list = new ArrayList<>();
+      for (Event e = events.next(); !(e instanceof SequenceEndEvent); e = events.next()) {
+        list.add(readNode(e, events));
+      }
+      return list;
+    }
+    if (event instanceof MappingStartEvent) {
+      Map<Object, Object> map = new LinkedHashMap<>();
+      for (Event e = events.next(); !(e instanceof MappingEndEvent); e = events.next()) {
+        Object key = readNode(e, events);
+        map.put(key, readNode(events.next(), events));
+      }
+      return map;
+    }
+    if (event instanceof AliasEvent) {
+      throw new IllegalStateException("Anchors and aliases aren't supported in maps");
+    }
+    throw new IllegalStateException("Unexpected YAML event: " + event);
+  }
+
+  /**
+   * The value of a scalar, typed like the YAML loader does for plain scalars (quoted scalars are
+   * strings)
+   */
+  private Object toValue(ScalarEvent event) {
+    String value = event.getValue();
+    if (!event.getImplicit().canOmitTagInPlainScalar()) {
+      return value;
+    }
+    Tag tag = resolver.resolve(NodeId.scalar, value, true);
+    if (tag.equals(Tag.NULL)) {
+      return null;
+    }
+    if (tag.equals(Tag.BOOL)) {
+      String lower = value.toLowerCase();
+      return lower.equals("true") || lower.equals("yes") || lower.equals("on");
+    }
+    if (tag.equals(Tag.INT)) {
+      return toNumber(value);
+    }
+    if (tag.equals(Tag.FLOAT)) {
+      String number = value.replace("_", "").toLowerCase();
+      if (number.endsWith(".inf")) {
+        return number.startsWith("-") ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+      }
+      if (number.equals(".nan")) {
+        return Double.NaN;
+      }
+      return Double.valueOf(number);
+    }
+    return value;
+  }
+
+  private static Number toNumber(String value) {
+    String number = value.replace("_", "");
+    boolean negative = number.startsWith("-");
+    if (negative || number.startsWith("+")) {
+      number = number.substring(1);
+    }
+    int radix = 10;
+    if (number.startsWith("0x")) {
+      radix = 16;
+      number = number.substring(2);
+    } else if (number.startsWith("0b")) {
+      radix = 2;
+      number = number.substring(2);
+    } else if (number.startsWith("0") && number.length() > 1) {
+      radix = 8;
+      number = number.substring(1);
+    }
+    long parsed = Long.parseLong((negative ? "-" : "") + number, radix);
+    if (parsed >= Integer.MIN_VALUE && parsed <= Integer.MAX_VALUE) {
+      return (int) parsed;
+    }
+    return parsed;
+  }
+
+  private static String scalar(Event event) {
+    expect(event, ScalarEvent.class);
+    return ((ScalarEvent) event).getValue();
+  }
+
+  private static void expect(Event event, Class<? extends Event> type) {
+    if (!type.isInstance(event)) {
+      throw new IllegalStateException(
+          "Invalid map: expected " + type.getSimpleName() + " but got " + event);
+    }
+  }
+
+  private static class PendingTrack {
+
+    private final int id;
+    private final Map<String, Object> data;
+    private final CompletableFuture<Track> track;
+
+    PendingTrack(int id, Map<String, Object> data, CompletableFuture<Track> track) {
+      this.id = id;
+      this.data = data;
+      this.track = track;
+    }
+  }
+}
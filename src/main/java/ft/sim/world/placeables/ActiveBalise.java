@@ -1,5 +1,6 @@
 package ft.sim.world.placeables;
 
+import ft.sim.world.WorldState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,33 +11,34 @@ public class ActiveBalise extends Balise {
 
   protected transient static final Logger logger = LoggerFactory.getLogger(ActiveBalise.class);
 
-  private ActiveBaliseData data = new ActiveBaliseData();
-
-  // data brought over by a train on the opposite side
-  private ActiveBaliseData upAheadData = new ActiveBaliseData();
-
   private transient ActiveBalise dualTrackPair = null;
 
-  private boolean isBroken = false;
+  /**
+   * The data of the balise in the current run (see {@link WorldState})
+   */
+  private Readings getReadings() {
+    return WorldState.of(this, Readings::new);
+  }
 
   public void update(int lastTrainID, double timePassing, double speed, boolean isDecelerating) {
-    if (!isBroken) {
-      data.setData(lastTrainID, timePassing, speed, isDecelerating);
+    Readings readings = getReadings();
+    if (!readings.isBroken) {
+      readings.data.setData(lastTrainID, timePassing, speed, isDecelerating);
     }
   }
 
   public ActiveBaliseData getData() {
-    return data.clone();
+    return getReadings().data.clone();
   }
 
   @Override
   public boolean isBroken() {
-    return isBroken;
+    return getReadings().isBroken;
   }
 
   @Override
   public void setIsBroken(boolean isBroken) {
-    this.isBroken = isBroken;
+    getReadings().isBroken = isBroken;
     logger.info("Balise {} is set to broken!");
   }
 
@@ -52,12 +54,21 @@ public class ActiveBalise extends Balise {
   }
 
   public ActiveBaliseData getUpAheadData() {
-    return upAheadData.clone();
+    return getReadings().upAheadData.clone();
   }
 
   public void setUpAheadData(ActiveBaliseData broughtForwardData) {
-    if (!isBroken) {
-      this.upAheadData = broughtForwardData;
+    Readings readings = getReadings();
+    if (!readings.isBroken) {
+      readings.upAheadData = broughtForwardData;
     }
   }
+
+  private static class Readings {
+
+    private final ActiveBaliseData data = new ActiveBaliseData();
+    // data brought over by a train on the opposite side
+    private ActiveBaliseData upAheadData = new ActiveBaliseData();
+    private boolean isBroken = false;
+  }
 }
@@ -1,25 +1,32 @@
 package ft.sim.world.placeables;
 
 import ft.sim.simulation.Disruptable;
+import ft.sim.world.connectables.Track;
 import ft.sim.world.journey.JourneyPath;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Created by Sina on 21/02/2017.
  */
 public abstract class Balise implements Placeable, Disruptable {
 
-  private Map<JourneyPath, Double> position = new HashMap<>();
+  // the track the balise is placed on (positions on journey paths are worked out from it)
+  private Track track = null;
 
   private double globalPosition = -1;
 
-  public void setPosition(JourneyPath journeyPath, double miles) {
-    position.put(journeyPath, miles);
+  public Track getTrack() {
+    return track;
   }
 
+  public void setTrack(Track track) {
+    this.track = track;
+  }
+
+  /**
+   * Position of the balise on a journey path going over its track
+   */
   public double getPosition(JourneyPath journeyPath) {
-    return position.get(journeyPath);
+    return journeyPath.getPlaceablePosition(this);
   }
 
   public double getPosition() {
@@ -1,22 +1,22 @@
 package ft.sim.world.placeables;
 
+import ft.sim.world.WorldState;
+
 /**
  * Created by sina on 22/05/2017.
  */
 public class Obstacle implements Placeable {
 
-  private boolean isHit = false;
-
   /**
-   * The obstacle can be hit only once.
+   * The obstacle can be hit only once in a run (see {@link WorldState}).
    *
    * @return true if it hasn't been hit before, and false for any further hits.
    */
   public boolean hit() {
-    if (isHit) {
+    if (WorldState.get(this, false)) {
       return false;
     }
-    isHit = true;
+    WorldState.set(this, true);
     return true;
   }
 
@@ -1,6 +1,8 @@
 package ft.sim.world.signalling;
 
+import ft.sim.world.WorldState;
 import ft.sim.world.connectables.Connectable;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Optional;
 import java.util.Set;
@@ -15,7 +17,6 @@ public class SignalController {
 
   protected static transient Logger logger = LoggerFactory.getLogger(SignalController.class);
   transient Connectable belongsTo;
-  private SignalType status = SignalType.GREEN;
   private Set<SignalUnit> signalSet = new HashSet<>();
   private Set<SignalListener> signalListeners = new HashSet<>();
 
@@ -23,12 +24,15 @@ public class SignalController {
     this.belongsTo = belongsTo;
   }
 
+  /**
+   * The status in the current run (see {@link WorldState}), green until it is set
+   */
   public SignalType getStatus() {
-    return status;
+    return WorldState.get(this, SignalType.GREEN);
   }
 
   public void setStatus(SignalType status) {
-    this.status = status;
+    WorldState.set(this, status);
     logger.info("{} signal controller set to {}", belongsTo, status);
     signalSet.forEach(signal -> signal.setStatus(status));
     //signalListeners.forEach(listener -> listener.signalChange(status, this));
@@ -44,6 +48,14 @@ public class SignalController {
     signalListeners.remove(signalListener);
   }
 
+  public Connectable getBelongsTo() {
+    return belongsTo;
+  }
+
+  public Set<SignalUnit> getSignalUnits() {
+    return Collections.unmodifiableSet(signalSet);
+  }
+
   public void addSignalUnit(SignalUnit signalUnit) {
     signalSet.add(signalUnit);
   }
@@ -1,5 +1,6 @@
 package ft.sim.world.signalling;
 
+import ft.sim.world.WorldState;
 import ft.sim.world.connectables.Observable;
 import ft.sim.world.placeables.Placeable;
 import java.util.HashSet;
@@ -14,10 +15,6 @@ public class SignalUnit implements Placeable, Observable {
 
   protected static transient final Logger logger = LoggerFactory.getLogger(SignalUnit.class);
 
-  private SignalType status = SignalType.GREEN;
-
-  private Set<SignalListener> signalListeners = new HashSet<>();
-
   private final boolean distantSignal;
 
   public SignalUnit() {
@@ -32,8 +29,17 @@ public class SignalUnit implements Placeable, Observable {
     return distantSignal;
   }
 
+  /**
+   * The status of the signal and the listeners to it in the current run (see {@link WorldState})
+   */
+  private Aspect getAspect() {
+    return WorldState.of(this, Aspect::new);
+  }
+
   public void setStatus(SignalType newStatus) {
-    status = newStatus;
+    Aspect aspect = getAspect();
+    aspect.status = newStatus;
+    Set<SignalListener> signalListeners = aspect.signalListeners;
     signalListeners.forEach(l -> {
       l.signalChange(newStatus);
       l.stopListeningTo(this);
@@ -45,16 +51,22 @@ public class SignalUnit implements Placeable, Observable {
   }
 
   public void addListener(SignalListener signalListener) {
-    signalListeners.add(signalListener);
+    getAspect().signalListeners.add(signalListener);
     signalListener.startListeningTo(this);
   }
 
   public void stopListening(SignalListener signalListener) {
-    signalListeners.remove(signalListener);
+    getAspect().signalListeners.remove(signalListener);
     signalListener.stopListeningTo(this);
   }
 
   public SignalType getStatus() {
-    return status;
+    return getAspect().status;
+  }
+
+  private static class Aspect {
+
+    private SignalType status = SignalType.GREEN;
+    private final Set<SignalListener> signalListeners = new HashSet<>();
   }
 }
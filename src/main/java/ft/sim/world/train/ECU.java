@@ -300,6 +300,14 @@ public class ECU implements Tickable {
     this.radioMast = radioMast;
   }
 
+  public double getActualDistance() {
+    return actualDistance;
+  }
+
+  public NextTrainPredictor getNextTrainPredictor() {
+    return nextTrainPredictor;
+  }
+
   public void setActualDistance(double actualDistance) {
     this.actualDistance = actualDistance;
   }
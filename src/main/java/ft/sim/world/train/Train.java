@@ -76,6 +76,10 @@ public class Train implements Tickable, SignalListener, Recordable {
     engine = new Engine(this);
   }
 
+  public int getNumberOfCars() {
+    return cars.size();
+  }
+
   public void startListeningTo(SignalUnit signalUnit) {
     signalsListeningTo.add(signalUnit);
     //logger.warn("started listening to {}", signalUnit);
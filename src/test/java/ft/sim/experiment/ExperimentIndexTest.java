@@ -0,0 +1,146 @@
+package ft.sim.experiment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import ft.sim.monitoring.Violation;
+import ft.sim.monitoring.ViolationSeverity;
+import ft.sim.monitoring.ViolationType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.DoubleSummaryStatistics;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.DoubleStream;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExperimentIndexTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("experiments");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  private Connection connect() throws SQLException {
+    return DriverManager.getConnection("jdbc:h2:" + directory.resolve("experiments")
+        .toAbsolutePath());
+  }
+
+  private static ExperimentSummary summary(String map, String mode, Violation... violations) {
+    Map<String, Object> configuration = new LinkedHashMap<>();
+    configuration.put("mode", mode);
+    configuration.put("seed", 7);
+    DoubleSummaryStatistics durations = DoubleStream.of(100, 300).summaryStatistics();
+    return new ExperimentSummary(map, configuration, 500, 5000, 1200,
+        Arrays.asList(violations), 3, durations);
+  }
+
+  @Test
+  public void addAndQuery() throws Exception {
+    long first;
+    long second;
+    try (ExperimentIndex index = new ExperimentIndex(directory.toString())) {
+      first = index.add(summary("maps/a", "fixed_block"));
+      second = index.add(summary("maps/b", "variable_block",
+          new Violation(ViolationType.CRASH, ViolationSeverity.CRITICAL, 10, "crash"),
+          new Violation(ViolationType.VARIABLE_BLOCK, ViolationSeverity.HIGH, 20, "too close")));
+    }
+    assertTrue(second > first);
+
+    try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+      try (ResultSet result = statement.executeQuery("SELECT map, ticks, journeys_finished, "
+          + "journey_duration_mean, severity_critical, violations_variable_block "
+          + "FROM experiments WHERE severity_critical > 0")) {
+        assertTrue(result.next());
+        assertEquals("maps/b", result.getString(1));
+        assertEquals(5000, result.getLong(2));
+        assertEquals(2, result.getInt(3));
+        assertEquals(200, result.getDouble(4), 0);
+        assertEquals(1, result.getInt(5));
+        assertEquals(1, result.getInt(6));
+        assertFalse(result.next());
+      }
+      try (ResultSet result = statement.executeQuery("SELECT e.map FROM experiments e "
+          + "JOIN experiment_configuration c ON c.experiment_id = e.id "
+          + "WHERE c.name = 'mode' AND c.value = 'fixed_block'")) {
+        assertTrue(result.next());
+        assertEquals("maps/a", result.getString(1));
+        assertFalse(result.next());
+      }
+    }
+  }
+
+  @Test
+  public void noJourneysFinished() throws Exception {
+    try (ExperimentIndex index = new ExperimentIndex(directory.toString())) {
+      index.add(new ExperimentSummary("maps/a", Collections.emptyMap(), 0, 0, 0,
+          Collections.emptyList(), 1, new DoubleSummaryStatistics()));
+    }
+    try (Connection connection = connect(); Statement statement = connection.createStatement();
+        ResultSet result = statement.executeQuery(
+            "SELECT journeys_finished, journey_duration_min FROM experiments")) {
+      assertTrue(result.next());
+      assertEquals(0, result.getInt(1));
+      result.getDouble(2);
+      assertTrue(result.wasNull());
+    }
+  }
+
+  @Test
+  public void opensIndexOfOlderSchema() throws Exception {
+    // an index written before the latest violation types and severities were added
+    try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE experiments ("
+          + "id BIGINT AUTO_INCREMENT PRIMARY KEY, map VARCHAR(1024) NOT NULL, "
+          + "finished_at TIMESTAMP NOT NULL, simulated_seconds DOUBLE, ticks BIGINT, "
+          + "wall_clock_millis BIGINT, journeys INT, journeys_finished INT, "
+          + "journey_duration_min DOUBLE, journey_duration_mean DOUBLE, "
+          + "journey_duration_max DOUBLE, configuration CLOB, "
+          + "severity_critical INT DEFAULT 0, violations_crash INT DEFAULT 0)");
+      statement.execute("INSERT INTO experiments (map, finished_at, severity_critical, "
+          + "violations_crash) VALUES ('maps/old', CURRENT_TIMESTAMP, 1, 1)");
+    }
+
+    try (ExperimentIndex index = new ExperimentIndex(directory.toString())) {
+      index.add(summary("maps/new", "fixed_block", new Violation(
+          ViolationType.SWITCHED_TO_WRONG_TRACK, ViolationSeverity.CRITICAL, 10, "wrong way")));
+    }
+
+    try (Connection connection = connect(); Statement statement = connection.createStatement();
+        ResultSet result = statement.executeQuery("SELECT map, severity_critical, "
+            + "violations_crash, violations_switched_to_wrong_track FROM experiments ORDER BY id")) {
+      assertTrue(result.next());
+      assertEquals("maps/old", result.getString(1));
+      assertEquals(1, result.getInt(2));
+      assertEquals(1, result.getInt(3));
+      // added columns default to no violations
+      assertEquals(0, result.getInt(4));
+      assertTrue(result.next());
+      assertEquals("maps/new", result.getString(1));
+      assertEquals(1, result.getInt(2));
+      assertEquals(0, result.getInt(3));
+      assertEquals(1, result.getInt(4));
+      assertFalse(result.next());
+    }
+  }
+}
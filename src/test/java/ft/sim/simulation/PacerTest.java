@@ -0,0 +1,101 @@
+package ft.sim.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class PacerTest {
+
+  private static final long MILLI = 1_000_000;
+
+  /**
+   * A clock that only moves when told to, and records the waits instead of waiting
+   */
+  private static class FakeClock implements Pacer.Clock {
+
+    private long now = 0;
+    private final List<Long> waits = new ArrayList<>();
+
+    @Override
+    public long nanoTime() {
+      return now;
+    }
+
+    @Override
+    public void sleepUntil(long due) {
+      waits.add(due);
+      now = Math.max(now, due);
+    }
+  }
+
+  @Test
+  public void ticksAtMultipleOfSimulatedTime() {
+    // 0.1s per tick at 100x: a tick every millisecond
+    FakeClock clock = new FakeClock();
+    Pacer pacer = new Pacer(0.1, 50, 100, clock);
+    for (int i = 0; i < 3; i++) {
+      pacer.awaitNextTick();
+    }
+    assertEquals(Arrays.asList(MILLI, 2 * MILLI, 3 * MILLI), clock.waits);
+
+    // at 10x, from when the speed was changed
+    pacer.setSpeed(10);
+    clock.now += 5 * MILLI;
+    pacer.awaitNextTick();
+    assertEquals(8 * MILLI + 10 * MILLI, (long) clock.waits.get(3));
+  }
+
+  @Test
+  public void slowTicksCaughtUpOrRescheduled() {
+    FakeClock clock = new FakeClock();
+    Pacer pacer = new Pacer(0.1, 50, 100, clock);
+    pacer.awaitNextTick();
+    // a slow tick: the next ones are still due on the original schedule
+    clock.now += 10 * MILLI;
+    pacer.awaitNextTick();
+    assertEquals(2 * MILLI, (long) clock.waits.get(1));
+
+    // too far behind: the schedule starts over, without waiting
+    clock.now += 1000 * MILLI;
+    pacer.awaitNextTick();
+    assertEquals(2, clock.waits.size());
+    long rescheduled = clock.now;
+    pacer.awaitNextTick();
+    assertEquals(rescheduled + MILLI, (long) clock.waits.get(2));
+  }
+
+  @Test
+  public void maximumSpeedDoesNotWait() {
+    FakeClock clock = new FakeClock();
+    Pacer pacer = new Pacer(0.1, 50, 0, clock);
+    for (int i = 0; i < 1000; i++) {
+      pacer.awaitNextTick();
+    }
+    assertEquals(Collections.emptyList(), clock.waits);
+  }
+
+  @Test
+  public void oneFramePerBudget() {
+    FakeClock clock = new FakeClock();
+    Pacer pacer = new Pacer(0.1, 50, 0, clock);
+    assertTrue(pacer.isFrameDue());
+    clock.now += 49 * MILLI;
+    assertFalse(pacer.isFrameDue());
+    clock.now += MILLI;
+    assertTrue(pacer.isFrameDue());
+    assertFalse(pacer.isFrameDue());
+  }
+
+  @Test
+  public void parseSpeeds() {
+    assertEquals(0, Pacer.parseSpeed("max"), 0);
+    assertEquals(10, Pacer.parseSpeed("10x"), 0);
+    assertEquals(100, Pacer.parseSpeed("100"), 0);
+  }
+}
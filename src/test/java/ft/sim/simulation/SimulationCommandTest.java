@@ -0,0 +1,187 @@
+package ft.sim.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import ft.sim.App.AppConfig;
+import ft.sim.statistics.StatisticsController;
+import ft.sim.statistics.StatisticsVariable;
+import ft.sim.statistics.StatsHelper;
+import ft.sim.visualisation.ReplayFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Test;
+
+public class SimulationCommandTest {
+
+  private SimulationController simulation =
+      SimulationController.newInstance("variable-block-test1");
+
+  @After
+  public void kill() throws Exception {
+    // between two ticks, if it's still running
+    simulation.submit(new SimulationCommand("stop simulation", simulation::kill))
+        .get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void runsStraightAwayWhenNotTicking() throws Exception {
+    AtomicReference<Thread> ranOn = new AtomicReference<>();
+    simulation.submit(new SimulationCommand("test", () -> ranOn.set(Thread.currentThread())))
+        .get(0, TimeUnit.SECONDS);
+    assertEquals(Thread.currentThread(), ranOn.get());
+  }
+
+  @Test
+  public void runsOnSimulationThreadWhenTicking() throws Exception {
+    simulation.setNonInteractve();
+    simulation.startSimulation();
+    AtomicReference<Thread> ranOn = new AtomicReference<>();
+    simulation.submit(new SimulationCommand("test", () -> ranOn.set(Thread.currentThread())))
+        .get(10, TimeUnit.SECONDS);
+    assertTrue(ranOn.get() != null && ranOn.get() != Thread.currentThread());
+  }
+
+  @Test
+  public void killedBetweenTicks() throws Exception {
+    simulation.setNonInteractve();
+    simulation.startSimulation();
+    AtomicReference<Thread> ranOn = new AtomicReference<>();
+    simulation.submit(new SimulationCommand("stop simulation", () -> {
+      ranOn.set(Thread.currentThread());
+      simulation.kill();
+    })).get(10, TimeUnit.SECONDS);
+    assertTrue(ranOn.get() != Thread.currentThread());
+    assertTrue(simulation.isKilled());
+    assertFalse(simulation.isRunning());
+    assertNull(simulation.getWorld());
+  }
+
+  @Test
+  public void replayEndsWithTheTickItWasKilledAt() throws Exception {
+    String outputDir = AppConfig.outputDir;
+    int replayInterval = AppConfig.replayInterval;
+    Path directory = Files.createTempDirectory("results");
+    AppConfig.outputDir = directory.toString();
+    // far fewer frames than ticks, so the last tick is only recorded when it's killed
+    AppConfig.replayInterval = 1000;
+    Path path = directory.resolve(simulation.getWorld().getSimpleFileName() + ".replay");
+    try {
+      simulation.setNonInteractve();
+      simulation.startSimulation();
+      AtomicLong killedAt = new AtomicLong();
+      simulation.submit(new SimulationCommand("stop simulation", () -> {
+        killedAt.set(simulation.getTicksElapsed());
+        simulation.kill();
+      })).get(10, TimeUnit.SECONDS);
+
+      ReplayFile.Frame last = null;
+      try (ReplayFile replay = new ReplayFile(path)) {
+        for (ReplayFile.Frame frame = replay.next(); frame != null; frame = replay.next()) {
+          last = frame;
+        }
+      }
+      assertNotNull(last);
+      assertEquals(killedAt.get(), last.getTicksElapsed());
+    } finally {
+      AppConfig.outputDir = outputDir;
+      AppConfig.replayInterval = replayInterval;
+      // the statistics are exported there too
+      StatisticsController.awaitExports();
+      try (Stream<Path> files = Files.walk(directory)) {
+        files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+      }
+    }
+  }
+
+  @Test
+  public void startedOnceByConcurrentClients() throws Exception {
+    simulation.setNonInteractve();
+    CountDownLatch ready = new CountDownLatch(1);
+    List<Thread> clients = new ArrayList<>();
+    AtomicInteger failed = new AtomicInteger();
+    for (int i = 0; i < 8; i++) {
+      Thread client = new Thread(() -> {
+        try {
+          ready.await();
+          if (!simulation.startSimulation()) {
+            failed.incrementAndGet();
+          }
+        } catch (Throwable t) {
+          failed.incrementAndGet();
+        }
+      });
+      client.start();
+      clients.add(client);
+    }
+    ready.countDown();
+    for (Thread client : clients) {
+      client.join();
+    }
+    assertEquals(0, failed.get());
+    assertTrue(simulation.isRunning());
+
+    simulation.submit(new SimulationCommand("stop simulation", simulation::kill))
+        .get(10, TimeUnit.SECONDS);
+    assertFalse(simulation.startSimulation());
+  }
+
+  @Test
+  public void notStartedOnceKilled() {
+    simulation.kill();
+    assertFalse(simulation.startSimulation());
+    assertFalse(simulation.isRunning());
+  }
+
+  @Test
+  public void inlineCommandsLogInTheStatisticsOfTheirSimulation() throws Exception {
+    SimulationController other = SimulationController.newInstance("variable-block-test1");
+    try {
+      simulation.submit(new SimulationCommand("test",
+          () -> StatsHelper.trackEvent(StatisticsVariable.SIMULATION_STOPPED)))
+          .get(0, TimeUnit.SECONDS);
+      assertTrue(statistics(simulation).contains(StatisticsVariable.SIMULATION_STOPPED.name()));
+      assertFalse(statistics(other).contains(StatisticsVariable.SIMULATION_STOPPED.name()));
+
+      // without a world of its own, a thread can't tell which simulation it logs for
+      try {
+        StatsHelper.trackEvent(StatisticsVariable.SIMULATION_STOPPED);
+        throw new AssertionError("logged in the statistics of an arbitrary simulation");
+      } catch (IllegalStateException expected) {
+        // the test thread doesn't simulate any world
+      }
+    } finally {
+      other.kill();
+    }
+  }
+
+  private static String statistics(SimulationController simulation) {
+    return StatisticsController.getOptionalInstance(simulation.getWorld()).get().collect();
+  }
+
+  @Test
+  public void failuresCompleteTheResult() throws Exception {
+    try {
+      simulation.submit(new SimulationCommand("test", () -> {
+        throw new IllegalStateException("failed");
+      })).get(0, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+      return;
+    }
+    throw new AssertionError("command didn't fail");
+  }
+}
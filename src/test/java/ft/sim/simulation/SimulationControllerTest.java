@@ -0,0 +1,35 @@
+package ft.sim.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import ft.sim.statistics.StatisticsController;
+import org.junit.Test;
+
+public class SimulationControllerTest {
+
+  @Test
+  public void simulationsCoexist() {
+    SimulationController first = SimulationController.newInstance("variable-block-test1");
+    SimulationController second = SimulationController.newInstance("variable-block-test1");
+    try {
+      assertFalse(first.isKilled());
+      assertEquals(second, SimulationController.getInstance());
+      assertTrue(SimulationController.getSimulations().contains(first));
+      assertTrue(SimulationController.getSimulations().contains(second));
+      // each world has its own statistics
+      assertNotSame(StatisticsController.getOptionalInstance(first.getWorld()).get(),
+          StatisticsController.getOptionalInstance(second.getWorld()).get());
+
+      first.kill();
+      assertFalse(SimulationController.getSimulations().contains(first));
+      assertFalse(second.isKilled());
+      assertEquals(second, SimulationController.getInstance());
+    } finally {
+      first.kill();
+      second.kill();
+    }
+  }
+}
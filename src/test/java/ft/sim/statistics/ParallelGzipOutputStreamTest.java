@@ -0,0 +1,57 @@
+package ft.sim.statistics;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+
+public class ParallelGzipOutputStreamTest {
+
+  private static byte[] compressAndDecompress(byte[] data) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (OutputStream out = new ParallelGzipOutputStream(compressed)) {
+      // uneven writes so that blocks are split in the middle of a write
+      int offset = 0;
+      int chunk = 1;
+      while (offset < data.length) {
+        int length = Math.min(chunk, data.length - offset);
+        out.write(data, offset, length);
+        offset += length;
+        chunk = chunk * 3 + 7;
+      }
+    }
+    return ByteStreams.toByteArray(
+        new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())));
+  }
+
+  @Test
+  public void empty() throws IOException {
+    byte[] data = new byte[0];
+    assertArrayEquals(data, compressAndDecompress(data));
+  }
+
+  @Test
+  public void multipleBlocks() throws IOException {
+    StringBuilder csv = new StringBuilder();
+    Random random = new Random(0);
+    for (int i = 0; i < 50000; i++) {
+      csv.append(String.format("%.2f,%s,TRAIN_SPEED,%s,Train-%s,null%n", i / 10.0, i,
+          random.nextInt(80), random.nextInt(10)));
+    }
+    byte[] data = csv.toString().getBytes("UTF-8");
+    assertArrayEquals(data, compressAndDecompress(data));
+  }
+
+  @Test
+  public void randomData() throws IOException {
+    byte[] data = new byte[1024 * 1024 + 17];
+    new Random(1).nextBytes(data);
+    assertArrayEquals(data, compressAndDecompress(data));
+  }
+}
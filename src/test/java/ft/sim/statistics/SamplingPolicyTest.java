@@ -0,0 +1,75 @@
+package ft.sim.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class SamplingPolicyTest {
+
+  @Test
+  public void fromConfiguration() {
+    assertSame(SamplingPolicy.ALL, SamplingPolicy.fromConfiguration(null, 0));
+    assertSame(SamplingPolicy.OFF, SamplingPolicy.fromConfiguration("off", 0));
+
+    Map<String, Object> conf = new HashMap<>();
+    conf.put("policy", "interval");
+    conf.put("interval", 10);
+    assertTrue(SamplingPolicy.fromConfiguration(conf, 0) instanceof IntervalSamplingPolicy);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fromConfigurationMissingParameter() {
+    Map<String, Object> conf = new HashMap<>();
+    conf.put("policy", "threshold");
+    SamplingPolicy.fromConfiguration(conf, 0);
+  }
+
+  @Test
+  public void interval() {
+    SamplingPolicy policy = new IntervalSamplingPolicy(10);
+    int accepted = 0;
+    for (long tick = 1; tick <= 100; tick++) {
+      if (policy.accept(tick, null, 1.0)) {
+        accepted++;
+      }
+    }
+    assertEquals(10, accepted);
+  }
+
+  @Test
+  public void threshold() {
+    SamplingPolicy policy = new ThresholdSamplingPolicy(1.0);
+    Object train1 = new Object();
+    Object train2 = new Object();
+
+    assertTrue(policy.accept(1, train1, 10.0));
+    assertTrue(policy.accept(1, train2, 10.0));
+    assertFalse(policy.accept(2, train1, 10.5));
+    assertFalse(policy.accept(3, train1, 11.0));
+    assertTrue(policy.accept(4, train1, 11.5));
+    assertTrue(policy.accept(4, train2, 8.0));
+  }
+
+  @Test
+  public void reservoir() {
+    SamplingPolicy policy = new ReservoirSamplingPolicy(5, 0);
+    for (long tick = 1; tick <= 1000; tick++) {
+      if (policy.accept(tick, null, tick)) {
+        assertFalse(policy.keep(new StatisticsItem<>(0, tick, StatisticsVariable.TRAIN_SPEED,
+            tick)));
+      }
+    }
+    assertEquals(5, policy.getRetained().size());
+
+    long previousTick = 0;
+    for (StatisticsItem item : policy.getRetained()) {
+      assertTrue(item.getTick() > previousTick);
+      previousTick = item.getTick();
+    }
+  }
+}
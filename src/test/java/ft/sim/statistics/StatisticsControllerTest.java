@@ -0,0 +1,117 @@
+package ft.sim.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import ft.sim.App.AppConfig;
+import ft.sim.world.WorldHandler;
+import ft.sim.world.map.GlobalMap;
+import ft.sim.world.map.MapBuildReport;
+import ft.sim.world.map.MapBuildReport.BuildPhase;
+import ft.sim.world.map.MapBuilder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatisticsControllerTest {
+
+  private static final String MAP = "spill-test";
+
+  private String outputDir;
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    outputDir = AppConfig.outputDir;
+    directory = Files.createTempDirectory("results");
+    AppConfig.outputDir = directory.toString();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    AppConfig.outputDir = outputDir;
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  private static GlobalMap spillingWorld() {
+    GlobalMap world = new GlobalMap(MAP);
+    world.addConfiguration("statistics_spill", true);
+    return world;
+  }
+
+  private List<String> files(String suffix) throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(p -> p.getFileName().toString()).filter(n -> n.endsWith(suffix))
+          .sorted().collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void runsOfTheSameMapSpillToTheirOwnFiles() throws Exception {
+    StatisticsController first = StatisticsController.getInstance(spillingWorld());
+    StatisticsController second = StatisticsController.getInstance(spillingWorld());
+    try {
+      // the second run leaves the live file of the first one alone
+      assertEquals(2, files(".csv.spill").size());
+      assertTrue(files(".partial.csv").isEmpty());
+
+      first.saveGzip();
+      // and so does a third one, started once the first one is exported
+      StatisticsController third = StatisticsController.getInstance(spillingWorld());
+      third.saveGzip();
+      third.clear();
+      assertEquals(1, files(".csv.spill").size());
+      assertTrue(files(".partial.csv").isEmpty());
+      assertTrue(second.collect().startsWith(StatisticsItem.getHeader()));
+    } finally {
+      first.clear();
+      second.clear();
+    }
+  }
+
+  @Test
+  public void buildReportRecorded() {
+    GlobalMap world = MapBuilder.buildNewMap("variable-block-test1");
+    StatisticsController controller = StatisticsController.getInstance(world);
+    try {
+      String csv = controller.collect();
+      MapBuildReport report = world.getBuildReport();
+      assertTrue(csv, csv.contains("0.00,0,MAP_BUILD_PHASE_SECONDS,"
+          + report.getPhaseSeconds(BuildPhase.INSTANTIATE) + ",instantiate,"));
+      assertTrue(csv, csv.contains("0.00,0,MAP_BUILD_PHASE_MEMORY,"
+          + report.getPhaseMemory(BuildPhase.INSTANTIATE) + ",instantiate,"));
+      assertTrue(csv, csv.contains("0.00,0,MAP_OBJECTS," + world.getTracks().size()
+          + ",tracks,"));
+    } finally {
+      controller.clear();
+      WorldHandler.endWorld(world);
+    }
+  }
+
+  @Test
+  public void spillFileOfCrashedRunRecovered() throws Exception {
+    Path crashed = directory.resolve(MAP + ".1234.csv.spill");
+    Files.write(crashed, (StatisticsItem.getHeader() + "\n1.00,10\n2.00,2\0\0\0")
+        .getBytes(StandardCharsets.UTF_8));
+
+    StatisticsController controller = StatisticsController.getInstance(spillingWorld());
+    try {
+      assertFalse(Files.exists(crashed));
+      List<String> recovered = Files.readAllLines(directory.resolve(MAP + ".1234.partial.csv"),
+          StandardCharsets.UTF_8);
+      assertEquals(2, recovered.size());
+      assertEquals(1, files(".csv.spill").size());
+    } finally {
+      controller.clear();
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package ft.sim.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatisticsSpillFileTest {
+
+  private Path path;
+
+  @Before
+  public void setUp() throws IOException {
+    path = Files.createTempFile("statistics", ".csv.spill");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(path);
+  }
+
+  private static StatisticsItem item(long tick) {
+    return new StatisticsItem<>(tick / 10.0, tick, StatisticsVariable.TRAIN_SPEED, 42);
+  }
+
+  @Test
+  public void appendAndClose() throws IOException {
+    StatisticsSpillFile spillFile = new StatisticsSpillFile(path);
+    for (long tick = 1; tick <= 1000; tick++) {
+      spillFile.append(item(tick));
+    }
+    spillFile.close();
+
+    List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    assertEquals(1001, lines.size());
+    assertEquals(StatisticsItem.getHeader(), lines.get(0));
+    assertEquals(item(1000).toString(), lines.get(1000));
+    assertEquals(spillFile.getLength(), Files.size(path));
+    spillFile.delete();
+  }
+
+  @Test
+  public void readWhileOpen() throws IOException {
+    StatisticsSpillFile spillFile = new StatisticsSpillFile(path);
+    for (long tick = 1; tick <= 10; tick++) {
+      spillFile.append(item(tick));
+    }
+    byte[] read;
+    try (InputStream in = spillFile.newInputStream()) {
+      spillFile.append(item(11));
+      read = ByteStreams.toByteArray(in);
+    }
+    // what was appended before it was opened
+    String[] lines = new String(read, StandardCharsets.UTF_8).split("\n");
+    assertEquals(11, lines.length);
+    assertEquals(item(10).toString(), lines[10]);
+    spillFile.close();
+    assertEquals(12, Files.readAllLines(path, StandardCharsets.UTF_8).size());
+    spillFile.delete();
+  }
+
+  @Test
+  public void liveFileNotRecovered() throws IOException {
+    StatisticsSpillFile spillFile = new StatisticsSpillFile(path);
+    for (long tick = 1; tick <= 100; tick++) {
+      spillFile.append(item(tick));
+    }
+    spillFile.flush();
+    // still being written, and padded to the end of the mapped region
+    assertTrue(Files.size(path) > spillFile.getLength());
+    assertEquals(-1, StatisticsSpillFile.recover(path));
+
+    // closed but not exported yet
+    spillFile.close();
+    assertEquals(-1, StatisticsSpillFile.recover(path));
+    assertEquals(spillFile.getLength(), Files.size(path));
+
+    spillFile.release();
+    assertEquals(spillFile.getLength(), StatisticsSpillFile.recover(path));
+    spillFile.delete();
+    assertFalse(Files.exists(path));
+  }
+
+  @Test
+  public void recoverUnclosedFile() throws IOException {
+    // as left by a run that crashed while writing record 101
+    StringBuilder records = new StringBuilder(StatisticsItem.getHeader()).append('\n');
+    for (long tick = 1; tick <= 100; tick++) {
+      records.append(item(tick)).append('\n');
+    }
+    byte[] written = records.toString().getBytes(StandardCharsets.UTF_8);
+    try (OutputStream out = Files.newOutputStream(path)) {
+      out.write(written);
+      out.write("10.10,101,TRAIN".getBytes(StandardCharsets.UTF_8));
+      out.write(new byte[4096]);
+    }
+
+    assertEquals(written.length, StatisticsSpillFile.recover(path));
+    List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    assertEquals(101, lines.size());
+    assertEquals(item(100).toString(), lines.get(100));
+  }
+
+  @Test
+  public void recoverDropsPartialRecord() throws IOException {
+    Files.write(path, "time,tick\n1.00,10\n2.00,2\0\0\0".getBytes(StandardCharsets.UTF_8));
+    assertEquals(18, StatisticsSpillFile.recover(path));
+    assertEquals(2, Files.readAllLines(path, StandardCharsets.UTF_8).size());
+  }
+}
@@ -0,0 +1,92 @@
+package ft.sim.statistics;
+
+import static org.junit.Assert.assertEquals;
+
+import ft.sim.statistics.TimeSeries.Bucket;
+import ft.sim.statistics.TimeSeries.Selection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class TimeSeriesTest {
+
+  @Test
+  public void bucketsHaveMinMaxAndAverage() {
+    TimeSeries series = new TimeSeries("speed");
+    series.add(0.2, 3);
+    series.add(0.5, 1);
+    series.add(0.9, 5);
+    series.add(2.1, 10);
+
+    Selection selection = series.select(0, 3, 100);
+    assertEquals(1, selection.getResolution(), 0);
+    List<Bucket> buckets = selection.getBuckets();
+    // the empty second is left out
+    assertEquals(2, buckets.size());
+    Bucket first = buckets.get(0);
+    assertEquals(0, first.getTime(), 0);
+    assertEquals(1, first.getMin(), 0);
+    assertEquals(5, first.getMax(), 0);
+    assertEquals(3, first.getAvg(), 1e-9);
+    assertEquals(3, first.getCount());
+    assertEquals(2, buckets.get(1).getTime(), 0);
+  }
+
+  @Test
+  public void coarserResolutionForLongerRanges() {
+    TimeSeries series = new TimeSeries("speed");
+    for (int t = 0; t < 3 * 60 * 60; t++) {
+      series.add(t, t % 60);
+    }
+    // an hour of seconds is still kept, but doesn't fit
+    Selection minutes = series.select(2 * 60 * 60, Double.POSITIVE_INFINITY, 100);
+    assertEquals(60, minutes.getResolution(), 0);
+    assertEquals(60, minutes.getBuckets().size());
+    assertEquals(0, minutes.getBuckets().get(0).getMin(), 0);
+    assertEquals(59, minutes.getBuckets().get(0).getMax(), 0);
+
+    Selection seconds = series.select(3 * 60 * 60 - 100, Double.POSITIVE_INFINITY, 100);
+    assertEquals(1, seconds.getResolution(), 0);
+    assertEquals(100, seconds.getBuckets().size());
+  }
+
+  @Test
+  public void oldSecondsAreEvicted() {
+    TimeSeries series = new TimeSeries("speed");
+    for (int t = 0; t < 2 * 60 * 60; t++) {
+      series.add(t, 1);
+    }
+    // the first hour is only left in minutes
+    Selection selection = series.select(0, 60 * 60 - 1, 100_000);
+    assertEquals(60, selection.getResolution(), 0);
+    assertEquals(60, selection.getBuckets().size());
+    assertEquals(60, selection.getBuckets().get(0).getCount());
+  }
+
+  @Test
+  public void bucketsKeptWhileTheRingGrows() {
+    TimeSeries series = new TimeSeries("speed");
+    for (int t = 0; t < 1000; t++) {
+      series.add(t + 0.5, t);
+    }
+    List<Bucket> buckets = series.select(0, 1000, 1000).getBuckets();
+    assertEquals(1000, buckets.size());
+    for (int t = 0; t < 1000; t++) {
+      assertEquals(t, buckets.get(t).getTime(), 0);
+      assertEquals(t, buckets.get(t).getAvg(), 0);
+    }
+  }
+
+  @Test
+  public void seriesOfObjectsOnlyWhenEnabled() {
+    Object train = "train";
+    StatisticsRollups rollups = new StatisticsRollups(false);
+    rollups.add(StatisticsVariable.TRAIN_SPEED, train, 0, 1);
+    assertEquals(Collections.singletonList("TRAIN_SPEED"), rollups.getNames());
+
+    rollups = new StatisticsRollups(true);
+    rollups.add(StatisticsVariable.TRAIN_SPEED, train, 0, 1);
+    assertEquals(Arrays.asList("TRAIN_SPEED", "TRAIN_SPEED:train"), rollups.getNames());
+  }
+}
@@ -0,0 +1,35 @@
+package ft.sim.visualisation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class BinaryFrameEncoderTest {
+
+  @Test
+  public void headerAndSignals() {
+    Map<Integer, String> signals = new LinkedHashMap<>();
+    for (int i = 0; i < 10; i++) {
+      signals.put(i, i % 3 == 0 ? "red" : "green");
+    }
+    WorldUpdate state = new WorldUpdate(new LinkedHashMap<>(), signals, 0, new ArrayList<>())
+        .withCounters(1234, 123.4, 0, 0, true);
+
+    ByteBuffer frame = BinaryFrameEncoder.encode(state).order(ByteOrder.LITTLE_ENDIAN);
+
+    assertEquals(BinaryFrameEncoder.HEADER_SIZE + 2, frame.remaining());
+    assertEquals(BinaryFrameEncoder.VERSION, frame.get(0));
+    assertEquals(1234, frame.getInt(4));
+    assertEquals(123.4, frame.getDouble(8), 0);
+    assertEquals(0, frame.getInt(16));
+    assertEquals(10, frame.getInt(20));
+    // signals 0, 3, 6 and 9 are red
+    assertEquals(0b01001001, frame.get(BinaryFrameEncoder.HEADER_SIZE));
+    assertEquals(0b10, frame.get(BinaryFrameEncoder.HEADER_SIZE + 1));
+  }
+}
@@ -0,0 +1,79 @@
+package ft.sim.visualisation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import ft.sim.world.WorldHandler;
+import ft.sim.world.map.GlobalMap;
+import ft.sim.world.map.MapBuilder;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplayFileTest {
+
+  private static final int FRAMES = 250;
+
+  private GlobalMap world;
+  private Path path;
+
+  @Before
+  public void record() throws Exception {
+    world = MapBuilder.buildNewMap("variable-block-test1");
+    path = Files.createTempFile("run", ".replay");
+    try (ReplayRecorder recorder = new ReplayRecorder(path, world)) {
+      for (int i = 1; i <= FRAMES; i++) {
+        WorldHandler.getInstance(world).tick(0.1);
+        recorder.record(new ArrayList<>(), i, i * 0.1);
+      }
+    }
+  }
+
+  @After
+  public void delete() throws Exception {
+    WorldHandler.endWorld(world);
+    Files.deleteIfExists(path);
+  }
+
+  @Test
+  public void seekToKeyframes() throws Exception {
+    try (ReplayFile replay = new ReplayFile(path)) {
+      assertTrue(replay.getTopology().contains("\"type\":\"topology\""));
+      assertEquals(3, replay.getKeyframes().size());
+      assertEquals(FRAMES * 0.1, replay.getDuration(), 1e-9);
+
+      replay.seek(15);
+      ReplayFile.Frame frame = replay.next();
+      assertTrue(frame.isKeyframe());
+      assertEquals(ReplayRecorder.KEYFRAME_INTERVAL + 1, frame.getTicksElapsed());
+      assertEquals(countFrames(replay) + 1, FRAMES - ReplayRecorder.KEYFRAME_INTERVAL);
+    }
+  }
+
+  @Test
+  public void scanWithoutIndex() throws Exception {
+    // as if the run had been killed in the middle of a frame
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      file.setLength(file.length() - 4 - 3 * 24 - 16 - 10);
+    }
+    try (ReplayFile replay = new ReplayFile(path)) {
+      assertEquals(3, replay.getKeyframes().size());
+      assertEquals(FRAMES - 1, countFrames(replay));
+      assertEquals((FRAMES - 1) * 0.1, replay.getDuration(), 1e-9);
+    }
+  }
+
+  private static int countFrames(ReplayFile replay) throws Exception {
+    int frames = 0;
+    while (replay.next() != null) {
+      frames++;
+    }
+    assertNull(replay.next());
+    return frames;
+  }
+}
@@ -0,0 +1,53 @@
+package ft.sim.visualisation;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import ft.sim.monitoring.Violation;
+import ft.sim.monitoring.ViolationSeverity;
+import ft.sim.monitoring.ViolationType;
+import ft.sim.world.signalling.SignalType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * The adapters have to produce the same messages as reflection did.
+ */
+public class VisualisationJsonTest {
+
+  private final Gson reflection = new Gson();
+  private final JsonParser parser = new JsonParser();
+
+  @Test
+  public void worldUpdate() {
+    Map<Integer, String> signals = new LinkedHashMap<>();
+    signals.put(0, "red");
+    signals.put(3, "green");
+    WorldUpdate update = new WorldUpdate(new LinkedHashMap<>(), signals, 2, new ArrayList<>(
+        Arrays.asList(
+            new Violation(ViolationType.CRASH, ViolationSeverity.CRITICAL, 10, "a \"crash\""),
+            new Violation(ViolationType.FIXED_BLOCK, ViolationSeverity.HIGH, 11, "block"))))
+        .withCounters(100, 10.0, 5, 5000000, true);
+
+    VisualisationJson json = new VisualisationJson();
+    // the buffer is reused
+    json.toJson(update);
+    assertEquals(parser.parse(reflection.toJson(update)),
+        parser.parse(json.toJson(update)));
+  }
+
+  @Test
+  public void points() {
+    Point point = new Point(10, 30.5, 2);
+    assertEquals(parser.parse(reflection.toJson(point)),
+        parser.parse(VisualisationJson.gson.toJson(point)));
+
+    SignalPoint signalPoint = new SignalPoint(20, 3, SignalType.RED);
+    assertEquals(parser.parse(reflection.toJson(signalPoint)),
+        parser.parse(VisualisationJson.gson.toJson(signalPoint)));
+  }
+}
@@ -0,0 +1,79 @@
+package ft.sim.visualisation;
+
+import static org.junit.Assert.assertEquals;
+
+import ft.sim.monitoring.Violation;
+import ft.sim.monitoring.ViolationSeverity;
+import ft.sim.monitoring.ViolationType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class WorldUpdateTest {
+
+  private static Violation violation(long tick) {
+    return new Violation(ViolationType.CRASH, ViolationSeverity.CRITICAL, tick, "crash");
+  }
+
+  private static WorldUpdate update(Map<Integer, String> signals, int violationsFrom,
+      Violation... violations) {
+    return new WorldUpdate(new LinkedHashMap<>(), signals, violationsFrom,
+        new ArrayList<>(Arrays.asList(violations)));
+  }
+
+  @Test
+  public void mergeDeltas() {
+    Map<Integer, String> first = new LinkedHashMap<>();
+    first.put(0, "red");
+    first.put(1, "red");
+    Map<Integer, String> second = new LinkedHashMap<>();
+    second.put(1, "green");
+    Violation v0 = violation(1);
+    Violation v1 = violation(2);
+
+    WorldUpdate merged = update(first, 0, v0).mergeWith(update(second, 1, v1));
+
+    assertEquals("red", merged.getSignals().get(0));
+    assertEquals("green", merged.getSignals().get(1));
+    assertEquals(0, merged.getViolationsFrom());
+    assertEquals(Arrays.asList(v0, v1), merged.getViolations());
+  }
+
+  @Test
+  public void mergeOverlappingViolations() {
+    Violation v0 = violation(1);
+    Violation v1 = violation(2);
+    Violation v2 = violation(3);
+    Map<Integer, String> none = Collections.emptyMap();
+
+    // e.g. a snapshot (all violations so far) followed by a delta that has some of them
+    WorldUpdate merged = update(none, 0, v0, v1).mergeWith(update(none, 1, v1, v2));
+
+    List<Violation> expected = Arrays.asList(v0, v1, v2);
+    assertEquals(expected, merged.getViolations());
+    assertEquals(0, merged.getViolationsFrom());
+  }
+
+  @Test
+  public void signalsWithinViewport() {
+    Map<Integer, String> signals = new LinkedHashMap<>();
+    signals.put(0, "red");
+    signals.put(1, "green");
+    signals.put(2, "red");
+    SignalLocations locations = new SignalLocations(new int[]{0, 0, 1},
+        new double[]{100, 900, 100});
+    Viewport viewport = new Viewport(Collections.singleton(0), 0, 500, 10);
+
+    WorldUpdate visible = update(signals, 0, violation(1))
+        .withSignalsWithin(viewport, locations);
+    assertEquals(Collections.singletonMap(0, "red"), visible.getSignals());
+    assertEquals(1, visible.getViolations().size());
+    assertEquals(100000000, viewport.getMinIntervalNanos());
+    assertEquals(signals, update(signals, 0).withSignalsWithin(Viewport.EVERYTHING, locations)
+        .getSignals());
+  }
+}
@@ -0,0 +1,67 @@
+package ft.sim.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ft.sim.monitoring.Violation;
+import ft.sim.monitoring.ViolationSeverity;
+import ft.sim.monitoring.ViolationType;
+import ft.sim.simulation.SimulationCommand;
+import ft.sim.simulation.SimulationController;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class MetricsEndpointTest {
+
+  private static final String MAP = "variable-block-test1";
+
+  private SimulationController running = SimulationController.newInstance(MAP);
+  private SimulationController idle = SimulationController.newInstance(MAP);
+
+  @After
+  public void kill() {
+    running.kill();
+    idle.kill();
+  }
+
+  @Test
+  public void scrapesEverySimulation() throws Exception {
+    running.startSimulation();
+    // a violation found by the oracle, counted at the end of the next tick
+    running.submit(new SimulationCommand("violation", () -> running.getViolations()
+        .add(new Violation(ViolationType.CRASH, ViolationSeverity.LOW, 0, "test"))))
+        .get(10, TimeUnit.SECONDS);
+    long deadline = System.currentTimeMillis() + 10000;
+    while (running.getMetrics().getViolations(ViolationSeverity.LOW) == 0) {
+      assertTrue("violation not counted", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+
+    String text = MetricsEndpoint.scrape();
+    String runningLabels = "simulation=\"" + running.getID() + "\",map=\"" + MAP + "\"";
+    String idleLabels = "simulation=\"" + idle.getID() + "\",map=\"" + MAP + "\"";
+
+    assertTrue(text, text.contains(
+        "stigmergy_violations_total{" + runningLabels + ",severity=\"low\"} 1\n"));
+    assertTrue(text, text.contains(
+        "stigmergy_violations_total{" + idleLabels + ",severity=\"low\"} 0\n"));
+    assertTrue(text, text.contains("stigmergy_simulation_running{" + runningLabels + "} 1\n"));
+    assertTrue(text, text.contains("stigmergy_simulation_running{" + idleLabels + "} 0\n"));
+    assertTrue(phaseSeconds(text, runningLabels, "world") > 0);
+    assertEquals(0, phaseSeconds(text, idleLabels, "world"), 0);
+    // one header per family, whatever the number of simulations
+    assertEquals(text.indexOf("# TYPE stigmergy_tick_phase_seconds_total counter"),
+        text.lastIndexOf("# TYPE stigmergy_tick_phase_seconds_total counter"));
+  }
+
+  private static double phaseSeconds(String text, String labels, String phase) {
+    String prefix = "stigmergy_tick_phase_seconds_total{" + labels + ",phase=\"" + phase + "\"} ";
+    for (String line : text.split("\n")) {
+      if (line.startsWith(prefix)) {
+        return Double.parseDouble(line.substring(prefix.length()));
+      }
+    }
+    throw new AssertionError("No " + phase + " phase in\n" + text);
+  }
+}
@@ -0,0 +1,76 @@
+package ft.sim.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonObject;
+import ft.sim.simulation.SimulationCommand;
+import ft.sim.simulation.SimulationController;
+import ft.sim.statistics.StatisticsVariable;
+import ft.sim.statistics.StatsHelper;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SeriesQueryTest {
+
+  private static final String SERIES = StatisticsVariable.JOURNEY_DURATION.name();
+
+  private SimulationController first;
+  private SimulationController second;
+
+  @Before
+  public void setUp() throws Exception {
+    first = SimulationController.newInstance("variable-block-test1");
+    second = SimulationController.newInstance("variable-block-test1");
+    first.submit(new SimulationCommand("test",
+        () -> StatsHelper.log(StatisticsVariable.JOURNEY_DURATION, 120.0)))
+        .get(0, TimeUnit.SECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    first.kill();
+    second.kill();
+  }
+
+  private static Map<String, String> query(SimulationController simulation, String name) {
+    Map<String, String> params = new HashMap<>();
+    params.put("simulation", String.valueOf(simulation.getID()));
+    if (name != null) {
+      params.put("name", name);
+    }
+    return params;
+  }
+
+  @Test
+  public void rollupsOfTheGivenSimulation() {
+    assertTrue(SeriesQuery.answer(query(first, null), null).get("names").toString()
+        .contains(SERIES));
+    assertFalse(SeriesQuery.answer(query(second, null), null).get("names").toString()
+        .contains(SERIES));
+
+    JsonObject series = SeriesQuery.answer(query(first, SERIES), second);
+    assertEquals("series", series.get("type").getAsString());
+    // the simulation of the query, not the one the client is attached to
+    assertTrue(series.toString().contains("120"));
+  }
+
+  @Test
+  public void rollupsOfTheAttachedSimulation() {
+    Map<String, String> params = new HashMap<>();
+    assertTrue(SeriesQuery.answer(params, first).get("names").toString().contains(SERIES));
+    assertFalse(SeriesQuery.answer(params, second).get("names").toString().contains(SERIES));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void noSuchSimulation() {
+    Map<String, String> params = new HashMap<>();
+    params.put("simulation", "-1");
+    SeriesQuery.answer(params, first);
+  }
+}
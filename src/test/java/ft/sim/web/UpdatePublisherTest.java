@@ -0,0 +1,78 @@
+package ft.sim.web;
+
+import static org.junit.Assert.assertEquals;
+
+import ft.sim.monitoring.Violation;
+import ft.sim.monitoring.ViolationSeverity;
+import ft.sim.monitoring.ViolationType;
+import ft.sim.visualisation.WorldUpdate;
+import ft.sim.visualisation.WorldView;
+import ft.sim.world.WorldHandler;
+import ft.sim.world.map.GlobalMap;
+import ft.sim.world.map.MapBuilder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UpdatePublisherTest {
+
+  private GlobalMap world;
+  private WorldUpdate trains;
+
+  @Before
+  public void setUp() {
+    world = MapBuilder.buildNewMap("variable-block-test1");
+    trains = new WorldView(world).getSnapshot(Collections.emptyList());
+  }
+
+  @After
+  public void tearDown() {
+    WorldHandler.endWorld(world);
+  }
+
+  private static Violation violation(long tick) {
+    return new Violation(ViolationType.CRASH, ViolationSeverity.CRITICAL, tick, "crash");
+  }
+
+  private WorldUpdate update(Map<Integer, String> signals, int violationsFrom,
+      Violation... violations) {
+    return trains.withState(signals, violationsFrom, Arrays.asList(violations));
+  }
+
+  @Test
+  public void stateAppliesUpdatesInOrder() {
+    Violation v0 = violation(1);
+    Violation v1 = violation(2);
+    Violation v2 = violation(3);
+    Map<Integer, String> all = new LinkedHashMap<>();
+    all.put(0, "red");
+    all.put(1, "red");
+
+    UpdatePublisher.State state = new UpdatePublisher.State();
+    // a snapshot, then deltas that overlap it
+    state.apply(update(all, 0, v0, v1));
+    state.apply(update(Collections.singletonMap(1, "green"), 1, v1, v2));
+    state.apply(update(Collections.emptyMap(), 3));
+
+    WorldUpdate snapshot = state.toUpdate();
+    Map<Integer, String> expected = new LinkedHashMap<>();
+    expected.put(0, "red");
+    expected.put(1, "green");
+    assertEquals(expected, snapshot.getSignals());
+    assertEquals(0, snapshot.getViolationsFrom());
+    List<Violation> violations = Arrays.asList(v0, v1, v2);
+    assertEquals(violations, snapshot.getViolations());
+    assertEquals(trains.getTrains(), snapshot.getTrains());
+
+    // a new world starts from its own snapshot
+    state.clear();
+    state.apply(update(Collections.singletonMap(0, "green"), 0));
+    assertEquals(Collections.singletonMap(0, "green"), state.toUpdate().getSignals());
+    assertEquals(Collections.emptyList(), state.toUpdate().getViolations());
+  }
+}
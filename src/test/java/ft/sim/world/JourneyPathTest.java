@@ -9,11 +9,15 @@ import ft.sim.world.connectables.Section;
 import ft.sim.world.connectables.Switch;
 import ft.sim.world.connectables.Track;
 import ft.sim.world.journey.JourneyPath;
+import ft.sim.world.placeables.PassiveBalise;
 import ft.sim.world.placeables.Placeable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 /**
@@ -21,6 +25,17 @@ import org.junit.Test;
  */
 public class JourneyPathTest {
 
+  @Before
+  public void setUp() {
+    // the tracks keep the trails of the trains in the state of a world
+    WorldState.setCurrent(new WorldState());
+  }
+
+  @After
+  public void tearDown() {
+    WorldState.setCurrent(null);
+  }
+
   @Test
   public void getConnectablesBetween() throws Exception {
     List<Connectable> journeyPath1 = new ArrayList<>();
@@ -183,4 +198,32 @@ public class JourneyPathTest {
     assertEquals(observablesExpected, observables);
   }
 
-}
\ No newline at end of file
+  @Test
+  public void getBalisePositions() throws Exception {
+    Track t1 = new Track(100);
+    Track t2 = new Track(100);
+    Track t3 = new Track(100);
+    PassiveBalise balise = new PassiveBalise(100, 1);
+    t2.placePlaceableOnSectionIndex(balise, 30);
+
+    // the balise is placed before the paths over its track are created, or after
+    JourneyPath jp1 = new JourneyPath(Arrays.asList(t1, t2, t3));
+    JourneyPath jp2 = new JourneyPath(Arrays.asList(t2, t3));
+    PassiveBalise laterBalise = new PassiveBalise(100, 2);
+    t3.placePlaceableOnSectionIndex(laterBalise, 10);
+
+    assertEquals(130, balise.getPosition(jp1), 0);
+    assertEquals(30, balise.getPosition(jp2), 0);
+    assertEquals(210, laterBalise.getPosition(jp1), 0);
+    assertEquals(110, jp2.getPlaceablePosition(laterBalise), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void getBalisePositionOffThePath() throws Exception {
+    Track t1 = new Track(100);
+    Track t2 = new Track(100);
+    PassiveBalise balise = new PassiveBalise(100, 1);
+    t2.placePlaceableOnSectionIndex(balise, 30);
+    balise.getPosition(new JourneyPath(Arrays.asList(t1)));
+  }
+}
@@ -12,6 +12,7 @@ import ft.sim.world.journey.JourneyPath;
 import ft.sim.world.journey.JourneyPosition;
 import java.util.ArrayList;
 import java.util.List;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -26,6 +27,8 @@ public class JourneyPositionTest {
 
   @Before
   public void setUp() throws Exception {
+    // the tracks and the switch keep their state in that of a world
+    WorldState.setCurrent(new WorldState());
     List<Connectable> journeyPath1 = new ArrayList<>();
     Track t1 = new Track(100);
     Track t2 = new Track(100);
@@ -51,6 +54,11 @@ public class JourneyPositionTest {
     j = new Journey(jp, train1, true);
   }
 
+  @After
+  public void tearDown() {
+    WorldState.setCurrent(null);
+  }
+
   @Test
   public void getSectionsOccupied() throws Exception {
     JourneyPosition jp = j.getJourneyPosition();
@@ -2,8 +2,13 @@ package ft.sim.world.connectables;
 
 import static org.junit.Assert.*;
 
+import ft.sim.world.WorldState;
+import ft.sim.world.placeables.Obstacle;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 /**
@@ -11,6 +16,17 @@ import org.junit.Test;
  */
 public class TrackTest {
 
+  @Before
+  public void setUp() {
+    // the tracks keep the trails of the trains in the state of a world
+    WorldState.setCurrent(new WorldState());
+  }
+
+  @After
+  public void tearDown() {
+    WorldState.setCurrent(null);
+  }
+
   @Test
   public void getSections() throws Exception {
     Track t = new Track(100);
@@ -62,4 +78,20 @@ public class TrackTest {
     assertEquals(sectionsExpected, sections);
   }
 
-}
\ No newline at end of file
+  @Test
+  public void sectionsKeepTheirPlaceables() {
+    Track t = new Track(10000);
+    Obstacle obstacle = new Obstacle();
+    t.placePlaceableOnSectionIndex(obstacle, 5000);
+
+    Section section = t.getSections().get(5000);
+    assertEquals(Collections.singletonList(obstacle), section.getPlaceables());
+    assertEquals(section, t.getSectionsBetween(5000, 5000.5).get(0));
+    assertEquals(5000, t.getSectionPosition(section));
+    assertTrue(t.getSections().get(4999).getPlaceables().isEmpty());
+    assertFalse(section.equals(new Track(10000).getSections().get(5000)));
+
+    section.removePlacebale(obstacle);
+    assertTrue(t.getSections().get(5000).getPlaceables().isEmpty());
+  }
+}
@@ -0,0 +1,145 @@
+package ft.sim.world.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import ft.sim.world.WorldHandler;
+import ft.sim.world.WorldState;
+import ft.sim.world.connectables.Connectable;
+import ft.sim.world.connectables.Switch;
+import ft.sim.world.connectables.Track;
+import ft.sim.world.journey.Journey;
+import ft.sim.world.journey.JourneyHelper;
+import ft.sim.world.journey.JourneyPath;
+import ft.sim.world.placeables.ActiveBalise;
+import ft.sim.world.placeables.Balise;
+import ft.sim.world.placeables.Placeable;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.yaml.snakeyaml.Yaml;
+
+public class BranchingNetworkTest {
+
+  @Test
+  public void pathsSharingTracks() {
+    GlobalMap world = MapBuilder.buildWorld("branching-test1");
+    MapGraph graph = world.getGraph();
+
+    // both stations are roots, the shared tracks are reached from the first one
+    assertEquals(2, graph.getRoots().size());
+    Map<Connectable, Double> distances = graph.getDistancesFrom(world.getStations().get(1));
+    assertTrue(distances.containsKey(world.getTrack(3)));
+    assertTrue(distances.containsKey(world.getTrack(5)));
+    assertTrue(distances.containsKey(world.getTrack(6)));
+    assertEquals(distances.get(world.getTrack(5)), distances.get(world.getTrack(6)));
+
+    // balises on shared tracks have a position on each path
+    Balise balise = (Balise) world.getPlaceable(1);
+    for (JourneyPath path : world.getJourneyPaths().values()) {
+      assertEquals(path.getConnectableStartingPosition(world.getTrack(3)) + 2000,
+          balise.getPosition(path), 1);
+    }
+  }
+
+  @Test
+  public void variableBlockBalisesPlacedOnce() throws Exception {
+    Map<String, Object> map;
+    try (InputStream in = new ClassPathResource("maps/branching-test1.yaml").getInputStream()) {
+      map = (Map<String, Object>) new Yaml().load(in);
+    }
+    Map<String, Object> simulation = (Map<String, Object>) map.get("simulation");
+    simulation.put("mode", "variable_block");
+    simulation.put("ferromone_distance", 1000);
+    GlobalMap world = MapBuilder.buildWorld("branching-test1-variable", map);
+
+    for (Track track : world.getTracks().values()) {
+      List<Integer> positions = new ArrayList<>();
+      for (Placeable placeable : track.getPlaceables().values()) {
+        if (placeable instanceof ActiveBalise) {
+          positions.add(track.getPlaceablePosition(placeable));
+        }
+      }
+      assertFalse(track + " has no active balises", positions.isEmpty());
+      assertEquals(track + " has balises placed twice", positions.size(),
+          positions.stream().distinct().count());
+    }
+  }
+
+  @Test
+  public void journeysRoutedThroughSwitches() {
+    GlobalMap world = MapBuilder.buildWorld("branching-test1");
+    // moved by the test rather than by ticks
+    WorldState previous = WorldState.setCurrent(world.getState());
+    try {
+      Journey first = world.getJourney(1);
+      Journey second = world.getJourney(2);
+      Switch join = world.getSwitch(1);
+      Switch split = world.getSwitch(2);
+
+      // the second train goes through the join, onto the tracks it shares with the first one
+      move(second, world.getTrack(3));
+      assertEquals(world.getTrack(3), join.getStatus().get(world.getTrack(2)));
+      assertEquals(world.getTrack(2), join.getStatus().get(world.getTrack(3)));
+      assertEquals(second, JourneyHelper.getInstance(world).getJourneysFollowingEachOther()
+          .get(first));
+      double secondOnFirstPath =
+          first.getJourneyPath().getConnectableStartingPosition(world.getTrack(3)) + 100;
+      assertEquals(secondOnFirstPath - first.getJourneyPosition().getHeadPosition(),
+          JourneyHelper.getJourneyDistanceBetween(first, second), 1);
+
+      // and takes its own route out of the split
+      move(second, world.getTrack(6));
+      assertEquals(world.getTrack(6), split.getStatus().get(world.getTrack(4)));
+
+      // the first one goes the other way, and they don't follow each other anymore
+      move(first, world.getTrack(5));
+      assertEquals(world.getTrack(5), split.getStatus().get(world.getTrack(4)));
+      assertTrue(JourneyHelper.getInstance(world).getJourneysFollowingEachOther().isEmpty());
+    } finally {
+      WorldState.setCurrent(previous);
+      WorldHandler.endWorld(world);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void pathThroughSwitchItDoesNotConnect() {
+    Track t1 = new Track(10);
+    Track t2 = new Track(10);
+    Track t3 = new Track(10);
+    Switch s = new Switch(Arrays.asList(t1, t2), Arrays.asList(t3), t1, t3);
+    new JourneyPath(Arrays.asList(t1, s, t2));
+  }
+
+  @Test
+  public void iteratorOfALoop() {
+    Track t1 = new Track(10);
+    Track t2 = new Track(10);
+    Track t3 = new Track(10);
+    MapGraph graph = new MapGraph();
+    new MapGraphBuilder().addPath(Arrays.asList(t1, t2, t3, t1)).build(graph);
+
+    List<Connectable> connectables = new ArrayList<>();
+    for (Iterator<Connectable> it = graph.getIterator(t1); it.hasNext(); ) {
+      connectables.add(it.next());
+    }
+    assertEquals(Arrays.asList(t1, t2, t3), connectables);
+  }
+
+  /**
+   * Move a journey until its head is 100m into a connectable of its path
+   */
+  private static void move(Journey journey, Connectable connectable) {
+    double target = journey.getJourneyPath().getConnectableStartingPosition(connectable) + 100;
+    while (journey.getJourneyPosition().getHeadPosition() < target) {
+      journey.getJourneyPosition().update(journey,
+          Math.min(10, target - journey.getJourneyPosition().getHeadPosition()));
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package ft.sim.world.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ft.sim.world.WorldState;
+import ft.sim.world.connectables.Connectable;
+import ft.sim.world.connectables.Station;
+import ft.sim.world.connectables.Switch;
+import ft.sim.world.connectables.Track;
+import ft.sim.world.journey.JourneyPath;
+import ft.sim.world.placeables.ActiveBalise;
+import ft.sim.world.placeables.Balise;
+import ft.sim.world.placeables.Placeable;
+import ft.sim.world.signalling.SignalUnit;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map.Entry;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompiledMapTest {
+
+  private Path path;
+
+  @Before
+  public void createFile() throws Exception {
+    path = Files.createTempFile("map", CompiledMap.EXTENSION);
+  }
+
+  @After
+  public void delete() throws Exception {
+    Files.deleteIfExists(path);
+  }
+
+  @Test
+  public void variableBlockMap() throws Exception {
+    assertSameWorld("variable-block-test1");
+  }
+
+  @Test
+  public void fixedBlockMap() throws Exception {
+    assertSameWorld("fixed-block-test1");
+  }
+
+  @Test
+  public void loadedThroughTheMapBuilder() throws Exception {
+    GlobalMap built = MapBuilder.buildWorld("variable-block-test1");
+    CompiledMap.write(MapTopology.of(built), path);
+
+    GlobalMap loaded = MapBuilder.buildNewMap(path.toString());
+    assertEquals(built.getName(), loaded.getName());
+    assertEquals(built.getSimpleFileName(), loaded.getSimpleFileName());
+  }
+
+  @Test(expected = IOException.class)
+  public void notACompiledMap() throws Exception {
+    Files.write(path, "tracks:".getBytes());
+    CompiledMap.load(path);
+  }
+
+  private void assertSameWorld(String mapName) throws IOException {
+    GlobalMap built = MapBuilder.buildWorld(mapName);
+    CompiledMap.write(MapTopology.of(built), path);
+    GlobalMap loaded = CompiledMap.load(path);
+
+    assertEquals(built.getConfigurations(), loaded.getConfigurations());
+    assertEquals(built.getTracks().keySet(), loaded.getTracks().keySet());
+    assertEquals(built.getStations().keySet(), loaded.getStations().keySet());
+    assertEquals(built.getTrains().keySet(), loaded.getTrains().keySet());
+    assertEquals(built.getJourneys().keySet(), loaded.getJourneys().keySet());
+    assertEquals(built.getPlaceablesMap().keySet(), loaded.getPlaceablesMap().keySet());
+    assertEquals(built.getTrackPairs(), loaded.getTrackPairs());
+
+    for (Entry<Integer, Track> entry : built.getTracks().entrySet()) {
+      Track track = entry.getValue();
+      Track loadedTrack = loaded.getTrack(entry.getKey());
+      assertEquals(track.getLength(), loadedTrack.getLength(), 0);
+      assertEquals(entry.getKey().intValue(), loadedTrack.getID());
+      assertEquals(track.getSignalController() == null,
+          loadedTrack.getSignalController() == null);
+      if (track.getSignalController() != null) {
+        assertEquals(in(built, track.getSignalController()::getStatus),
+            in(loaded, loadedTrack.getSignalController()::getStatus));
+      }
+      assertEquals(track.getBlockSignals().keySet(), loadedTrack.getBlockSignals().keySet());
+      for (Entry<Integer, SignalUnit> signal : track.getBlockSignals().entrySet()) {
+        SignalUnit loadedSignal = loadedTrack.getBlockSignals().get(signal.getKey());
+        assertEquals(signal.getValue().isDistantSignal(), loadedSignal.isDistantSignal());
+        assertEquals(in(built, signal.getValue()::getStatus), in(loaded, loadedSignal::getStatus));
+      }
+      assertEquals(track.getPlaceables().keySet(), loadedTrack.getPlaceables().keySet());
+      for (Entry<Integer, Placeable> placeable : track.getPlaceables().entrySet()) {
+        if (!(placeable.getValue() instanceof Balise)) {
+          continue;
+        }
+        Balise balise = (Balise) placeable.getValue();
+        Balise loadedBalise = (Balise) loadedTrack.getPlaceables().get(placeable.getKey());
+        assertEquals(balise instanceof ActiveBalise, loadedBalise instanceof ActiveBalise);
+        assertEquals(balise.getPosition(), loadedBalise.getPosition(), 0);
+      }
+    }
+
+    MapGraph graph = built.getGraph();
+    MapGraph loadedGraph = loaded.getGraph();
+    assertTrue(loadedGraph.isBuilt());
+    assertEquals(graph.getRoots().size(), loadedGraph.getRoots().size());
+    assertEquals(graph.getConnectablesGraph().size(), loadedGraph.getConnectablesGraph().size());
+    for (Entry<Connectable, Connectable> edge : graph.getConnectablesGraph().entries()) {
+      assertTrue(loadedGraph.getChildren(toLoaded(built, loaded, edge.getKey()))
+          .contains(toLoaded(built, loaded, edge.getValue())));
+    }
+
+    for (Entry<Integer, JourneyPath> entry : built.getJourneyPaths().entrySet()) {
+      JourneyPath path = entry.getValue();
+      JourneyPath loadedPath = loaded.getJourneyPath(entry.getKey());
+      assertEquals(path.getLength(), loadedPath.getLength(), 0);
+      assertEquals(path.getDistanceFromGraphRoot(), loadedPath.getDistanceFromGraphRoot(), 0);
+      assertEquals(toLoaded(built, loaded, path.getGraphRootConnectable()),
+          loadedPath.getGraphRootConnectable());
+    }
+  }
+
+  /**
+   * Read the state of a world
+   */
+  private static <T> T in(GlobalMap world, Supplier<T> read) {
+    WorldState previous = WorldState.setCurrent(world.getState());
+    try {
+      return read.get();
+    } finally {
+      WorldState.setCurrent(previous);
+    }
+  }
+
+  private static Connectable toLoaded(GlobalMap built, GlobalMap loaded, Connectable c) {
+    if (c instanceof Track) {
+      return loaded.getTrack(built.getTrackID((Track) c));
+    }
+    if (c == null) {
+      return null;
+    }
+    if (built.getStations().containsValue(c)) {
+      return loaded.getStations().get(built.getStationID((Station) c));
+    }
+    return loaded.getSwitch(built.getSwitchID((Switch) c));
+  }
+}
@@ -0,0 +1,80 @@
+package ft.sim.world.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+public class MapCacheTest {
+
+  private Path directory;
+  private Path map;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("map-cache");
+    map = directory.resolve("cached.yaml");
+    Files.copy(new ClassPathResource("maps/variable-block-test1.yaml").getInputStream(), map);
+    MapCache.setDirectory(directory.resolve("cache"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MapCache.setDirectory(null);
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  @Test
+  public void storedAndLoaded() {
+    String name = map.toString();
+    assertNull(MapCache.load(name));
+
+    MapTopology built = MapTopology.of(MapBuilder.buildWorld(name));
+    MapCache.store(name, built);
+    MapTopology loaded = MapCache.load(name);
+
+    assertNotNull(loaded);
+    assertEquals(built.getName(), loaded.getName());
+    assertEquals(built.getConfigurations(), loaded.getConfigurations());
+    assertEquals(built.instantiate().getTracks().keySet(),
+        loaded.instantiate().getTracks().keySet());
+  }
+
+  @Test
+  public void changedMapMissesAndReplacesTheEntry() throws Exception {
+    String name = map.toString();
+    MapCache.store(name, MapTopology.of(MapBuilder.buildWorld(name)));
+    Path stale = MapCache.getDirectory().resolve(MapCache.entryName(name));
+    assertTrue(Files.isRegularFile(stale));
+
+    Files.write(map, "\n# changed\n".getBytes(), StandardOpenOption.APPEND);
+    assertNull(MapCache.load(name));
+
+    MapCache.store(name, MapTopology.of(MapBuilder.buildWorld(name)));
+    assertNotNull(MapCache.load(name));
+    assertFalse(Files.exists(stale));
+  }
+
+  @Test
+  public void brokenEntryIsIgnored() throws Exception {
+    String name = map.toString();
+    Files.createDirectories(MapCache.getDirectory());
+    Path entry = MapCache.getDirectory().resolve(MapCache.entryName(name));
+    Files.write(entry, "not a map".getBytes());
+
+    assertNull(MapCache.load(name));
+    assertFalse(Files.exists(entry));
+  }
+}
@@ -0,0 +1,135 @@
+package ft.sim.world.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import ft.sim.world.connectables.Connectable;
+import ft.sim.world.connectables.Station;
+import ft.sim.world.connectables.Switch;
+import ft.sim.world.connectables.Track;
+import ft.sim.world.journey.JourneyPath;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class MapGraphBuilderTest {
+
+  private final Track t1 = new Track(10);
+  private final Track t2 = new Track(20);
+  private final Track t3 = new Track(30);
+  private final Track t4 = new Track(40);
+  private final Station s1 = new Station(1, 1);
+
+  @Test
+  public void line() {
+    assertSameAsEdgeByEdge(Collections.singletonList(Arrays.asList(s1, t1, t2, t3)));
+  }
+
+  @Test
+  public void loop() {
+    MapGraph graph = new MapGraph();
+    new MapGraphBuilder().addPath(Arrays.asList(t1, t2, t3, t1)).build(graph);
+
+    // a loop has no connectable without parents, the first one of the path is its root
+    assertEquals(Collections.singleton(t1), graph.getRootConnectables());
+    assertSame(t2, graph.getNexTConnectable(t1));
+    assertSame(t1, graph.getNexTConnectable(t3));
+    assertEquals(Collections.singletonList(t3), new ArrayList<>(graph.getParents(t1)));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void trackConnectedToTwoTracks() {
+    new MapGraphBuilder().addPath(Arrays.asList(t1, t2)).addPath(Arrays.asList(t1, t3))
+        .build(new MapGraph());
+  }
+
+  @Test
+  public void trackConnectedToTwoTracksWithoutVerification() {
+    MapGraph graph = new MapGraph();
+    new MapGraphBuilder().withoutVerification().addPath(Arrays.asList(t1, t2))
+        .addPath(Arrays.asList(t1, t3)).build(graph);
+    assertEquals(1, graph.findProblems().size());
+  }
+
+  @Test
+  public void pathsJoining() {
+    assertSameAsEdgeByEdge(Arrays.asList(Arrays.asList(t1, t3, t4), Arrays.asList(t2, t3)));
+  }
+
+  @Test
+  public void pathsSplitting() {
+    Switch s = new Switch(Collections.singletonList(t1), Arrays.asList(t2, t3));
+    assertSameAsEdgeByEdge(
+        Arrays.asList(Arrays.asList(t1, s, t2), Arrays.asList(s, t3, t4)));
+  }
+
+  @Test
+  public void pathExtendedBackwards() {
+    assertSameAsEdgeByEdge(Arrays.asList(Arrays.asList(t2, t3), Arrays.asList(t1, t2)));
+  }
+
+  @Test
+  public void mapsOfTheRepository() {
+    for (String map : Arrays.asList("variable-block-test1", "fixed-block-test1")) {
+      GlobalMap world = MapBuilder.buildWorld(map);
+      List<List<Connectable>> paths = new ArrayList<>();
+      world.getJourneyPaths().values().forEach(p -> paths.add(p.getPath()));
+      assertSameAsEdgeByEdge(paths);
+    }
+  }
+
+  @Test
+  public void journeyRootAndDistance() {
+    MapGraphBuilder builder = new MapGraphBuilder();
+    builder.addPath(Arrays.asList(t1, t2, t3, t4));
+    builder.build(new MapGraph());
+    JourneyPath journeyPath = new JourneyPath(Arrays.asList(t3, t4));
+    builder.initJourney(journeyPath);
+
+    assertSame(t1, journeyPath.getGraphRootConnectable());
+    assertEquals(30, journeyPath.getDistanceFromGraphRoot(), 0);
+  }
+
+  @Test
+  public void longLine() {
+    List<Connectable> path = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      path.add(new Track(1));
+    }
+    MapGraph graph = new MapGraph();
+    MapGraphBuilder builder = new MapGraphBuilder().addPath(path);
+    builder.build(graph);
+
+    assertEquals(1, graph.getRoots().size());
+    assertSame(path.get(1), graph.getNexTConnectable(path.get(0)));
+    JourneyPath journeyPath = new JourneyPath(path.subList(19999, 20000));
+    builder.initJourney(journeyPath);
+    assertEquals(19999, journeyPath.getDistanceFromGraphRoot(), 0);
+  }
+
+  private static void assertSameAsEdgeByEdge(List<List<Connectable>> paths) {
+    MapGraph expected = new MapGraph();
+    for (List<Connectable> path : paths) {
+      Connectable previous = null;
+      for (Connectable connectable : path) {
+        expected.addEdge(previous, connectable);
+        previous = connectable;
+      }
+    }
+    expected.buildGraph();
+
+    MapGraph graph = new MapGraph();
+    MapGraphBuilder builder = new MapGraphBuilder();
+    paths.forEach(builder::addPath);
+    builder.build(graph);
+
+    assertEquals(expected.getConnectablesGraph(), graph.getConnectablesGraph());
+    assertEquals(expected.getRootConnectables(), graph.getRootConnectables());
+    for (Connectable connectable : expected.getConnectablesGraph().keySet()) {
+      assertEquals(expected.getParents(connectable), graph.getParents(connectable));
+    }
+    assertEquals(expected.getParents(null), graph.getParents(null));
+  }
+}
@@ -0,0 +1,128 @@
+package ft.sim.world.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import ft.sim.world.WorldState;
+import ft.sim.world.connectables.Station;
+import ft.sim.world.connectables.Switch;
+import ft.sim.world.connectables.Track;
+import ft.sim.world.journey.Journey;
+import ft.sim.world.map.MapBuildReport.BuildPhase;
+import ft.sim.world.signalling.SignalController;
+import ft.sim.world.signalling.SignalType;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.junit.Test;
+
+public class MapTopologyTest {
+
+  @Test
+  public void builtOnceForTheWorldsOfAMap() {
+    MapTopology topology = MapTopology.forMap("variable-block-test1");
+    assertSame(topology, MapTopology.forMap("variable-block-test1"));
+
+    GlobalMap first = MapBuilder.buildNewMap("variable-block-test1");
+    GlobalMap second = MapBuilder.buildNewMap("variable-block-test1");
+    assertSame(topology, first.getTopology());
+    assertSame(topology, second.getTopology());
+    // the worlds share the geometry of the map, and only have trains of their own
+    assertSame(first.getTracks(), second.getTracks());
+    assertSame(first.getStations(), second.getStations());
+    assertSame(first.getSwitches(), second.getSwitches());
+    assertSame(first.getPlaceablesMap(), second.getPlaceablesMap());
+    assertSame(first.getJourneyPaths(), second.getJourneyPaths());
+    assertSame(first.getGraph(), second.getGraph());
+    for (Entry<Integer, Journey> entry : first.getJourneys().entrySet()) {
+      Journey secondJourney = second.getJourney(entry.getKey());
+      assertSame(entry.getValue().getJourneyPath(), secondJourney.getJourneyPath());
+      assertNotSame(entry.getValue().getTrain(), secondJourney.getTrain());
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void geometryImmutable() {
+    GlobalMap world = MapBuilder.buildNewMap("variable-block-test1");
+    world.getTracks().put(1000, new Track(100));
+  }
+
+  @Test
+  public void worldsHaveTheirOwnState() {
+    GlobalMap first = MapBuilder.buildNewMap("variable-block-test1");
+    GlobalMap second = MapBuilder.buildNewMap("variable-block-test1");
+
+    first.addConfiguration("seed", 42);
+    assertTrue(!Integer.valueOf(42).equals(second.getConfiguration("seed")));
+    assertTrue(!Integer.valueOf(42).equals(
+        first.getTopology().getConfigurations().get("seed")));
+  }
+
+  @Test
+  public void runsHaveTheirOwnState() {
+    GlobalMap first = MapBuilder.buildNewMap("branching-test1");
+    GlobalMap second = MapBuilder.buildNewMap("branching-test1");
+    Switch split = first.getSwitch(2);
+    SignalController controller = first.getTrack(1).getSignalController();
+    Station station = first.getStations().get(1);
+    Map<Track, Track> position = in(second, () -> new HashMap<>(split.getStatus()));
+    SignalType status = in(second, controller::getStatus);
+    int used = in(second, station::usedCapacity);
+
+    in(first, () -> {
+      split.route(first.getTrack(4), first.getTrack(6));
+      controller.setStatus(status == SignalType.RED ? SignalType.GREEN : SignalType.RED);
+      station.left(first.getTrain(1));
+      return null;
+    });
+    assertTrue(!position.equals(in(first, () -> new HashMap<>(split.getStatus()))));
+    assertTrue(status != in(first, controller::getStatus));
+
+    // the other world is left as it was
+    assertEquals(position, in(second, () -> new HashMap<>(split.getStatus())));
+    assertEquals(status, in(second, controller::getStatus));
+    assertEquals(used, (int) in(second, station::usedCapacity));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void stateOnlyInAWorld() {
+    MapBuilder.buildNewMap("variable-block-test1").getStations().get(1).usedCapacity();
+  }
+
+  /**
+   * Read (or change) the state of a world
+   */
+  private static <T> T in(GlobalMap world, Supplier<T> read) {
+    WorldState previous = WorldState.setCurrent(world.getState());
+    try {
+      return read.get();
+    } finally {
+      WorldState.setCurrent(previous);
+    }
+  }
+
+  @Test
+  public void instantiationIsReported() {
+    GlobalMap built = MapBuilder.buildWorld("variable-block-test1");
+    GlobalMap world = MapTopology.of(built).instantiate();
+    MapBuildReport report = world.getBuildReport();
+    // after the phases of building the topology
+    Set<BuildPhase> phases = EnumSet.copyOf(built.getBuildReport().getPhaseNanos().keySet());
+    phases.add(BuildPhase.INSTANTIATE);
+    assertEquals(phases, report.getPhaseNanos().keySet());
+    assertEquals(built.getBuildReport().getPhaseSeconds(BuildPhase.BUILD_GRAPH),
+        report.getPhaseSeconds(BuildPhase.BUILD_GRAPH), 0);
+    assertEquals(world.getTracks().size(), report.getCounts().get("tracks").longValue());
+    assertSame(report, MapBuildReport.getLatestReports().get("variable-block-test1"));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void immutable() {
+    MapTopology.forMap("variable-block-test1").getConfigurations().put("seed", 1);
+  }
+}
@@ -0,0 +1,150 @@
+package ft.sim.world.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import ft.sim.world.map.MapBuildReport.BuildPhase;
+import ft.sim.world.map.MapValidator.Validation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MapValidatorTest {
+
+  private static final String TRACKS = "tracks:\n"
+      + "  '1':\n    numSections: 10000\n"
+      + "  '2':\n    numSections: 10000\n"
+      + "  '3':\n    numSections: 10000\n";
+
+  private Path path;
+
+  @Before
+  public void createFile() throws Exception {
+    path = Files.createTempFile("map", ".yaml");
+  }
+
+  @After
+  public void delete() throws Exception {
+    Files.deleteIfExists(path);
+  }
+
+  @Test
+  public void validMap() {
+    Validation validation = MapValidator.validate("branching-test1");
+    assertTrue(validation.getErrors().toString(), validation.isValid());
+    assertTrue(validation.getWarnings().isEmpty());
+
+    MapBuildReport report = validation.getReport();
+    assertNotNull(report);
+    assertTrue(report.getPhaseNanos().containsKey(BuildPhase.IMPORT));
+    assertTrue(report.getPhaseNanos().containsKey(BuildPhase.BUILD_GRAPH));
+    assertTrue(report.getPhaseNanos().containsKey(BuildPhase.SET_SIGNALS));
+    // a fixed block map
+    assertFalse(report.getPhaseNanos().containsKey(BuildPhase.CREATE_ACTIVE_BALISES));
+    assertEquals(6, report.getCounts().get("tracks").longValue());
+    assertEquals(60000, report.getCounts().get("sections").longValue());
+    assertEquals(2, report.getCounts().get("switches").longValue());
+    assertEquals(report, MapBuildReport.getLatestReports().get("branching-test1"));
+  }
+
+  @Test
+  public void unusedTrack() throws Exception {
+    write(TRACKS + "journeyPaths:\n"
+        + "  '1':\n    path:\n    - type: track\n      id: 1\n    - type: track\n      id: 2\n");
+
+    Validation validation = MapValidator.validate(path.toString());
+    assertTrue(validation.getErrors().toString(), validation.isValid());
+    assertEquals(1, validation.getWarnings().size());
+    assertTrue(validation.getWarnings().get(0).startsWith("Track 3 "));
+  }
+
+  @Test
+  public void trackConnectedToTwoTracks() throws Exception {
+    write(TRACKS + "journeyPaths:\n"
+        + "  '1':\n    path:\n    - type: track\n      id: 1\n    - type: track\n      id: 2\n"
+        + "  '2':\n    path:\n    - type: track\n      id: 1\n    - type: track\n      id: 3\n");
+
+    Validation validation = MapValidator.validate(path.toString());
+    assertEquals(1, validation.getErrors().size());
+    assertTrue(validation.getErrors().get(0),
+        validation.getErrors().get(0).startsWith("A track cannot be connected"));
+    // the build stops at the broken graph, but is still reported
+    assertTrue(validation.getReport().getPhaseNanos().containsKey(BuildPhase.BUILD_GRAPH));
+    assertFalse(validation.getReport().getPhaseNanos().containsKey(BuildPhase.SET_SIGNALS));
+  }
+
+  @Test
+  public void allProblemsListed() throws Exception {
+    write("tracks:\n"
+        + "  '1':\n    numSections: 10000\n"
+        + "  '2':\n    numSections: 10000\n"
+        + "  '3':\n    numSections: 10000\n"
+        + "  '4':\n    numSections: 10000\n"
+        + "  '5':\n    numSections: 10000\n"
+        + "stations:\n  '1':\n    capacity: 1\n    wait: 10\n"
+        + "journeyPaths:\n"
+        + "  '1':\n    path:\n    - type: station\n      id: 1\n"
+        + "    - type: track\n      id: 1\n    - type: track\n      id: 2\n"
+        + "    - type: track\n      id: 4\n"
+        + "  '2':\n    path:\n    - type: track\n      id: 1\n    - type: track\n      id: 3\n"
+        + "  '3':\n    path:\n    - type: track\n      id: 2\n    - type: track\n      id: 5\n"
+        + "trains:\n  '1':\n    numCars: 1\n  '2':\n    numCars: 1\n"
+        + "journeys:\n"
+        + "  '1':\n    train: 1\n    path: 1\n    isForward: true\n"
+        + "  '2':\n    train: 2\n    path: 1\n    isForward: true\n");
+
+    Validation validation = MapValidator.validate(path.toString());
+    List<String> errors = validation.getErrors();
+    assertEquals(errors.toString(), 3, errors.size());
+    assertEquals(2, errors.stream().filter(e -> e.startsWith("A track cannot be connected"))
+        .count());
+    assertTrue(errors.get(2), errors.get(2).startsWith("Station 1 has 2 trains starting at it"));
+  }
+
+  @Test
+  public void switchSetBetweenTracksItDoesNotConnect() throws Exception {
+    write(TRACKS + "switches:\n"
+        + "  '1':\n    left:\n    - 1\n    right:\n    - 2\n    - 3\n"
+        + "    statusLeft: 2\n    statusRight: 3\n"
+        + "journeyPaths:\n"
+        + "  '1':\n    path:\n    - type: track\n      id: 1\n    - type: switch\n      id: 1\n"
+        + "    - type: track\n      id: 2\n"
+        + "  '2':\n    path:\n    - type: switch\n      id: 1\n    - type: track\n      id: 3\n");
+
+    Validation validation = MapValidator.validate(path.toString());
+    assertEquals(Collections.singletonList("Switch 1 is set between tracks it doesn't connect"),
+        validation.getErrors());
+  }
+
+  @Test
+  public void trackTooShortForDistantSignal() throws Exception {
+    write("tracks:\n"
+        + "  '1':\n    numSections: 5000\n"
+        + "  '2':\n    numSections: 5000\n"
+        + "  '3':\n    numSections: 5000\n"
+        + "journeyPaths:\n"
+        + "  '1':\n    path:\n    - type: track\n      id: 1\n    - type: track\n      id: 2\n"
+        + "    - type: track\n      id: 3\n");
+
+    Validation validation = MapValidator.validate(path.toString());
+    assertEquals(validation.getErrors().toString(), 2, validation.getErrors().size());
+    assertTrue(validation.getErrors().get(0).startsWith("Track 1 is 5000m long"));
+    assertTrue(validation.getErrors().get(1).startsWith("Track 2 is 5000m long"));
+  }
+
+  @Test
+  public void missingMap() {
+    assertFalse(MapValidator.validate("no-such-map").isValid());
+  }
+
+  private void write(String yaml) throws Exception {
+    Files.write(path, ("---\n" + yaml).getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,134 @@
+package ft.sim.world.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ft.sim.world.WorldHandler;
+import ft.sim.world.connectables.Connectable;
+import ft.sim.world.connectables.Station;
+import ft.sim.world.connectables.Switch;
+import ft.sim.world.connectables.Track;
+import ft.sim.world.journey.JourneyPath;
+import ft.sim.world.map.MapValidator.Validation;
+import ft.sim.world.map.NetworkGenerator.ScaleTier;
+import ft.sim.world.placeables.ActiveBalise;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class NetworkGeneratorTest {
+
+  @Test
+  public void smallTier() {
+    GlobalMap world = ScaleTier.SMALL.generator().build();
+
+    // 2 dual lines of 3 stations and 30km of 10km tracks, with a junction and its paired one
+    assertEquals(2, world.getSwitches().size());
+    assertEquals(4 + 2, world.getJourneyPaths().size());
+    assertEquals(12 + 2, world.getStations().size());
+    assertEquals(4 * 4 + 2, world.getTracks().size());
+    assertEquals(8 + 1, world.getTrackPairs().size());
+    assertEquals(4, world.getTrains().size());
+    assertEquals(4, world.getJourneys().size());
+    // the lines and the merging branch
+    assertEquals(4 + 1, world.getGraph().getRoots().size());
+    for (Track track : world.getTracks().values()) {
+      assertEquals(10000, track.getLength(), 0);
+    }
+
+    WorldHandler handler = WorldHandler.getInstance(world);
+    for (int i = 0; i < 100; i++) {
+      handler.tick(0.1);
+    }
+    WorldHandler.endWorld(world);
+  }
+
+  @Test
+  public void variableBlockWithSwitches() {
+    GlobalMap world = new NetworkGenerator().mode("variable_block").switchDensity(1)
+        .trackLength(1000).lineLength(5000).baliseSpacing(100).trains(2).build();
+
+    // a junction between every two tracks, on both lines, each with a branch track and station
+    assertEquals(8, world.getSwitches().size());
+    assertEquals(10 + 8, world.getTracks().size());
+    assertEquals(4 + 8, world.getStations().size());
+    assertEquals(2 + 8, world.getJourneyPaths().size());
+    long activeBalises = world.getTracks().values().stream()
+        .flatMap(t -> t.getPlaceables().values().stream())
+        .filter(p -> p instanceof ActiveBalise).count();
+    assertTrue(activeBalises > 0);
+  }
+
+  @Test
+  public void junctionsBranchOffTheLines() throws Exception {
+    NetworkGenerator generator = new NetworkGenerator().stationsPerCorridor(3).switchDensity(1)
+        .trackLength(1000).lineLength(4000).baliseSpacing(100).mode("variable_block").trains(12);
+    GlobalMap world = generator.build();
+    try {
+      // the line diverges at the first junction of its line and merges at the one of its pair
+      Switch diverging = world.getSwitch(1);
+      assertEquals(1, diverging.getFrom().size());
+      assertEquals(2, diverging.getTo().size());
+      Switch merging = world.getSwitch(world.getSwitches().size() / 2 + 1);
+      assertEquals(2, merging.getFrom().size());
+      assertEquals(1, merging.getTo().size());
+
+      // the branch stations are reached through the junctions
+      RouteFinder routes = world.getRouteFinder();
+      Station first = world.getStation(1);
+      for (JourneyPath path : world.getJourneyPaths().values()) {
+        List<Connectable> connectables = path.getPath();
+        Connectable last = connectables.get(connectables.size() - 1);
+        if (connectables.get(0) == first && last != world.getStation(3)) {
+          List<Connectable> route = routes.findRoute(first, last).get();
+          assertTrue(route.stream().anyMatch(c -> c instanceof Switch));
+        }
+      }
+
+      WorldHandler handler = WorldHandler.getInstance(world);
+      for (int i = 0; i < 1000; i++) {
+        handler.tick(0.1);
+      }
+    } finally {
+      WorldHandler.endWorld(world);
+    }
+
+    Path path = Files.createTempFile("generated", ".yaml");
+    try {
+      generator.writeYaml(path);
+      Validation validation = MapValidator.validate(path.toString());
+      assertTrue(validation.getErrors().toString(), validation.isValid());
+      assertEquals(Collections.emptyList(), validation.getWarnings());
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void writtenAsYaml() throws Exception {
+    NetworkGenerator generator = new NetworkGenerator().corridors(2).stationsPerCorridor(4)
+        .switchDensity(0.5).trains(6).seed(3);
+    Path path = Files.createTempFile("generated", ".yaml");
+    try {
+      generator.writeYaml(path);
+      GlobalMap loaded = MapBuilder.buildWorld(path.toString());
+      GlobalMap built = generator.build();
+
+      assertEquals(built.getTracks().keySet(), loaded.getTracks().keySet());
+      assertEquals(built.getStations().keySet(), loaded.getStations().keySet());
+      assertEquals(built.getSwitches().keySet(), loaded.getSwitches().keySet());
+      assertEquals(built.getPlaceablesMap().keySet(), loaded.getPlaceablesMap().keySet());
+      assertEquals(built.getTrackPairs(), loaded.getTrackPairs());
+      assertEquals(built.getJourneys().keySet(), loaded.getJourneys().keySet());
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fixedBlockTracksShorterThanBrakeDistance() {
+    new NetworkGenerator().trackLength(5000).generate();
+  }
+}
@@ -0,0 +1,107 @@
+package ft.sim.world.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import ft.sim.world.connectables.Connectable;
+import ft.sim.world.connectables.Station;
+import ft.sim.world.connectables.Switch;
+import ft.sim.world.connectables.Track;
+import ft.sim.world.journey.JourneyPath;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class RouteFinderTest {
+
+  @Test
+  public void routesOfBranchingNetwork() {
+    GlobalMap world = MapBuilder.buildWorld("branching-test1");
+    RouteFinder routes = world.getRouteFinder();
+
+    for (JourneyPath path : world.getJourneyPaths().values()) {
+      assertEquals(path.getPath(), routes.findRoute(path.getFirst(), path.getLast()).get());
+    }
+
+    // from one branch to the other one, through both switches
+    List<Connectable> route = routes
+        .findRoute(world.getStation(1), world.getStation(4)).get();
+    assertEquals(Arrays.asList(world.getStation(1), world.getTrack(1), world.getSwitch(1),
+        world.getTrack(3), world.getTrack(4), world.getSwitch(2), world.getTrack(6),
+        world.getStation(4)), route);
+
+    JourneyPath path = routes.createJourneyPath(world.getStation(2), world.getStation(3));
+    assertEquals(routes.getRouteLength(world.getStation(2), world.getStation(3)),
+        path.getLength(), 0);
+
+    // journey paths only go one way
+    assertFalse(routes.findRoute(world.getStation(3), world.getStation(1)).isPresent());
+    assertEquals(Double.POSITIVE_INFINITY,
+        routes.getRouteLength(world.getStation(4), world.getStation(2)), 0);
+  }
+
+  @Test
+  public void routesOnlyGoThroughSwitchesBetweenTracksTheyConnect() {
+    GlobalMap world = new GlobalMap("switches");
+    for (int id = 1; id <= 4; id++) {
+      world.addTrack(id, new Track(id == 4 ? 1000 : 100));
+    }
+    world.addSwitch(1, Arrays.asList(1, 2), Arrays.asList(3), 1, 3);
+    Track t1 = world.getTrack(1);
+    Track t2 = world.getTrack(2);
+    Track t3 = world.getTrack(3);
+    Track t4 = world.getTrack(4);
+    Switch s = world.getSwitch(1);
+    // t1 leads both to the switch and to t4, which maps don't allow
+    new MapGraphBuilder().withoutVerification().addPath(Arrays.asList(t1, s, t3))
+        .addPath(Arrays.asList(t3, s, t2)).addPath(Arrays.asList(t1, t4, t2))
+        .build(world.getGraph());
+
+    // t1 and t2 are on the same side of the switch, so the route goes the long way
+    assertEquals(Arrays.asList(t1, t4, t2), world.getRouteFinder().findRoute(t1, t2).get());
+    assertEquals(Arrays.asList(t3, s, t2), world.getRouteFinder().findRoute(t3, t2).get());
+  }
+
+  @Test
+  public void routesOfGeneratedNetwork() {
+    GlobalMap world = new NetworkGenerator().corridors(3).stationsPerCorridor(4)
+        .switchDensity(0.5).seed(5).build();
+    RouteFinder routes = world.getRouteFinder();
+
+    // the lines of a generated network are the only routes between their ends
+    for (JourneyPath path : world.getJourneyPaths().values()) {
+      assertEquals(path.getPath(), routes.findRoute(path.getFirst(), path.getLast()).get());
+      List<Connectable> connectables = path.getPath();
+      for (int i = 0; i < connectables.size(); i++) {
+        if (connectables.get(i) instanceof Station && i > 0) {
+          assertEquals(connectables.subList(0, i + 1),
+              routes.findRoute(path.getFirst(), connectables.get(i)).get());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void routesInWorldsOfTheSameTopology() {
+    MapTopology topology = MapTopology.forMap("branching-test1");
+    GlobalMap first = topology.instantiate();
+    GlobalMap second = topology.instantiate();
+
+    List<Connectable> firstRoute = first.getRouteFinder()
+        .findRoute(first.getStation(2), first.getStation(4)).get();
+    List<Connectable> secondRoute = second.getRouteFinder()
+        .findRoute(second.getStation(2), second.getStation(4)).get();
+    // the same route, of the connectables of each world
+    assertEquals(firstRoute.size(), secondRoute.size());
+    assertEquals(Arrays.asList(second.getStation(2), second.getTrack(2), second.getSwitch(1),
+        second.getTrack(3), second.getTrack(4), second.getSwitch(2), second.getTrack(6),
+        second.getStation(4)), secondRoute);
+    assertEquals(topology.getRouteTables(first), topology.getRouteTables(second));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void noRouteForJourneyPath() {
+    GlobalMap world = MapBuilder.buildWorld("branching-test1");
+    world.getRouteFinder().createJourneyPath(world.getStation(3), world.getStation(1));
+  }
+}
@@ -0,0 +1,80 @@
+package ft.sim.world.map;
+
+import static org.junit.Assert.assertEquals;
+
+import ft.sim.world.connectables.Track;
+import ft.sim.world.journey.JourneyPath;
+import ft.sim.world.placeables.PassiveBalise;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.yaml.snakeyaml.Yaml;
+
+public class StreamingMapImporterTest {
+
+  @Test
+  public void sameAsLoadedDocument() throws Exception {
+    // basic.yaml has its sections in reverse order of what they refer to
+    for (String name : Arrays.asList("basic", "variable-block-test1", "variable-block-dual-test1",
+        "fixed-block-test1", "experiment-single-track-1")) {
+      Map<String, Object> document = (Map<String, Object>) new Yaml()
+          .load(new ClassPathResource("maps/" + name + ".yaml").getInputStream());
+      GlobalMap expected = MapBuilder.buildWorld(name, document);
+      GlobalMap streamed = MapBuilder.buildWorld(name);
+
+      assertEquals(expected.getConfigurations(), streamed.getConfigurations());
+      assertEquals(expected.getTrackPairs(), streamed.getTrackPairs());
+      assertEquals(expected.getStations().keySet(), streamed.getStations().keySet());
+      assertEquals(expected.getSwitches().keySet(), streamed.getSwitches().keySet());
+      assertEquals(expected.getTrains().keySet(), streamed.getTrains().keySet());
+      assertEquals(expected.getJourneys().keySet(), streamed.getJourneys().keySet());
+      assertEquals(expected.getPlaceablesMap().keySet(), streamed.getPlaceablesMap().keySet());
+      assertEquals(expected.getTracks().keySet(), streamed.getTracks().keySet());
+      for (Entry<Integer, Track> track : expected.getTracks().entrySet()) {
+        Track streamedTrack = streamed.getTrack(track.getKey());
+        assertEquals(track.getValue().getLength(), streamedTrack.getLength(), 0);
+        // (active balises of dual lines depend on which line is reached first, compare the
+        // placeables of the map)
+        assertEquals(passiveBalises(track.getValue()), passiveBalises(streamedTrack));
+      }
+      for (Entry<Integer, JourneyPath> path : expected.getJourneyPaths().entrySet()) {
+        assertEquals(path.getValue().getLength(),
+            streamed.getJourneyPath(path.getKey()).getLength(), 0);
+      }
+    }
+  }
+
+  private static Set<Integer> passiveBalises(Track track) {
+    return track.getPlaceables().entrySet().stream()
+        .filter(placeable -> placeable.getValue() instanceof PassiveBalise).map(Entry::getKey)
+        .collect(Collectors.toSet());
+  }
+
+  @Test
+  public void scalarsTypedLikeTheLoader() {
+    String document = "---\nsimulation:\n  hex: 0x10\n  underscores: 1_000\n  big: 10000000000\n"
+        + "  decimal: 1.5\n  flag: yes\n  quoted: '12'\n  nothing: ~\n  text: fixed_block\n"
+        + "  nested:\n    list: [1, two]\n";
+    GlobalMap map = new GlobalMap("scalars");
+    new StreamingMapImporter(new MapBuilder(map)).importMap(new StringReader(document));
+
+    Map<String, Object> loaded = (Map<String, Object>) ((Map<String, Object>) new Yaml()
+        .load(document)).get("simulation");
+    for (Entry<String, Object> entry : loaded.entrySet()) {
+      assertEquals(entry.getKey(), entry.getValue(), map.getConfiguration(entry.getKey()));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void placeableOnMissingTrack() {
+    String document = "---\nplaceables:\n  '1':\n    advisorySpeed: 10\n"
+        + "    placeOn:\n      track: 2\n      section: 0\ntracks:\n  '1':\n    numSections: 10\n";
+    new StreamingMapImporter(new MapBuilder(new GlobalMap("missing")))
+        .importMap(new StringReader(document));
+  }
+}